@@ -0,0 +1,17 @@
+package cn.yafex.tools.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记工具的类型化执行方法。
+ * 方法的每个参数都必须带有一个 {@link InputVar} 注解，注册时按 {@link cn.yafex.tools.schema.FieldType}
+ * 生成参数转换并绑定为 MethodHandle，执行时不再经过 Map 传参。
+ * 输出仍然通过方法上的 {@link ReturnVal} 声明
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ToolMethod {
+}
@@ -1,6 +1,7 @@
 package cn.yafex.tools.controller;
 
 import cn.yafex.tools.core.ToolDefinition;
+import cn.yafex.tools.core.ToolDescriptor;
 import cn.yafex.tools.core.ToolHandler;
 import cn.yafex.tools.core.ToolRegistry;
 import cn.yafex.tools.core.ToolResponse;
@@ -25,11 +26,11 @@ public class ToolController {
     @GetMapping
     public ResponseEntity<List<Map<String, String>>> listTools() {
 		System.out.println("listTools");
-        List<Map<String, String>> tools = ToolRegistry.getAllHandlers().stream()
-            .map(handler -> {
+        List<Map<String, String>> tools = ToolRegistry.getAllDescriptors().stream()
+            .map(descriptor -> {
                 Map<String, String> toolInfo = new HashMap<>();
-                toolInfo.put("name", handler.getName());
-                toolInfo.put("description", handler.getDefinition().getDescription());
+                toolInfo.put("name", descriptor.getName());
+                toolInfo.put("description", descriptor.getDefinition().getDescription());
                 return toolInfo;
             })
             .collect(Collectors.toList());
@@ -44,11 +45,11 @@ public class ToolController {
     @GetMapping("/{toolName}")
     public ResponseEntity<ToolDefinition> getToolDetails(@PathVariable String toolName) {
 		System.out.println("getToolDetails: " + toolName);
-        ToolHandler handler = ToolRegistry.getHandler(toolName);
-        if (handler == null) {
+        ToolDescriptor descriptor = ToolRegistry.getDescriptor(toolName);
+        if (descriptor == null) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(handler.getDefinition());
+        return ResponseEntity.ok(descriptor.getDefinition());
     }
 
     /**
@@ -0,0 +1,48 @@
+package cn.yafex.tools.core;
+
+import cn.yafex.tools.exceptions.ToolException;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 异步工具的接口，适用于主要时间花在等待 I/O 的工具。
+ *
+ * <p>工作流执行到异步工具节点时不占用引擎线程等待：{@link #executeAsync(Map)} 返回后执行挂起，
+ * future 完成时再由调度器继续执行后续节点。执行被取消或节点超时时会调用 future 的 cancel。</p>
+ *
+ * <p>输入输出的 {@code @InputVar} / {@code @ReturnVal} 注解声明在 executeAsync 方法上。
+ * 同步的 {@link #execute(Map)} 默认等待 future 完成，供工具 API 等同步调用方使用。</p>
+ */
+public interface AsyncToolHandler extends ToolHandler {
+
+    /**
+     * 异步执行工具，不应在调用线程上阻塞
+     * @param params 参数名称到值的映射
+     * @return 完成时给出工具响应的 future，失败时以 {@link ToolException} 异常完成
+     */
+    CompletableFuture<ToolResponse<?>> executeAsync(Map<String, Object> params);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    default <T> ToolResponse<T> execute(Map<String, Object> params) throws ToolException {
+        CompletableFuture<ToolResponse<?>> future = executeAsync(params);
+        try {
+            return (ToolResponse<T>) future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ToolException("工具执行被中断", "INTERRUPTED");
+        } catch (CancellationException e) {
+            throw new ToolException("工具执行已取消", "CANCELLED");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ToolException) {
+                throw (ToolException) cause;
+            }
+            throw new ToolException("Tool execution failed: " + cause.getMessage(), "EXECUTION_ERROR");
+        }
+    }
+}
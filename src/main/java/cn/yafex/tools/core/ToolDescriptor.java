@@ -0,0 +1,138 @@
+package cn.yafex.tools.core;
+
+import cn.yafex.tools.exceptions.ToolException;
+import cn.yafex.tools.schema.FieldDef;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 注册表中保存的工具描述，注册时构建一次。
+ *
+ * <p>{@link ToolHandler#getDefinition()} 的默认实现每次调用都会反射 execute 方法的注解并重新创建字段定义，
+ * 描述在注册时调用一次并保存副本，执行期间的调用方都从这里读取工具名称和定义。
+ * 定义和字段表不可修改；其中的 {@link FieldDef} 是注册时复制的独立对象，handler 之后修改自己的定义不会影响这里，
+ * 但 FieldDef 本身仍是可变的 JavaBean，由所有调用方共享，只能读取。</p>
+ */
+public final class ToolDescriptor {
+    private final ToolHandler handler;
+    private final String name;
+    private final ToolDefinition definition;
+    private final TypedToolInvoker invoker;
+
+    private ToolDescriptor(ToolHandler handler, String name, ToolDefinition definition, TypedToolInvoker invoker) {
+        this.handler = handler;
+        this.name = name;
+        this.definition = definition;
+        this.invoker = invoker;
+    }
+
+    /**
+     * 读取 handler 的名称和定义并构建描述
+     * @param handler 工具 handler
+     * @return 工具描述
+     * @throws IllegalStateException 如果工具缺少 @Tool 注解或 execute 方法
+     */
+    public static ToolDescriptor of(ToolHandler handler) {
+        return of(handler, handler.getName(), handler.getDefinition());
+    }
+
+    /**
+     * 使用已知的定义构建描述，例如编译时生成的工具索引
+     * @param handler 工具 handler
+     * @param definition 工具定义，名称即注册名称
+     * @return 工具描述
+     */
+    static ToolDescriptor of(ToolHandler handler, ToolDefinition definition) {
+        return of(handler, definition.getName(), definition);
+    }
+
+    private static ToolDescriptor of(ToolHandler handler, String name, ToolDefinition source) {
+        ToolDefinition definition = new ImmutableToolDefinition(
+            source.getName() != null ? source.getName() : name,
+            source.getDescription(),
+            freeze(source.getInputs()),
+            freeze(source.getOutputs()),
+            source.getPossibleExceptions() != null
+                ? Collections.unmodifiableList(source.getPossibleExceptions())
+                : null
+        );
+        return new ToolDescriptor(handler, name, definition, TypedToolInvoker.of(handler));
+    }
+
+    private static Map<String, FieldDef> freeze(Map<String, FieldDef> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, FieldDef> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, FieldDef> entry : fields.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue() != null ? new FieldDef(entry.getValue()) : null);
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public ToolHandler getHandler() {
+        return handler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** 注册时构建的工具定义，定义和字段表不可修改，其中共享的 FieldDef 只能读取 */
+    public ToolDefinition getDefinition() {
+        return definition;
+    }
+
+    /** 工具是否实现了 {@link AsyncToolHandler}，执行时不占用线程等待 */
+    public boolean isAsync() {
+        return handler instanceof AsyncToolHandler;
+    }
+
+    /**
+     * 注册时绑定的类型化调用器，工具没有 {@link cn.yafex.tools.annotations.ToolMethod} 方法时为 null，
+     * 此时通过 {@link ToolHandler#execute(Map)} 调用
+     */
+    public TypedToolInvoker getInvoker() {
+        return invoker;
+    }
+
+    /**
+     * 禁止修改的工具定义，防止调用方修改注册表中共享的定义
+     */
+    private static final class ImmutableToolDefinition extends ToolDefinition {
+        ImmutableToolDefinition(String name, String description,
+                                Map<String, FieldDef> inputs,
+                                Map<String, FieldDef> outputs,
+                                List<Class<? extends ToolException>> possibleExceptions) {
+            super(name, description, inputs, outputs, possibleExceptions);
+        }
+
+        @Override
+        public void setName(String name) {
+            throw new UnsupportedOperationException("工具定义不可修改");
+        }
+
+        @Override
+        public void setDescription(String description) {
+            throw new UnsupportedOperationException("工具定义不可修改");
+        }
+
+        @Override
+        public void setInputs(Map<String, FieldDef> inputs) {
+            throw new UnsupportedOperationException("工具定义不可修改");
+        }
+
+        @Override
+        public void setOutputs(Map<String, FieldDef> outputs) {
+            throw new UnsupportedOperationException("工具定义不可修改");
+        }
+
+        @Override
+        public void setPossibleExceptions(List<Class<? extends ToolException>> possibleExceptions) {
+            throw new UnsupportedOperationException("工具定义不可修改");
+        }
+    }
+}
@@ -27,7 +27,9 @@ public interface ToolHandler {
     }
 
     /**
-     * 获取工具的定义，包括参数和返回类型
+     * 获取工具的定义，包括参数和返回类型。
+     * 默认实现每次调用都会反射注解，执行期间应通过 {@link ToolRegistry#getDescriptor(String)}
+     * 或 {@link ToolRegistry#definitionOf(ToolHandler)} 读取注册时缓存的定义
      */
     default ToolDefinition getDefinition() {
         Tool annotation = getClass().getAnnotation(Tool.class);
@@ -35,12 +37,15 @@ public interface ToolHandler {
             throw new IllegalStateException("Tool annotation not found on class: " + getClass().getName());
         }
 
-        // Find execute method
-        Method executeMethod = null;
-        for (Method method : getClass().getMethods()) {
-            if (method.getName().equals("execute")) {
-                executeMethod = method;
-                break;
+        // 优先使用类型化的 @ToolMethod 方法，否则使用 execute 方法（异步工具为 executeAsync）
+        Method executeMethod = TypedToolInvoker.findToolMethod(getClass());
+        if (executeMethod == null) {
+            String methodName = this instanceof AsyncToolHandler ? "executeAsync" : "execute";
+            for (Method method : getClass().getMethods()) {
+                if (method.getName().equals(methodName)) {
+                    executeMethod = method;
+                    break;
+                }
             }
         }
         
@@ -113,7 +118,7 @@ public interface ToolHandler {
      * @throws ValidationException 如果验证失败
      */
     default void validateParams(Map<String, Object> params) throws ValidationException {
-        ToolDefinition definition = getDefinition();
+        ToolDefinition definition = ToolRegistry.definitionOf(this);
         Map<String, FieldDef> inputFields = definition.getInputs();
 
         // 检查必填字段
@@ -0,0 +1,137 @@
+package cn.yafex.tools.core;
+
+import cn.yafex.tools.schema.FieldDef;
+import cn.yafex.tools.schema.FieldType;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译时由 {@code ToolIndexProcessor} 生成的工具索引。
+ *
+ * <p>每个包含 {@code @Tool} 类的 jar 都带有一个 {@link #LOCATION} 资源，记录工具类名和输入输出定义。
+ * 注册表启动时读取所有索引直接实例化工具类，不再扫描类路径；
+ * 没有索引或索引中没有目标包下的工具时，由调用方回退到 {@link ToolScanner} 扫描。</p>
+ */
+public final class ToolIndex {
+    /** 索引资源路径 */
+    public static final String LOCATION = "META-INF/cn.yafex.tools/tool-index.json";
+
+    private ToolIndex() {
+    }
+
+    /**
+     * 注册索引中位于指定包下的工具
+     * @param basePackage 基包
+     * @return 索引中存在该包下的工具时返回 true，否则返回 false，调用方应回退到扫描
+     */
+    public static boolean registerIndexed(String basePackage) {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ToolIndex.class.getClassLoader();
+        }
+        List<JSONObject> entries = load(loader, basePackage);
+        if (entries.isEmpty()) {
+            return false;
+        }
+        System.out.println("从索引注册工具: " + basePackage);
+        for (JSONObject entry : entries) {
+            String className = entry.getString("className");
+            try {
+                register(loader, entry);
+                System.out.println("注册工具: " + className);
+            } catch (Exception e) {
+                // 记录错误但继续处理其他工具
+                System.err.println("注册工具失败: " + className + " - " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private static void register(ClassLoader loader, JSONObject entry) throws Exception {
+        Class<?> toolClass = Class.forName(entry.getString("className"), true, loader);
+        ToolHandler handler = (ToolHandler) toolClass.getDeclaredConstructor().newInstance();
+        if (entry.getBooleanValue("customDefinition")) {
+            // 工具自行提供名称或定义，注册时通过 handler 读取
+            ToolRegistry.register(handler);
+            return;
+        }
+        ToolDefinition definition = new ToolDefinition(
+            entry.getString("name"),
+            entry.getString("description"),
+            fields(entry.getJSONObject("inputs")),
+            fields(entry.getJSONObject("outputs")),
+            null
+        );
+        ToolRegistry.register(handler, definition);
+    }
+
+    /**
+     * 按索引中的字段构建 FieldDef。不使用 fastjson 的类型绑定，避免启动时为 FieldDef 生成反序列化器
+     */
+    private static Map<String, FieldDef> fields(JSONObject json) {
+        if (json == null) {
+            return null;
+        }
+        Map<String, FieldDef> fields = new LinkedHashMap<>();
+        for (String name : json.keySet()) {
+            JSONObject field = json.getJSONObject(name);
+            fields.put(name, new FieldDef(
+                field.getString("name"),
+                field.getString("description"),
+                FieldType.valueOf(field.getString("type")),
+                field.getBooleanValue("required"),
+                field.getString("defaultValue"),
+                null
+            ));
+        }
+        return fields;
+    }
+
+    /**
+     * 读取类路径上所有索引中位于指定包下的条目
+     */
+    static List<JSONObject> load(ClassLoader loader, String basePackage) {
+        String prefix = basePackage + ".";
+        List<JSONObject> entries = new ArrayList<>();
+        try {
+            Enumeration<URL> resources = loader.getResources(LOCATION);
+            while (resources.hasMoreElements()) {
+                JSONArray index = JSON.parseArray(read(resources.nextElement()));
+                for (int i = 0; i < index.size(); i++) {
+                    JSONObject entry = index.getJSONObject(i);
+                    if (entry.getString("className").startsWith(prefix)) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取工具索引失败", e);
+        }
+        return entries;
+    }
+
+    private static String read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -4,23 +4,29 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.stream.Collectors;
 import org.springframework.stereotype.Service;
 
 /**
- * 用于管理工具注册的注册表
+ * 用于管理工具注册的注册表。
+ * 注册时为每个 handler 构建一次 {@link ToolDescriptor}，执行期间按名称或 handler 实例读取缓存的定义
  */
 @Service
 public class ToolRegistry {
-    private static final Map<String, ToolHandler> handlers = new ConcurrentHashMap<>();
+    private static final Map<String, ToolDescriptor> descriptors = new ConcurrentHashMap<>();
+    /** 按 handler 实例索引，handler 没有重写 equals/hashCode 时按引用比较 */
+    private static final Map<ToolHandler, ToolDescriptor> descriptorsByHandler = new ConcurrentHashMap<>();
     private static boolean initialized = false;
 
     /**
-     * 初始化注册表，通过扫描工具
-     * @param basePackage 要扫描的基包
+     * 初始化注册表。优先读取编译时生成的工具索引，没有索引时回退到扫描类路径
+     * @param basePackage 工具所在的基包
      */
     public static synchronized void initialize(String basePackage) {
         if (!initialized) {
-            ToolScanner.scanAndRegister(basePackage);
+            if (!ToolIndex.registerIndexed(basePackage)) {
+                ToolScanner.scanAndRegister(basePackage);
+            }
             initialized = true;
         }
     }
@@ -35,10 +41,24 @@ public class ToolRegistry {
      * @throws IllegalArgumentException 如果存在同名的工具 handler
      */
     public static void register(ToolHandler handler) {
-        if (handlers.containsKey(handler.getName())) {
-            throw new IllegalArgumentException("工具已存在注册: " + handler.getName());
+        register(ToolDescriptor.of(handler));
+    }
+
+    /**
+     * 使用工具索引中的定义注册 handler，不再反射读取注解
+     * @param handler 要注册的工具 handler
+     * @param definition 编译时生成的工具定义
+     * @throws IllegalArgumentException 如果存在同名的工具 handler
+     */
+    static void register(ToolHandler handler, ToolDefinition definition) {
+        register(ToolDescriptor.of(handler, definition));
+    }
+
+    private static void register(ToolDescriptor descriptor) {
+        if (descriptors.putIfAbsent(descriptor.getName(), descriptor) != null) {
+            throw new IllegalArgumentException("工具已存在注册: " + descriptor.getName());
         }
-        handlers.put(handler.getName(), handler);
+        descriptorsByHandler.put(descriptor.getHandler(), descriptor);
     }
 
     /**
@@ -47,7 +67,28 @@ public class ToolRegistry {
      * @return 工具 handler，如果未找到则返回 null
      */
     public static ToolHandler getHandler(String name) {
-        return handlers.get(name);
+        ToolDescriptor descriptor = descriptors.get(name);
+        return descriptor != null ? descriptor.getHandler() : null;
+    }
+
+    /**
+     * 通过名称获取注册时构建的工具描述
+     * @param name 工具名称
+     * @return 工具描述，如果未找到则返回 null
+     */
+    public static ToolDescriptor getDescriptor(String name) {
+        return descriptors.get(name);
+    }
+
+    /**
+     * 获取 handler 的工具定义。已注册的 handler 返回注册时缓存的定义，
+     * 未注册的 handler 回退到 {@link ToolHandler#getDefinition()}
+     * @param handler 工具 handler
+     * @return 工具定义
+     */
+    public static ToolDefinition definitionOf(ToolHandler handler) {
+        ToolDescriptor descriptor = descriptorsByHandler.get(handler);
+        return descriptor != null ? descriptor.getDefinition() : handler.getDefinition();
     }
 
     /**
@@ -55,7 +96,17 @@ public class ToolRegistry {
      * @return 不可修改的工具 handler 集合
      */
     public static Collection<ToolHandler> getAllHandlers() {
-        return Collections.unmodifiableCollection(handlers.values());
+        return Collections.unmodifiableCollection(descriptors.values().stream()
+            .map(ToolDescriptor::getHandler)
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * 获取所有注册的工具描述
+     * @return 不可修改的工具描述集合
+     */
+    public static Collection<ToolDescriptor> getAllDescriptors() {
+        return Collections.unmodifiableCollection(descriptors.values());
     }
 
     /**
@@ -64,7 +115,12 @@ public class ToolRegistry {
      * @return 被移除的 handler，如果未找到则返回 null
      */
     public static ToolHandler unregister(String name) {
-        return handlers.remove(name);
+        ToolDescriptor descriptor = descriptors.remove(name);
+        if (descriptor == null) {
+            return null;
+        }
+        descriptorsByHandler.remove(descriptor.getHandler());
+        return descriptor.getHandler();
     }
 
     /**
@@ -73,14 +129,15 @@ public class ToolRegistry {
      * @return 如果已注册则返回 true，否则返回 false
      */
     public static boolean isRegistered(String name) {
-        return handlers.containsKey(name);
+        return descriptors.containsKey(name);
     }
 
     /**
      * 清除所有注册的 handler
      */
     public static void clear() {
-        handlers.clear();
+        descriptors.clear();
+        descriptorsByHandler.clear();
         initialized = false;
     }
 } 
\ No newline at end of file
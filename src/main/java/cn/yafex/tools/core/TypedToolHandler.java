@@ -0,0 +1,37 @@
+package cn.yafex.tools.core;
+
+import cn.yafex.tools.annotations.ToolMethod;
+import cn.yafex.tools.exceptions.ToolException;
+
+import java.util.Map;
+
+/**
+ * 使用 {@link ToolMethod} 方法声明参数的工具基类。
+ *
+ * <p>工作流执行时由注册表缓存的 {@link TypedToolInvoker} 直接调用类型化方法；
+ * 通过 Map 调用 {@link #execute(Map)}（例如工具 API）时也转发到同一个方法。</p>
+ */
+public abstract class TypedToolHandler implements ToolHandler {
+    private volatile TypedToolInvoker invoker;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> ToolResponse<T> execute(Map<String, Object> params) throws ToolException {
+        return (ToolResponse<T>) invoker().invokeValues(params);
+    }
+
+    private TypedToolInvoker invoker() {
+        TypedToolInvoker current = invoker;
+        if (current == null) {
+            ToolDescriptor descriptor = ToolRegistry.getDescriptor(getName());
+            current = descriptor != null && descriptor.getHandler() == this && descriptor.getInvoker() != null
+                ? descriptor.getInvoker()
+                : TypedToolInvoker.of(this);
+            if (current == null) {
+                throw new IllegalStateException("工具类中没有找到 @ToolMethod 方法: " + getClass().getName());
+            }
+            invoker = current;
+        }
+        return current;
+    }
+}
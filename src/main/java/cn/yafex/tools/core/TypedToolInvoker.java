@@ -0,0 +1,333 @@
+package cn.yafex.tools.core;
+
+import cn.yafex.tools.annotations.InputVar;
+import cn.yafex.tools.annotations.ToolMethod;
+import cn.yafex.tools.exceptions.ToolException;
+import cn.yafex.tools.exceptions.ValidationException;
+import cn.yafex.tools.schema.FieldType;
+import cn.yafex.tools.schema.VariableDef;
+import com.alibaba.fastjson.JSON;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过 {@link ToolMethod} 方法调用工具的类型化调用器。
+ *
+ * <p>注册时解析方法参数上的 {@link InputVar}，按 {@link FieldType} 和参数的 Java 类型预先选定每个参数的转换，
+ * 并把方法绑定为 {@code (Object[])Object} 形式的 MethodHandle。执行时直接从输入中按参数名取值、转换后调用，
+ * 不再构造参数 Map，数值按声明类型转换而不是强制类型转换（例如 JSON 中的 Long 传给 int 参数）。</p>
+ */
+public final class TypedToolInvoker {
+    private final String[] names;
+    private final Converter[] converters;
+    private final boolean[] required;
+    private final Object[] defaults;
+    private final MethodHandle handle;
+    private final boolean returnsResponse;
+
+    private TypedToolInvoker(String[] names, Converter[] converters, boolean[] required, Object[] defaults,
+                             MethodHandle handle, boolean returnsResponse) {
+        this.names = names;
+        this.converters = converters;
+        this.required = required;
+        this.defaults = defaults;
+        this.handle = handle;
+        this.returnsResponse = returnsResponse;
+    }
+
+    /**
+     * 查找类上带有 {@link ToolMethod} 的公共方法
+     * @param toolClass 工具类
+     * @return 类型化执行方法，没有时返回 null
+     */
+    public static Method findToolMethod(Class<?> toolClass) {
+        for (Method method : toolClass.getMethods()) {
+            if (method.isAnnotationPresent(ToolMethod.class)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 为 handler 构建类型化调用器
+     * @param handler 工具 handler
+     * @return 调用器，handler 没有 {@link ToolMethod} 方法时返回 null
+     * @throws IllegalStateException 如果方法参数缺少 {@link InputVar} 或参数类型无法与字段类型对应
+     */
+    public static TypedToolInvoker of(ToolHandler handler) {
+        Method method = findToolMethod(handler.getClass());
+        if (method == null) {
+            return null;
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalStateException("@ToolMethod 方法不能是静态方法: " + method);
+        }
+        Parameter[] params = method.getParameters();
+        String[] names = new String[params.length];
+        Converter[] converters = new Converter[params.length];
+        boolean[] required = new boolean[params.length];
+        Object[] defaults = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            InputVar var = params[i].getAnnotation(InputVar.class);
+            if (var == null) {
+                throw new IllegalStateException("@ToolMethod 方法的参数缺少 @InputVar: " + method + " 第 " + (i + 1) + " 个参数");
+            }
+            Class<?> target = params[i].getType();
+            names[i] = var.name();
+            converters[i] = converter(var.name(), var.type(), target);
+            required[i] = var.required();
+            try {
+                defaults[i] = var.defaultValue().isEmpty()
+                    ? zero(target)
+                    : converters[i].convert(var.defaultValue());
+            } catch (ValidationException e) {
+                throw new IllegalStateException("默认值无法转换为参数类型: " + var.name() + " = " + var.defaultValue());
+            }
+        }
+
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method)
+                .bindTo(handler)
+                .asSpreader(Object[].class, params.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("无法访问 @ToolMethod 方法: " + method, e);
+        }
+        return new TypedToolInvoker(names, converters, required, defaults, handle,
+            ToolResponse.class.isAssignableFrom(method.getReturnType()));
+    }
+
+    /**
+     * 使用工作流变量调用工具
+     * @param inputs 参数名称到变量的映射，缺少的参数使用默认值
+     * @return 工具响应
+     * @throws ToolException 如果必填参数缺失、参数无法转换或工具执行失败
+     */
+    public ToolResponse<?> invoke(Map<String, VariableDef> inputs) throws ToolException {
+        Object[] args = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            VariableDef var = inputs.get(names[i]);
+            args[i] = argument(i, var != null ? var.getValue() : null);
+        }
+        return call(args);
+    }
+
+    /**
+     * 使用参数值调用工具，供 Map 形式的 execute 转发使用
+     * @param params 参数名称到值的映射，缺少的参数使用默认值
+     * @return 工具响应
+     * @throws ToolException 如果必填参数缺失、参数无法转换或工具执行失败
+     */
+    public ToolResponse<?> invokeValues(Map<String, Object> params) throws ToolException {
+        Object[] args = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            args[i] = argument(i, params.get(names[i]));
+        }
+        return call(args);
+    }
+
+    private Object argument(int i, Object value) throws ValidationException {
+        if (value == null) {
+            if (required[i]) {
+                throw new ValidationException("缺少必填参数: " + names[i]);
+            }
+            return defaults[i];
+        }
+        return converters[i].convert(value);
+    }
+
+    private ToolResponse<?> call(Object[] args) throws ToolException {
+        Object result;
+        try {
+            result = handle.invokeExact(args);
+        } catch (ToolException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ToolException("Tool execution failed: " + e.getMessage(), "EXECUTION_ERROR");
+        }
+        if (returnsResponse) {
+            return (ToolResponse<?>) result;
+        }
+        return ToolResponse.success(result);
+    }
+
+    /**
+     * 单个参数的转换，注册时按字段类型和参数类型选定
+     */
+    @FunctionalInterface
+    private interface Converter {
+        Object convert(Object value) throws ValidationException;
+    }
+
+    private static Converter converter(String name, FieldType type, Class<?> target) {
+        Class<?> boxed = box(target);
+        switch (type) {
+            case NUMBER:
+                return number(name, boxed);
+            case BOOLEAN:
+                if (boxed == Boolean.class || boxed == Object.class) {
+                    return value -> toBoolean(name, value);
+                }
+                break;
+            case STRING:
+                if (boxed == String.class || boxed == Object.class) {
+                    return value -> value instanceof String ? value : toText(value);
+                }
+                break;
+            case ARRAY:
+                if (boxed.isAssignableFrom(List.class)) {
+                    return value -> toList(name, value);
+                }
+                break;
+            case OBJECT:
+                if (boxed.isAssignableFrom(Map.class)) {
+                    return value -> value instanceof String ? JSON.parseObject((String) value) : expect(name, value, Map.class);
+                }
+                break;
+            default:
+                break;
+        }
+        if (boxed == Object.class) {
+            return value -> value;
+        }
+        if (type == FieldType.DATE || type == FieldType.OBJECT) {
+            return value -> expect(name, value, boxed);
+        }
+        throw new IllegalStateException("参数 " + name + " 的类型 " + target.getName() + " 与字段类型 " + type + " 不匹配");
+    }
+
+    private static Converter number(String name, Class<?> boxed) {
+        if (boxed == Integer.class) {
+            return value -> {
+                long l = integral(name, value);
+                if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) {
+                    throw new ValidationException("参数 " + name + " 超出 int 范围: " + value);
+                }
+                return (int) l;
+            };
+        }
+        if (boxed == Long.class) {
+            return value -> integral(name, value);
+        }
+        if (boxed == Double.class) {
+            return value -> toNumber(name, value).doubleValue();
+        }
+        if (boxed == Float.class) {
+            return value -> toNumber(name, value).floatValue();
+        }
+        if (boxed == BigDecimal.class) {
+            return value -> value instanceof BigDecimal ? value : new BigDecimal(toNumber(name, value).toString());
+        }
+        if (boxed == Number.class || boxed == Object.class) {
+            return value -> toNumber(name, value);
+        }
+        throw new IllegalStateException("参数 " + name + " 的类型 " + boxed.getName() + " 不能用于 NUMBER 字段");
+    }
+
+    private static Number toNumber(String name, Object value) throws ValidationException {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof String) {
+            try {
+                return new BigDecimal(((String) value).trim());
+            } catch (NumberFormatException e) {
+                throw new ValidationException("参数 " + name + " 不是数值: " + value);
+            }
+        }
+        throw new ValidationException("参数 " + name + " 不是数值: " + value);
+    }
+
+    /**
+     * 转换为整数，带小数部分的数值视为错误而不是截断
+     */
+    private static long integral(String name, Object value) throws ValidationException {
+        Number number = toNumber(name, value);
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        try {
+            return new BigDecimal(number.toString()).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new ValidationException("参数 " + name + " 不是整数: " + value);
+        }
+    }
+
+    private static Object toBoolean(String name, Object value) throws ValidationException {
+        if (value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof String) {
+            String s = ((String) value).trim();
+            if ("true".equalsIgnoreCase(s) || "false".equalsIgnoreCase(s)) {
+                return Boolean.parseBoolean(s);
+            }
+        }
+        throw new ValidationException("参数 " + name + " 不是布尔值: " + value);
+    }
+
+    private static Object toText(Object value) {
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return String.valueOf(value);
+        }
+        return JSON.toJSONString(value);
+    }
+
+    private static Object toList(String name, Object value) throws ValidationException {
+        if (value instanceof List) {
+            return value;
+        }
+        if (value instanceof Collection) {
+            return new ArrayList<>((Collection<?>) value);
+        }
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+        if (value instanceof String) {
+            return JSON.parseArray((String) value);
+        }
+        throw new ValidationException("参数 " + name + " 不是数组: " + value);
+    }
+
+    private static Object expect(String name, Object value, Class<?> type) throws ValidationException {
+        if (!type.isInstance(value)) {
+            throw new ValidationException("参数 " + name + " 类型不匹配，需要 " + type.getSimpleName() + ": " + value);
+        }
+        return value;
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == boolean.class) return Boolean.class;
+        throw new IllegalStateException("不支持的参数类型: " + type.getName());
+    }
+
+    /** 基本类型参数缺省时的零值，引用类型为 null */
+    private static Object zero(Class<?> type) {
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == boolean.class) return false;
+        return null;
+    }
+}
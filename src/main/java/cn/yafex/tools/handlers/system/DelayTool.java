@@ -0,0 +1,61 @@
+package cn.yafex.tools.handlers.system;
+
+import cn.yafex.tools.annotations.Tool;
+import cn.yafex.tools.annotations.InputVar;
+import cn.yafex.tools.annotations.ReturnVal;
+import cn.yafex.tools.core.AsyncToolHandler;
+import cn.yafex.tools.core.ToolResponse;
+import cn.yafex.tools.exceptions.ToolException;
+import cn.yafex.tools.schema.FieldType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步等待指定时间后继续，等待期间不占用工作流引擎的线程。
+ * 可用于模拟 I/O 等待或在节点之间限速
+ */
+@Tool(
+    name = "delay",
+    description = "异步等待指定的毫秒数"
+)
+public class DelayTool implements AsyncToolHandler {
+    /** 所有等待共享一个定时线程，只负责到期时完成 future */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tool-delay-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    @ReturnVal(name = "waitedMs", description = "实际等待的毫秒数", type = FieldType.NUMBER)
+    public CompletableFuture<ToolResponse<?>> executeAsync(
+        @InputVar(name = "ms", description = "等待的毫秒数", type = FieldType.NUMBER, required = true)
+        Map<String, Object> params
+    ) {
+        CompletableFuture<ToolResponse<?>> future = new CompletableFuture<>();
+        Object ms = params.get("ms");
+        if (!(ms instanceof Number) || ((Number) ms).longValue() < 0) {
+            future.completeExceptionally(new ToolException("ms 必须是非负数: " + ms, "INVALID_INPUT"));
+            return future;
+        }
+        long delay = ((Number) ms).longValue();
+        long start = System.nanoTime();
+        ScheduledFuture<?> scheduled = TIMER.schedule(() -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("waitedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            future.complete(ToolResponse.success(result));
+        }, delay, TimeUnit.MILLISECONDS);
+        // 执行被取消或节点超时时不再保留定时任务
+        future.whenComplete((response, error) -> {
+            if (future.isCancelled()) {
+                scheduled.cancel(false);
+            }
+        });
+        return future;
+    }
+}
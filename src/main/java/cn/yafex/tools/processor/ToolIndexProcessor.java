@@ -0,0 +1,153 @@
+package cn.yafex.tools.processor;
+
+import cn.yafex.tools.annotations.InputVar;
+import cn.yafex.tools.annotations.ReturnVal;
+import cn.yafex.tools.annotations.Tool;
+import cn.yafex.tools.annotations.ToolMethod;
+import cn.yafex.tools.core.ToolIndex;
+import cn.yafex.tools.schema.FieldDef;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 编译时处理 {@link Tool} 注解，生成工具索引 {@link ToolIndex#LOCATION}。
+ *
+ * <p>索引按类名记录每个工具的名称、描述以及从 {@link ToolMethod} 方法（没有时为 execute / executeAsync 方法）的 {@link InputVar} / {@link ReturnVal}
+ * 注解读出的输入输出定义，与 {@code ToolHandler.getDefinition()} 的默认实现一致。
+ * 类中自行声明了 getName / getDefinition 或既没有 @ToolMethod 方法也没有声明 execute 方法时，索引只记录类名，
+ * 运行时仍通过 handler 读取定义。</p>
+ *
+ * <p>运行时 {@link ToolIndex} 读取索引注册工具，不再扫描类路径。</p>
+ */
+@SupportedAnnotationTypes("cn.yafex.tools.annotations.Tool")
+public class ToolIndexProcessor extends AbstractProcessor {
+    /** 按类名排序，保证索引内容与编译顺序无关 */
+    private final Map<String, Map<String, Object>> entries = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Tool.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "@Tool 只能用于类，已忽略", element);
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            entries.put(binaryName(type), entry(type));
+        }
+        if (roundEnv.processingOver() && !entries.isEmpty()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private Map<String, Object> entry(TypeElement type) {
+        Tool tool = type.getAnnotation(Tool.class);
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("className", binaryName(type));
+        entry.put("name", tool.name());
+        entry.put("description", tool.description());
+
+        ExecutableElement execute = null;
+        ExecutableElement toolMethod = null;
+        boolean custom = false;
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            String name = method.getSimpleName().toString();
+            if (method.getParameters().isEmpty() && ("getName".equals(name) || "getDefinition".equals(name))) {
+                custom = true;
+            } else if (method.getAnnotation(ToolMethod.class) != null) {
+                toolMethod = method;
+            } else if (("execute".equals(name) || "executeAsync".equals(name))
+                && (execute == null || isAnnotated(method))) {
+                execute = method;
+            }
+        }
+        if (toolMethod != null) {
+            execute = toolMethod;
+        }
+        if (custom || execute == null) {
+            entry.put("customDefinition", true);
+            return entry;
+        }
+
+        Map<String, FieldDef> inputs = new LinkedHashMap<>();
+        for (VariableElement param : execute.getParameters()) {
+            InputVar field = param.getAnnotation(InputVar.class);
+            if (field != null) {
+                inputs.put(field.name(), new FieldDef(field.name(), field.description(), field.type(),
+                    field.required(), field.defaultValue(), field.pattern()));
+            }
+        }
+        Map<String, FieldDef> outputs = new LinkedHashMap<>();
+        for (ReturnVal field : execute.getAnnotationsByType(ReturnVal.class)) {
+            outputs.put(field.name(), new FieldDef(field.name(), field.description(), field.type(),
+                field.required(), field.defaultValue(), field.pattern()));
+        }
+        entry.put("inputs", inputs);
+        entry.put("outputs", outputs);
+        return entry;
+    }
+
+    private static boolean isAnnotated(ExecutableElement method) {
+        if (method.getAnnotationsByType(ReturnVal.class).length > 0) {
+            return true;
+        }
+        for (VariableElement param : method.getParameters()) {
+            if (param.getAnnotation(InputVar.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void writeIndex() {
+        List<Map<String, Object>> index = new ArrayList<>(entries.values());
+        try {
+            FileObject file = processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", ToolIndex.LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(JSON.toJSONString(index, SerializerFeature.PrettyFormat,
+                    SerializerFeature.DisableCircularReferenceDetect));
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "写入工具索引失败: " + e.getMessage());
+        }
+    }
+}
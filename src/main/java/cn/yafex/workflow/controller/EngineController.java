@@ -0,0 +1,115 @@
+package cn.yafex.workflow.controller;
+
+import cn.yafex.workflow.execution.ExecutionJournal;
+import cn.yafex.workflow.execution.ExecutionResultStore;
+import cn.yafex.workflow.execution.ExecutionScheduler;
+import cn.yafex.workflow.service.WorkflowDebugService;
+import cn.yafex.workflow.service.WorkflowManager;
+import cn.yafex.workflow.util.LogRetention;
+import cn.yafex.workflow.util.WorkflowLoader;
+import cn.yafex.workflow.util.WorkflowLogger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 执行引擎运行状态相关 API
+ */
+@RestController
+@RequestMapping("/api/engine")
+public class EngineController {
+    private final WorkflowLoader jsonFileHandler;
+    private final ExecutionScheduler scheduler;
+    private final WorkflowManager workflowManager;
+    private final ExecutionJournal journal;
+    private final ExecutionResultStore results;
+    private final WorkflowDebugService debugService;
+    private final WorkflowLogger workflowLogger;
+    private final LogRetention logRetention;
+
+    @Autowired
+    public EngineController(WorkflowLoader jsonFileHandler, ExecutionScheduler scheduler, WorkflowManager workflowManager,
+                            ExecutionJournal journal, ExecutionResultStore results, WorkflowDebugService debugService,
+                            WorkflowLogger workflowLogger, LogRetention logRetention) {
+        this.jsonFileHandler = jsonFileHandler;
+        this.scheduler = scheduler;
+        this.workflowManager = workflowManager;
+        this.journal = journal;
+        this.results = results;
+        this.debugService = debugService;
+        this.workflowLogger = workflowLogger;
+        this.logRetention = logRetention;
+    }
+
+    /**
+     * 获取工作流定义缓存的统计信息
+     * @return 命中、未命中、淘汰等计数
+     */
+    @GetMapping("/loader-cache")
+    public ResponseEntity<?> getLoaderCacheStats() {
+        return ResponseEntity.ok(jsonFileHandler.getCacheStats());
+    }
+
+    /**
+     * 获取执行调度器的实时状态
+     * @return 队列深度、活跃工作线程、等待时间、拒绝次数等
+     */
+    @GetMapping("/scheduler")
+    public ResponseEntity<?> getSchedulerStats() {
+        return ResponseEntity.ok(scheduler.getStats());
+    }
+
+    /**
+     * 获取执行引擎的状态
+     * @return 可运行和挂起等待的执行数量，以及挂起的原因
+     */
+    @GetMapping("/executions")
+    public ResponseEntity<?> getExecutionStats() {
+        return ResponseEntity.ok(workflowManager.getEngineStats());
+    }
+
+    /**
+     * 获取执行日志的统计信息
+     * @return 记录数、批次数、平均每批记录数、写入字节数等
+     */
+    @GetMapping("/journal")
+    public ResponseEntity<?> getJournalStats() {
+        return ResponseEntity.ok(journal.getStats());
+    }
+
+    /**
+     * 获取已结束执行的结果存储的统计信息
+     * @return 保留的结果数量、内存占用、写入磁盘的结果数量、过期和淘汰次数等
+     */
+    @GetMapping("/results")
+    public ResponseEntity<?> getResultStats() {
+        return ResponseEntity.ok(results.getStats());
+    }
+
+    /**
+     * 获取调试事件总线的状态
+     * @return 事件通道数量、订阅者数量、缓冲的事件数量等
+     */
+    @GetMapping("/debug")
+    public ResponseEntity<?> getDebugStats() {
+        return ResponseEntity.ok(debugService.getStats());
+    }
+
+    /**
+     * 获取工作流执行日志写入的统计信息
+     * @return 缓冲区占用、丢弃的记录、等待次数、批次和刷新次数等
+     */
+    @GetMapping("/log")
+    public ResponseEntity<?> getLogStats() {
+        return ResponseEntity.ok(workflowLogger.getStats());
+    }
+
+    /**
+     * 获取工作流执行日志目录的占用和保留策略的执行情况
+     * @return 占用字节数、文本和压缩文件数量、压缩和删除的次数等
+     */
+    @GetMapping("/log/retention")
+    public ResponseEntity<?> getLogRetentionStats() {
+        return ResponseEntity.ok(logRetention.getStats());
+    }
+}
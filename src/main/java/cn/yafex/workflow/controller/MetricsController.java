@@ -0,0 +1,84 @@
+package cn.yafex.workflow.controller;
+
+import cn.yafex.workflow.execution.ExecutionScheduler;
+import cn.yafex.workflow.service.WorkflowDebugService;
+import cn.yafex.workflow.service.WorkflowManager;
+import cn.yafex.workflow.util.EngineMetrics;
+import cn.yafex.workflow.util.WorkflowLoader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 执行引擎指标相关 API
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8");
+
+    private final EngineMetrics metrics;
+    private final WorkflowManager workflowManager;
+    private final ExecutionScheduler scheduler;
+    private final WorkflowDebugService debugService;
+    private final WorkflowLoader jsonFileHandler;
+
+    @Autowired
+    public MetricsController(EngineMetrics metrics, WorkflowManager workflowManager, ExecutionScheduler scheduler,
+                             WorkflowDebugService debugService, WorkflowLoader jsonFileHandler) {
+        this.metrics = metrics;
+        this.workflowManager = workflowManager;
+        this.scheduler = scheduler;
+        this.debugService = debugService;
+        this.jsonFileHandler = jsonFileHandler;
+    }
+
+    /**
+     * 获取执行引擎的指标
+     * @return 工作流、节点类型和工具的耗时摘要，以及执行数量、调试订阅者和定义缓存命中率
+     */
+    @GetMapping
+    public ResponseEntity<?> getMetrics() {
+        Map<String, Object> response = new LinkedHashMap<>(metrics.getStats());
+        Map<String, Object> executions = new LinkedHashMap<>();
+        executions.put("active", workflowManager.getEngineStats().get("active"));
+        executions.put("queued", scheduler.getStats().get("queueDepth"));
+        response.put("executions", executions);
+        response.put("sseSubscribers", debugService.getStats().get("subscribers"));
+        Map<String, Object> cache = jsonFileHandler.getCacheStats();
+        Map<String, Object> loaderCache = new LinkedHashMap<>();
+        loaderCache.put("hits", cache.get("hits"));
+        loaderCache.put("misses", cache.get("misses"));
+        loaderCache.put("hitRate", cache.get("hitRate"));
+        response.put("loaderCache", loaderCache);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 以 Prometheus 文本格式获取执行引擎的指标
+     * @return Prometheus 文本格式的指标
+     */
+    @GetMapping("/prometheus")
+    public ResponseEntity<String> getPrometheusMetrics() {
+        StringBuilder out = new StringBuilder(4096);
+        metrics.writePrometheus(out);
+        EngineMetrics.writeGauge(out, "workflow_executions_active", "gauge", "Executions in progress",
+            (Number) workflowManager.getEngineStats().get("active"));
+        EngineMetrics.writeGauge(out, "workflow_executions_queued", "gauge", "Executions waiting in the scheduler queue",
+            (Number) scheduler.getStats().get("queueDepth"));
+        EngineMetrics.writeGauge(out, "workflow_debug_subscribers", "gauge", "Connected debug event (SSE) subscribers",
+            (Number) debugService.getStats().get("subscribers"));
+        Map<String, Object> cache = jsonFileHandler.getCacheStats();
+        EngineMetrics.writeGauge(out, "workflow_loader_cache_hits_total", "counter", "Workflow definition cache hits",
+            (Number) cache.get("hits"));
+        EngineMetrics.writeGauge(out, "workflow_loader_cache_misses_total", "counter", "Workflow definition cache misses",
+            (Number) cache.get("misses"));
+        EngineMetrics.writeGauge(out, "workflow_loader_cache_hit_ratio", "gauge", "Workflow definition cache hit ratio",
+            (Number) cache.get("hitRate"));
+        return ResponseEntity.ok().contentType(PROMETHEUS_TEXT).body(out.toString());
+    }
+}
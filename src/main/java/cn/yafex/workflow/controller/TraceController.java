@@ -0,0 +1,97 @@
+package cn.yafex.workflow.controller;
+
+import cn.yafex.workflow.util.TraceStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 执行轨迹查询相关 API
+ */
+@RestController
+@RequestMapping("/api/traces")
+public class TraceController {
+    /** 按时间范围查询时最多返回的记录数量 */
+    private static final int MAX_LIMIT = 10000;
+
+    private final TraceStore traceStore;
+
+    @Autowired
+    public TraceController(TraceStore traceStore) {
+        this.traceStore = traceStore;
+    }
+
+    /**
+     * 获取一个执行的全部轨迹记录
+     * @param executionId 执行ID
+     * @return 按写入顺序排列的记录；执行没有轨迹时返回 404
+     */
+    @GetMapping("/{executionId}")
+    public ResponseEntity<?> getExecutionTrace(@PathVariable String executionId) {
+        try {
+            List<Map<String, Object>> records = traceStore.getExecutionTrace(executionId);
+            if (records.isEmpty()) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "执行轨迹不存在: " + executionId);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("executionId", executionId);
+            response.put("records", records);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "获取执行轨迹失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * 按时间范围查询轨迹记录
+     * @param from 开始时间（毫秒时间戳，包含），默认为 0
+     * @param to 结束时间（毫秒时间戳，不包含），默认为当前时间之后
+     * @param workflowId 只返回该工作流的记录
+     * @param limit 最多返回的记录数量，默认 1000，最大 10000
+     * @return 按写入顺序排列的记录，达到数量上限时 truncated 为 true
+     */
+    @GetMapping
+    public ResponseEntity<?> scan(
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "9223372036854775807") long to,
+            @RequestParam(required = false) String workflowId,
+            @RequestParam(defaultValue = "1000") int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT || from > to) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "查询参数无效: limit 应在 1 到 " + MAX_LIMIT + " 之间，from 不能大于 to");
+            return ResponseEntity.badRequest().body(error);
+        }
+        try {
+            // 多取一条判断是否还有更多记录
+            List<Map<String, Object>> records = traceStore.scan(from, to, workflowId, limit + 1);
+            boolean truncated = records.size() > limit;
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("records", truncated ? records.subList(0, limit) : records);
+            response.put("truncated", truncated);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "查询执行轨迹失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * 获取执行轨迹存储的统计信息
+     * @return 段数量、总字节数、索引的执行数量、写入的记录数等
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
+        return ResponseEntity.ok(traceStore.getStats());
+    }
+}
@@ -1,21 +1,42 @@
 package cn.yafex.workflow.controller;
 
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.execution.ExecutionPriority;
+import cn.yafex.workflow.execution.ExecutionRejectedException;
+import cn.yafex.workflow.execution.WorkflowContext;
 import cn.yafex.workflow.model.Workflow;
 import cn.yafex.workflow.service.WorkflowManager;
 import cn.yafex.workflow.service.WorkflowDebugService;
+import cn.yafex.workflow.util.BatchInputReader;
 import cn.yafex.workflow.util.WorkflowLoader;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializerFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.function.Consumer;
 
 
 @RestController
@@ -25,6 +46,10 @@ public class WorkflowController {
     private final WorkflowLoader jsonFileHandler;
     private final WorkflowDebugService debugService;
 
+    /** ?wait= 允许的最长等待时间（毫秒） */
+    @Value("${workflow.execution.max-wait-ms:300000}")
+    private long maxWaitMs;
+
     @Autowired
     public WorkflowController(WorkflowManager workflowManager, WorkflowLoader jsonFileHandler, WorkflowDebugService debugService) {
         this.workflowManager = workflowManager;
@@ -125,17 +150,34 @@ public class WorkflowController {
      * 启动工作流执行
      * @param workflowId 要执行的工作流ID
      * @param input 执行输入变量
-     * @return 执行ID
+     * @param priority 调度优先级 HIGH/NORMAL/LOW，默认 NORMAL
+     * @param timeoutMs 整个执行的超时时间（毫秒），超时后执行以 TIMEOUT 状态结束
+     * @return 执行ID，优先级无法识别时返回 400，调度队列已满时返回 429
      */
     @PostMapping("/{workflowId}/execute")
     public ResponseEntity<?> executeWorkflow(
             @PathVariable String workflowId,
-            @RequestBody(required = false) Map<String, Object> input) {
+            @RequestBody(required = false) Map<String, Object> input,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) Long timeoutMs) {
+        ExecutionPriority executionPriority;
         try {
-            String executionId = workflowManager.startWorkflow(workflowId, input);
+            executionPriority = ExecutionPriority.parse(priority);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+        try {
+            String executionId = workflowManager.startWorkflow(
+                workflowId, input, executionPriority, timeoutMs);
             Map<String, String> response = new HashMap<>();
             response.put("executionId", executionId);
             return ResponseEntity.ok(response);
+        } catch (ExecutionRejectedException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "工作流执行失败: " + e.getMessage());
@@ -143,20 +185,154 @@ public class WorkflowController {
         }
     }
 
+    /**
+     * 启动工作流执行并在服务端等待结果。请求在等待期间不占用线程，
+     * 执行结束时同一次响应返回最终状态和工作流 outputs 定义的输出
+     * @param workflowId 要执行的工作流ID
+     * @param input 执行输入变量
+     * @param wait 最长等待时间（毫秒），超过 workflow.execution.max-wait-ms 时按上限处理，0 或负数表示不等待
+     * @param priority 调度优先级 HIGH/NORMAL/LOW，默认 NORMAL
+     * @param timeoutMs 整个执行的超时时间（毫秒）
+     * @return 执行结束时返回 200 和执行结果；等待超时返回 202 和执行ID，可继续轮询；
+     *         优先级无法识别时返回 400；调度队列已满时返回 429
+     */
+    @PostMapping(value = "/{workflowId}/execute", params = "wait")
+    public DeferredResult<ResponseEntity<?>> executeWorkflowAndWait(
+            @PathVariable String workflowId,
+            @RequestBody(required = false) Map<String, Object> input,
+            @RequestParam long wait,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) Long timeoutMs) {
+        long waitMs = Math.min(wait, maxWaitMs);
+        ExecutionPriority executionPriority;
+        try {
+            executionPriority = ExecutionPriority.parse(priority);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            result.setResult(ResponseEntity.badRequest().body(error));
+            return result;
+        }
+        WorkflowContext context;
+        try {
+            context = workflowManager.submitWorkflow(
+                workflowId, input, executionPriority, timeoutMs);
+        } catch (ExecutionRejectedException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            result.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error));
+            return result;
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "工作流执行失败: " + e.getMessage());
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            result.setResult(ResponseEntity.internalServerError().body(error));
+            return result;
+        }
+
+        // 等待超时时返回执行ID和当前状态，调用方可以改为轮询
+        if (waitMs <= 0) {
+            // DeferredResult 的超时为 0 表示不限制，不等待时直接返回
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            result.setResult(ResponseEntity.status(HttpStatus.ACCEPTED).body(workflowManager.executionResult(context)));
+            return result;
+        }
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(waitMs, (Object) null);
+        result.onTimeout(() -> result.setResult(ResponseEntity.status(HttpStatus.ACCEPTED).body(workflowManager.executionResult(context))));
+        context.getCompletion().thenAccept(finished -> result.setResult(ResponseEntity.ok(workflowManager.executionResult(finished))));
+        return result;
+    }
+
+    /**
+     * 批量执行：同一个工作流依次读取多组输入运行，结果以 NDJSON 流式返回。
+     * 请求体为 JSON 数组或 NDJSON（每行一个输入对象），按需读取，不会整体加载到内存
+     * @param workflowId 要执行的工作流ID
+     * @param request 请求，读取请求体中的输入
+     * @param parallelism 同时运行的执行数量上限，默认 workflow.batch.parallelism
+     * @param order 结果输出顺序 input（默认，按输入顺序）/ completion（按完成顺序）
+     * @param priority 调度优先级 HIGH/NORMAL/LOW，默认 NORMAL
+     * @param timeoutMs 每个执行的超时时间（毫秒）
+     * @return 每行一个执行结果，最后一行为汇总统计 {"summary": {...}}。优先级无法识别时返回 400 和一行 {"error": ...}
+     */
+    @PostMapping(value = "/{workflowId}/batch", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> executeBatch(
+            @PathVariable String workflowId,
+            HttpServletRequest request,
+            @RequestParam(defaultValue = "0") int parallelism,
+            @RequestParam(defaultValue = "input") String order,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) Long timeoutMs) {
+        try {
+            // 在开始输出之前确认工作流存在且可以编译，编译结果会被缓存供批量执行使用
+            jsonFileHandler.loadPlan(workflowId);
+        } catch (IOException e) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean inputOrder = !"completion".equalsIgnoreCase(order);
+        ExecutionPriority executionPriority;
+        try {
+            executionPriority = ExecutionPriority.parse(priority);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            StreamingResponseBody body = out -> writeLine(new OutputStreamWriter(out, StandardCharsets.UTF_8), error);
+            return ResponseEntity.badRequest().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            Consumer<Map<String, Object>> sink = result -> writeLine(writer, result);
+            Map<String, Object> summary = new HashMap<>();
+            try (BatchInputReader items = new BatchInputReader(request.getInputStream())) {
+                summary.put("summary", workflowManager.executeBatch(
+                    workflowId, items, parallelism, inputOrder, executionPriority, timeoutMs, sink));
+            } catch (JSONException e) {
+                // 请求体开头就无法解析，没有提交任何执行
+                Map<String, Object> failed = new LinkedHashMap<>();
+                failed.put("total", 0);
+                failed.put("error", "批量输入格式错误: " + e.getMessage());
+                summary.put("summary", failed);
+            }
+            writeLine(writer, summary);
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    /**
+     * 写入一行 NDJSON 并立即刷新，客户端可以边执行边读取结果
+     */
+    private static void writeLine(Writer writer, Object value) {
+        // 每个结果必须占一行，不使用全局默认的 PrettyFormat
+        int features = (JSON.DEFAULT_GENERATE_FEATURE & ~SerializerFeature.PrettyFormat.getMask())
+            | SerializerFeature.DisableCircularReferenceDetect.getMask();
+        try {
+            writer.write(JSON.toJSONString(value, SerializeConfig.globalInstance, null, null, features));
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * 获取工作流执行状态
      * @param workflowId 要获取的工作流ID
      * @param executionId 要获取的执行ID
-     * @return 执行状态
+     * @return 执行ID和状态；已结束的执行同时返回耗时以及输出或错误信息。执行不存在或结果已过期时返回 404
      */
     @GetMapping("/{workflowId}/executions/{executionId}")
     public ResponseEntity<?> getExecutionStatus(
             @PathVariable String workflowId,
             @PathVariable String executionId) {
         try {
-            Map<String, String> response = new HashMap<>();
-            response.put("status", workflowManager.getWorkflowStatus(executionId).toString());
-            return ResponseEntity.ok(response);
+            Map<String, Object> result = workflowManager.getExecutionResult(executionId);
+            if (result == null) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "执行不存在或结果已过期: " + executionId);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+            }
+            return ResponseEntity.ok(result);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "获取工作流执行状态失败: " + e.getMessage());
@@ -164,22 +340,89 @@ public class WorkflowController {
         }
     }
 
+    /**
+     * 停止工作流执行，正在执行的工具会被中断
+     * @param workflowId 工作流ID
+     * @param executionId 要停止的执行ID
+     * @return 是否成功停止
+     */
+    @PostMapping("/{workflowId}/executions/{executionId}/stop")
+    public ResponseEntity<?> stopExecution(
+            @PathVariable String workflowId,
+            @PathVariable String executionId) {
+        Map<String, Boolean> response = new HashMap<>();
+        response.put("success", workflowManager.stopWorkflow(executionId));
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 启动工作流执行（调试模式）
      * @param workflowId 要执行的工作流ID
      * @param input 执行输入变量
+     * @param mode 事件格式 full（默认，每个 ENTER 事件携带全部上下文变量）/ delta（一次完整快照之后只发送变化的变量）
      * @return SSE流
      */
     @PostMapping("/{workflowId}/debug")
     public SseEmitter debugWorkflow(
             @PathVariable String workflowId,
-            @RequestBody(required = false) Map<String, Object> input) {
+            @RequestBody(required = false) Map<String, Object> input,
+            @RequestParam(defaultValue = "full") String mode) {
         try {
             String executionId = workflowManager.startWorkflow(workflowId, input);
-            return debugService.registerDebugSession(executionId);
+            // 订阅时回放执行已经产生的事件，执行在订阅之前开始也不会丢失事件
+            return debugService.subscribe(executionId, "delta".equalsIgnoreCase(mode), true);
+        } catch (ExecutionRejectedException e) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
                 "工作流调试启动失败: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 订阅一个正在运行或刚结束的执行的调试事件，可以有多个订阅者同时观察同一个执行。
+     * 订阅者先收到缓冲区中保存的事件，再接收之后的实时事件，执行结束时流结束
+     * @param workflowId 工作流ID
+     * @param executionId 执行ID
+     * @param mode 事件格式 full（默认）/ delta
+     * @return SSE流，执行不存在或事件已不再保留时返回 404
+     */
+    @GetMapping("/{workflowId}/executions/{executionId}/events")
+    public SseEmitter subscribeExecutionEvents(
+            @PathVariable String workflowId,
+            @PathVariable String executionId,
+            @RequestParam(defaultValue = "full") String mode) {
+        SseEmitter emitter;
+        try {
+            emitter = debugService.subscribe(executionId, "delta".equalsIgnoreCase(mode),
+                workflowManager.isActive(executionId));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "订阅调试事件失败: " + e.getMessage());
+        }
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "执行不存在或调试事件已不再保留: " + executionId);
+        }
+        return emitter;
+    }
+
+    /**
+     * 增量模式的调试会话重新发送当前上下文变量的完整快照，客户端发现事件序号不连续时调用
+     * @param workflowId 工作流ID
+     * @param executionId 执行ID
+     * @return 是否已发送，执行已结束或没有订阅者时返回 404
+     */
+    @PostMapping("/{workflowId}/executions/{executionId}/debug/resync")
+    public ResponseEntity<?> resyncDebugSession(
+            @PathVariable String workflowId,
+            @PathVariable String executionId) {
+        Map<String, VariableDef> variables = workflowManager.getExecutionVariables(executionId);
+        if (variables == null || !debugService.resync(executionId, variables)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "执行已结束或没有订阅者: " + executionId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        Map<String, Boolean> response = new HashMap<>();
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+}
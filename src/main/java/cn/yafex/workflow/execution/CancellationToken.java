@@ -0,0 +1,135 @@
+package cn.yafex.workflow.execution;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 工作流执行的协作式取消令牌
+ *
+ * <p>执行引擎在节点之间调用 {@link #throwIfCancelled()} 检查取消状态；
+ * 执行工具等可能长时间阻塞的调用前通过 {@link #bind()} 登记当前线程，
+ * 取消时会中断该线程，调用结束后通过 {@link #unbind(long)} 解除登记。
+ * 并行分支会在多个线程上同时登记，取消时全部中断。
+ * 等待异步工具时没有被阻塞的线程，改为通过 {@link #onCancel(Runnable)} 登记回调。</p>
+ */
+public class CancellationToken {
+    private volatile WorkflowStatus status;
+    private volatile String reason;
+
+    private final Map<Long, Thread> boundThreads = new HashMap<>(4);
+    private final Map<Long, Runnable> listeners = new HashMap<>(4);
+    private long epoch;
+
+    /**
+     * 取消执行。只有第一次取消生效
+     * @param status 取消后的最终状态，CANCELLED 或 TIMEOUT
+     * @param reason 取消原因
+     * @return 如果本次调用使令牌进入取消状态则返回 true
+     */
+    public boolean cancel(WorkflowStatus status, String reason) {
+        Runnable[] callbacks;
+        synchronized (this) {
+            if (this.status != null) {
+                return false;
+            }
+            this.reason = reason;
+            this.status = status;
+            for (Thread thread : boundThreads.values()) {
+                thread.interrupt();
+            }
+            callbacks = listeners.values().toArray(new Runnable[0]);
+            listeners.clear();
+        }
+        // 回调在锁外执行，回调中可以安全地调用 removeListener
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return status != null;
+    }
+
+    /** 取消后的最终状态，未取消时为 null */
+    public WorkflowStatus getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * 如果已经取消则抛出异常
+     * @throws ExecutionCancelledException 如果已经取消
+     */
+    public void throwIfCancelled() {
+        WorkflowStatus current = status;
+        if (current != null) {
+            throw new ExecutionCancelledException(current, reason);
+        }
+    }
+
+    /**
+     * 登记当前线程，取消时会被中断
+     * @return 本次登记的序号，用于 {@link #interrupt(long)} 和 {@link #unbind(long)}
+     */
+    public synchronized long bind() {
+        Thread thread = Thread.currentThread();
+        if (status != null) {
+            thread.interrupt();
+        }
+        boundThreads.put(++epoch, thread);
+        return epoch;
+    }
+
+    /**
+     * 解除线程登记，并清除可能遗留的中断标记
+     * @param bindEpoch {@link #bind()} 返回的序号
+     */
+    public void unbind(long bindEpoch) {
+        synchronized (this) {
+            boundThreads.remove(bindEpoch);
+        }
+        Thread.interrupted();
+    }
+
+    /**
+     * 登记取消时执行的回调，已经取消时立即在当前线程上执行
+     * @param callback 回调，不应阻塞
+     * @return 登记序号，用于 {@link #removeListener(long)}
+     */
+    public long onCancel(Runnable callback) {
+        synchronized (this) {
+            if (status == null) {
+                listeners.put(++epoch, callback);
+                return epoch;
+            }
+        }
+        callback.run();
+        return 0;
+    }
+
+    /**
+     * 移除取消回调
+     * @param listenerEpoch {@link #onCancel(Runnable)} 返回的序号
+     */
+    public synchronized void removeListener(long listenerEpoch) {
+        listeners.remove(listenerEpoch);
+    }
+
+    /**
+     * 仅中断某一次登记的线程，不改变取消状态，用于节点级超时
+     * @param bindEpoch {@link #bind()} 返回的序号
+     * @return 如果线程仍处于该次登记中并被中断则返回 true
+     */
+    public synchronized boolean interrupt(long bindEpoch) {
+        Thread thread = boundThreads.get(bindEpoch);
+        if (thread != null) {
+            thread.interrupt();
+            return true;
+        }
+        return false;
+    }
+}
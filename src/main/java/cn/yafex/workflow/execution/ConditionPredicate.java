@@ -0,0 +1,367 @@
+package cn.yafex.workflow.execution;
+
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.model.Condition;
+import cn.yafex.workflow.model.ConditionCase;
+import cn.yafex.workflow.model.ConditionOperator;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 由 {@link ConditionCase} 编译得到的不可变谓词树。
+ *
+ * <p>操作符在编译时解析，操作数在编译时绑定到变量槽位或常量，常量的数值在编译时预先转换。
+ * 谓词不修改工作流定义，可以被多个并发执行共享，求值过程不分配对象。</p>
+ */
+public abstract class ConditionPredicate {
+
+    /**
+     * 在执行上下文上求值
+     * @param context 执行上下文
+     * @return 条件是否成立
+     * @throws IllegalStateException 如果引用的变量在上下文中不存在
+     * @throws IllegalArgumentException 如果条件使用了不支持的操作符
+     */
+    public abstract boolean test(WorkflowContext context);
+
+    /**
+     * 编译一个条件组
+     * @param conditionCase 条件组，type 为 "or" 时任一条件成立即可，否则要求全部成立
+     * @param slots 执行计划分配的变量槽位
+     * @return 谓词，空条件组（else 分支）返回 null
+     */
+    public static ConditionPredicate compile(ConditionCase conditionCase, VariableSlots slots) {
+        List<Condition> conditions = conditionCase.getConditions();
+        if (conditions == null || conditions.isEmpty()) {
+            return null;
+        }
+        ConditionPredicate[] children = new ConditionPredicate[conditions.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = compile(conditions.get(i), slots);
+        }
+        if (children.length == 1) {
+            return children[0];
+        }
+        return "or".equalsIgnoreCase(conditionCase.getType()) ? new Any(children) : new All(children);
+    }
+
+    /**
+     * 编译单个条件
+     */
+    static ConditionPredicate compile(Condition condition, VariableSlots slots) {
+        ConditionOperator operator;
+        try {
+            operator = ConditionOperator.fromSymbol(condition.getOperator());
+        } catch (IllegalArgumentException e) {
+            // 与编译前一致，在求值时才报错，不影响工作流的加载
+            return new Invalid(e.getMessage());
+        }
+
+        Operand left = condition.getLeftOperand() != null
+            ? Operand.variable(condition.getLeftOperand(), slots)
+            : Operand.constant(null);
+        VariableDef rightOp = condition.getRightOperand();
+        Operand right;
+        if (rightOp != null && "VARIABLE".equals(condition.getType())) {
+            right = Operand.variable(rightOp, slots);
+        } else {
+            right = Operand.constant(rightOp != null ? rightOp.getValue() : null);
+        }
+
+        switch (operator) {
+            case IS_EMPTY:
+                return new Emptiness(left, true);
+            case IS_NOT_EMPTY:
+                return new Emptiness(left, false);
+            case EQUALS:
+                return new Equality(left, right, false);
+            case NOT_EQUALS:
+                return new Equality(left, right, true);
+            case GREATER_THAN:
+            case LESS_THAN:
+            case GREATER_THAN_OR_EQUALS:
+            case LESS_THAN_OR_EQUALS:
+                if (!right.variable) {
+                    // 常量右操作数：不是数值时比较恒不成立，否则预先转换为 long / double
+                    return right.constant instanceof Number
+                        ? new ConstantComparison(left, operator, (Number) right.constant)
+                        : new Invalid(null);
+                }
+                return new Comparison(left, right, operator);
+            default:
+                return new StringTest(left, right, operator);
+        }
+    }
+
+    /**
+     * 编译时绑定的操作数：变量按槽位读取，常量直接保存值
+     */
+    static final class Operand {
+        private final boolean variable;
+        private final Object constant;
+        private final int slot;
+        private final String name;
+        private final String parent;
+
+        private Operand(boolean variable, Object constant, int slot, String name, String parent) {
+            this.variable = variable;
+            this.constant = constant;
+            this.slot = slot;
+            this.name = name;
+            this.parent = parent;
+        }
+
+        static Operand variable(VariableDef def, VariableSlots slots) {
+            return new Operand(true, null, slots.slotOf(def.getParent(), def.getName()), def.getName(), def.getParent());
+        }
+
+        static Operand constant(Object value) {
+            return new Operand(false, value, VariableSlots.NO_SLOT, null, null);
+        }
+
+        Object value(WorkflowContext context) {
+            if (!variable) {
+                return constant;
+            }
+            VariableDef var = slot != VariableSlots.NO_SLOT ? context.getVariable(slot) : context.getVariable(name, parent);
+            if (var == null) {
+                throw new IllegalStateException("条件引用的变量不存在: " + parent + "." + name);
+            }
+            return var.getValue();
+        }
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    static boolean holds(ConditionOperator operator, long left, long right) {
+        switch (operator) {
+            case GREATER_THAN:
+                return left > right;
+            case LESS_THAN:
+                return left < right;
+            case GREATER_THAN_OR_EQUALS:
+                return left >= right;
+            case LESS_THAN_OR_EQUALS:
+                return left <= right;
+            default:
+                return false;
+        }
+    }
+
+    static boolean holds(ConditionOperator operator, double left, double right) {
+        switch (operator) {
+            case GREATER_THAN:
+                return left > right;
+            case LESS_THAN:
+                return left < right;
+            case GREATER_THAN_OR_EQUALS:
+                return left >= right;
+            case LESS_THAN_OR_EQUALS:
+                return left <= right;
+            default:
+                return false;
+        }
+    }
+
+    /** 全部成立，短路求值 */
+    private static final class All extends ConditionPredicate {
+        private final ConditionPredicate[] children;
+
+        All(ConditionPredicate[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            for (ConditionPredicate child : children) {
+                if (!child.test(context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** 任一成立，短路求值 */
+    private static final class Any extends ConditionPredicate {
+        private final ConditionPredicate[] children;
+
+        Any(ConditionPredicate[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            for (ConditionPredicate child : children) {
+                if (child.test(context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** isEmpty / isNotEmpty：null、空字符串、空集合视为空 */
+    private static final class Emptiness extends ConditionPredicate {
+        private final Operand left;
+        private final boolean expectEmpty;
+
+        Emptiness(Operand left, boolean expectEmpty) {
+            this.left = left;
+            this.expectEmpty = expectEmpty;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            Object value = left.value(context);
+            boolean empty = value == null
+                || (value instanceof String && ((String) value).isEmpty())
+                || (value instanceof Collection && ((Collection<?>) value).isEmpty());
+            return empty == expectEmpty;
+        }
+    }
+
+    /** == / !=：两个数值按数值比较，其他类型使用 equals；任一操作数为 null 时不成立 */
+    private static final class Equality extends ConditionPredicate {
+        private final Operand left;
+        private final Operand right;
+        private final boolean negate;
+
+        Equality(Operand left, Operand right, boolean negate) {
+            this.left = left;
+            this.right = right;
+            this.negate = negate;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            Object l = left.value(context);
+            Object r = right.value(context);
+            if (l == null || r == null) {
+                return false;
+            }
+            boolean equal;
+            if (l instanceof Number && r instanceof Number) {
+                equal = isIntegral(l) && isIntegral(r)
+                    ? ((Number) l).longValue() == ((Number) r).longValue()
+                    : ((Number) l).doubleValue() == ((Number) r).doubleValue();
+            } else {
+                equal = l.equals(r);
+            }
+            return equal != negate;
+        }
+    }
+
+    /** 与数值常量比较，常量在编译时转换为 long 和 double */
+    private static final class ConstantComparison extends ConditionPredicate {
+        private final Operand left;
+        private final ConditionOperator operator;
+        private final boolean integral;
+        private final long longValue;
+        private final double doubleValue;
+
+        ConstantComparison(Operand left, ConditionOperator operator, Number constant) {
+            this.left = left;
+            this.operator = operator;
+            this.integral = isIntegral(constant);
+            this.longValue = constant.longValue();
+            this.doubleValue = constant.doubleValue();
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            Object l = left.value(context);
+            if (!(l instanceof Number)) {
+                return false;
+            }
+            if (integral && isIntegral(l)) {
+                return holds(operator, ((Number) l).longValue(), longValue);
+            }
+            return holds(operator, ((Number) l).doubleValue(), doubleValue);
+        }
+    }
+
+    /** 两个变量之间的数值比较，非数值时不成立 */
+    private static final class Comparison extends ConditionPredicate {
+        private final Operand left;
+        private final Operand right;
+        private final ConditionOperator operator;
+
+        Comparison(Operand left, Operand right, ConditionOperator operator) {
+            this.left = left;
+            this.right = right;
+            this.operator = operator;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            Object l = left.value(context);
+            Object r = right.value(context);
+            if (!(l instanceof Number) || !(r instanceof Number)) {
+                return false;
+            }
+            if (isIntegral(l) && isIntegral(r)) {
+                return holds(operator, ((Number) l).longValue(), ((Number) r).longValue());
+            }
+            return holds(operator, ((Number) l).doubleValue(), ((Number) r).doubleValue());
+        }
+    }
+
+    /** contains / notContains / startsWith / endsWith，两个操作数都必须是字符串 */
+    private static final class StringTest extends ConditionPredicate {
+        private final Operand left;
+        private final Operand right;
+        private final ConditionOperator operator;
+
+        StringTest(Operand left, Operand right, ConditionOperator operator) {
+            this.left = left;
+            this.right = right;
+            this.operator = operator;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            Object l = left.value(context);
+            Object r = right.value(context);
+            if (!(l instanceof String) || !(r instanceof String)) {
+                return false;
+            }
+            String s = (String) l;
+            String t = (String) r;
+            switch (operator) {
+                case CONTAINS:
+                    return s.contains(t);
+                case NOT_CONTAINS:
+                    return !s.contains(t);
+                case STARTS_WITH:
+                    return s.startsWith(t);
+                case ENDS_WITH:
+                    return s.endsWith(t);
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * 无法成立的条件。带有错误信息时求值抛出异常（不支持的操作符），否则恒为 false
+     */
+    private static final class Invalid extends ConditionPredicate {
+        private final String error;
+
+        Invalid(String error) {
+            this.error = error;
+        }
+
+        @Override
+        public boolean test(WorkflowContext context) {
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package cn.yafex.workflow.execution;
+
+import cn.yafex.tools.core.ToolDefinition;
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.model.NodeType;
+import cn.yafex.workflow.model.Workflow;
+import cn.yafex.workflow.model.WorkflowNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 数据流模式下一段连续 FUNCTION 节点的依赖图
+ *
+ * <p>从链首的 FUNCTION 节点出发沿默认分支前进，直到遇到非 FUNCTION 节点或已属于其他段的节点，
+ * 得到一段按定义顺序排列的节点，每个节点只属于一段。段内除最后一个节点外都指向这个依赖图，
+ * 从段中间进入时（例如条件分支跳入）只执行该位置及之后的节点。
+ * 段内靠后的节点在以下情况依赖靠前的节点，其余节点之间可以并发执行：</p>
+ * <ul>
+ *     <li>inputMap 引用了靠前节点的输出（parent 为该节点ID）</li>
+ *     <li>任一节点没有 inputMap，读取按名称保存的全部上下文变量</li>
+ *     <li>两个节点写入同名变量，需要保持按名称保存的变量以靠后节点为准</li>
+ *     <li>任一节点的输出定义未知（工具未注册且工作流中没有保存工具定义）</li>
+ * </ul>
+ * <p>inputMap 按 (parent, name) 读取变量，不受其他节点同名输出的影响，
+ * 以上规则保证并发执行后上下文与顺序执行的结果一致。</p>
+ */
+public final class DataflowSegment {
+    private final int[] nodes;
+    private final int[][] dependents;
+    private final int[] dependencyCounts;
+    private final int exit;
+    private final String exitId;
+
+    private DataflowSegment(int[] nodes, int[][] dependents, int[] dependencyCounts, int exit, String exitId) {
+        this.nodes = nodes;
+        this.dependents = dependents;
+        this.dependencyCounts = dependencyCounts;
+        this.exit = exit;
+        this.exitId = exitId;
+    }
+
+    /**
+     * 把计划中的 FUNCTION 节点划分为最长的连续段，为每段构建一个依赖图并设置到段内节点上。
+     * 先从不是其他 FUNCTION 节点默认后继的链首出发，再处理只由 FUNCTION 节点组成的环
+     * @param plan 已解析后继节点的计划节点
+     * @param workflow 工作流定义，用于查找工具的输出定义
+     */
+    static void assign(PlanNode[] plan, Workflow workflow) {
+        boolean[] continued = new boolean[plan.length];
+        for (PlanNode planNode : plan) {
+            int next = planNode.getType() == NodeType.FUNCTION ? planNode.getDefaultSuccessor() : PlanNode.NO_NODE;
+            if (next >= 0 && plan[next].getType() == NodeType.FUNCTION) {
+                continued[next] = true;
+            }
+        }
+        boolean[] claimed = new boolean[plan.length];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int head = 0; head < plan.length; head++) {
+                if (plan[head].getType() != NodeType.FUNCTION || claimed[head] || (pass == 0 && continued[head])) {
+                    continue;
+                }
+                List<Integer> chain = new ArrayList<>();
+                int current = head;
+                while (current >= 0 && plan[current].getType() == NodeType.FUNCTION && !claimed[current]) {
+                    claimed[current] = true;
+                    chain.add(current);
+                    current = plan[current].getDefaultSuccessor();
+                }
+                DataflowSegment segment = build(plan, chain, workflow);
+                if (segment == null) {
+                    continue;
+                }
+                // 段尾的节点单独无法并发，按顺序执行
+                for (int p = 0; p < chain.size() - 1; p++) {
+                    plan[chain.get(p)].setSegment(segment, p);
+                }
+            }
+        }
+    }
+
+    /**
+     * 构建一段节点的依赖图
+     * @param plan 已解析后继节点的计划节点
+     * @param chain 沿默认分支相连的 FUNCTION 节点下标
+     * @param workflow 工作流定义，用于查找工具的输出定义
+     * @return 依赖图，段内少于两个节点时返回 null
+     */
+    private static DataflowSegment build(PlanNode[] plan, List<Integer> chain, Workflow workflow) {
+        if (chain.size() < 2) {
+            return null;
+        }
+        PlanNode last = plan[chain.get(chain.size() - 1)];
+
+        int size = chain.size();
+        Access[] accesses = new Access[size];
+        for (int p = 0; p < size; p++) {
+            accesses[p] = Access.of(plan[chain.get(p)], workflow);
+        }
+
+        List<List<Integer>> edges = new ArrayList<>(size);
+        int[] dependencyCounts = new int[size];
+        for (int i = 0; i < size; i++) {
+            edges.add(new ArrayList<>());
+        }
+        for (int j = 1; j < size; j++) {
+            for (int i = 0; i < j; i++) {
+                if (accesses[j].dependsOn(accesses[i])) {
+                    edges.get(i).add(j);
+                    dependencyCounts[j]++;
+                }
+            }
+        }
+
+        int[] nodes = new int[size];
+        int[][] dependents = new int[size][];
+        for (int p = 0; p < size; p++) {
+            nodes[p] = chain.get(p);
+            dependents[p] = edges.get(p).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new DataflowSegment(nodes, dependents, dependencyCounts,
+            last.getDefaultSuccessor(), last.getSuccessorId(0));
+    }
+
+    /** 段内节点数量 */
+    public int size() {
+        return nodes.length;
+    }
+
+    /** 段内第 position 个节点的计划下标 */
+    public int getNode(int position) {
+        return nodes[position];
+    }
+
+    /** 依赖第 position 个节点的段内位置 */
+    public int[] getDependents(int position) {
+        return dependents[position];
+    }
+
+    /** 每个节点尚未完成的依赖数量，返回副本供单次执行使用 */
+    public int[] newDependencyCounts() {
+        return Arrays.copyOf(dependencyCounts, dependencyCounts.length);
+    }
+
+    /**
+     * 从第 from 个节点开始执行时每个节点尚未完成的依赖数量，不计 from 之前的节点
+     * @param from 开始执行的段内位置
+     * @return 副本，供单次执行使用
+     */
+    public int[] newDependencyCounts(int from) {
+        int[] counts = newDependencyCounts();
+        for (int p = 0; p < from; p++) {
+            for (int dependent : dependents[p]) {
+                counts[dependent]--;
+            }
+        }
+        return counts;
+    }
+
+    /** 段执行完成后的下一个节点下标 */
+    public int getExit() {
+        return exit;
+    }
+
+    /** 段出口在原始定义中引用的节点ID，用于生成错误信息 */
+    public String getExitId() {
+        return exitId;
+    }
+
+    /**
+     * 单个节点读写的变量名
+     */
+    private static final class Access {
+        private final String id;
+        /** 为 null 表示读取全部上下文变量 */
+        private final Set<String> readParents;
+        /** 为 null 表示输出未知 */
+        private final Set<String> writeNames;
+
+        private Access(String id, Set<String> readParents, Set<String> writeNames) {
+            this.id = id;
+            this.readParents = readParents;
+            this.writeNames = writeNames;
+        }
+
+        static Access of(PlanNode planNode, Workflow workflow) {
+            WorkflowNode node = planNode.getNode();
+            Set<String> readParents = null;
+            Map<String, VariableDef> inputMap = node.getInputMap();
+            if (inputMap != null && !inputMap.isEmpty()) {
+                readParents = new HashSet<>();
+                for (VariableDef var : inputMap.values()) {
+                    if (var == null || "CONSTANT".equals(var.getName())) {
+                        continue;
+                    }
+                    readParents.add(var.getParent());
+                }
+            }
+
+            ToolDefinition definition = planNode.getTool() != null
+                ? planNode.getToolDefinition()
+                : workflow.getToolDefinition(node.getToolName());
+            Set<String> writeNames = definition != null && definition.getOutputs() != null
+                ? new HashSet<>(definition.getOutputs().keySet())
+                : null;
+            return new Access(node.getId(), readParents, writeNames);
+        }
+
+        boolean dependsOn(Access earlier) {
+            if (writeNames == null || earlier.writeNames == null || readParents == null) {
+                return true;
+            }
+            if (readParents.contains(earlier.id)) {
+                return true;
+            }
+            if (earlier.readParents == null && !writeNames.isEmpty()) {
+                return true;
+            }
+            return intersects(earlier.writeNames, writeNames);
+        }
+
+        private static boolean intersects(Set<String> a, Set<String> b) {
+            for (String name : a) {
+                if (b.contains(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package cn.yafex.workflow.execution;
+
+/**
+ * 工作流执行被取消或超时后，在执行线程上抛出的异常
+ */
+public class ExecutionCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final WorkflowStatus status;
+
+    public ExecutionCancelledException(WorkflowStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /** 执行的最终状态，CANCELLED 或 TIMEOUT */
+    public WorkflowStatus getStatus() {
+        return status;
+    }
+}
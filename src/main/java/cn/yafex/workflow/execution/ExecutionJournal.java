@@ -0,0 +1,563 @@
+package cn.yafex.workflow.execution;
+
+import cn.yafex.tools.schema.VariableDef;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 执行日志（journal），用于进程崩溃或重启后恢复未结束的执行。
+ *
+ * <p>每个执行记录三类追加写入的记录：开始（工作流ID、优先级、截止时间和初始变量）、
+ * 顶层路径上每个节点完成后的检查点（节点输出和下一个节点），以及结束状态。
+ * 记录为每行一个 JSON 对象，写入按大小切分的段文件。</p>
+ *
+ * <p>写入采用组提交：调用方把序列化好的记录放入队列后立即返回，单个写线程每次取出队列中的全部记录，
+ * 一次写入并一次 fsync，之后完成各记录的 future。并发执行越多，每次 fsync 分摊的记录越多。
+ * 执行引擎不等待检查点落盘，崩溃时最多丢失最后一批记录，恢复后从更早的检查点重新执行这些节点。</p>
+ *
+ * <p>启动时按顺序重放所有段，得到未结束的执行；新记录写入新的段。
+ * 段中所有执行都结束后，在切换段时删除。</p>
+ */
+@Component
+public class ExecutionJournal {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** 是否记录执行日志并在启动时恢复执行 */
+    @Value("${workflow.journal.enabled:true}")
+    private boolean enabled;
+
+    /** 段文件所在目录 */
+    @Value("${workflow.journal.path:journal}")
+    private String path;
+
+    /** 每批记录写入后是否 fsync，关闭后只保证进程崩溃时不丢失，不保证操作系统崩溃时不丢失 */
+    @Value("${workflow.journal.fsync:true}")
+    private boolean fsync;
+
+    /** 单个段文件的大小上限（字节），超过后切换到新段 */
+    @Value("${workflow.journal.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    private final LinkedBlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    /** 序列化失败而不再记录的执行，结束时移除 */
+    private final Set<String> abandoned = ConcurrentHashMap.newKeySet();
+    private List<RecoveredExecution> recovered = Collections.emptyList();
+    private Thread writer;
+
+    // 以下字段只在写线程上访问（启动时在写线程创建前初始化）
+    private Path directory;
+    private FileChannel channel;
+    private long segment;
+    private long segmentSize;
+    /** 未结束的执行到其开始记录所在段的映射，用于判断旧段是否可以删除 */
+    private final Map<String, Long> liveSegments = new HashMap<>();
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public ExecutionJournal() {
+    }
+
+    /**
+     * @param path 段文件所在目录
+     * @param fsync 每批记录写入后是否 fsync
+     * @param segmentBytes 单个段文件的大小上限（字节）
+     */
+    public ExecutionJournal(String path, boolean fsync, long segmentBytes) {
+        this.enabled = true;
+        this.path = path;
+        this.fsync = fsync;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * 重放已有的段并打开新段，启动写线程
+     * @throws UncheckedIOException 如果目录无法创建或段文件无法读取
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            directory = Paths.get(path);
+            Files.createDirectories(directory);
+            long last = replay();
+            openSegment(last + 1);
+            deleteObsoleteSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开执行日志失败: " + path, e);
+        }
+        writer = new Thread(this::writeLoop, "workflow-journal");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("执行日志已打开: path={}, segment={}, recovered={}", directory.toAbsolutePath(), segment, recovered.size());
+    }
+
+    /**
+     * 写完已入队的记录后关闭
+     */
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        queue.add(Append.STOP);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取出启动时重放得到的未结束执行，只能取一次
+     * @return 按开始顺序排列的未结束执行
+     */
+    public synchronized List<RecoveredExecution> takeRecovered() {
+        List<RecoveredExecution> result = recovered;
+        recovered = Collections.emptyList();
+        return result;
+    }
+
+    /**
+     * 记录执行开始
+     * @param executionId 执行ID
+     * @param workflowId 工作流ID
+     * @param priority 调度优先级
+     * @param deadline 截止时间（epoch 毫秒），0 表示没有截止时间
+     * @param variables 初始变量
+     * @return 记录落盘时完成
+     */
+    public CompletableFuture<Void> recordStart(String executionId, String workflowId, ExecutionPriority priority,
+                                               long deadline, Map<String, VariableDef> variables) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        JSONObject record = new JSONObject(true);
+        record.put("type", "START");
+        record.put("executionId", executionId);
+        record.put("workflowId", workflowId);
+        record.put("priority", priority.name());
+        record.put("deadline", deadline);
+        record.put("variables", variables);
+        return append(executionId, record, Append.START);
+    }
+
+    /**
+     * 记录顶层路径上一个节点完成
+     * @param executionId 执行ID
+     * @param nodeId 完成的节点ID
+     * @param nextNodeId 下一个节点ID，执行到结束时为 null
+     * @param outputs 节点写入上下文的变量，没有时为 null
+     * @return 记录落盘时完成
+     */
+    public CompletableFuture<Void> recordCheckpoint(String executionId, String nodeId, String nextNodeId,
+                                                    Map<String, VariableDef> outputs) {
+        if (!enabled || abandoned.contains(executionId)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        JSONObject record = new JSONObject(true);
+        record.put("type", "CHECKPOINT");
+        record.put("executionId", executionId);
+        record.put("nodeId", nodeId);
+        record.put("next", nextNodeId);
+        if (outputs != null && !outputs.isEmpty()) {
+            record.put("outputs", outputs);
+        }
+        return append(executionId, record, Append.CHECKPOINT);
+    }
+
+    /**
+     * 记录执行结束，此后重放时不再恢复该执行
+     * @param executionId 执行ID
+     * @param status 结束状态
+     * @return 记录落盘时完成
+     */
+    public CompletableFuture<Void> recordEnd(String executionId, String status) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        abandoned.remove(executionId);
+        JSONObject record = new JSONObject(true);
+        record.put("type", "END");
+        record.put("executionId", executionId);
+        record.put("status", status);
+        return append(executionId, record, Append.END);
+    }
+
+    private CompletableFuture<Void> append(String executionId, JSONObject record, int kind) {
+        byte[] line;
+        try {
+            // 每条记录必须占一行，不使用全局默认的 PrettyFormat
+            int features = (JSON.DEFAULT_GENERATE_FEATURE & ~SerializerFeature.PrettyFormat.getMask())
+                | SerializerFeature.DisableCircularReferenceDetect.getMask();
+            line = (JSON.toJSONString(record, SerializeConfig.globalInstance, null, null, features) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            // 变量无法序列化时该执行不能恢复：记录结束并忽略此后的检查点，避免重放时缺少中间的输出
+            logger.warn("执行日志记录序列化失败，执行 {} 将不会被恢复: {}", executionId, e.getMessage());
+            failures.incrementAndGet();
+            if (kind != Append.END) {
+                abandoned.add(executionId);
+                JSONObject end = new JSONObject(true);
+                end.put("type", "END");
+                end.put("executionId", executionId);
+                end.put("status", "NOT_RECOVERABLE");
+                return append(executionId, end, Append.END);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        Append entry = new Append(executionId, kind, line);
+        queue.add(entry);
+        return entry.committed;
+    }
+
+    /**
+     * 写线程：每次取出队列中的全部记录，一次写入、一次 fsync
+     */
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            buffer.reset();
+            int records = 0;
+            for (Append entry : batch) {
+                if (entry == Append.STOP) {
+                    stopping = true;
+                    continue;
+                }
+                buffer.write(entry.line, 0, entry.line.length);
+                records++;
+            }
+            try {
+                if (records > 0) {
+                    write(buffer);
+                    trackLive(batch);
+                    appended.addAndGet(records);
+                    batches.incrementAndGet();
+                }
+                for (Append entry : batch) {
+                    entry.committed.complete(null);
+                }
+                if (segmentSize >= segmentBytes) {
+                    channel.close();
+                    openSegment(segment + 1);
+                    deleteObsoleteSegments();
+                }
+            } catch (IOException e) {
+                logger.error("写入执行日志失败", e);
+                failures.incrementAndGet();
+                for (Append entry : batch) {
+                    entry.committed.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("关闭执行日志失败", e);
+        }
+    }
+
+    private void write(ByteArrayOutputStream buffer) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        segmentSize += buffer.size();
+        bytesWritten.addAndGet(buffer.size());
+    }
+
+    private void trackLive(List<Append> batch) {
+        for (Append entry : batch) {
+            if (entry.kind == Append.START) {
+                liveSegments.put(entry.executionId, segment);
+            } else if (entry.kind == Append.END) {
+                liveSegments.remove(entry.executionId);
+            }
+        }
+    }
+
+    private void openSegment(long id) throws IOException {
+        segment = id;
+        channel = FileChannel.open(segmentPath(id),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+    }
+
+    /**
+     * 删除当前段之前、不包含任何未结束执行的开始记录的段
+     */
+    private void deleteObsoleteSegments() throws IOException {
+        long keepFrom = segment;
+        for (long first : liveSegments.values()) {
+            keepFrom = Math.min(keepFrom, first);
+        }
+        for (long id : listSegments().keySet()) {
+            if (id < keepFrom) {
+                Files.deleteIfExists(segmentPath(id));
+            }
+        }
+    }
+
+    /**
+     * 按段顺序重放所有记录，得到未结束的执行。段末尾不完整的行（写入过程中崩溃）被忽略
+     * @return 最后一个段的编号，没有段时为 0
+     */
+    private long replay() throws IOException {
+        Map<String, RecoveredExecution> running = new LinkedHashMap<>();
+        TreeMap<Long, Path> segments = listSegments();
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            try (BufferedReader reader = Files.newBufferedReader(entry.getValue(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    JSONObject record;
+                    try {
+                        record = JSON.parseObject(line);
+                    } catch (JSONException e) {
+                        logger.warn("忽略执行日志中不完整的记录: {}", entry.getValue());
+                        continue;
+                    }
+                    apply(running, record, entry.getKey());
+                }
+            }
+        }
+        for (RecoveredExecution execution : running.values()) {
+            liveSegments.put(execution.executionId, execution.segment);
+        }
+        recovered = new ArrayList<>(running.values());
+        return segments.isEmpty() ? 0 : segments.lastKey();
+    }
+
+    private static void apply(Map<String, RecoveredExecution> running, JSONObject record, long segment) {
+        String executionId = record.getString("executionId");
+        String type = record.getString("type");
+        if ("START".equals(type)) {
+            RecoveredExecution execution = new RecoveredExecution(executionId, record.getString("workflowId"),
+                ExecutionPriority.valueOf(record.getString("priority")), record.getLongValue("deadline"),
+                variables(record.getJSONObject("variables")), segment);
+            running.put(executionId, execution);
+        } else if ("CHECKPOINT".equals(type)) {
+            RecoveredExecution execution = running.get(executionId);
+            if (execution != null) {
+                // 不同节点可能写入同名变量，按 (parent, name) 分别保留，重新写入的移到末尾
+                for (Map.Entry<String, VariableDef> output : variables(record.getJSONObject("outputs")).entrySet()) {
+                    VariableDef var = output.getValue();
+                    if (var == null) {
+                        continue;
+                    }
+                    if (var.getName() == null) {
+                        var.setName(output.getKey());
+                    }
+                    String key = VariableSlots.key(var.getParent(), var.getName());
+                    execution.outputs.remove(key);
+                    execution.outputs.put(key, var);
+                }
+                execution.nextNodeId = record.getString("next");
+                execution.checkpointed = true;
+            }
+        } else if ("END".equals(type)) {
+            running.remove(executionId);
+        }
+    }
+
+    private static Map<String, VariableDef> variables(JSONObject json) {
+        Map<String, VariableDef> variables = new LinkedHashMap<>();
+        if (json != null) {
+            for (String key : json.keySet()) {
+                JSONObject value = json.getJSONObject(key);
+                variables.put(key, value != null ? value.toJavaObject(VariableDef.class) : null);
+            }
+        }
+        return variables;
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Long.parseLong(number), file);
+                } catch (NumberFormatException e) {
+                    // 不是段文件
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * 获取执行日志的统计信息
+     * @return 记录数、批次数（即 fsync 次数）、平均每批记录数、写入字节数等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        long records = appended.get();
+        long batchCount = batches.get();
+        stats.put("path", directory.toAbsolutePath().toString());
+        stats.put("fsync", fsync);
+        stats.put("segment", segment);
+        stats.put("pending", queue.size());
+        stats.put("appended", records);
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount > 0 ? (double) records / batchCount : 0);
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    /**
+     * 等待写入的一条记录
+     */
+    private static final class Append {
+        static final int START = 0;
+        static final int CHECKPOINT = 1;
+        static final int END = 2;
+        static final Append STOP = new Append(null, -1, new byte[0]);
+
+        final String executionId;
+        final int kind;
+        final byte[] line;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        Append(String executionId, int kind, byte[] line) {
+            this.executionId = executionId;
+            this.kind = kind;
+            this.line = line;
+        }
+    }
+
+    /**
+     * 重放得到的未结束执行：初始变量、已完成节点的输出，以及继续执行的位置
+     */
+    public static final class RecoveredExecution {
+        private final String executionId;
+        private final String workflowId;
+        private final ExecutionPriority priority;
+        private final long deadline;
+        private final Map<String, VariableDef> variables;
+        private final Map<String, VariableDef> outputs = new LinkedHashMap<>();
+        private final long segment;
+        private String nextNodeId;
+        private boolean checkpointed;
+
+        RecoveredExecution(String executionId, String workflowId, ExecutionPriority priority, long deadline,
+                           Map<String, VariableDef> variables, long segment) {
+            this.executionId = executionId;
+            this.workflowId = workflowId;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.variables = variables;
+            this.segment = segment;
+        }
+
+        public String getExecutionId() {
+            return executionId;
+        }
+
+        public String getWorkflowId() {
+            return workflowId;
+        }
+
+        public ExecutionPriority getPriority() {
+            return priority;
+        }
+
+        /** 截止时间（epoch 毫秒），0 表示没有截止时间 */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /** 执行开始时的初始变量 */
+        public Map<String, VariableDef> getVariables() {
+            return variables;
+        }
+
+        /**
+         * 已完成节点写入的变量，以 (parent, name) 组合键区分，按最后写入的顺序排列。
+         * 通过 {@link WorkflowContext#writeRecorded(Map)} 恢复，按名称保存的变量以最后写入的为准
+         */
+        public Map<String, VariableDef> getOutputs() {
+            return outputs;
+        }
+
+        /** 是否有节点完成。为 false 时从开始节点执行 */
+        public boolean isCheckpointed() {
+            return checkpointed;
+        }
+
+        /** 继续执行的节点ID，最后完成的节点之后没有节点时为 null */
+        public String getNextNodeId() {
+            return nextNodeId;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package cn.yafex.workflow.execution;
+
+import cn.yafex.tools.core.ToolDefinition;
+import cn.yafex.tools.core.ToolDescriptor;
+import cn.yafex.tools.core.ToolRegistry;
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.model.Condition;
+import cn.yafex.workflow.model.ConditionCase;
+import cn.yafex.workflow.model.ExecutionMode;
+import cn.yafex.workflow.model.NodeType;
+import cn.yafex.workflow.model.Workflow;
+import cn.yafex.workflow.model.WorkflowNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由 {@link Workflow} 编译得到的不可变执行计划。
+ *
+ * <p>节点按整数下标存放，每个节点的后继节点和工具 handler 都在编译时解析完毕，
+ * 执行引擎每一步只需要数组下标访问，不再遍历节点列表或按字符串查表。</p>
+ *
+ * <p>执行计划可以被多个并发执行共享，执行期间不得修改其引用的 Workflow。</p>
+ */
+public final class ExecutionPlan {
+    /** 工作流输入变量的 parent */
+    public static final String GLOBAL_PARENT = "global";
+
+    private final Workflow workflow;
+    private final PlanNode[] nodes;
+    private final Map<String, Integer> indexById;
+    private final int startIndex;
+    private final VariableSlots slots;
+
+    private ExecutionPlan(Workflow workflow, PlanNode[] nodes, Map<String, Integer> indexById, int startIndex,
+                          VariableSlots slots) {
+        this.workflow = workflow;
+        this.nodes = nodes;
+        this.indexById = indexById;
+        this.startIndex = startIndex;
+        this.slots = slots;
+    }
+
+    /**
+     * 编译工作流为执行计划
+     * @param workflow 工作流定义
+     * @return 执行计划
+     * @throws IllegalArgumentException 如果开始节点不存在，或 PARALLEL 节点没有匹配的 JOIN 节点
+     */
+    public static ExecutionPlan compile(Workflow workflow) {
+        if (workflow == null) {
+            throw new IllegalArgumentException("Workflow cannot be null");
+        }
+        List<WorkflowNode> source = workflow.getNodes() != null ? workflow.getNodes() : Collections.emptyList();
+
+        // 第一遍：分配下标。与 Workflow.getNodeById 一致，ID 重复时以第一个为准
+        Map<String, Integer> indexById = new HashMap<>();
+        int count = 0;
+        WorkflowNode[] ordered = new WorkflowNode[source.size()];
+        for (WorkflowNode node : source) {
+            if (node == null || node.getId() == null || indexById.containsKey(node.getId())) {
+                continue;
+            }
+            indexById.put(node.getId(), count);
+            ordered[count++] = node;
+        }
+
+        Integer start = indexById.get(workflow.getStartNodeId());
+        if (start == null) {
+            throw new IllegalArgumentException("Start node not found: " + workflow.getStartNodeId());
+        }
+
+        // 第二遍：解析后继节点与工具
+        PlanNode[] nodes = new PlanNode[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = compileNode(i, ordered[i], indexById);
+        }
+
+        // 为工作流输入、节点输出和所有引用的变量分配槽位，并解析 FUNCTION 节点输入的槽位
+        VariableSlots slots = new VariableSlots();
+        if (workflow.getInputs() != null) {
+            workflow.getInputs().forEach((key, field) -> slots.assign(GLOBAL_PARENT,
+                field != null && field.getName() != null ? field.getName() : key));
+        }
+        for (PlanNode planNode : nodes) {
+            assignOutputSlots(planNode, workflow, slots);
+        }
+        for (PlanNode planNode : nodes) {
+            bindInputs(planNode, slots);
+        }
+        for (PlanNode planNode : nodes) {
+            compilePredicates(planNode, slots);
+        }
+
+        // 第三遍：为每个 PARALLEL 节点解析对应的 JOIN 节点
+        ForkJoinMatcher matcher = null;
+        for (PlanNode planNode : nodes) {
+            if (planNode.getType() != NodeType.PARALLEL) {
+                continue;
+            }
+            if (matcher == null) {
+                matcher = new ForkJoinMatcher(id -> {
+                    Integer index = indexById.get(id);
+                    return index != null ? ordered[index] : null;
+                });
+            }
+            ForkJoinMatcher.Match match = matcher.match(planNode.getNode());
+            if (!match.isValid()) {
+                throw new IllegalArgumentException(String.join("; ", match.getErrors()));
+            }
+            planNode.setJoinIndex(indexById.get(match.getJoinId()));
+        }
+
+        // 数据流模式：每段连续的 FUNCTION 节点构建一个依赖图，段内节点共用
+        if (workflow.getExecutionMode() == ExecutionMode.DATAFLOW) {
+            DataflowSegment.assign(nodes, workflow);
+        }
+
+        return new ExecutionPlan(workflow, nodes, Collections.unmodifiableMap(indexById), start, slots);
+    }
+
+    private static PlanNode compileNode(int index, WorkflowNode node, Map<String, Integer> indexById) {
+        String[] branchKeys = branchKeysOf(node);
+        int[] successors = new int[branchKeys.length];
+        String[] successorIds = new String[branchKeys.length];
+        Map<String, String> nextNodes = node.getNextNodes() != null ? node.getNextNodes() : Collections.emptyMap();
+
+        for (int b = 0; b < branchKeys.length; b++) {
+            String nextId = nextNodes.get(branchKeys[b]);
+            successorIds[b] = nextId;
+            if (nextId == null) {
+                successors[b] = PlanNode.NO_NODE;
+            } else {
+                Integer next = indexById.get(nextId);
+                successors[b] = next != null ? next : PlanNode.UNRESOLVED;
+            }
+        }
+
+        ToolDescriptor tool = null;
+        if (node.getType() == NodeType.FUNCTION && node.getToolName() != null) {
+            tool = ToolRegistry.getDescriptor(node.getToolName());
+        }
+
+        return new PlanNode(index, node, tool, branchKeys, successors, successorIds);
+    }
+
+    private static void assignOutputSlots(PlanNode planNode, Workflow workflow, VariableSlots slots) {
+        if (planNode.getType() != NodeType.FUNCTION) {
+            return;
+        }
+        ToolDefinition definition = planNode.getTool() != null
+            ? planNode.getToolDefinition()
+            : workflow.getToolDefinition(planNode.getNode().getToolName());
+        if (definition != null && definition.getOutputs() != null) {
+            for (String output : definition.getOutputs().keySet()) {
+                slots.assign(planNode.getId(), output);
+            }
+        }
+    }
+
+    /**
+     * 将 inputMap 解析为参数数组，引用的变量分配槽位，常量的槽位为 {@link VariableSlots#NO_SLOT}
+     */
+    private static void bindInputs(PlanNode planNode, VariableSlots slots) {
+        WorkflowNode node = planNode.getNode();
+        if (node.getType() == NodeType.CONDITION && node.getConditions() != null) {
+            for (ConditionCase conditionCase : node.getConditions()) {
+                for (Condition condition : conditionCase.getConditions()) {
+                    VariableDef left = condition.getLeftOperand();
+                    if (left != null) {
+                        slots.assign(left.getParent(), left.getName());
+                    }
+                    VariableDef right = condition.getRightOperand();
+                    if (right != null && "VARIABLE".equals(condition.getType())) {
+                        slots.assign(right.getParent(), right.getName());
+                    }
+                }
+            }
+        }
+        if (node.getType() != NodeType.FUNCTION || node.getInputMap() == null || node.getInputMap().isEmpty()) {
+            return;
+        }
+        int size = node.getInputMap().size();
+        String[] params = new String[size];
+        VariableDef[] defs = new VariableDef[size];
+        int[] inputSlots = new int[size];
+        int i = 0;
+        for (Map.Entry<String, VariableDef> entry : node.getInputMap().entrySet()) {
+            VariableDef var = entry.getValue();
+            params[i] = entry.getKey();
+            defs[i] = var;
+            inputSlots[i] = var == null || "CONSTANT".equals(var.getName())
+                ? VariableSlots.NO_SLOT
+                : slots.assign(var.getParent(), var.getName());
+            i++;
+        }
+        planNode.setInputs(params, defs, inputSlots);
+    }
+
+    /**
+     * 将 CONDITION 节点的条件组编译为谓词，操作数绑定到已分配的槽位
+     */
+    private static void compilePredicates(PlanNode planNode, VariableSlots slots) {
+        List<ConditionCase> cases = planNode.getNode().getConditions();
+        if (planNode.getType() != NodeType.CONDITION || cases == null) {
+            return;
+        }
+        ConditionPredicate[] predicates = new ConditionPredicate[cases.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = ConditionPredicate.compile(cases.get(i), slots);
+        }
+        planNode.setPredicates(predicates);
+    }
+
+    /**
+     * 按分支序号约定生成 nextNodes 的 key 列表
+     */
+    private static String[] branchKeysOf(WorkflowNode node) {
+        if (node.getType() == NodeType.CONDITION) {
+            int cases = node.getConditions() != null ? node.getConditions().size() : 0;
+            String[] keys = new String[cases + 1];
+            for (int i = 0; i < cases; i++) {
+                keys[i] = "case" + (i + 1);
+            }
+            keys[cases] = PlanNode.ELSE_BRANCH;
+            return keys;
+        }
+        if (node.getType() == NodeType.PARALLEL) {
+            return new ArrayList<>(ForkJoinMatcher.branchesOf(node).keySet()).toArray(new String[0]);
+        }
+        return new String[] { PlanNode.DEFAULT_BRANCH };
+    }
+
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    /** 编译时分配的变量槽位，用于创建执行上下文 */
+    public VariableSlots getSlots() {
+        return slots;
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public PlanNode getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * 根据节点ID获取下标，仅用于编译期或诊断，不应在执行热路径上调用
+     * @param nodeId 节点ID
+     * @return 下标，未找到时返回 {@link PlanNode#UNRESOLVED}
+     */
+    public int indexOf(String nodeId) {
+        Integer index = indexById.get(nodeId);
+        return index != null ? index : PlanNode.UNRESOLVED;
+    }
+}
@@ -0,0 +1,29 @@
+package cn.yafex.workflow.execution;
+
+import java.util.Arrays;
+
+/**
+ * 工作流执行的调度优先级，调度器总是先取高优先级队列中的任务
+ */
+public enum ExecutionPriority {
+    HIGH,
+    NORMAL,
+    LOW;
+
+    /**
+     * 解析优先级名称，忽略大小写，为空时返回 NORMAL
+     * @param name 优先级名称
+     * @return 对应的优先级
+     * @throws IllegalArgumentException 如果名称无法识别
+     */
+    public static ExecutionPriority parse(String name) {
+        if (name == null || name.isEmpty()) {
+            return NORMAL;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("未知的优先级: " + name + "，可选值: " + Arrays.toString(values()));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package cn.yafex.workflow.execution;
+
+/**
+ * 调度器已满、无法接收新的工作流执行时抛出的异常
+ */
+public class ExecutionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ExecutionRejectedException(String message) {
+        super(message);
+    }
+}
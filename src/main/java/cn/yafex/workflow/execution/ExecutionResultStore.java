@@ -0,0 +1,448 @@
+package cn.yafex.workflow.execution;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 已结束执行的结果存储。
+ *
+ * <p>执行结束后从活动执行表中移除，状态、起止时间、错误信息和输出转存到这里，供状态查询使用。
+ * 每个结果只保存紧凑的记录：输出序列化为 JSON 字节，不持有执行上下文和变量对象。
+ * 记录按结束顺序保存在一个哈希链表中，查询和写入都是 O(1)。</p>
+ *
+ * <p>结果在保留时间（TTL）后过期，条目数超过上限时淘汰最早结束的结果，过期和淘汰在写入和查询时顺带进行。
+ * 内存中输出的总字节数超过预算后，最早结束的结果的输出写入磁盘文件，查询时再读回。
+ * 选出写入磁盘的结果和更新计数在锁内进行，文件的写入和删除在锁外进行，查询不会等待磁盘；
+ * 写入完成之前查询仍从内存读取输出。存储只在进程内有效，启动时清空上次留下的文件。</p>
+ */
+@Component
+public class ExecutionResultStore {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionResultStore.class);
+
+    private static final String SPILL_SUFFIX = ".json";
+
+    /** 结果保留的条目数量上限 */
+    @Value("${workflow.results.max-entries:10000}")
+    private int maxEntries;
+
+    /** 结果的保留时间（毫秒），0 表示只按条目数量淘汰 */
+    @Value("${workflow.results.ttl-ms:3600000}")
+    private long ttlMs;
+
+    /** 内存中保留的输出总字节数上限，超过后把最早结束的结果的输出写入磁盘 */
+    @Value("${workflow.results.memory-bytes:16777216}")
+    private long memoryBytes;
+
+    /** 输出写入磁盘时使用的目录 */
+    @Value("${workflow.results.spill-path:results}")
+    private String spillPath;
+
+    /** 按结束顺序排列的结果，所有访问都在 this 上同步 */
+    private final LinkedHashMap<String, Result> results = new LinkedHashMap<>();
+    /** 输出仍在内存中的结果，按结束顺序排列，已淘汰或已写入磁盘的结果在取出时跳过 */
+    private final ArrayDeque<Result> inMemory = new ArrayDeque<>();
+    private long inMemoryBytes;
+    /** 被淘汰结果的磁盘文件，在锁外删除 */
+    private final List<Path> deletions = new ArrayList<>();
+    private Path directory;
+
+    private long stored;
+    private long expired;
+    private long evicted;
+    private long spilled;
+    private long spillFailures;
+
+    public ExecutionResultStore() {
+    }
+
+    /**
+     * @param maxEntries 结果保留的条目数量上限
+     * @param ttlMs 结果的保留时间（毫秒），0 表示只按条目数量淘汰
+     * @param memoryBytes 内存中保留的输出总字节数上限
+     * @param spillPath 输出写入磁盘时使用的目录
+     */
+    public ExecutionResultStore(int maxEntries, long ttlMs, long memoryBytes, String spillPath) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.memoryBytes = memoryBytes;
+        this.spillPath = spillPath;
+    }
+
+    /**
+     * 创建磁盘目录并删除上次运行留下的文件
+     * @throws UncheckedIOException 如果目录无法创建
+     */
+    @PostConstruct
+    public void start() {
+        directory = Paths.get(spillPath);
+        try {
+            Files.createDirectories(directory);
+            deleteSpillFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开执行结果目录失败: " + spillPath, e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        results.clear();
+        inMemory.clear();
+        inMemoryBytes = 0;
+        deletions.clear();
+        try {
+            deleteSpillFiles();
+        } catch (IOException e) {
+            logger.warn("清理执行结果文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 保存已结束执行的结果
+     * @param context 已结束的执行上下文
+     */
+    public void put(WorkflowContext context) {
+        long endMillis = context.getEndTime() != null
+            ? context.getEndTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            : System.currentTimeMillis();
+        long durationMs = context.getEndTime() != null
+            ? Duration.between(context.getStartTime(), context.getEndTime()).toMillis()
+            : -1;
+        byte[] outputs = context.getOutputs() != null ? serialize(context.getOutputs()) : null;
+        Result result = new Result(context.getExecutionId(), context.getStatus(),
+            endMillis, durationMs, context.getError(), outputs);
+
+        List<Spill> spills;
+        synchronized (this) {
+            result.sequence = stored;
+            Result previous = results.remove(result.executionId);
+            if (previous != null) {
+                discard(previous);
+            }
+            results.put(result.executionId, result);
+            stored++;
+            if (outputs != null) {
+                inMemory.addLast(result);
+                inMemoryBytes += outputs.length;
+            }
+            evict(System.currentTimeMillis());
+            spills = selectSpills();
+        }
+        for (Spill spill : spills) {
+            write(spill);
+        }
+        deletePending();
+    }
+
+    /**
+     * 查询已结束执行的状态
+     * @param executionId 执行ID
+     * @return 执行状态，结果不存在或已过期时返回 null
+     */
+    public WorkflowStatus getStatus(String executionId) {
+        Result result;
+        synchronized (this) {
+            result = lookup(executionId);
+        }
+        deletePending();
+        return result != null ? result.status : null;
+    }
+
+    /**
+     * 查询已结束执行的结果，格式与执行结束时的响应相同：执行ID、状态、耗时，以及输出或错误信息
+     * @param executionId 执行ID
+     * @return 结果映射，结果不存在或已过期时返回 null
+     */
+    public Map<String, Object> get(String executionId) {
+        Result result;
+        byte[] outputs;
+        Path file = null;
+        synchronized (this) {
+            result = lookup(executionId);
+            if (result == null) {
+                outputs = null;
+            } else {
+                // 正在写入磁盘的输出仍从内存读取
+                outputs = result.outputs != null ? result.outputs : result.spilling;
+                if (outputs == null && result.spilled) {
+                    file = spillFile(result);
+                }
+            }
+        }
+        deletePending();
+        if (result == null) {
+            return null;
+        }
+        if (file != null) {
+            outputs = readSpilled(file);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("executionId", result.executionId);
+        response.put("status", result.status.toString());
+        if (result.durationMs >= 0) {
+            response.put("durationMs", result.durationMs);
+        }
+        if (outputs != null) {
+            response.put("outputs", JSON.parseObject(new String(outputs, StandardCharsets.UTF_8)));
+        }
+        if (result.error != null) {
+            response.put("error", result.error);
+        }
+        return response;
+    }
+
+    /**
+     * 结果存储的状态
+     * @return 状态映射
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            evict(System.currentTimeMillis());
+            int onDisk = 0;
+            for (Result result : results.values()) {
+                if (result.spilled) {
+                    onDisk++;
+                }
+            }
+            stats.put("size", results.size());
+            stats.put("maxEntries", maxEntries);
+            stats.put("ttlMs", ttlMs);
+            stats.put("memoryBytes", inMemoryBytes);
+            stats.put("memoryBudgetBytes", memoryBytes);
+            stats.put("onDisk", onDisk);
+            stats.put("stored", stored);
+            stats.put("expired", expired);
+            stats.put("evicted", evicted);
+            stats.put("spilled", spilled);
+            stats.put("spillFailures", spillFailures);
+        }
+        deletePending();
+        return stats;
+    }
+
+    private Result lookup(String executionId) {
+        evict(System.currentTimeMillis());
+        return results.get(executionId);
+    }
+
+    /**
+     * 从最早结束的结果开始淘汰过期的结果和超出数量上限的结果
+     */
+    private void evict(long now) {
+        Iterator<Result> iterator = results.values().iterator();
+        while (iterator.hasNext()) {
+            Result oldest = iterator.next();
+            if (ttlMs > 0 && now - oldest.endMillis >= ttlMs) {
+                expired++;
+            } else if (results.size() > maxEntries) {
+                evicted++;
+            } else {
+                break;
+            }
+            iterator.remove();
+            discard(oldest);
+        }
+        // 淘汰的总是最早结束的结果，它们也在内存队列的头部
+        while (!inMemory.isEmpty() && inMemory.peekFirst().outputs == null) {
+            inMemory.pollFirst();
+        }
+    }
+
+    /**
+     * 内存中的输出超过预算时，选出最早结束的结果准备写入磁盘。在锁内调用，
+     * 输出从内存预算中扣除并转为写入中，文件由调用方在锁外通过 {@link #write(Spill)} 写入
+     * @return 需要写入磁盘的输出
+     */
+    private List<Spill> selectSpills() {
+        List<Spill> spills = new ArrayList<>();
+        while (inMemoryBytes > memoryBytes && !inMemory.isEmpty()) {
+            Result oldest = inMemory.pollFirst();
+            if (oldest.outputs == null) {
+                continue;
+            }
+            byte[] outputs = oldest.outputs;
+            inMemoryBytes -= outputs.length;
+            oldest.outputs = null;
+            oldest.spilling = outputs;
+            spills.add(new Spill(oldest, outputs, spillFile(oldest)));
+        }
+        return spills;
+    }
+
+    /**
+     * 在锁外把输出写入磁盘，完成后在锁内把结果标记为已写入磁盘
+     */
+    private void write(Spill spill) {
+        IOException failure = null;
+        try {
+            Files.write(spill.file, spill.outputs);
+        } catch (IOException e) {
+            failure = e;
+        }
+        boolean discarded;
+        synchronized (this) {
+            discarded = spill.result.spilling != spill.outputs;
+            if (!discarded) {
+                spill.result.spilling = null;
+                if (failure == null) {
+                    spill.result.spilled = true;
+                    spilled++;
+                } else {
+                    // 写入失败时丢弃输出，保留状态和错误信息，内存占用不超过预算
+                    spillFailures++;
+                }
+            }
+        }
+        if (failure != null) {
+            logger.warn("执行结果写入磁盘失败, executionId={}: {}", spill.result.executionId, failure.getMessage());
+        } else if (discarded) {
+            // 写入期间结果已被淘汰
+            deleteQuietly(spill.file);
+        }
+    }
+
+    /**
+     * 释放被淘汰结果占用的内存，磁盘文件留给 {@link #deletePending()} 在锁外删除
+     */
+    private void discard(Result result) {
+        if (result.outputs != null) {
+            inMemoryBytes -= result.outputs.length;
+            result.outputs = null;
+        }
+        // 正在写入的输出由写入方在完成后删除
+        result.spilling = null;
+        if (result.spilled) {
+            result.spilled = false;
+            deletions.add(spillFile(result));
+        }
+    }
+
+    /**
+     * 在锁外删除被淘汰结果的磁盘文件
+     */
+    private void deletePending() {
+        List<Path> files;
+        synchronized (this) {
+            if (deletions.isEmpty()) {
+                return;
+            }
+            files = new ArrayList<>(deletions);
+            deletions.clear();
+        }
+        for (Path file : files) {
+            deleteQuietly(file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除执行结果文件失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    private static byte[] readSpilled(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            // 读取期间结果被淘汰，文件已删除
+            return null;
+        }
+    }
+
+    /**
+     * 每个结果使用自己的文件，同一个执行ID重新保存时不会与未完成的写入或删除冲突
+     */
+    private Path spillFile(Result result) {
+        return directory.resolve(result.executionId + "-" + result.sequence + SPILL_SUFFIX);
+    }
+
+    private void deleteSpillFiles() throws IOException {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SPILL_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * 不受全局 PrettyFormat 等设置影响的紧凑序列化
+     */
+    private static byte[] serialize(Map<String, Object> outputs) {
+        int features = (JSON.DEFAULT_GENERATE_FEATURE & ~SerializerFeature.PrettyFormat.getMask())
+            | SerializerFeature.DisableCircularReferenceDetect.getMask();
+        return JSON.toJSONString(new JSONObject(outputs), SerializeConfig.globalInstance, null, null, features)
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一个已结束执行的结果
+     */
+    private static final class Result {
+        final String executionId;
+        final WorkflowStatus status;
+        final long endMillis;
+        final long durationMs;
+        final String error;
+        /** 保存顺序，用于区分同一个执行ID的磁盘文件 */
+        long sequence;
+        /** 序列化后的输出，写入磁盘后为 null */
+        byte[] outputs;
+        /** 正在写入磁盘的输出，写入完成或结果被淘汰后为 null */
+        byte[] spilling;
+        boolean spilled;
+
+        Result(String executionId, WorkflowStatus status, long endMillis, long durationMs, String error, byte[] outputs) {
+            this.executionId = executionId;
+            this.status = status;
+            this.endMillis = endMillis;
+            this.durationMs = durationMs;
+            this.error = error;
+            this.outputs = outputs;
+        }
+    }
+
+    /**
+     * 一次在锁外进行的磁盘写入
+     */
+    private static final class Spill {
+        final Result result;
+        final byte[] outputs;
+        final Path file;
+
+        Spill(Result result, byte[] outputs, Path file) {
+            this.result = result;
+            this.outputs = outputs;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package cn.yafex.workflow.execution;
+
+import java.util.function.IntSupplier;
+
+/**
+ * 一次执行的可恢复状态：执行计划、上下文，以及下次被调度时要执行的步骤。
+ *
+ * <p>执行引擎不为每个执行保留线程。调度器的工作线程取出可运行的执行，从挂起的步骤开始推进，
+ * 直到执行结束、需要等待（异步工具、并行分支、数据流段中的节点）或用完本次的步数配额。
+ * 等待期间执行只以本对象的形式存在，等待的事件发生后设置新的步骤并重新进入调度队列。
+ * 同一时刻最多只有一个线程推进同一个执行。</p>
+ */
+public final class ExecutionRun {
+
+    /**
+     * 执行当前的状态
+     */
+    public enum State {
+        /** 在调度队列中或正在工作线程上推进 */
+        RUNNABLE,
+        /** 等待事件，不占用线程 */
+        PARKED,
+        /** 已结束 */
+        FINISHED
+    }
+
+    /**
+     * 挂起的原因
+     */
+    public enum WaitReason {
+        /** 等待异步工具完成 */
+        TOOL,
+        /** 等待并行分支全部到达 JOIN 节点 */
+        JOIN,
+        /** 等待数据流段中正在执行的节点完成 */
+        DATAFLOW
+    }
+
+    private final ExecutionPlan plan;
+    private final WorkflowContext context;
+    private final ExecutionPriority priority;
+    private final long startTime;
+
+    private IntSupplier pending;
+    private volatile State state = State.RUNNABLE;
+    private volatile WaitReason waitReason;
+    private int steps;
+
+    /**
+     * @param plan 执行计划
+     * @param context 执行上下文
+     * @param priority 调度优先级，恢复执行时使用同一优先级
+     * @param startTime 开始时间（毫秒）
+     */
+    public ExecutionRun(ExecutionPlan plan, WorkflowContext context, ExecutionPriority priority, long startTime) {
+        this.plan = plan;
+        this.context = context;
+        this.priority = priority;
+        this.startTime = startTime;
+        this.pending = plan::getStartIndex;
+    }
+
+    public ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    public WorkflowContext getContext() {
+        return context;
+    }
+
+    public ExecutionPriority getPriority() {
+        return priority;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** 挂起的原因，没有挂起时为 null */
+    public WaitReason getWaitReason() {
+        return waitReason;
+    }
+
+    /**
+     * 取出下次推进时要执行的步骤
+     * @return 给出继续执行的节点下标的步骤
+     */
+    public IntSupplier takePending() {
+        IntSupplier step = pending;
+        pending = null;
+        return step;
+    }
+
+    /**
+     * 挂起执行。必须在登记唤醒回调之前调用，回调可能在登记时立即执行
+     * @param reason 挂起的原因
+     */
+    public void park(WaitReason reason) {
+        this.waitReason = reason;
+        this.state = State.PARKED;
+    }
+
+    /**
+     * 设置恢复后执行的步骤并标记为可运行，调用方随后把执行交给调度器
+     * @param step 恢复后先执行的步骤，给出继续执行的节点下标
+     */
+    public void resume(IntSupplier step) {
+        this.pending = step;
+        unpark();
+    }
+
+    /**
+     * 挂起后没有等到唤醒、由当前线程直接继续推进时调用
+     */
+    public void unpark() {
+        this.waitReason = null;
+        this.state = State.RUNNABLE;
+    }
+
+    /**
+     * 记录推进了一个节点
+     * @return 本次推进累计的节点数量
+     */
+    public int countStep() {
+        return ++steps;
+    }
+
+    /**
+     * 开始新一次推进，重新计算步数配额
+     */
+    public void resetSteps() {
+        steps = 0;
+    }
+
+    public void finish() {
+        this.waitReason = null;
+        this.state = State.FINISHED;
+    }
+}
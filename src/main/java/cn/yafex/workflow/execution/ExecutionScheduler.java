@@ -0,0 +1,315 @@
+package cn.yafex.workflow.execution;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 工作流执行调度器
+ *
+ * <p>固定数量的工作线程从按优先级划分的有界队列中取任务执行。
+ * 队列总长度达到上限时，新的执行最多等待 admission-timeout-ms，
+ * 仍然无法入队则抛出 {@link ExecutionRejectedException}，由调用方转换为 HTTP 429。</p>
+ *
+ * <p>同一时刻总是先执行高优先级队列中的任务，同一优先级内先进先出。</p>
+ */
+@Component
+public class ExecutionScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionScheduler.class);
+
+    /** 工作线程数量，0 表示使用 CPU 核数的两倍 */
+    @Value("${workflow.scheduler.workers:0}")
+    private int workerCount;
+
+    /** 所有优先级队列的总容量 */
+    @Value("${workflow.scheduler.queue-capacity:1000}")
+    private int queueCapacity;
+
+    /** 队列已满时新任务的最长等待时间，0 表示立即拒绝 */
+    @Value("${workflow.scheduler.admission-timeout-ms:0}")
+    private long admissionTimeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<QueuedTask>[] queues;
+    private int queued;
+    private volatile boolean shutdown;
+    private Thread[] workers;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong requeued = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public ExecutionScheduler() {
+        ExecutionPriority[] priorities = ExecutionPriority.values();
+        this.queues = new ArrayDeque[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @param workerCount 工作线程数量
+     * @param queueCapacity 所有优先级队列的总容量
+     * @param admissionTimeoutMs 队列已满时新任务的最长等待时间（毫秒）
+     */
+    public ExecutionScheduler(int workerCount, int queueCapacity, long admissionTimeoutMs) {
+        this();
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        this.admissionTimeoutMs = admissionTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (workerCount <= 0) {
+            workerCount = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        if (queueCapacity <= 0) {
+            queueCapacity = 1;
+        }
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::workLoop, "workflow-worker-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+        logger.info("执行调度器已启动: workers={}, queueCapacity={}", workerCount, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        shutdown = true;
+        if (workers != null) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * 提交一个工作流执行任务
+     * @param task 要执行的任务
+     * @param priority 调度优先级
+     * @throws ExecutionRejectedException 如果队列已满且在等待时间内未能入队
+     */
+    public void submit(Runnable task, ExecutionPriority priority) {
+        if (priority == null) {
+            priority = ExecutionPriority.NORMAL;
+        }
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(admissionTimeoutMs);
+        lock.lock();
+        try {
+            while (queued >= queueCapacity && !shutdown) {
+                if (waitNanos <= 0) {
+                    rejected.incrementAndGet();
+                    throw new ExecutionRejectedException(
+                        "执行队列已满 (" + queueCapacity + ")，请稍后重试");
+                }
+                try {
+                    waitNanos = notFull.awaitNanos(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected.incrementAndGet();
+                    throw new ExecutionRejectedException("等待执行队列时被中断");
+                }
+            }
+            if (shutdown) {
+                rejected.incrementAndGet();
+                throw new ExecutionRejectedException("执行调度器已关闭");
+            }
+            queues[priority.ordinal()].addLast(new QueuedTask(task, System.nanoTime()));
+            queued++;
+            submitted.incrementAndGet();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 继续一个已经开始的执行，例如异步工具完成后执行后续节点。
+     * 续体不受队列容量限制也不会被拒绝，并排在同优先级的新执行之前，优先完成已经开始的执行
+     * @param task 续体任务
+     * @param priority 执行提交时的优先级
+     */
+    public void resume(Runnable task, ExecutionPriority priority) {
+        if (priority == null) {
+            priority = ExecutionPriority.NORMAL;
+        }
+        lock.lock();
+        try {
+            queues[priority.ordinal()].addFirst(new QueuedTask(task, System.nanoTime()));
+            queued++;
+            resumed.incrementAndGet();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把一个让出工作线程的执行放回同优先级队列的末尾，用于长时间运行的执行在步数配额用完后让其他执行先运行。
+     * 与 {@link #resume} 一样不受队列容量限制
+     * @param task 续体任务
+     * @param priority 执行提交时的优先级
+     */
+    public void requeue(Runnable task, ExecutionPriority priority) {
+        if (priority == null) {
+            priority = ExecutionPriority.NORMAL;
+        }
+        lock.lock();
+        try {
+            queues[priority.ordinal()].addLast(new QueuedTask(task, System.nanoTime()));
+            queued++;
+            requeued.incrementAndGet();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workLoop() {
+        while (!shutdown) {
+            QueuedTask task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long waited = System.nanoTime() - task.enqueuedAt;
+            totalWaitNanos.addAndGet(waited);
+            started.incrementAndGet();
+            long max;
+            while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited)) {
+                // 重试直到更新最大等待时间
+            }
+
+            activeWorkers.incrementAndGet();
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                logger.error("工作流执行任务异常退出", t);
+            } finally {
+                activeWorkers.decrementAndGet();
+                completed.incrementAndGet();
+                // 清除任务遗留的中断标记，避免影响下一个任务
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private QueuedTask take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queued == 0) {
+                notEmpty.await();
+            }
+            for (ArrayDeque<QueuedTask> queue : queues) {
+                QueuedTask task = queue.pollFirst();
+                if (task != null) {
+                    queued--;
+                    notFull.signal();
+                    return task;
+                }
+            }
+            throw new IllegalStateException("Queue counter out of sync");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 当前排队中的任务数量 */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 工作线程数量 */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /** 当前正在执行任务的工作线程数量 */
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    /**
+     * 获取调度器的实时统计信息
+     * @return 队列深度、工作线程、等待时间、拒绝次数等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Integer> depthByPriority = new LinkedHashMap<>();
+        long oldestWaitMs = 0;
+        int depth;
+        lock.lock();
+        try {
+            depth = queued;
+            long now = System.nanoTime();
+            for (ExecutionPriority priority : ExecutionPriority.values()) {
+                ArrayDeque<QueuedTask> queue = queues[priority.ordinal()];
+                depthByPriority.put(priority.name(), queue.size());
+                QueuedTask head = queue.peekFirst();
+                if (head != null) {
+                    oldestWaitMs = Math.max(oldestWaitMs, TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedAt));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        long dequeued = started.get();
+        stats.put("workers", workerCount);
+        stats.put("activeWorkers", activeWorkers.get());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queueDepth", depth);
+        stats.put("queueDepthByPriority", depthByPriority);
+        stats.put("oldestQueuedMs", oldestWaitMs);
+        stats.put("avgWaitMs", dequeued > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / dequeued) : 0);
+        stats.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("resumed", resumed.get());
+        stats.put("requeued", requeued.get());
+        return stats;
+    }
+
+    private static final class QueuedTask {
+        private final Runnable runnable;
+        private final long enqueuedAt;
+
+        QueuedTask(Runnable runnable, long enqueuedAt) {
+            this.runnable = runnable;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
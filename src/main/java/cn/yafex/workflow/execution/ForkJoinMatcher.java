@@ -0,0 +1,157 @@
+package cn.yafex.workflow.execution;
+
+import cn.yafex.workflow.model.WorkflowNode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 查找 PARALLEL 节点对应的 JOIN 节点
+ *
+ * <p>从每个分支出发沿所有可能的路径前进，遇到嵌套的 PARALLEL 节点时跳到它的 JOIN 之后继续。
+ * 所有路径都必须到达同一个 JOIN 节点，不能在汇合前结束。执行计划编译和工作流校验共用此逻辑。</p>
+ */
+public final class ForkJoinMatcher {
+
+    /**
+     * 匹配结果
+     */
+    public static final class Match {
+        private final String joinId;
+        private final List<String> errors;
+
+        Match(String joinId, List<String> errors) {
+            this.joinId = joinId;
+            this.errors = errors;
+        }
+
+        /** 匹配到的 JOIN 节点ID，存在错误时为 null */
+        public String getJoinId() {
+            return joinId;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public boolean isValid() {
+            return joinId != null && errors.isEmpty();
+        }
+    }
+
+    private final Function<String, WorkflowNode> lookup;
+    private final Map<String, Match> matched = new HashMap<>();
+
+    /**
+     * @param lookup 根据节点ID查找节点
+     */
+    public ForkJoinMatcher(Function<String, WorkflowNode> lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * 按执行顺序返回 PARALLEL 节点的分支：key 按字典序排列
+     * @param fork PARALLEL 节点
+     * @return 分支 key 到起始节点ID的有序映射
+     */
+    public static Map<String, String> branchesOf(WorkflowNode fork) {
+        if (fork.getNextNodes() == null) {
+            return Collections.emptyMap();
+        }
+        return new TreeMap<>(fork.getNextNodes());
+    }
+
+    /**
+     * 查找 PARALLEL 节点对应的 JOIN 节点
+     * @param fork PARALLEL 节点
+     * @return 匹配结果
+     */
+    public Match match(WorkflowNode fork) {
+        Match cached = matched.get(fork.getId());
+        if (cached != null) {
+            return cached;
+        }
+        // 先占位，防止 PARALLEL 节点出现在自身分支中时无限递归
+        matched.put(fork.getId(), new Match(null, Collections.singletonList(
+            "Parallel node '" + fork.getName() + "' (ID: " + fork.getId() + ") is nested inside its own branches")));
+
+        List<String> errors = new ArrayList<>();
+        Set<String> joins = new LinkedHashSet<>();
+        Map<String, String> branches = branchesOf(fork);
+        if (branches.isEmpty()) {
+            errors.add("Parallel node '" + fork.getName() + "' (ID: " + fork.getId() + ") has no branches");
+        }
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            walk(fork, branch.getKey(), branch.getValue(), new HashSet<>(), joins, errors);
+        }
+        if (joins.size() > 1) {
+            errors.add("Parallel node '" + fork.getName() + "' (ID: " + fork.getId()
+                + ") branches converge on different join nodes: " + joins);
+        } else if (joins.isEmpty() && errors.isEmpty()) {
+            errors.add("Parallel node '" + fork.getName() + "' (ID: " + fork.getId() + ") has no matching join node");
+        }
+
+        Match match = new Match(errors.isEmpty() ? joins.iterator().next() : null, errors);
+        matched.put(fork.getId(), match);
+        return match;
+    }
+
+    private void walk(WorkflowNode fork, String branchKey, String nodeId, Set<String> visited,
+                      Set<String> joins, List<String> errors) {
+        String prefix = "Parallel node '" + fork.getName() + "' (ID: " + fork.getId() + ") branch '" + branchKey + "'";
+        while (true) {
+            if (nodeId == null || nodeId.isEmpty()) {
+                errors.add(prefix + " ends before reaching a join node");
+                return;
+            }
+            if (!visited.add(nodeId)) {
+                return;
+            }
+            WorkflowNode node = lookup.apply(nodeId);
+            if (node == null) {
+                errors.add(prefix + " references non-existent node: " + nodeId);
+                return;
+            }
+
+            switch (node.getType()) {
+                case JOIN:
+                    joins.add(node.getId());
+                    return;
+                case END:
+                    errors.add(prefix + " reaches END node '" + node.getId() + "' before joining");
+                    return;
+                case PARALLEL:
+                    Match nested = match(node);
+                    if (!nested.isValid()) {
+                        // 嵌套分叉的错误由它自己的校验报告
+                        return;
+                    }
+                    WorkflowNode nestedJoin = lookup.apply(nested.getJoinId());
+                    nodeId = nestedJoin.getNextNodes() != null ? nestedJoin.getNextNodes().get(PlanNode.DEFAULT_BRANCH) : null;
+                    break;
+                case CONDITION:
+                    Collection<String> targets = node.getNextNodes() != null
+                        ? node.getNextNodes().values() : Collections.<String>emptyList();
+                    if (targets.isEmpty()) {
+                        errors.add(prefix + " ends at condition node '" + node.getId() + "' without branches");
+                    }
+                    for (String target : targets) {
+                        walk(fork, branchKey, target, visited, joins, errors);
+                    }
+                    return;
+                default:
+                    nodeId = node.getNextNodes() != null ? node.getNextNodes().get(PlanNode.DEFAULT_BRANCH) : null;
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package cn.yafex.workflow.execution;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 不可修改的持久化映射（hash array mapped trie）。
+ *
+ * <p>写入不修改原映射，而是返回一个新版本：新版本只复制从根到被修改条目的路径（最多 7 层，每层最多 32 个槽位），
+ * 其余节点与旧版本共享。因此保存某一时刻的全部变量只需保留当前版本的引用，是 O(1) 的，
+ * 之后的写入不会影响已保存的版本，任何线程都可以不加锁地读取。</p>
+ *
+ * <p>所有修改方法（{@link Map#put} 等）抛出 {@link UnsupportedOperationException}，
+ * 通过 {@link #plus(Object, Object)} 和 {@link #plusAll(Map)} 得到新版本。</p>
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * 复制一个映射，参数本身是持久化映射时直接返回
+     * @param map 源映射
+     * @return 包含相同条目的持久化映射
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap) {
+            return (PersistentMap<K, V>) map;
+        }
+        return PersistentMap.<K, V>empty().plusAll(map);
+    }
+
+    /**
+     * 写入一个条目
+     * @param key 键
+     * @param value 值
+     * @return 包含该条目的新版本；值与已有条目相同（同一对象）时返回本映射
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        Added added = new Added();
+        Node updated = (Node) put(root, 0, new Leaf(hash(key), key, value), added);
+        if (updated == root) {
+            return this;
+        }
+        return new PersistentMap<>(updated, added.value ? size + 1 : size);
+    }
+
+    /**
+     * 依次写入多个条目
+     * @param entries 要写入的条目
+     * @return 包含这些条目的新版本
+     */
+    public PersistentMap<K, V> plusAll(Map<? extends K, ? extends V> entries) {
+        Node current = root;
+        int count = size;
+        Added added = new Added();
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            added.value = false;
+            current = (Node) put(current, 0, new Leaf(hash(entry.getKey()), entry.getKey(), entry.getValue()), added);
+            if (added.value) {
+                count++;
+            }
+        }
+        return current == root ? this : new PersistentMap<>(current, count);
+    }
+
+    /**
+     * 比较本映射与一个较早的版本，得到两者之间的变化。
+     * 两个版本共享的子树直接跳过，因此开销与变化的条目数量成正比，而不是与映射大小成正比
+     * @param base 较早的版本
+     * @param changed 接收新增或值（按引用比较）发生变化的条目
+     * @param removed 接收 base 中有而本映射中没有的键
+     */
+    public void diff(PersistentMap<K, V> base, BiConsumer<? super K, ? super V> changed, Consumer<? super K> removed) {
+        diff(base.root, root, changed, removed);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public V get(Object key) {
+        Leaf leaf = find(key);
+        return leaf != null ? leafValue(leaf) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> entries = entrySet;
+        if (entries == null) {
+            entries = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V leafValue(Leaf leaf) {
+        return (V) leaf.value;
+    }
+
+    private Leaf find(Object key) {
+        int hash = hash(key);
+        Object slot = root;
+        int shift = 0;
+        while (true) {
+            if (slot instanceof Node) {
+                Node node = (Node) slot;
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                slot = node.slots[node.index(bit)];
+                shift += BITS;
+            } else if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.matches(hash, key) ? leaf : null;
+            } else {
+                Collision collision = (Collision) slot;
+                if (collision.hash != hash) {
+                    return null;
+                }
+                for (Leaf leaf : collision.leaves) {
+                    if (Objects.equals(leaf.key, key)) {
+                        return leaf;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void diff(Object before, Object after, BiConsumer<? super K, ? super V> changed, Consumer<? super K> removed) {
+        if (before == after) {
+            return;
+        }
+        if (before instanceof Node && after instanceof Node) {
+            Node a = (Node) before;
+            Node b = (Node) after;
+            int bits = a.bitmap | b.bitmap;
+            while (bits != 0) {
+                int bit = bits & -bits;
+                bits &= bits - 1;
+                if ((a.bitmap & bit) == 0) {
+                    forEachLeaf(b.slots[b.index(bit)], leaf -> changed.accept((K) leaf.key, (V) leaf.value));
+                } else if ((b.bitmap & bit) == 0) {
+                    forEachLeaf(a.slots[a.index(bit)], leaf -> removed.accept((K) leaf.key));
+                } else {
+                    diff(a.slots[a.index(bit)], b.slots[b.index(bit)], changed, removed);
+                }
+            }
+            return;
+        }
+        // 同一位置上一边是条目、一边是子树，只涉及少量条目，逐个比较
+        Map<Object, Leaf> previous = new HashMap<>();
+        forEachLeaf(before, leaf -> previous.put(leaf.key, leaf));
+        forEachLeaf(after, leaf -> {
+            Leaf old = previous.remove(leaf.key);
+            if (old == null || old.value != leaf.value) {
+                changed.accept((K) leaf.key, (V) leaf.value);
+            }
+        });
+        previous.keySet().forEach(key -> removed.accept((K) key));
+    }
+
+    private static void forEachLeaf(Object slot, Consumer<Leaf> action) {
+        if (slot instanceof Leaf) {
+            action.accept((Leaf) slot);
+        } else if (slot instanceof Collision) {
+            for (Leaf leaf : ((Collision) slot).leaves) {
+                action.accept(leaf);
+            }
+        } else {
+            for (Object child : ((Node) slot).slots) {
+                forEachLeaf(child, action);
+            }
+        }
+    }
+
+    /**
+     * 在 slot 表示的子树中写入 leaf，返回新子树；没有变化时返回原对象
+     */
+    private static Object put(Object slot, int shift, Leaf leaf, Added added) {
+        if (slot instanceof Node) {
+            Node node = (Node) slot;
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = node.index(bit);
+            if ((node.bitmap & bit) == 0) {
+                added.value = true;
+                Object[] slots = new Object[node.slots.length + 1];
+                System.arraycopy(node.slots, 0, slots, 0, index);
+                slots[index] = leaf;
+                System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+                return new Node(node.bitmap | bit, slots);
+            }
+            Object child = node.slots[index];
+            Object updated = put(child, shift + BITS, leaf, added);
+            if (updated == child) {
+                return node;
+            }
+            Object[] slots = node.slots.clone();
+            slots[index] = updated;
+            return new Node(node.bitmap, slots);
+        }
+        if (slot instanceof Leaf) {
+            Leaf existing = (Leaf) slot;
+            if (existing.matches(leaf.hash, leaf.key)) {
+                return existing.value == leaf.value ? existing : leaf;
+            }
+            added.value = true;
+            return merge(existing, existing.hash, leaf, shift);
+        }
+        Collision collision = (Collision) slot;
+        if (collision.hash != leaf.hash) {
+            added.value = true;
+            return merge(collision, collision.hash, leaf, shift);
+        }
+        Leaf[] leaves = collision.leaves;
+        for (int i = 0; i < leaves.length; i++) {
+            if (Objects.equals(leaves[i].key, leaf.key)) {
+                if (leaves[i].value == leaf.value) {
+                    return collision;
+                }
+                Leaf[] replaced = leaves.clone();
+                replaced[i] = leaf;
+                return new Collision(collision.hash, replaced);
+            }
+        }
+        added.value = true;
+        Leaf[] appended = Arrays.copyOf(leaves, leaves.length + 1);
+        appended[leaves.length] = leaf;
+        return new Collision(collision.hash, appended);
+    }
+
+    /**
+     * 把同一位置上的已有条目（或冲突条目）与新条目放入新的子树，直到两者的哈希位不同
+     */
+    private static Object merge(Object existing, int existingHash, Leaf leaf, int shift) {
+        if (existingHash == leaf.hash) {
+            // 哈希完全相同，只能按键逐个比较
+            return new Collision(existingHash, new Leaf[] {(Leaf) existing, leaf});
+        }
+        int existingIndex = (existingHash >>> shift) & MASK;
+        int index = (leaf.hash >>> shift) & MASK;
+        if (existingIndex == index) {
+            return new Node(1 << index, new Object[] {merge(existing, existingHash, leaf, shift + BITS)});
+        }
+        Object[] slots = existingIndex < index ? new Object[] {existing, leaf} : new Object[] {leaf, existing};
+        return new Node((1 << existingIndex) | (1 << index), slots);
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 内部节点：bitmap 的每一位表示对应的 5 位哈希片段是否有子树，slots 只保存存在的子树
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * 哈希完全相同的多个条目
+     */
+    private static final class Collision {
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+    }
+
+    private static final class Leaf {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean matches(int hash, Object key) {
+            return this.hash == hash && Objects.equals(this.key, key);
+        }
+    }
+
+    private static final class Added {
+        boolean value;
+    }
+
+    /**
+     * 深度优先遍历所有条目
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        /** 从根到当前节点路径上的槽位数组和下一个要访问的下标，深度不超过 8 层 */
+        private final Object[][] arrays = new Object[9][];
+        private final int[] positions = new int[9];
+        private int depth;
+        private Leaf[] leaves;
+        private int leafPosition;
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            arrays[0] = root.slots;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            if (leaves != null) {
+                if (leafPosition < leaves.length) {
+                    next = leaves[leafPosition++];
+                    return;
+                }
+                leaves = null;
+            }
+            while (depth >= 0) {
+                Object[] slots = arrays[depth];
+                if (positions[depth] >= slots.length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = slots[positions[depth]++];
+                if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                }
+                if (slot instanceof Collision) {
+                    leaves = ((Collision) slot).leaves;
+                    leafPosition = 1;
+                    next = leaves[0];
+                    return;
+                }
+                depth++;
+                arrays[depth] = ((Node) slot).slots;
+                positions[depth] = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = next;
+            advance();
+            return new AbstractMap.SimpleImmutableEntry<>((K) leaf.key, (V) leaf.value);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package cn.yafex.workflow.execution;
+
+import cn.yafex.tools.core.ToolDefinition;
+import cn.yafex.tools.core.ToolDescriptor;
+import cn.yafex.tools.core.ToolHandler;
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.model.NodeType;
+import cn.yafex.workflow.model.WorkflowNode;
+
+/**
+ * 执行计划中的一个已编译节点。
+ * 后继节点按分支序号保存为整数下标，工具描述在编译时解析，执行时无需再查表。
+ *
+ * <p>分支序号约定：</p>
+ * <ul>
+ *     <li>CONDITION 节点：第 i 个条件组（case{i+1}）对应分支 i，else 对应分支 conditions.size()</li>
+ *     <li>PARALLEL 节点：nextNodes 的 key 按字典序排列，每个分支并发执行直到对应的 JOIN 节点</li>
+ *     <li>其他节点：只有一个分支 0，对应 nextNodes 中的 "default"</li>
+ * </ul>
+ */
+public final class PlanNode {
+    /** 没有后继节点，执行到此结束 */
+    public static final int NO_NODE = -1;
+    /** nextNodes 中引用了不存在的节点 */
+    public static final int UNRESOLVED = -2;
+
+    public static final String DEFAULT_BRANCH = "default";
+    public static final String ELSE_BRANCH = "else";
+
+    private final int index;
+    private final WorkflowNode node;
+    private final NodeType type;
+    private final String typeName;
+    private final ToolDescriptor tool;
+    private final String[] branchKeys;
+    private final int[] successors;
+    private final String[] successorIds;
+    private final long timeoutMs;
+    private int joinIndex = NO_NODE;
+    private DataflowSegment segment;
+    private int segmentPosition;
+    private String[] inputParams;
+    private VariableDef[] inputDefs;
+    private int[] inputSlots;
+    private ConditionPredicate[] predicates;
+
+    PlanNode(int index, WorkflowNode node, ToolDescriptor tool,
+             String[] branchKeys, int[] successors, String[] successorIds) {
+        this.index = index;
+        this.node = node;
+        this.type = node.getType();
+        this.typeName = node.getType().toString();
+        this.tool = tool;
+        this.branchKeys = branchKeys;
+        this.successors = successors;
+        this.successorIds = successorIds;
+        this.timeoutMs = node.getTimeoutMs() != null && node.getTimeoutMs() > 0 ? node.getTimeoutMs() : 0;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public WorkflowNode getNode() {
+        return node;
+    }
+
+    public String getId() {
+        return node.getId();
+    }
+
+    public NodeType getType() {
+        return type;
+    }
+
+    /** 节点类型名称，避免在热路径上反复调用 toString */
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * 编译时解析的工具 handler，仅 FUNCTION 节点有值。
+     * 如果编译时工具尚未注册则为 null
+     */
+    public ToolHandler getHandler() {
+        return tool != null ? tool.getHandler() : null;
+    }
+
+    /**
+     * 编译时解析的工具描述，包含注册时缓存的工具定义。
+     * 如果编译时工具尚未注册则为 null
+     */
+    public ToolDescriptor getTool() {
+        return tool;
+    }
+
+    /** 编译时解析的工具定义，工具尚未注册时为 null */
+    public ToolDefinition getToolDefinition() {
+        return tool != null ? tool.getDefinition() : null;
+    }
+
+    public int getBranchCount() {
+        return branchKeys.length;
+    }
+
+    /** 分支序号对应的 nextNodes key，例如 "default"、"case1"、"else" */
+    public String getBranchKey(int branch) {
+        return branchKeys[branch];
+    }
+
+    /**
+     * 获取分支对应的后继节点下标
+     * @param branch 分支序号
+     * @return 后继下标，{@link #NO_NODE} 表示结束，{@link #UNRESOLVED} 表示引用了不存在的节点
+     */
+    public int getSuccessor(int branch) {
+        return successors[branch];
+    }
+
+    /** 分支在原始定义中引用的节点ID，用于生成错误信息 */
+    public String getSuccessorId(int branch) {
+        return successorIds[branch];
+    }
+
+    /** 节点执行超时时间（毫秒），0 表示不限制 */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /** PARALLEL 节点对应的 JOIN 节点下标，其他节点为 {@link #NO_NODE} */
+    public int getJoinIndex() {
+        return joinIndex;
+    }
+
+    void setJoinIndex(int joinIndex) {
+        this.joinIndex = joinIndex;
+    }
+
+    /**
+     * 数据流模式下本节点所在的依赖图，从本节点执行到段尾。顺序模式、段尾节点或无法并发时为 null
+     */
+    public DataflowSegment getSegment() {
+        return segment;
+    }
+
+    /**
+     * 本节点在 {@link #getSegment()} 中的位置
+     */
+    public int getSegmentPosition() {
+        return segmentPosition;
+    }
+
+    void setSegment(DataflowSegment segment, int position) {
+        this.segment = segment;
+        this.segmentPosition = position;
+    }
+
+    /**
+     * FUNCTION 节点 inputMap 中的参数名称，与 {@link #getInputDefs()}、{@link #getInputSlots()} 一一对应。
+     * 没有 inputMap 时为 null，表示使用全部上下文变量
+     */
+    public String[] getInputParams() {
+        return inputParams;
+    }
+
+    /** inputMap 中的变量定义 */
+    public VariableDef[] getInputDefs() {
+        return inputDefs;
+    }
+
+    /** inputMap 引用的变量槽位，常量为 {@link VariableSlots#NO_SLOT} */
+    public int[] getInputSlots() {
+        return inputSlots;
+    }
+
+    void setInputs(String[] inputParams, VariableDef[] inputDefs, int[] inputSlots) {
+        this.inputParams = inputParams;
+        this.inputDefs = inputDefs;
+        this.inputSlots = inputSlots;
+    }
+
+    /**
+     * CONDITION 节点每个条件组编译后的谓词，下标与分支序号一致，空条件组为 null
+     */
+    public ConditionPredicate[] getPredicates() {
+        return predicates;
+    }
+
+    void setPredicates(ConditionPredicate[] predicates) {
+        this.predicates = predicates;
+    }
+
+    /** 默认分支（非条件节点的唯一分支）的后继下标 */
+    public int getDefaultSuccessor() {
+        return successors[0];
+    }
+}
@@ -0,0 +1,64 @@
+package cn.yafex.workflow.execution;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 编译时为 (parent, name) 变量分配的固定槽位。
+ *
+ * <p>工作流输入、每个 FUNCTION 节点的输出以及 inputMap 和条件中引用的变量在编译时各占一个槽位，
+ * 执行上下文用数组保存这些变量，执行时按预先解析的槽位直接下标访问。
+ * 编译时未知的变量（例如工具未注册导致输出未知）不占槽位，由上下文的哈希索引保存。</p>
+ */
+public final class VariableSlots {
+    /** 变量没有分配槽位 */
+    public static final int NO_SLOT = -1;
+
+    private static final VariableSlots EMPTY = new VariableSlots();
+
+    private final Map<String, Integer> slotByKey = new HashMap<>();
+
+    VariableSlots() {
+    }
+
+    /** 没有任何槽位，所有变量由哈希索引保存 */
+    public static VariableSlots empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 获取或分配槽位，只在编译时调用
+     */
+    int assign(String parent, String name) {
+        if (name == null) {
+            return NO_SLOT;
+        }
+        return slotByKey.computeIfAbsent(key(parent, name), k -> slotByKey.size());
+    }
+
+    /**
+     * 查找变量的槽位
+     * @param parent 变量父级，工作流输入为 "global"，节点输出为节点ID
+     * @param name 变量名称
+     * @return 槽位，未分配时返回 {@link #NO_SLOT}
+     */
+    public int slotOf(String parent, String name) {
+        if (name == null) {
+            return NO_SLOT;
+        }
+        Integer slot = slotByKey.get(key(parent, name));
+        return slot != null ? slot : NO_SLOT;
+    }
+
+    /** 槽位数量 */
+    public int size() {
+        return slotByKey.size();
+    }
+
+    /**
+     * (parent, name) 组合键，变量名与父级都不会包含 '\0'
+     */
+    public static String key(String parent, String name) {
+        return parent == null ? name : parent + '\0' + name;
+    }
+}
@@ -2,9 +2,12 @@ package cn.yafex.workflow.execution;
 
 import cn.yafex.tools.schema.VariableDef;
 import cn.yafex.workflow.model.Workflow;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.time.LocalDateTime;
 
 /**
@@ -14,18 +17,75 @@ public class WorkflowContext {
     private String executionId;
     private String workflowId;
     private Workflow workflow;
-    private Map<String, VariableDef> variables;
+    /** 按名称保存的变量，每次写入替换为新版本，读取到的版本之后不会再变化 */
+    private volatile PersistentMap<String, VariableDef> variables;
     private String currentNodeId;
     private LocalDateTime startTime;
     private LocalDateTime endTime;
     private WorkflowStatus status;
+    private final CancellationToken cancellationToken;
+    private TimerWheel.Timeout deadline;
+    /** 并行分支上下文记录本分支写入的变量，汇合时合并回父上下文；非分支上下文为 null */
+    private Map<String, VariableDef> branchWrites;
+    /** 按 (parent, name) 索引的变量：编译时已知的变量按槽位存放，其余放入哈希索引 */
+    private final VariableSlots slots;
+    private final VariableDef[] slotValues;
+    private final Map<String, VariableDef> unslotted;
+    /** 执行结束时完成，同步等待执行结果的调用方在此挂起而不占用线程 */
+    private final CompletableFuture<WorkflowContext> completion;
+    /** 执行成功结束后按工作流 outputs 定义解析出的输出 */
+    private Map<String, Object> outputs;
+    /** 执行失败时的错误信息 */
+    private String error;
 
     public WorkflowContext(String workflowId) {
-        this.executionId = UUID.randomUUID().toString();
+        this(workflowId, VariableSlots.empty());
+    }
+
+    /**
+     * @param workflowId 工作流ID
+     * @param slots 执行计划编译时分配的变量槽位
+     */
+    public WorkflowContext(String workflowId, VariableSlots slots) {
+        this(UUID.randomUUID().toString(), workflowId, slots);
+    }
+
+    /**
+     * 使用已有的执行ID创建上下文，用于从执行日志恢复的执行
+     * @param executionId 执行ID
+     * @param workflowId 工作流ID
+     * @param slots 执行计划编译时分配的变量槽位
+     */
+    public WorkflowContext(String executionId, String workflowId, VariableSlots slots) {
+        this.executionId = executionId;
         this.workflowId = workflowId;
-        this.variables = new HashMap<>();
+        this.variables = PersistentMap.empty();
         this.startTime = LocalDateTime.now();
-        this.status = WorkflowStatus.RUNNING;
+        this.status = WorkflowStatus.QUEUED;
+        this.cancellationToken = new CancellationToken();
+        this.slots = slots;
+        this.slotValues = new VariableDef[slots.size()];
+        this.unslotted = new HashMap<>();
+        this.completion = new CompletableFuture<>();
+    }
+
+    /**
+     * 创建并行分支的上下文，共享执行ID和取消令牌，变量为分叉时的快照（与父上下文共享结构，不复制）
+     */
+    private WorkflowContext(WorkflowContext parent) {
+        this.executionId = parent.executionId;
+        this.workflowId = parent.workflowId;
+        this.workflow = parent.workflow;
+        this.variables = parent.variables;
+        this.currentNodeId = parent.currentNodeId;
+        this.startTime = parent.startTime;
+        this.status = parent.status;
+        this.cancellationToken = parent.cancellationToken;
+        this.branchWrites = new LinkedHashMap<>();
+        this.slots = parent.slots;
+        this.slotValues = parent.slotValues.clone();
+        this.unslotted = new HashMap<>(parent.unslotted);
+        this.completion = parent.completion;
     }
 
     public WorkflowContext(Workflow workflow) {
@@ -44,12 +104,10 @@ public class WorkflowContext {
 	/** 
 	 * 获取工作流执行上下文变量。
 	 * 
-	 * 此方法返回一个可以在工作流执行期间使用的变量映射。
-	 * 
-	 * 使用示例：
-	 * 
-	 *     result = executeTool(node.getToolName(), toolInputs);
-	 *     context.getVariables().putAll(result);
+	 * 此方法返回按变量名称保存的映射，不同节点的同名输出以最后写入的为准。
+	 * 返回的是当前变量的不可修改快照，获取是 O(1) 的，之后的写入不会改变已返回的快照，
+	 * 可以交给其他线程（调试事件、日志）读取而不需要复制或加锁。
+	 * 写入必须通过 {@link #setVariable(String, VariableDef)} 或 {@link #writeOutputs(Map)}。
 	 * 
 	 * @return 一个包含工作流执行上下文变量的映射。
 	 */
@@ -58,7 +116,10 @@ public class WorkflowContext {
     }
 
     public void setVariables(Map<String, VariableDef> variables) {
-        this.variables = variables;
+        this.variables = PersistentMap.copyOf(variables);
+        Arrays.fill(slotValues, null);
+        unslotted.clear();
+        variables.forEach((key, value) -> index(key, value));
     }
 
     public String getCurrentNodeId() {
@@ -97,13 +158,115 @@ public class WorkflowContext {
         this.workflow = workflow;
     }
 
+    /** 执行的取消令牌 */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * 执行结束（成功、失败、取消或超时）时完成的 future，结果为本上下文
+     */
+    public CompletableFuture<WorkflowContext> getCompletion() {
+        return completion;
+    }
+
+    public Map<String, Object> getOutputs() {
+        return outputs;
+    }
+
+    public void setOutputs(Map<String, Object> outputs) {
+        this.outputs = outputs;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /** 整个执行的截止时间定时器，未设置截止时间时为 null */
+    public TimerWheel.Timeout getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(TimerWheel.Timeout deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * 为并行分支创建子上下文。分支可以读取分叉前的所有变量，写入只对本分支可见，
+     * 直到汇合时通过 {@link #mergeBranch(WorkflowContext)} 合并
+     * @return 分支上下文
+     */
+    public WorkflowContext fork() {
+        return new WorkflowContext(this);
+    }
+
+    /**
+     * 写入节点输出。分支上下文同时记录写入，用于汇合时合并
+     * @param outputs 节点输出变量
+     */
+    public void writeOutputs(Map<String, VariableDef> outputs) {
+        variables = variables.plusAll(outputs);
+        outputs.forEach(this::index);
+        if (branchWrites != null) {
+            outputs.forEach(this::recordBranchWrite);
+        }
+    }
+
+    /**
+     * 按顺序写入以 (parent, name) 组合键记录的变量，变量名取自变量本身，按名称保存的变量以最后写入的为准。
+     * 用于合并分支和从执行日志恢复，不同节点写入的同名变量在槽位中都会保留
+     * @param recorded 组合键到变量的映射，按写入顺序排列
+     */
+    public void writeRecorded(Map<String, VariableDef> recorded) {
+        recorded.forEach((key, value) -> {
+            if (value == null || value.getName() == null) {
+                return;
+            }
+            variables = variables.plus(value.getName(), value);
+            index(value.getName(), value);
+            if (branchWrites != null) {
+                recordBranchWrite(value.getName(), value);
+            }
+        });
+    }
+
+    private void recordBranchWrite(String key, VariableDef value) {
+        String name = value != null && value.getName() != null ? value.getName() : key;
+        String recordKey = VariableSlots.key(value != null ? value.getParent() : null, name);
+        // 重新写入时移到末尾，合并时按最后写入的顺序覆盖同名变量
+        branchWrites.remove(recordKey);
+        branchWrites.put(recordKey, value);
+    }
+
+    /**
+     * 分支上下文中本分支写入的变量，以 (parent, name) 组合键区分，按最后写入的顺序排列；非分支上下文返回 null
+     */
+    public Map<String, VariableDef> getBranchWrites() {
+        return branchWrites;
+    }
+
+    /**
+     * 合并一个分支写入的变量。调用方按分支顺序依次合并，同名变量以后合并的分支为准
+     * @param branch 由 {@link #fork()} 创建的分支上下文
+     */
+    public void mergeBranch(WorkflowContext branch) {
+        if (branch.branchWrites != null) {
+            writeRecorded(branch.branchWrites);
+        }
+    }
+
     /**
      * Set a variable in the context
      * @param key Variable name
      * @param value Variable value
      */
     public void setVariable(String key, VariableDef value) {
-        this.variables.put(key, value);
+        this.variables = variables.plus(key, value);
+        index(key, value);
     }
 
     /**
@@ -124,11 +287,40 @@ public class WorkflowContext {
 	 * @return 变量值
 	 */
 	public VariableDef getVariable(String name, String parent) {
-		for (VariableDef variable : this.variables.values()) {
-			if (variable.getName().equals(name) && variable.getParent().equals(parent)) {
-				return variable;
-			}
+		int slot = slots.slotOf(parent, name);
+		if (slot != VariableSlots.NO_SLOT) {
+			return slotValues[slot];
+		}
+		return unslotted.get(VariableSlots.key(parent, name));
+	}
+
+	/**
+	 * 按编译时解析的槽位获取变量
+	 * @param slot {@link VariableSlots#slotOf(String, String)} 返回的槽位
+	 * @return 变量值，变量不存在时返回 null
+	 */
+	public VariableDef getVariable(int slot) {
+		return slotValues[slot];
+	}
+
+	/** 执行计划分配的变量槽位 */
+	public VariableSlots getSlots() {
+		return slots;
+	}
+
+	/**
+	 * 按 (parent, name) 索引变量，变量没有名称时使用映射的 key
+	 */
+	private void index(String key, VariableDef value) {
+		if (value == null) {
+			return;
+		}
+		String name = value.getName() != null ? value.getName() : key;
+		int slot = slots.slotOf(value.getParent(), name);
+		if (slot != VariableSlots.NO_SLOT) {
+			slotValues[slot] = value;
+		} else {
+			unslotted.put(VariableSlots.key(value.getParent(), name), value);
 		}
-		return null;
 	}
 } 
\ No newline at end of file
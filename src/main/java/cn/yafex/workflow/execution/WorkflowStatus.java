@@ -4,8 +4,11 @@ package cn.yafex.workflow.execution;
  * 工作流执行状态枚举
  */
 public enum WorkflowStatus {
+    QUEUED,
     RUNNING,
     COMPLETED,
     FAILED,
-    SUSPENDED
+    SUSPENDED,
+    CANCELLED,  // 被手动停止
+    TIMEOUT     // 超过执行截止时间
 } 
\ No newline at end of file
@@ -0,0 +1,53 @@
+package cn.yafex.workflow.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 条件操作符枚举
+ */
+public enum ConditionOperator {
+    EQUALS("=="),
+    NOT_EQUALS("!="),
+    GREATER_THAN(">"),
+    LESS_THAN("<"),
+    GREATER_THAN_OR_EQUALS(">="),
+    LESS_THAN_OR_EQUALS("<="),
+    CONTAINS("contains"),
+    NOT_CONTAINS("notContains"),
+    STARTS_WITH("startsWith"),
+    ENDS_WITH("endsWith"),
+    IS_EMPTY("isEmpty"),
+    IS_NOT_EMPTY("isNotEmpty");
+    
+    private static final Map<String, ConditionOperator> BY_SYMBOL = new HashMap<>();
+
+    static {
+        for (ConditionOperator operator : values()) {
+            BY_SYMBOL.put(operator.symbol, operator);
+        }
+    }
+
+    private final String symbol;
+    
+    ConditionOperator(String symbol) {
+        this.symbol = symbol;
+    }
+    
+    public String getSymbol() {
+        return symbol;
+    }
+    
+    /**
+     * 从操作符符号获取对应的枚举值
+     * @param symbol 操作符符号
+     * @return 对应的枚举值
+     */
+    public static ConditionOperator fromSymbol(String symbol) {
+        ConditionOperator operator = symbol != null ? BY_SYMBOL.get(symbol) : null;
+        if (operator == null) {
+            throw new IllegalArgumentException("Unsupported operator: " + symbol);
+        }
+        return operator;
+    }
+}
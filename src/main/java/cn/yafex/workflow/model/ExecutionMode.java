@@ -0,0 +1,9 @@
+package cn.yafex.workflow.model;
+
+/**
+ * 工作流执行模式枚举
+ */
+public enum ExecutionMode {
+    SEQUENTIAL, // 按 nextNodes 顺序逐个执行节点（默认）
+    DATAFLOW    // 连续的 FUNCTION 节点按 inputMap 依赖关系并发执行
+}
@@ -15,6 +15,7 @@ public class NodeExecutionEvent {
     private String nodeType;
     private String eventType; // ENTER or COMPLETE
 	private Map<String, VariableDef> nodeResult;
+    /** 节点进入时上下文变量的不可修改快照，之后的写入不会改变它 */
     private Map<String, VariableDef> contextVariables;
     private LocalDateTime timestamp;
     private Long duration; // 仅在COMPLETE事件中使用
@@ -22,6 +22,9 @@ public class NodeResult {
 	/** 条件节点对应输出 */
 	private String matchedCase;
 	private boolean evaluated;
+
+	/** 选中的分支序号，见 PlanNode 的分支约定。非条件节点恒为 0 */
+	private int branch;
 	
 	/** 函数节点执行结果 */
 	public NodeResult(NodeType nodeType, Map<String, VariableDef> outputs) {
@@ -31,8 +34,14 @@ public class NodeResult {
 
 	/** 条件节点执行结果 */
 	public NodeResult(NodeType nodeType, String matchedCase, boolean evaluated) {
+		this(nodeType, matchedCase, 0, evaluated);
+	}
+
+	/** 条件节点执行结果，附带选中的分支序号 */
+	public NodeResult(NodeType nodeType, String matchedCase, int branch, boolean evaluated) {
 		this.nodeType = nodeType;
 		this.matchedCase = matchedCase;
+		this.branch = branch;
 		this.evaluated = evaluated;
 
 		this.outputs = new HashMap<>();
@@ -92,4 +101,9 @@ public class NodeResult {
 	public boolean isEvaluated() {
 		return evaluated;
 	}
+
+	/** 获取选中的分支序号 */
+	public int getBranch() {
+		return branch;
+	}
 }
\ No newline at end of file
@@ -7,5 +7,7 @@ public enum NodeType {
     START,      // 工作流开始节点
     CONDITION,  // 条件分支节点
     FUNCTION,   // 函数执行节点
+    PARALLEL,   // 并行分叉节点，nextNodes 中每一项都是一个并发执行的分支
+    JOIN,       // 并行汇合节点，等待对应 PARALLEL 节点的所有分支完成
     END        // 工作流结束节点
 } 
\ No newline at end of file
@@ -28,6 +28,8 @@ public class Workflow {
     private String startNodeId;
 	/** 工作流是否激活 */
     private boolean isActive;
+	/** 执行模式，为空时按顺序执行 */
+    private ExecutionMode executionMode;
 
     public Workflow() {
         this.inputs = new HashMap<>();
@@ -110,6 +112,14 @@ public class Workflow {
         isActive = active;
     }
 
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
     /**
      * Add a node to the workflow
      * @param node The node to add
@@ -21,6 +21,7 @@ public class WorkflowNode {
     private String toolName;        // 仅用于FUNCTION类型节点
     private List<ConditionCase> conditions; // 仅用于CONDITION类型节点
     private Map<String, VariableDef> inputMap; // 用于FUNCTION类型节点的输入参数映射
+    private Long timeoutMs;         // 节点执行超时时间（毫秒），为空或不大于0表示不限制
 
     public WorkflowNode() {
         this.nextNodes = new HashMap<>();
@@ -129,6 +130,14 @@ public class WorkflowNode {
         this.toolName = toolName;
     }
 
+    public Long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
     public List<ConditionCase> getConditions() {
         return conditions;
     }
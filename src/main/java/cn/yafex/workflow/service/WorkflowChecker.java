@@ -4,6 +4,7 @@ import cn.yafex.tools.core.ToolDefinition;
 import cn.yafex.tools.schema.FieldDef;
 import cn.yafex.tools.schema.FieldType;
 import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.execution.ForkJoinMatcher;
 import cn.yafex.workflow.model.*;
 
 import java.util.*;
@@ -15,6 +16,7 @@ import org.springframework.stereotype.Service;
  * 1. 缺失必填参数
  * 2. 参数类型不匹配
  * 3. 主干的条件分支存在未连接的输出
+ * 4. 并行节点没有匹配的汇合节点
  */
 @Service
 public class WorkflowChecker {
@@ -106,9 +108,13 @@ public class WorkflowChecker {
             case CONDITION:
                 validateConditionNode(workflow, node, result);
                 break;
+            case PARALLEL:
+                validateParallelNode(workflow, node, result);
+                break;
             case START:
             case END:
-                // 不需要对START/END节点进行特殊验证
+            case JOIN:
+                // 不需要对START/END/JOIN节点进行特殊验证
                 break;
         }
         
@@ -118,6 +124,16 @@ public class WorkflowChecker {
         }
     }
     
+    /**
+     * 验证并行节点：所有分支必须汇合到同一个 JOIN 节点
+     */
+    private void validateParallelNode(Workflow workflow, WorkflowNode node, ValidationResult result) {
+        ForkJoinMatcher.Match match = new ForkJoinMatcher(workflow::getNodeById).match(node);
+        for (String error : match.getErrors()) {
+            result.addError(error);
+        }
+    }
+    
     /**
      * 验证函数节点的参数
      */
@@ -1,60 +1,301 @@
 package cn.yafex.workflow.service;
 
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.execution.PersistentMap;
 import cn.yafex.workflow.model.NodeExecutionEvent;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * 调试事件总线：把节点执行事件通过 SSE 推送给订阅者。
+ *
+ * <p>每个执行有一个事件通道，通道用环形缓冲区保存最近的事件，每个执行最多保存
+ * workflow.debug.buffer-events 个，内存有上限。同一个执行可以有任意多个订阅者，
+ * 新的订阅者先收到缓冲区中的事件，再接收之后的实时事件，因此在执行开始之后才订阅也不会丢失最初的事件
+ * （除非事件数量已超过缓冲区大小）。执行结束后通道继续保留供迟到的订阅者回放，
+ * 最多保留 workflow.debug.retained-executions 个已结束执行的通道。</p>
+ *
+ * <p>完整模式下每个 ENTER 事件携带全部上下文变量。增量模式下先发送一次完整快照（snapshot 事件），
+ * 之后的 ENTER 事件只携带与上一次发送的变量相比新增、变化和删除的变量。每个事件带有递增的序号，
+ * 客户端按序号应用增量即可重建每个节点进入时的上下文，发现序号不连续时可以请求重新发送完整快照。</p>
+ */
 @Service
 public class WorkflowDebugService {
-    private final Map<String, SseEmitter> debugEmitters = new ConcurrentHashMap<>();
+    /** 每个执行保存的最近事件数量，0 表示不保存，只推送给已有的订阅者 */
+    @Value("${workflow.debug.buffer-events:256}")
+    private int bufferEvents;
+
+    /** 保留供回放的已结束执行数量 */
+    @Value("${workflow.debug.retained-executions:100}")
+    private int retainedExecutions;
+
+    private final Map<String, DebugChannel> channels = new ConcurrentHashMap<>();
+    /** 已结束执行的通道，按结束顺序排列，超过数量上限时移除最早的通道 */
+    private final LinkedHashMap<String, DebugChannel> finished = new LinkedHashMap<>();
+
+    public WorkflowDebugService() {
+    }
 
     /**
-     * 注册一个新的 SSE Emitter 用于工作流调试。
+     * @param bufferEvents 每个执行保存的最近事件数量
+     * @param retainedExecutions 保留供回放的已结束执行数量
+     */
+    public WorkflowDebugService(int bufferEvents, int retainedExecutions) {
+        this.bufferEvents = bufferEvents;
+        this.retainedExecutions = retainedExecutions;
+    }
+
+    /**
+     * 订阅一个执行的调试事件。订阅者先收到缓冲区中的事件，再接收实时事件，执行结束时 SSE 流结束
      * @param executionId 工作流执行ID
-     * @return SseEmitter 用于客户端
+     * @param delta 是否使用增量模式
+     * @param running 执行是否仍在运行或排队；执行不在运行且通道已不再保留时不创建通道
+     * @return SseEmitter 用于客户端，执行不在运行且没有保留的事件时返回 null
+     * @throws IOException 如果回放事件失败
      */
-    public SseEmitter registerDebugSession(String executionId) {
+    public SseEmitter subscribe(String executionId, boolean delta, boolean running) throws IOException {
+        DebugChannel channel = running
+            ? channels.computeIfAbsent(executionId, id -> new DebugChannel(bufferEvents))
+            : channels.get(executionId);
+        if (channel == null) {
+            return null;
+        }
         SseEmitter emitter = new SseEmitter(0L); // No timeout
-        
-        emitter.onCompletion(() -> debugEmitters.remove(executionId));
-        emitter.onTimeout(() -> debugEmitters.remove(executionId));
-        emitter.onError(e -> debugEmitters.remove(executionId));
-        
-        debugEmitters.put(executionId, emitter);
+        Subscriber subscriber = new Subscriber(emitter, delta);
+        emitter.onCompletion(() -> channel.unsubscribe(subscriber));
+        emitter.onTimeout(() -> channel.unsubscribe(subscriber));
+        emitter.onError(e -> channel.unsubscribe(subscriber));
+        channel.subscribe(subscriber);
         return emitter;
     }
 
     /**
-     * 发送调试事件到客户端。如果客户端不存在，则不会发送。
+     * 发送调试事件：写入执行的缓冲区并推送给所有订阅者。
      * @param event 节点执行事件
      */
     public void sendDebugEvent(NodeExecutionEvent event) {
-        SseEmitter emitter = debugEmitters.get(event.getExecutionId());
-        if (emitter != null) {
-            try {
-                emitter.send(SseEmitter.event()
-                    .name("node-execution")
-                    .data(event));
-            } catch (IOException e) {
-                emitter.completeWithError(e);
-                debugEmitters.remove(event.getExecutionId());
+        if (bufferEvents <= 0) {
+            DebugChannel channel = channels.get(event.getExecutionId());
+            if (channel != null) {
+                channel.publish(event);
             }
+            return;
         }
+        channels.computeIfAbsent(event.getExecutionId(), id -> new DebugChannel(bufferEvents)).publish(event);
     }
 
     /**
-     * 完成调试会话。
+     * 增量模式的订阅者重新接收完整快照，之后的增量以该快照为基准。完整模式的订阅者不受影响
+     * @param executionId 工作流执行ID
+     * @param variables 当前的上下文变量
+     * @return 如果执行有订阅者则返回true
+     */
+    public boolean resync(String executionId, Map<String, VariableDef> variables) {
+        DebugChannel channel = channels.get(executionId);
+        return channel != null && channel.resync(executionId, variables);
+    }
+
+    /**
+     * 执行结束：结束所有订阅者的 SSE 流，通道保留供迟到的订阅者回放
      * @param executionId 工作流执行ID
      */
     public void completeDebugSession(String executionId) {
-        SseEmitter emitter = debugEmitters.get(executionId);
-        if (emitter != null) {
-            emitter.complete();
-            debugEmitters.remove(executionId);
+        // 没有事件的执行也保留一个已结束的通道，结束前一刻订阅的客户端不会一直等待
+        DebugChannel channel = channels.computeIfAbsent(executionId, id -> new DebugChannel(bufferEvents));
+        channel.finish();
+        synchronized (finished) {
+            finished.put(executionId, channel);
+            Iterator<Map.Entry<String, DebugChannel>> oldest = finished.entrySet().iterator();
+            while (finished.size() > retainedExecutions && oldest.hasNext()) {
+                channels.remove(oldest.next().getKey());
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * 调试事件总线的状态
+     * @return 通道数量、订阅者数量和缓冲的事件数量
+     */
+    public Map<String, Object> getStats() {
+        int subscribers = 0;
+        long buffered = 0;
+        for (DebugChannel channel : channels.values()) {
+            subscribers += channel.subscriberCount();
+            buffered += channel.bufferedCount();
+        }
+        int retained;
+        synchronized (finished) {
+            retained = finished.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("channels", channels.size());
+        stats.put("retained", retained);
+        stats.put("subscribers", subscribers);
+        stats.put("bufferedEvents", buffered);
+        stats.put("bufferEvents", bufferEvents);
+        stats.put("retainedExecutions", retainedExecutions);
+        return stats;
+    }
+
+    /**
+     * 一个执行的事件通道。事件可能来自不同线程（并行分支、数据流节点），
+     * 写入缓冲区、推送和订阅都在通道上同步，每个订阅者收到的事件顺序一致且不重复
+     */
+    private static final class DebugChannel {
+        private final NodeExecutionEvent[] buffer;
+        /** 下一个事件在缓冲区中的位置 */
+        private int head;
+        private int size;
+        /** 遍历时取快照，结束 SSE 流触发的取消订阅回调不影响正在进行的遍历 */
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private boolean done;
+
+        DebugChannel(int capacity) {
+            this.buffer = new NodeExecutionEvent[Math.max(0, capacity)];
+        }
+
+        synchronized void publish(NodeExecutionEvent event) {
+            if (buffer.length > 0) {
+                buffer[head] = event;
+                head = (head + 1) % buffer.length;
+                size = Math.min(size + 1, buffer.length);
+            }
+            for (Subscriber subscriber : subscribers) {
+                try {
+                    subscriber.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    subscribers.remove(subscriber);
+                    subscriber.emitter.completeWithError(e);
+                }
+            }
+        }
+
+        synchronized void subscribe(Subscriber subscriber) throws IOException {
+            int start = (head - size + buffer.length) % Math.max(1, buffer.length);
+            for (int i = 0; i < size; i++) {
+                subscriber.send(buffer[(start + i) % buffer.length]);
+            }
+            if (done) {
+                subscriber.emitter.complete();
+            } else {
+                subscribers.add(subscriber);
+            }
+        }
+
+        synchronized void unsubscribe(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+        }
+
+        synchronized boolean resync(String executionId, Map<String, VariableDef> variables) {
+            boolean any = false;
+            for (Subscriber subscriber : subscribers) {
+                try {
+                    subscriber.resync(executionId, variables);
+                    any = true;
+                } catch (IOException | IllegalStateException e) {
+                    subscribers.remove(subscriber);
+                    subscriber.emitter.completeWithError(e);
+                }
+            }
+            return any;
+        }
+
+        synchronized void finish() {
+            done = true;
+            for (Subscriber subscriber : subscribers) {
+                subscriber.emitter.complete();
+            }
+            subscribers.clear();
+        }
+
+        synchronized int subscriberCount() {
+            return subscribers.size();
+        }
+
+        synchronized int bufferedCount() {
+            return size;
+        }
+    }
+
+    /**
+     * 一个订阅者的发送状态，只在所属通道的锁内访问
+     */
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final boolean delta;
+        private long sequence;
+        /** 客户端当前持有的变量，尚未发送快照时为 null */
+        private PersistentMap<String, VariableDef> sent;
+
+        Subscriber(SseEmitter emitter, boolean delta) {
+            this.emitter = emitter;
+            this.delta = delta;
+        }
+
+        void send(NodeExecutionEvent event) throws IOException {
+            if (!delta) {
+                emitter.send(SseEmitter.event().name("node-execution").data(event));
+                return;
+            }
+            Map<String, Object> data = new LinkedHashMap<>();
+            if (event.getContextVariables() != null) {
+                PersistentMap<String, VariableDef> variables = PersistentMap.copyOf(event.getContextVariables());
+                if (sent == null) {
+                    sendSnapshot(event.getExecutionId(), variables);
+                } else {
+                    Map<String, VariableDef> changed = new LinkedHashMap<>();
+                    List<String> removed = new ArrayList<>();
+                    variables.diff(sent, changed::put, removed::add);
+                    sent = variables;
+                    data.put("changed", changed);
+                    data.put("removed", removed);
+                }
+            }
+            data.put("executionId", event.getExecutionId());
+            data.put("nodeId", event.getNodeId());
+            data.put("nodeName", event.getNodeName());
+            data.put("nodeType", event.getNodeType());
+            data.put("eventType", event.getEventType());
+            data.put("timestamp", event.getTimestamp());
+            if (event.getNodeResult() != null) {
+                data.put("nodeResult", event.getNodeResult());
+            }
+            if (event.getDuration() != null) {
+                data.put("duration", event.getDuration());
+            }
+            send("node-execution", data);
+        }
+
+        void resync(String executionId, Map<String, VariableDef> variables) throws IOException {
+            if (delta) {
+                sendSnapshot(executionId, PersistentMap.copyOf(variables));
+            }
+        }
+
+        private void sendSnapshot(String executionId, PersistentMap<String, VariableDef> variables) throws IOException {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("executionId", executionId);
+            data.put("variables", variables);
+            sent = variables;
+            send("snapshot", data);
+        }
+
+        private void send(String name, Map<String, Object> data) throws IOException {
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("seq", ++sequence);
+            payload.putAll(data);
+            emitter.send(SseEmitter.event().name(name).id(Long.toString(sequence)).data(payload));
         }
     }
-} 
\ No newline at end of file
+}
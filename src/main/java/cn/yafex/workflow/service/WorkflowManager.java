@@ -1,11 +1,28 @@
 package cn.yafex.workflow.service;
 
 import cn.yafex.workflow.model.*;
+import cn.yafex.workflow.execution.CancellationToken;
+import cn.yafex.workflow.execution.ConditionPredicate;
+import cn.yafex.workflow.execution.DataflowSegment;
+import cn.yafex.workflow.execution.ExecutionCancelledException;
+import cn.yafex.workflow.execution.ExecutionJournal;
+import cn.yafex.workflow.execution.ExecutionPlan;
+import cn.yafex.workflow.execution.ExecutionPriority;
+import cn.yafex.workflow.execution.ExecutionRejectedException;
+import cn.yafex.workflow.execution.ExecutionResultStore;
+import cn.yafex.workflow.execution.ExecutionRun;
+import cn.yafex.workflow.execution.ExecutionScheduler;
+import cn.yafex.workflow.execution.PlanNode;
+import cn.yafex.workflow.execution.TimerWheel;
+import cn.yafex.workflow.execution.VariableSlots;
 import cn.yafex.workflow.execution.WorkflowContext;
 import cn.yafex.workflow.execution.WorkflowStatus;
+import cn.yafex.workflow.util.EngineMetrics;
 import cn.yafex.workflow.util.WorkflowLogger;
 import cn.yafex.workflow.util.WorkflowLoader;
-import cn.yafex.tools.core.ToolHandler;
+import cn.yafex.tools.core.AsyncToolHandler;
+import cn.yafex.tools.core.ToolDescriptor;
+import cn.yafex.tools.core.TypedToolInvoker;
 import cn.yafex.tools.core.ToolResponse;
 import cn.yafex.tools.core.ToolRegistry;
 import cn.yafex.tools.schema.FieldDef;
@@ -13,60 +30,42 @@ import cn.yafex.tools.schema.VariableDef;
 import cn.yafex.tools.schema.FieldType;
 import cn.yafex.tools.exceptions.ToolException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.alibaba.fastjson.JSON;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.List;
-import java.util.Collection;
-
-/**
- * 条件操作符枚举
- */
-enum ConditionOperator {
-    EQUALS("=="),
-    NOT_EQUALS("!="),
-    GREATER_THAN(">"),
-    LESS_THAN("<"),
-    GREATER_THAN_OR_EQUALS(">="),
-    LESS_THAN_OR_EQUALS("<="),
-    CONTAINS("contains"),
-    NOT_CONTAINS("notContains"),
-    STARTS_WITH("startsWith"),
-    ENDS_WITH("endsWith"),
-    IS_EMPTY("isEmpty"),
-    IS_NOT_EMPTY("isNotEmpty");
-    
-    private final String symbol;
-    
-    ConditionOperator(String symbol) {
-        this.symbol = symbol;
-    }
-    
-    public String getSymbol() {
-        return symbol;
-    }
-    
-    /**
-     * 从操作符符号获取对应的枚举值
-     * @param symbol 操作符符号
-     * @return 对应的枚举值
-     */
-    public static ConditionOperator fromSymbol(String symbol) {
-        for (ConditionOperator operator : values()) {
-            if (operator.getSymbol().equals(symbol)) {
-                return operator;
-            }
-        }
-        throw new IllegalArgumentException("Unsupported operator: " + symbol);
-    }
-}
 
 /**
  * Service for managing and executing workflows
@@ -75,17 +74,93 @@ enum ConditionOperator {
 public class WorkflowManager {
     private final WorkflowLoader jsonFileHandler;
     private final WorkflowLogger workflowLogger;
-    private final ExecutorService executorService;
+    private final ExecutionScheduler scheduler;
+    private final TimerWheel timerWheel;
+    private final ExecutionJournal journal;
+    /** 已结束执行的结果，执行结束时从 activeWorkflows 转存到这里 */
+    private final ExecutionResultStore results;
     private final Map<String, WorkflowContext> activeWorkflows;
+    /** 已开始推进的执行，包括挂起等待中的执行 */
+    private final Map<String, ExecutionRun> activeRuns;
     private final WorkflowDebugService debugService;
+    private final EngineMetrics metrics;
+
+    /** 未在请求中指定截止时间时使用的默认执行超时（毫秒），0 表示不限制 */
+    @Value("${workflow.execution.default-timeout-ms:0}")
+    private long defaultTimeoutMs;
+
+    /** 并行分支线程池的并行度，0 表示使用 CPU 核数 */
+    @Value("${workflow.parallel.parallelism:0}")
+    private int parallelism;
+
+    /** 数据流模式下单个执行同时运行的节点数量上限，0 表示与并行线程池的并行度相同 */
+    @Value("${workflow.dataflow.parallelism:0}")
+    private int dataflowParallelism;
+
+    /** 批量执行默认同时运行的执行数量，0 表示与调度器工作线程数相同 */
+    @Value("${workflow.batch.parallelism:0}")
+    private int batchParallelism;
+
+    /** 一次推进最多执行的节点数量，用完后执行让出工作线程回到队列末尾，0 表示不限制 */
+    @Value("${workflow.scheduler.step-nodes:100}")
+    private int stepNodes;
+
+    /** {@link #runPath} 在执行挂起或让出工作线程时的返回值 */
+    private static final int SUSPENDED = -3;
+
+    /** 执行 PARALLEL 节点各分支的 work-stealing 线程池，所有执行共享 */
+    private ForkJoinPool parallelPool;
 	
     @Autowired
-    public WorkflowManager(WorkflowLoader jsonFileHandler, WorkflowLogger workflowLogger, WorkflowDebugService debugService) {
+    public WorkflowManager(WorkflowLoader jsonFileHandler, WorkflowLogger workflowLogger, WorkflowDebugService debugService,
+                           ExecutionScheduler scheduler, TimerWheel timerWheel, ExecutionJournal journal,
+                           ExecutionResultStore results, EngineMetrics metrics) {
         this.jsonFileHandler = jsonFileHandler;
         this.workflowLogger = workflowLogger;
         this.debugService = debugService;
-        this.executorService = Executors.newCachedThreadPool();
+        this.scheduler = scheduler;
+        this.timerWheel = timerWheel;
+        this.journal = journal;
+        this.results = results;
+        this.metrics = metrics;
         this.activeWorkflows = new ConcurrentHashMap<>();
+        this.activeRuns = new ConcurrentHashMap<>();
+    }
+
+    @PostConstruct
+    public void init() {
+        int size = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        parallelPool = new ForkJoinPool(size, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("workflow-parallel-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (parallelPool != null) {
+            parallelPool.shutdownNow();
+        }
+    }
+
+    /**
+     * 设置一次推进最多执行的节点数量
+     * @param stepNodes 节点数量，0 表示不限制
+     */
+    public void setStepNodes(int stepNodes) {
+        this.stepNodes = stepNodes;
+    }
+
+    /**
+     * 设置并行分支线程池的大小和数据流段同时执行的节点数量，在 {@link #init()} 之前调用
+     * @param parallelism 线程池大小，0 表示与 CPU 核数相同
+     * @param dataflowParallelism 同时执行的节点数量，0 表示与线程池大小相同
+     */
+    public void setParallelism(int parallelism, int dataflowParallelism) {
+        this.parallelism = parallelism;
+        this.dataflowParallelism = dataflowParallelism;
     }
 
     /**
@@ -95,156 +170,1060 @@ public class WorkflowManager {
      * @return 执行ID
      */
     public String startWorkflow(String workflowId, Map<String, Object> inputs) {
+        return startWorkflow(workflowId, inputs, ExecutionPriority.NORMAL, null);
+    }
+
+    /**
+     * 以指定优先级和截止时间启动工作流执行
+     * @param workflowId 要执行的工作流ID
+     * @param inputs 初始全局变量
+     * @param priority 调度优先级
+     * @param timeoutMs 整个执行的超时时间（毫秒），从提交开始计算，包含排队时间。为空时使用默认值
+     * @return 执行ID
+     * @throws ExecutionRejectedException 如果调度队列已满
+     */
+    public String startWorkflow(String workflowId, Map<String, Object> inputs, ExecutionPriority priority, Long timeoutMs) {
+        return submitWorkflow(workflowId, inputs, priority, timeoutMs).getExecutionId();
+    }
+
+    /**
+     * 提交工作流执行并返回执行上下文。调用方可以通过 {@link WorkflowContext#getCompletion()}
+     * 在执行结束时获得状态和输出，而不需要轮询
+     * @param workflowId 要执行的工作流ID
+     * @param inputs 初始全局变量
+     * @param priority 调度优先级
+     * @param timeoutMs 整个执行的超时时间（毫秒），为空时使用默认值
+     * @return 执行上下文
+     * @throws ExecutionRejectedException 如果调度队列已满
+     */
+    public WorkflowContext submitWorkflow(String workflowId, Map<String, Object> inputs, ExecutionPriority priority, Long timeoutMs) {
         try {
 			System.out.println("startWorkflow: " + workflowId);
-            Workflow workflow = jsonFileHandler.loadWorkflow(workflowId);
-            WorkflowContext context = new WorkflowContext(workflowId);
-            
-            // 设置初始变量
-			Map<String, VariableDef> initContext = new HashMap<>();
-			// 检查所有参数
-			Map<String, FieldDef> definedInputs = workflow.getInputs();
-			for (Map.Entry<String, FieldDef> entry : definedInputs.entrySet()) {
-				String key = entry.getKey();
-				FieldDef value = entry.getValue();
-				// 必填参数
-				if (value.isRequired() && !inputs.containsKey(key)) {
-					throw new RuntimeException("缺少必填参数: " + key);
-				}
-				VariableDef varDef = VariableDef.fromFieldDef(value, "global");
-				// 如果输入参数为空，则使用默认值
-				varDef.setValue(inputs.get(key)!=null?inputs.get(key):value.getDefaultValue());
-				initContext.put(key, varDef);
+            return submitPlan(jsonFileHandler.loadPlan(workflowId), inputs, priority, timeoutMs);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to start workflow: " + workflowId, e);
+        }
+    }
+
+    /**
+     * 使用已编译的执行计划提交一次执行
+     */
+    private WorkflowContext submitPlan(ExecutionPlan plan, Map<String, Object> inputs, ExecutionPriority priority, Long timeoutMs) {
+        if (inputs == null) {
+            inputs = new HashMap<>();
+        }
+        Workflow workflow = plan.getWorkflow();
+        WorkflowContext context = new WorkflowContext(workflow.getId(), plan.getSlots());
+        context.setWorkflow(workflow);
+        
+        // 设置初始变量
+		Map<String, VariableDef> initContext = new HashMap<>();
+		// 检查所有参数
+		Map<String, FieldDef> definedInputs = workflow.getInputs();
+		for (Map.Entry<String, FieldDef> entry : definedInputs.entrySet()) {
+			String key = entry.getKey();
+			FieldDef value = entry.getValue();
+			// 必填参数
+			if (value.isRequired() && !inputs.containsKey(key)) {
+				throw new RuntimeException("缺少必填参数: " + key);
 			}
-			context.setVariables(initContext);
-            
-            activeWorkflows.put(context.getExecutionId(), context);
-            workflowLogger.logWorkflowStart(context.getExecutionId(), workflow.getName());
+			VariableDef varDef = VariableDef.fromFieldDef(value, ExecutionPlan.GLOBAL_PARENT);
+			// 如果输入参数为空，则使用默认值
+			varDef.setValue(inputs.get(key)!=null?inputs.get(key):value.getDefaultValue());
+			initContext.put(key, varDef);
+		}
+		context.setVariables(initContext);
+        
+        activeWorkflows.put(context.getExecutionId(), context);
 
-            // Start workflow execution in a separate thread
-            executorService.submit(() -> executeWorkflow(workflow, context));
+        // 开始记录必须先于执行本身的任何记录写入执行日志
+        long deadlineMs = timeoutMs != null ? timeoutMs : defaultTimeoutMs;
+        ExecutionPriority effectivePriority = priority != null ? priority : ExecutionPriority.NORMAL;
+        journal.recordStart(context.getExecutionId(), workflow.getId(), effectivePriority,
+            deadlineMs > 0 ? System.currentTimeMillis() + deadlineMs : 0, context.getVariables());
 
-            return context.getExecutionId();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to start workflow: " + workflowId, e);
+        // 截止时间到达时取消执行，排队中的执行开始时会直接结束。
+        // 定时器必须在提交之前注册，否则很快结束的执行在收尾时看不到它，定时器会在执行结束后才被取消或触发
+        if (deadlineMs > 0) {
+            CancellationToken token = context.getCancellationToken();
+            context.setDeadline(timerWheel.schedule(
+                () -> token.cancel(WorkflowStatus.TIMEOUT, "执行超过截止时间: " + deadlineMs + "ms"), deadlineMs));
         }
+
+        // 交给调度器执行，队列已满时拒绝
+        try {
+            scheduler.submit(() -> executeWorkflow(plan, context, effectivePriority), effectivePriority);
+        } catch (ExecutionRejectedException e) {
+            if (context.getDeadline() != null) {
+                context.getDeadline().cancel();
+            }
+            activeWorkflows.remove(context.getExecutionId());
+            journal.recordEnd(context.getExecutionId(), "REJECTED");
+            throw e;
+        }
+
+        return context;
     }
 
     /**
-     * 执行工作流
-     * @param workflow 要执行的工作流
-     * @param context 执行上下文
+     * 对同一个工作流批量执行多组输入。工作流只加载和编译一次，同时运行的执行数量不超过 parallelism，
+     * 每个执行结束后把结果交给 sink。sink 只在调用线程上被调用
+     * @param workflowId 要执行的工作流ID
+     * @param items 输入序列，按需读取
+     * @param parallelism 同时运行的执行数量上限，0 表示使用 workflow.batch.parallelism
+     * @param inputOrder 为 true 时按输入顺序输出结果，否则按完成顺序输出
+     * @param priority 调度优先级
+     * @param timeoutMs 每个执行的超时时间（毫秒），为空时使用默认值
+     * @param sink 接收每一项的结果，结果包含 index、executionId、status、durationMs、outputs、error
+     * @return 汇总统计：数量、各状态计数、吞吐量、延迟分布。输入格式错误时停止读取，
+     *         已提交的执行照常输出结果，汇总中的 error 为错误信息
+     * @throws IOException 如果工作流不存在或加载失败
      */
-    private void executeWorkflow(Workflow workflow, WorkflowContext context) {
-        long startTime = System.currentTimeMillis();
-        String currentNodeId = workflow.getStartNodeId();
+    public Map<String, Object> executeBatch(String workflowId, Iterator<Map<String, Object>> items, int parallelism,
+                                            boolean inputOrder, ExecutionPriority priority, Long timeoutMs,
+                                            Consumer<Map<String, Object>> sink) throws IOException {
+        ExecutionPlan plan = jsonFileHandler.loadPlan(workflowId);
+        int limit = parallelism > 0 ? parallelism
+            : batchParallelism > 0 ? batchParallelism : scheduler.getWorkerCount();
+        long startTime = System.nanoTime();
+        BlockingQueue<Map<String, Object>> finished = new LinkedBlockingQueue<>();
+        BatchCollector collector = new BatchCollector(inputOrder, sink);
+        int submitted = 0;
+        // 已提交但尚未输出的数量，按输入顺序输出时包含等待前面结果的项，从而限制重排序缓冲区的大小
+        int window = 0;
+        String inputError = null;
 
         try {
-			// 执行工作流，直到没有下一个节点
-            while (currentNodeId != null) {
-                WorkflowNode node = workflow.getNodeById(currentNodeId);
-                if (node == null) {
-                    throw new RuntimeException("Node not found: " + currentNodeId);
+            while (true) {
+                while (window >= limit) {
+                    window -= collector.accept(finished.take());
+                }
+                Map<String, Object> input;
+                try {
+                    if (!items.hasNext()) {
+                        break;
+                    }
+                    input = items.next();
+                } catch (RuntimeException e) {
+                    // 输入格式错误：不再读取后续输入，已提交的执行仍然等待并输出结果
+                    inputError = e.getMessage();
+                    break;
+                }
+                int index = submitted++;
+                long itemStart = System.nanoTime();
+                try {
+                    WorkflowContext context = submitPlan(plan, input, priority, timeoutMs);
+                    context.getCompletion().thenAccept(done -> {
+                        Map<String, Object> result = executionResult(done);
+                        result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - itemStart));
+                        result.put("index", index);
+                        finished.add(result);
+                    });
+                } catch (Exception e) {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("index", index);
+                    result.put("status", e instanceof ExecutionRejectedException ? "REJECTED" : WorkflowStatus.FAILED.toString());
+                    result.put("error", e.getMessage());
+                    finished.add(result);
+                }
+                window++;
+                Map<String, Object> result;
+                while ((result = finished.poll()) != null) {
+                    window -= collector.accept(result);
                 }
+            }
+            while (window > 0) {
+                window -= collector.accept(finished.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("批量执行被中断", e);
+        }
 
-                context.setCurrentNodeId(currentNodeId);
-                long nodeStartTime = System.currentTimeMillis();
-
-                // 设置节点进入事件
-                NodeExecutionEvent enterEvent = new NodeExecutionEvent(
-                    context.getExecutionId(),
-                    node.getId(),
-                    node.getName(),
-                    node.getType().toString(),
-                    "ENTER"
-                );
-                enterEvent.setContextVariables(context.getVariables());
-                debugService.sendDebugEvent(enterEvent);
-                
-                // 根据节点类型执行节点
-                NodeResult nodeResult = executeNode(node, context);
-                
-				if(nodeResult.hasError()) {
-					// 出错直接中断
-					throw new RuntimeException(nodeResult.getErrorCode() + " : " + nodeResult.getErrorMessage());
-				}
-				if(nodeResult.getOutputs() != null && node.getType() != NodeType.CONDITION) {
-					// 非条件节点，将结果写入上下文
-					context.getVariables().putAll(nodeResult.getOutputs());
-				}
+        Map<String, Object> summary = collector.summary(submitted, System.nanoTime() - startTime);
+        if (inputError != null) {
+            summary.put("error", "批量输入格式错误: " + inputError);
+        }
+        return summary;
+    }
 
-                long nodeExecutionTime = System.currentTimeMillis() - nodeStartTime;
-
-                // 创建节点完成事件
-                NodeExecutionEvent completeEvent = new NodeExecutionEvent(
-                    context.getExecutionId(),
-                    node.getId(),
-                    node.getName(),
-                    node.getType().toString(),
-                    "COMPLETE"
-                );
-                completeEvent.setNodeResult(nodeResult.getOutputs());
-                completeEvent.setDuration(nodeExecutionTime);
-                
-                // 使用NodeExecutionEvent作为日志输入源
-                workflowLogger.logNodeExecution(completeEvent, workflow.getName());
+    /**
+     * 执行结果的响应格式：执行ID、状态、耗时，以及成功时的输出或失败时的错误信息
+     * @param context 执行上下文
+     * @return 结果映射
+     */
+    public Map<String, Object> executionResult(WorkflowContext context) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("executionId", context.getExecutionId());
+        response.put("status", context.getStatus().toString());
+        if (context.getEndTime() != null) {
+            response.put("durationMs", Duration.between(context.getStartTime(), context.getEndTime()).toMillis());
+        }
+        if (context.getOutputs() != null) {
+            response.put("outputs", context.getOutputs());
+        }
+        if (context.getError() != null) {
+            response.put("error", context.getError());
+        }
+        return response;
+    }
 
-                // 发送节点完成事件到调试服务
-                debugService.sendDebugEvent(completeEvent);
+    /**
+     * 批量执行的结果收集：按需重排序并统计，只在批量执行的调用线程上使用
+     */
+    private static final class BatchCollector {
+        private final boolean inputOrder;
+        private final Consumer<Map<String, Object>> sink;
+        private final Map<Integer, Map<String, Object>> reorder = new HashMap<>();
+        private final Map<String, Integer> statusCounts = new TreeMap<>();
+        private long[] latencies = new long[64];
+        private int latencyCount;
+        private int nextIndex;
 
-                // 确定下一个节点
-                if (nodeResult.getNodeType() == NodeType.CONDITION) {
-                    // 对于条件节点，使用条件评估结果作为路径选择器
-                    String path = (String) nodeResult.getMatchedCase();
-                    currentNodeId = node.getNextNodes().get(path);
-                } else {
-                    currentNodeId = node.getNextNodes().get("default");
+        BatchCollector(boolean inputOrder, Consumer<Map<String, Object>> sink) {
+            this.inputOrder = inputOrder;
+            this.sink = sink;
+        }
+
+        /**
+         * 接收一项结果
+         * @return 本次输出的结果数量
+         */
+        int accept(Map<String, Object> result) {
+            statusCounts.merge((String) result.get("status"), 1, Integer::sum);
+            Object duration = result.get("durationMs");
+            if (duration != null) {
+                if (latencyCount == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
                 }
+                latencies[latencyCount++] = (Long) duration;
             }
-            
+            if (!inputOrder) {
+                sink.accept(result);
+                return 1;
+            }
+            reorder.put((Integer) result.get("index"), result);
+            int emitted = 0;
+            Map<String, Object> next;
+            while ((next = reorder.remove(nextIndex)) != null) {
+                sink.accept(next);
+                nextIndex++;
+                emitted++;
+            }
+            return emitted;
+        }
+
+        Map<String, Object> summary(int total, long elapsedNanos) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("total", total);
+            summary.put("statusCounts", statusCounts);
+            summary.put("elapsedMs", elapsedMs);
+            summary.put("throughputPerSec", elapsedNanos > 0 ? total * 1_000_000_000.0 / elapsedNanos : 0);
+
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            Map<String, Object> latency = new LinkedHashMap<>();
+            long sum = 0;
+            for (long value : sorted) {
+                sum += value;
+            }
+            latency.put("avgMs", sorted.length > 0 ? sum / sorted.length : 0);
+            latency.put("p50Ms", percentile(sorted, 0.50));
+            latency.put("p95Ms", percentile(sorted, 0.95));
+            latency.put("p99Ms", percentile(sorted, 0.99));
+            latency.put("maxMs", sorted.length > 0 ? sorted[sorted.length - 1] : 0);
+            summary.put("latency", latency);
+            return summary;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+        }
+    }
+
+    /**
+     * 执行工作流
+     * @param plan 要执行的工作流的执行计划
+     * @param context 执行上下文
+     * @param priority 调度优先级，挂起后恢复时使用同一优先级
+     */
+    private void executeWorkflow(ExecutionPlan plan, WorkflowContext context, ExecutionPriority priority) {
+        executeWorkflow(plan, context, priority, plan.getStartIndex());
+    }
+
+    /**
+     * 从指定节点开始执行工作流
+     * @param plan 要执行的工作流的执行计划
+     * @param context 执行上下文
+     * @param priority 调度优先级
+     * @param startIndex 开始的节点下标，从执行日志恢复的执行从最后一个检查点之后的节点开始
+     */
+    private void executeWorkflow(ExecutionPlan plan, WorkflowContext context, ExecutionPriority priority, int startIndex) {
+        context.setStatus(WorkflowStatus.RUNNING);
+        workflowLogger.logWorkflowStart(context.getExecutionId(), plan.getWorkflow());
+        ExecutionRun run = new ExecutionRun(plan, context, priority, System.currentTimeMillis());
+        run.resume(() -> startIndex);
+        activeRuns.put(context.getExecutionId(), run);
+        step(run);
+    }
+
+    /**
+     * 应用启动完成后恢复执行日志中未结束的执行：重建上下文，从最后一个检查点之后的节点继续。
+     * 恢复的执行不受队列容量限制；已经超过截止时间的执行开始时直接以超时结束
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverExecutions() {
+        List<ExecutionJournal.RecoveredExecution> recovered = journal.takeRecovered();
+        for (ExecutionJournal.RecoveredExecution execution : recovered) {
+            try {
+                recoverExecution(execution);
+            } catch (Exception e) {
+                System.err.println("恢复执行失败: " + execution.getExecutionId() + " - " + e.getMessage());
+                journal.recordEnd(execution.getExecutionId(), WorkflowStatus.FAILED.toString());
+            }
+        }
+        if (!recovered.isEmpty()) {
+            System.out.println("从执行日志恢复执行: " + recovered.size());
+        }
+    }
+
+    private void recoverExecution(ExecutionJournal.RecoveredExecution execution) throws IOException {
+        ExecutionPlan plan = jsonFileHandler.loadPlan(execution.getWorkflowId());
+        int start = plan.getStartIndex();
+        if (execution.isCheckpointed()) {
+            start = execution.getNextNodeId() != null ? plan.indexOf(execution.getNextNodeId()) : PlanNode.NO_NODE;
+            if (start == PlanNode.UNRESOLVED) {
+                throw new IllegalStateException("工作流定义已变化，找不到节点: " + execution.getNextNodeId());
+            }
+        }
+        Workflow workflow = plan.getWorkflow();
+        WorkflowContext context = new WorkflowContext(execution.getExecutionId(), workflow.getId(), plan.getSlots());
+        context.setWorkflow(workflow);
+        context.setVariables(execution.getVariables());
+        context.writeRecorded(execution.getOutputs());
+        activeWorkflows.put(context.getExecutionId(), context);
+
+        if (execution.getDeadline() > 0) {
+            long remaining = execution.getDeadline() - System.currentTimeMillis();
+            CancellationToken token = context.getCancellationToken();
+            if (remaining <= 0) {
+                token.cancel(WorkflowStatus.TIMEOUT, "执行超过截止时间");
+            } else {
+                context.setDeadline(timerWheel.schedule(
+                    () -> token.cancel(WorkflowStatus.TIMEOUT, "执行超过截止时间"), remaining));
+            }
+        }
+        int startIndex = start;
+        scheduler.resume(() -> executeWorkflow(plan, context, execution.getPriority(), startIndex), execution.getPriority());
+    }
+
+    /**
+     * 在当前工作线程上推进执行：先执行挂起时留下的步骤，再顺序执行节点，
+     * 直到执行结束、挂起等待或用完步数配额。挂起的执行不占用线程，等待的事件发生后通过 {@link #wake} 重新进入调度队列
+     * @param run 执行状态
+     */
+    private void step(ExecutionRun run) {
+        ExecutionPlan plan = run.getPlan();
+        WorkflowContext context = run.getContext();
+        run.resetSteps();
+        try {
+            int current = run.takePending().getAsInt();
+            if (current != SUSPENDED) {
+                current = runPath(plan, context, current, PlanNode.NO_NODE, run);
+            }
+            if (current == SUSPENDED) {
+                return;
+            }
+            context.setOutputs(collectOutputs(plan.getWorkflow(), context));
             context.setStatus(WorkflowStatus.COMPLETED);
+        } catch (ExecutionCancelledException e) {
+            context.setStatus(e.getStatus());
+            context.setError(e.getMessage());
+            System.out.println("工作流执行终止: " + context.getExecutionId() + " - " + e.getMessage());
         } catch (Exception e) {
             context.setStatus(WorkflowStatus.FAILED);
+            context.setError(e.getMessage());
             e.printStackTrace();
-        } finally {
-            long duration = System.currentTimeMillis() - startTime;
-            workflowLogger.logWorkflowComplete(
+        }
+        finishWorkflow(run);
+    }
+
+    /**
+     * 唤醒挂起的执行：设置恢复后的步骤并交给调度器，排在同优先级的新执行之前。
+     * 每次挂起只能唤醒一次
+     * @param run 挂起的执行
+     * @param next 恢复后先执行的步骤，给出继续执行的节点下标，仍需等待时返回 {@link #SUSPENDED}
+     */
+    private void wake(ExecutionRun run, IntSupplier next) {
+        run.resume(next);
+        scheduler.resume(() -> step(run), run.getPriority());
+    }
+
+    /**
+     * 记录顶层路径上一个节点完成，恢复时从 next 继续执行
+     * @param planNode 完成的节点
+     * @param context 执行上下文
+     * @param outputs 节点写入上下文的变量
+     * @param next 下一个节点下标
+     */
+    private void checkpoint(ExecutionPlan plan, PlanNode planNode, WorkflowContext context,
+                            Map<String, VariableDef> outputs, int next) {
+        String nextNodeId = next == PlanNode.NO_NODE ? null : plan.getNode(next).getNode().getId();
+        journal.recordCheckpoint(context.getExecutionId(), planNode.getNode().getId(), nextNodeId, outputs);
+    }
+
+    /**
+     * 执行结束（成功、失败、取消或超时）后的收尾
+     */
+    private void finishWorkflow(ExecutionRun run) {
+        WorkflowContext context = run.getContext();
+        run.finish();
+        context.setEndTime(LocalDateTime.now());
+        if (context.getDeadline() != null) {
+            context.getDeadline().cancel();
+        }
+        long duration = System.currentTimeMillis() - run.getStartTime();
+        metrics.recordWorkflow(context.getWorkflowId(), context.getStatus(), duration);
+        workflowLogger.logWorkflowComplete(
+            context.getExecutionId(),
+            run.getPlan().getWorkflow(),
+            context.getStatus().toString(),
+            duration
+        );
+        debugService.completeDebugSession(context.getExecutionId());
+        journal.recordEnd(context.getExecutionId(), context.getStatus().toString());
+        // 先转存结果再移出活动执行表，状态查询不会在两者之间查不到执行
+        results.put(context);
+        activeRuns.remove(context.getExecutionId());
+        activeWorkflows.remove(context.getExecutionId());
+        context.getCompletion().complete(context);
+    }
+
+    /**
+     * 执行引擎的状态：已开始的执行中有多少可运行、有多少挂起等待以及等待的原因
+     * @return 状态映射
+     */
+    public Map<String, Object> getEngineStats() {
+        int runnable = 0;
+        int parked = 0;
+        Map<String, Integer> parkedBy = new LinkedHashMap<>();
+        for (ExecutionRun.WaitReason reason : ExecutionRun.WaitReason.values()) {
+            parkedBy.put(reason.name(), 0);
+        }
+        for (ExecutionRun run : activeRuns.values()) {
+            ExecutionRun.WaitReason reason = run.getWaitReason();
+            if (run.getState() == ExecutionRun.State.PARKED && reason != null) {
+                parked++;
+                parkedBy.merge(reason.name(), 1, Integer::sum);
+            } else if (run.getState() == ExecutionRun.State.RUNNABLE) {
+                runnable++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", activeWorkflows.size());
+        stats.put("started", activeRuns.size());
+        stats.put("runnable", runnable);
+        stats.put("parked", parked);
+        stats.put("parkedBy", parkedBy);
+        stats.put("stepNodes", stepNodes);
+        return stats;
+    }
+
+    /**
+     * 按工作流的 outputs 定义从上下文中解析输出值
+     * @param workflow 工作流定义
+     * @param context 执行结束时的上下文
+     * @return 输出名称到值的映射，引用的变量不存在时值为 null
+     */
+    private Map<String, Object> collectOutputs(Workflow workflow, WorkflowContext context) {
+        Map<String, Object> outputs = new LinkedHashMap<>();
+        if (workflow.getOutputs() == null) {
+            return outputs;
+        }
+        for (Map.Entry<String, VariableDef> entry : workflow.getOutputs().entrySet()) {
+            VariableDef ref = entry.getValue();
+            VariableDef var = null;
+            if (ref != null) {
+                String name = ref.getName() != null ? ref.getName() : entry.getKey();
+                var = context.getVariable(name, ref.getParent());
+            }
+            outputs.put(entry.getKey(), var != null ? var.getValue() : null);
+        }
+        return outputs;
+    }
+
+    /**
+     * 从指定节点开始顺序执行，直到没有下一个节点或到达 stopIndex。
+     * 并行分支以对应的 JOIN 节点作为 stopIndex，JOIN 节点本身由分叉所在的路径执行。
+     * 顶层路径在异步工具节点、PARALLEL 节点和数据流段处挂起，等待期间不占用线程，等待结束后从挂起处继续；
+     * 一次推进的节点数量超过 workflow.scheduler.step-nodes 时让出工作线程。
+     * 并行分支中的路径不能挂起，异步工具在分支线程上等待完成
+     * @param plan 执行计划
+     * @param context 执行上下文，并行分支中为分支上下文
+     * @param current 起始节点下标
+     * @param stopIndex 停止的节点下标，{@link PlanNode#NO_NODE} 表示执行到结束
+     * @param run 顶层执行的状态，并行分支中为 null 表示不能挂起
+     * @return 执行到的停止位置，挂起或让出线程时返回 {@link #SUSPENDED}
+     */
+    private int runPath(ExecutionPlan plan, WorkflowContext context, int current, int stopIndex, ExecutionRun run) {
+        CancellationToken token = context.getCancellationToken();
+
+        // 执行工作流，直到没有下一个节点。每个节点开始前检查是否已被取消
+        while (current != PlanNode.NO_NODE && current != stopIndex) {
+            token.throwIfCancelled();
+            if (run != null && stepNodes > 0 && run.countStep() > stepNodes) {
+                // 用完步数配额，回到队列末尾让其他执行先运行
+                int resumeAt = current;
+                run.resume(() -> resumeAt);
+                scheduler.requeue(() -> step(run), run.getPriority());
+                return SUSPENDED;
+            }
+            PlanNode planNode = plan.getNode(current);
+            if (planNode.getSegment() != null) {
+                // 数据流模式：整段 FUNCTION 节点按依赖关系并发执行
+                DataflowRun dataflow = new DataflowRun(
+                    plan, planNode.getSegment(), planNode.getSegmentPosition(), context, run);
+                current = run != null ? dataflow.advance() : dataflow.runBlocking();
+                if (current == SUSPENDED) {
+                    return SUSPENDED;
+                }
+                continue;
+            }
+            WorkflowNode node = planNode.getNode();
+
+            context.setCurrentNodeId(node.getId());
+            long nodeStartTime = System.currentTimeMillis();
+
+            // 设置节点进入事件
+            NodeExecutionEvent enterEvent = new NodeExecutionEvent(
                 context.getExecutionId(),
-                workflow.getName(),
-                context.getStatus().toString(),
-                duration
+                node.getId(),
+                node.getName(),
+                planNode.getTypeName(),
+                "ENTER"
             );
-            debugService.completeDebugSession(context.getExecutionId());
-            activeWorkflows.remove(context.getExecutionId());
+            enterEvent.setContextVariables(context.getVariables());
+            workflowLogger.logNodeEnter(enterEvent, plan.getWorkflow());
+            debugService.sendDebugEvent(enterEvent);
+
+            if (planNode.getType() == NodeType.PARALLEL) {
+                // 各分支并发执行到 JOIN 节点，合并结果后从 JOIN 节点继续
+                if (run != null) {
+                    current = forkParallel(plan, planNode, context, run);
+                    if (current == SUSPENDED) {
+                        return SUSPENDED;
+                    }
+                } else {
+                    executeParallel(plan, planNode, context);
+                    current = planNode.getJoinIndex();
+                }
+                continue;
+            }
+
+            if (run != null && planNode.getType() == NodeType.FUNCTION) {
+                CompletableFuture<NodeResult> pending = startAsyncToolNode(planNode, context);
+                if (pending != null) {
+                    // 不占用线程等待，工具完成后把后续执行交回调度器
+                    run.park(ExecutionRun.WaitReason.TOOL);
+                    pending.thenAccept(nodeResult -> wake(run, () -> {
+                        int next = completeNode(plan, planNode, context, nodeResult, nodeStartTime);
+                        checkpoint(plan, planNode, context, writtenOutputs(planNode, nodeResult), next);
+                        return next;
+                    }));
+                    return SUSPENDED;
+                }
+            }
+
+            // 根据节点类型执行节点
+            NodeResult nodeResult = executeNode(planNode, context);
+            current = completeNode(plan, planNode, context, nodeResult, nodeStartTime);
+            if (run != null) {
+                checkpoint(plan, planNode, context, writtenOutputs(planNode, nodeResult), current);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 节点写入上下文的变量，条件节点不写入
+     */
+    private static Map<String, VariableDef> writtenOutputs(PlanNode planNode, NodeResult nodeResult) {
+        return planNode.getType() != NodeType.CONDITION ? nodeResult.getOutputs() : null;
+    }
+
+    /**
+     * 处理节点执行结果：写入输出、记录日志和调试事件，并确定下一个节点
+     * @param plan 执行计划
+     * @param planNode 已执行的节点
+     * @param context 执行上下文
+     * @param nodeResult 节点执行结果
+     * @param nodeStartTime 节点开始时间（毫秒）
+     * @return 下一个节点下标，{@link PlanNode#NO_NODE} 表示结束
+     */
+    private int completeNode(ExecutionPlan plan, PlanNode planNode, WorkflowContext context,
+                             NodeResult nodeResult, long nodeStartTime) {
+        WorkflowNode node = planNode.getNode();
+
+        // 取消导致的工具失败按取消处理，而不是节点错误
+        context.getCancellationToken().throwIfCancelled();
+        if(nodeResult.hasError()) {
+            // 出错直接中断
+            throw new RuntimeException(nodeResult.getErrorCode() + " : " + nodeResult.getErrorMessage());
         }
+        if(nodeResult.getOutputs() != null && node.getType() != NodeType.CONDITION) {
+            // 非条件节点，将结果写入上下文
+            context.writeOutputs(nodeResult.getOutputs());
+        }
+
+        long nodeExecutionTime = System.currentTimeMillis() - nodeStartTime;
+
+        // 创建节点完成事件
+        NodeExecutionEvent completeEvent = new NodeExecutionEvent(
+            context.getExecutionId(),
+            node.getId(),
+            node.getName(),
+            planNode.getTypeName(),
+            "COMPLETE"
+        );
+        completeEvent.setNodeResult(nodeResult.getOutputs());
+        completeEvent.setDuration(nodeExecutionTime);
+
+        // 使用NodeExecutionEvent作为日志输入源
+        workflowLogger.logNodeExecution(completeEvent, plan.getWorkflow());
+        metrics.recordNode(completeEvent.getNodeType(), completeEvent.getDuration());
+
+        // 发送节点完成事件到调试服务
+        debugService.sendDebugEvent(completeEvent);
+
+        // 确定下一个节点，条件节点的分支序号即为评估结果，其他节点只有默认分支
+        int branch = nodeResult.getBranch();
+        int next = planNode.getSuccessor(branch);
+        if (next == PlanNode.UNRESOLVED) {
+            throw new RuntimeException("Node not found: " + planNode.getSuccessorId(branch));
+        }
+        return next;
+    }
+
+    /**
+     * 数据流模式执行一段连续的 FUNCTION 节点：依赖都已完成的节点立即提交到并行线程池（异步工具直接启动），
+     * 同时执行的节点数量不超过 workflow.dataflow.parallelism。
+     * 上下文只在协调线程上读写：节点输入在提交前准备，输出在完成后按完成顺序写入，
+     * 段内的依赖关系保证同名变量的写入顺序与顺序执行一致。
+     * 任一节点失败或执行被取消时不再提交新节点，等待已提交的节点结束后抛出异常。
+     *
+     * <p>顶层路径上的段在有节点执行时挂起，节点完成时唤醒执行处理结果，期间不占用线程；
+     * 并行分支中的段在分支线程上等待完成。</p>
+     */
+    private final class DataflowRun {
+        private final ExecutionPlan plan;
+        private final DataflowSegment segment;
+        private final int start;
+        private final WorkflowContext context;
+        private final CancellationToken token;
+        private final ExecutionRun run;
+        private final int limit;
+        private final int[] pending;
+        private final ArrayDeque<Integer> ready = new ArrayDeque<>();
+        private final BlockingQueue<DataflowCompletion> completions = new LinkedBlockingQueue<>();
+        /** 挂起模式下协调步骤是否已被调度或正在执行，保证同一时刻只有一个线程处理完成的节点 */
+        private final AtomicBoolean scheduled = new AtomicBoolean(true);
+        /** 顶层路径上的段按完成顺序记录写入的变量，整段完成后作为一个检查点写入执行日志 */
+        private final Map<String, VariableDef> writes;
+        private RuntimeException failure;
+        private int inFlight;
+
+        /**
+         * @param plan 执行计划
+         * @param segment 依赖图
+         * @param start 开始执行的段内位置，之前的节点不执行
+         * @param context 执行上下文
+         * @param run 顶层执行的状态，为 null 时在调用线程上等待
+         */
+        DataflowRun(ExecutionPlan plan, DataflowSegment segment, int start, WorkflowContext context, ExecutionRun run) {
+            this.plan = plan;
+            this.segment = segment;
+            this.start = start;
+            this.context = context;
+            this.token = context.getCancellationToken();
+            this.run = run;
+            this.limit = dataflowParallelism > 0 ? dataflowParallelism : parallelPool.getParallelism();
+            this.pending = segment.newDependencyCounts(start);
+            this.writes = run != null ? new LinkedHashMap<>() : null;
+            for (int p = start; p < segment.size(); p++) {
+                if (pending[p] == 0) {
+                    ready.add(p);
+                }
+            }
+        }
+
+        /**
+         * 在调用线程上等待整段执行完成
+         * @return 段执行完成后的下一个节点下标
+         */
+        int runBlocking() {
+            dispatch();
+            while (!isDone()) {
+                complete(awaitCompletion(completions));
+                dispatch();
+            }
+            return exit();
+        }
+
+        /**
+         * 处理已经完成的节点并提交新就绪的节点，仍有节点在执行时挂起
+         * @return 段执行完成后的下一个节点下标，挂起时返回 {@link #SUSPENDED}
+         */
+        int advance() {
+            while (true) {
+                DataflowCompletion completion;
+                while ((completion = completions.poll()) != null) {
+                    complete(completion);
+                }
+                dispatch();
+                if (isDone()) {
+                    return exit();
+                }
+                run.park(ExecutionRun.WaitReason.DATAFLOW);
+                scheduled.set(false);
+                // 清除标记前到达的完成没有唤醒执行，由当前线程继续处理
+                if (completions.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return SUSPENDED;
+                }
+                run.unpark();
+            }
+        }
+
+        private boolean isDone() {
+            return inFlight == 0 && (failure != null || ready.isEmpty());
+        }
+
+        private int exit() {
+            if (failure != null) {
+                throw failure;
+            }
+            if (segment.getExit() == PlanNode.UNRESOLVED) {
+                throw new RuntimeException("Node not found: " + segment.getExitId());
+            }
+            if (writes != null) {
+                checkpoint(plan, plan.getNode(segment.getNode(start)), context, writes, segment.getExit());
+            }
+            return segment.getExit();
+        }
+
+        /**
+         * 节点完成时在执行节点的线程上调用
+         */
+        private void deliver(DataflowCompletion completion) {
+            completions.add(completion);
+            if (run != null && scheduled.compareAndSet(false, true)) {
+                wake(run, this::advance);
+            }
+        }
+
+        private void dispatch() {
+            while (failure == null && inFlight < limit && !ready.isEmpty()) {
+                int position = ready.poll();
+                PlanNode planNode = plan.getNode(segment.getNode(position));
+                WorkflowNode node = planNode.getNode();
+                try {
+                    token.throwIfCancelled();
+                    context.setCurrentNodeId(node.getId());
+                    NodeExecutionEvent enterEvent = new NodeExecutionEvent(
+                        context.getExecutionId(),
+                        node.getId(),
+                        node.getName(),
+                        planNode.getTypeName(),
+                        "ENTER"
+                    );
+                    enterEvent.setContextVariables(context.getVariables());
+                    workflowLogger.logNodeEnter(enterEvent, plan.getWorkflow());
+                    debugService.sendDebugEvent(enterEvent);
+
+                    ToolDescriptor tool = resolveTool(planNode);
+                    // 复制输入，避免工具线程读取正在被写入的上下文
+                    Map<String, VariableDef> toolInputs = new HashMap<>(prepareToolInputs(planNode, tool, context));
+                    long startTime = System.currentTimeMillis();
+                    if (tool.isAsync()) {
+                        // 异步工具不占用线程池线程，完成时直接投递结果
+                        invokeToolAsync(planNode, tool, toolInputs, token)
+                            .thenAccept(result -> deliver(new DataflowCompletion(position, result, startTime)));
+                    } else {
+                        parallelPool.execute(() -> {
+                            NodeResult result;
+                            try {
+                                result = invokeTool(planNode, tool, toolInputs, token);
+                            } catch (Throwable t) {
+                                result = NodeResult.error(NodeType.FUNCTION, t.getClass().getSimpleName(), t.getMessage(), null);
+                            }
+                            deliver(new DataflowCompletion(position, result, startTime));
+                        });
+                    }
+                    inFlight++;
+                } catch (ExecutionCancelledException e) {
+                    failure = e;
+                } catch (Exception e) {
+                    failure = new RuntimeException(e.getClass().getSimpleName() + " : " + e.getMessage());
+                }
+            }
+        }
+
+        private void complete(DataflowCompletion completion) {
+            inFlight--;
+            PlanNode planNode = plan.getNode(segment.getNode(completion.position));
+            NodeResult nodeResult = completion.result;
+            if (failure != null) {
+                return;
+            }
+            // 取消导致的工具失败按取消处理，而不是节点错误
+            try {
+                token.throwIfCancelled();
+            } catch (ExecutionCancelledException e) {
+                failure = e;
+                return;
+            }
+            if (nodeResult.hasError()) {
+                failure = new RuntimeException(nodeResult.getErrorCode() + " : " + nodeResult.getErrorMessage());
+                return;
+            }
+            if (nodeResult.getOutputs() != null) {
+                context.writeOutputs(nodeResult.getOutputs());
+                if (writes != null) {
+                    // 段内不同节点可能写入同名变量，按 (parent, name) 分别记录
+                    for (VariableDef var : nodeResult.getOutputs().values()) {
+                        if (var != null) {
+                            String key = VariableSlots.key(var.getParent(), var.getName());
+                            writes.remove(key);
+                            writes.put(key, var);
+                        }
+                    }
+                }
+            }
+
+            WorkflowNode node = planNode.getNode();
+            NodeExecutionEvent completeEvent = new NodeExecutionEvent(
+                context.getExecutionId(),
+                node.getId(),
+                node.getName(),
+                planNode.getTypeName(),
+                "COMPLETE"
+            );
+            completeEvent.setNodeResult(nodeResult.getOutputs());
+            completeEvent.setDuration(System.currentTimeMillis() - completion.startTime);
+            workflowLogger.logNodeExecution(completeEvent, plan.getWorkflow());
+            metrics.recordNode(completeEvent.getNodeType(), completeEvent.getDuration());
+            debugService.sendDebugEvent(completeEvent);
+
+            for (int dependent : segment.getDependents(completion.position)) {
+                if (--pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待下一个节点完成。调用线程可能是并行线程池的工作线程（数据流段位于并行分支中），
+     * 通过 managedBlock 等待，线程池会在需要时补充线程，避免所有工作线程都在等待而无人执行节点
+     */
+    private DataflowCompletion awaitCompletion(BlockingQueue<DataflowCompletion> completions) {
+        DataflowCompletion[] holder = new DataflowCompletion[1];
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    if (holder[0] == null) {
+                        holder[0] = completions.take();
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return holder[0] != null || (holder[0] = completions.poll()) != null;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待节点完成时被中断", e);
+        }
+        return holder[0];
+    }
+
+    /**
+     * 数据流模式下一个节点的执行结果
+     */
+    private static final class DataflowCompletion {
+        private final int position;
+        private final NodeResult result;
+        private final long startTime;
+
+        DataflowCompletion(int position, NodeResult result, long startTime) {
+            this.position = position;
+            this.result = result;
+            this.startTime = startTime;
+        }
+    }
+
+    /**
+     * 执行 PARALLEL 节点：每个分支在独立的分支上下文中并发执行到对应的 JOIN 节点，
+     * 全部结束后按分支 key 的字典序依次合并，同名变量以排在后面的分支为准。
+     * 任一分支失败时等待其余分支结束，然后抛出排在最前面的分支的异常。
+     * 调用线程等待所有分支结束，用于并行分支中嵌套的分叉
+     * @param plan 执行计划
+     * @param fork PARALLEL 节点
+     * @param context 分叉所在的上下文
+     */
+    private void executeParallel(ExecutionPlan plan, PlanNode fork, WorkflowContext context) {
+        long startTime = System.currentTimeMillis();
+        WorkflowContext[] branches = forkBranches(fork, context);
+        Throwable[] failures = new Throwable[branches.length];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(branches.length);
+        for (int b = 0; b < branches.length; b++) {
+            int slot = b;
+            tasks.add(ForkJoinTask.adapt(() -> runBranch(plan, fork, branches, failures, slot)));
+        }
+
+        // 嵌套的分叉已经在并行线程池中，直接分叉子任务；否则由调用线程提交并等待
+        if (ForkJoinTask.getPool() == parallelPool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            parallelPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        joinBranches(plan, fork, context, branches, failures, startTime);
+    }
+
+    /**
+     * 顶层路径上的 PARALLEL 节点：分支提交到并行线程池后执行挂起，最后一个结束的分支唤醒执行，
+     * 在工作线程上合并分支并从 JOIN 节点继续。合并规则与 {@link #executeParallel} 相同
+     * @param plan 执行计划
+     * @param fork PARALLEL 节点
+     * @param context 分叉所在的上下文
+     * @param run 顶层执行的状态
+     * @return 没有分支时直接返回 JOIN 节点下标，否则返回 {@link #SUSPENDED}
+     */
+    private int forkParallel(ExecutionPlan plan, PlanNode fork, WorkflowContext context, ExecutionRun run) {
+        long startTime = System.currentTimeMillis();
+        WorkflowContext[] branches = forkBranches(fork, context);
+        Throwable[] failures = new Throwable[branches.length];
+        if (branches.length == 0) {
+            joinBranches(plan, fork, context, branches, failures, startTime);
+            return fork.getJoinIndex();
+        }
+        AtomicInteger remaining = new AtomicInteger(branches.length);
+        run.park(ExecutionRun.WaitReason.JOIN);
+        for (int b = 0; b < branches.length; b++) {
+            int slot = b;
+            parallelPool.execute(() -> {
+                runBranch(plan, fork, branches, failures, slot);
+                if (remaining.decrementAndGet() == 0) {
+                    wake(run, () -> {
+                        Map<String, VariableDef> merged = joinBranches(plan, fork, context, branches, failures, startTime);
+                        checkpoint(plan, fork, context, merged, fork.getJoinIndex());
+                        return fork.getJoinIndex();
+                    });
+                }
+            });
+        }
+        return SUSPENDED;
+    }
+
+    /**
+     * 为每个分支创建分支上下文
+     */
+    private WorkflowContext[] forkBranches(PlanNode fork, WorkflowContext context) {
+        WorkflowContext[] branches = new WorkflowContext[fork.getBranchCount()];
+        for (int b = 0; b < branches.length; b++) {
+            if (fork.getSuccessor(b) == PlanNode.UNRESOLVED) {
+                throw new RuntimeException("Node not found: " + fork.getSuccessorId(b));
+            }
+            branches[b] = context.fork();
+        }
+        return branches;
+    }
+
+    /**
+     * 在当前线程上执行一个分支到 JOIN 节点，失败记录在 failures 中
+     */
+    private void runBranch(ExecutionPlan plan, PlanNode fork, WorkflowContext[] branches, Throwable[] failures, int slot) {
+        try {
+            runPath(plan, branches[slot], fork.getSuccessor(slot), fork.getJoinIndex(), null);
+        } catch (Throwable t) {
+            failures[slot] = t;
+        }
+    }
+
+    /**
+     * 所有分支结束后：有分支失败时抛出排在最前面的分支的异常，否则按顺序合并分支并发送完成事件
+     * @return 合并写入上下文的变量
+     */
+    private Map<String, VariableDef> joinBranches(ExecutionPlan plan, PlanNode fork, WorkflowContext context,
+                              WorkflowContext[] branches, Throwable[] failures, long startTime) {
+        // 取消导致的分支失败按取消处理
+        context.getCancellationToken().throwIfCancelled();
+        for (Throwable failure : failures) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+        Map<String, VariableDef> merged = new LinkedHashMap<>();
+        for (WorkflowContext branch : branches) {
+            context.mergeBranch(branch);
+            if (branch.getBranchWrites() != null) {
+                merged.putAll(branch.getBranchWrites());
+            }
+        }
+
+        WorkflowNode node = fork.getNode();
+        NodeExecutionEvent completeEvent = new NodeExecutionEvent(
+            context.getExecutionId(),
+            node.getId(),
+            node.getName(),
+            fork.getTypeName(),
+            "COMPLETE"
+        );
+        completeEvent.setDuration(System.currentTimeMillis() - startTime);
+        workflowLogger.logNodeExecution(completeEvent, plan.getWorkflow());
+        metrics.recordNode(completeEvent.getNodeType(), completeEvent.getDuration());
+        debugService.sendDebugEvent(completeEvent);
+        return merged;
     }
 
     /**
      * 执行节点
-     * @param node 要执行的节点
+     * @param planNode 要执行的已编译节点
      * @param context 执行上下文
      * @return 节点执行结果
      */
-    private NodeResult executeNode(WorkflowNode node, WorkflowContext context) {
+    private NodeResult executeNode(PlanNode planNode, WorkflowContext context) {
+		WorkflowNode node = planNode.getNode();
 		NodeResult result = null;
         try {
-            switch (node.getType()) {
+            switch (planNode.getType()) {
                 case FUNCTION:
-					result = executeToolNode(node, context);
+					result = executeToolNode(planNode, context);
                     break;
                     
                 case CONDITION:
-					result = evaluateCondition(node, context);
+					result = evaluateCondition(planNode, context);
                     break;
                 
 				case START:
                 case END:
+                case JOIN:
                     result = new NodeResult(node.getType());
                     break;
             }
         } catch (Exception e) {
 			result = NodeResult.error(
-				node.getType(), e.getClass().getSimpleName(), e.getMessage(), JSON.toJSONString(e.getStackTrace()));
+				node.getType(), e.getClass().getSimpleName(), e.getMessage(), stackTraceOf(e));
         }
         
         return result;
@@ -252,41 +1231,41 @@ public class WorkflowManager {
 
     /**
      * 预先从上下文过滤出一批和工作流输入参数有关的变量
-     * @param node 函数节点，带有inputMap表示变量映射
+     * @param planNode 已编译的函数节点，inputMap 已解析为参数数组和变量槽位
+     * @param tool 工具描述
      * @param context 执行上下文
      * @return 准备好的工具输入
      */
-    private Map<String, VariableDef> prepareToolInputs(WorkflowNode node, WorkflowContext context) {
-        Map<String, VariableDef> toolInputs = context.getVariables();
+    private Map<String, VariableDef> prepareToolInputs(PlanNode planNode, ToolDescriptor tool, WorkflowContext context) {
+        String[] params = planNode.getInputParams();
         
         // 如果inputMap没有定义或为空，则使用所有上下文变量作为输入
-        if (node.getInputMap() == null || node.getInputMap().isEmpty()) {
-            return toolInputs;
+        if (params == null) {
+            return context.getVariables();
         }
-        Map<String, FieldDef> toolOutputSchema = ToolRegistry.getHandler(node.getToolName()).getDefinition().getOutputs();
+        VariableDef[] defs = planNode.getInputDefs();
+        int[] slots = planNode.getInputSlots();
+        Map<String, FieldDef> toolOutputSchema = tool.getDefinition().getOutputs();
         // 创建一个新的工具输入映射
         Map<String, VariableDef> filteredInputs = new HashMap<>();
         
         // 处理每个输入映射
-        for (Map.Entry<String, VariableDef> entry : node.getInputMap().entrySet()) {
-            String paramName = entry.getKey();
-            VariableDef varDef = entry.getValue();
+        for (int i = 0; i < params.length; i++) {
+            VariableDef varDef = defs[i];
             
             if (varDef == null) {
                 continue;
             }
             
-            if ("CONSTANT".equals(varDef.getName())) {
+            if (slots[i] == VariableSlots.NO_SLOT) {
                 // 对于常量，直接使用值
-                filteredInputs.put(paramName, varDef);
+                filteredInputs.put(params[i], varDef);
             } else {
-                String varName = varDef.getName();
-				String parent = varDef.getParent();
-				VariableDef var = context.getVariable(varName, parent); // 从 context 获取变量
-				if(var == null && toolOutputSchema.get(varName).isRequired()) {
-					throw new RuntimeException("未找到必填变量: " + varName);
+				VariableDef var = context.getVariable(slots[i]); // 按编译时解析的槽位从 context 获取变量
+				if(var == null && toolOutputSchema.get(varDef.getName()).isRequired()) {
+					throw new RuntimeException("未找到必填变量: " + varDef.getName());
 				}
-				filteredInputs.put(paramName, var);
+				filteredInputs.put(params[i], var);
             }
         }
         
@@ -294,269 +1273,400 @@ public class WorkflowManager {
     }
 
     /**
-     * 执行一个工具，给定输入
-     * @param toolName 要执行的工具名称
+     * 执行一个工具，给定输入。
+     * 工具声明了类型化方法时通过注册时绑定的调用器直接传参，否则转换为 Map 调用 execute。
+     * 执行期间登记当前线程到取消令牌，执行被取消或节点超时时中断该线程
+     * @param tool 要执行的工具
      * @param inputs 工具输入参数
+     * @param timeoutMs 节点超时时间（毫秒），0 表示不限制
+     * @param token 执行的取消令牌
      * @return 工具执行结果
      */
-    private Map<String, Object> executeTool(String toolName, Map<String, VariableDef> inputs) throws ToolException {
-        ToolHandler handler = ToolRegistry.getHandler(toolName);
-        if (handler == null) {
-			System.out.println("tools: " + JSON.toJSONString(ToolRegistry.getAllHandlers()));
-            throw new ToolException("Tool not found: " + toolName, "TOOL_NOT_FOUND");
-        }
-
+    private Map<String, Object> executeTool(ToolDescriptor tool, Map<String, VariableDef> inputs,
+                                            long timeoutMs, CancellationToken token) throws ToolException {
+        long epoch = token.bind();
+        TimerWheel.Timeout nodeTimeout = timeoutMs > 0
+            ? timerWheel.schedule(() -> token.interrupt(epoch), timeoutMs)
+            : null;
+        long begin = System.nanoTime();
+        boolean failed = true;
         try {
-            // 将Map<String, VariableDef>转换为Map<String, Object>
-            Map<String, Object> inputValues = new HashMap<>();
-            inputs.forEach((key, varDef) -> {
-                if (varDef != null) {
-                    inputValues.put(key, varDef.getValue());
-                }
-            });
-            
-            ToolResponse<?> response = handler.execute(inputValues);
+            ToolResponse<?> response;
+            TypedToolInvoker invoker = tool.getInvoker();
+            if (invoker != null) {
+                response = invoker.invoke(inputs);
+            } else if (tool.isAsync()) {
+                // 不能挂起的路径（并行分支）上在当前线程等待异步工具
+                response = awaitResponse(((AsyncToolHandler) tool.getHandler()).executeAsync(toValues(inputs)));
+            } else {
+                response = tool.getHandler().execute(toValues(inputs));
+            }
+            checkInterrupted(nodeTimeout, timeoutMs, token);
             if (!response.isSuccess()) {
                 throw new ToolException(response.getMessage(), response.getErrorCode());
             }
+            failed = false;
             // 确保返回值是一个Map<String, Object>，对于List等非Map类型的返回值会自动包装
             return ToolResponse.ensureMapResponse(response.getData());
         } catch (ToolException e) {
+            checkInterrupted(nodeTimeout, timeoutMs, token);
             throw e;
         } catch (Exception e) {
+            checkInterrupted(nodeTimeout, timeoutMs, token);
             throw new ToolException("Tool execution failed: " + e.getMessage(), "EXECUTION_ERROR");
+        } finally {
+            metrics.recordTool(tool.getName(), System.nanoTime() - begin, failed);
+            if (nodeTimeout != null) {
+                nodeTimeout.cancel();
+            }
+            token.unbind(epoch);
+        }
+    }
+
+    /**
+     * 将Map<String, VariableDef>转换为Map<String, Object>
+     */
+    private static Map<String, Object> toValues(Map<String, VariableDef> inputs) {
+        Map<String, Object> inputValues = new HashMap<>();
+        inputs.forEach((key, varDef) -> {
+            if (varDef != null) {
+                inputValues.put(key, varDef.getValue());
+            }
+        });
+        return inputValues;
+    }
+
+    /**
+     * 在当前线程上等待异步工具完成。在并行线程池中通过 managedBlock 等待，线程池会在需要时补充线程；
+     * 线程被中断（执行取消或节点超时）时取消 future
+     */
+    private static ToolResponse<?> awaitResponse(CompletableFuture<ToolResponse<?>> future) throws ToolException {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    try {
+                        future.get();
+                    } catch (ExecutionException | CancellationException e) {
+                        // 结果在下面统一处理
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return future.isDone();
+                }
+            });
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ToolException("工具执行被中断", "INTERRUPTED");
+        }
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            throw toToolException(e);
+        }
+    }
+
+    /**
+     * 将异步工具的失败转换为 ToolException
+     */
+    private static ToolException toToolException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ToolException) {
+            return (ToolException) cause;
+        }
+        return new ToolException("Tool execution failed: " + cause.getMessage(), "EXECUTION_ERROR");
+    }
+
+    /**
+     * 工具被中断后，将结果统一转换为节点超时或执行取消
+     */
+    private void checkInterrupted(TimerWheel.Timeout nodeTimeout, long timeoutMs, CancellationToken token) throws ToolException {
+        token.throwIfCancelled();
+        if (nodeTimeout != null && nodeTimeout.isExpired()) {
+            throw new ToolException("节点执行超时: " + timeoutMs + "ms", "NODE_TIMEOUT");
         }
     }
 	
 	/**
 	 * 执行工具节点
-	 * @param node 工具节点
+	 * @param planNode 已编译的工具节点
 	 * @param context 执行上下文
 	 * @return 节点执行结果
 	 */
-	private NodeResult executeToolNode(WorkflowNode node, WorkflowContext context) {
-		NodeResult result = null;
+	private NodeResult executeToolNode(PlanNode planNode, WorkflowContext context) {
 		try {
-			String toolName = node.getToolName();
-			if (toolName == null || toolName.isEmpty()) {
-				throw new RuntimeException("Tool name is empty");
-			}
+			ToolDescriptor tool = resolveTool(planNode);
 			// 准备工具输入参数
-			Map<String, VariableDef> toolInputs = prepareToolInputs(node, context);
+			Map<String, VariableDef> toolInputs = prepareToolInputs(planNode, tool, context);
+			return invokeTool(planNode, tool, toolInputs, context.getCancellationToken());
+		} catch (Exception e) {
+			return NodeResult.error(NodeType.FUNCTION, e.getClass().getSimpleName(), e.getMessage(), stackTraceOf(e));
+		}
+	}
+
+	/**
+	 * 使用已准备好的输入调用工具，并把输出转换为以节点ID为 parent 的变量。
+	 * 不访问执行上下文，可以在任意线程上调用
+	 * @param planNode 已编译的工具节点
+	 * @param tool 工具描述
+	 * @param toolInputs 工具输入参数
+	 * @param token 执行的取消令牌
+	 * @return 节点执行结果
+	 */
+	private NodeResult invokeTool(PlanNode planNode, ToolDescriptor tool, Map<String, VariableDef> toolInputs,
+								  CancellationToken token) {
+		try {
 			// 执行工具并获取其输出
-			Map<String, Object> toolResults = executeTool(toolName, toolInputs);
-
-			Map<String, VariableDef> resultAsVars = new HashMap<>();
-			Map<String, FieldDef> toolOutputSchema = ToolRegistry.getHandler(toolName).getDefinition().getOutputs();
-			
-			// 对于包装的结果需要特殊处理
-			// 如果只有一个输出字段，并且是array类型，同时工具结果包含"items"字段，则直接使用items对应的值
-			// 这种情况是当工具返回了Collection，系统将其包装成了带items字段的map
-			if (toolOutputSchema.size() == 1) {
-				for (Map.Entry<String, FieldDef> entry : toolOutputSchema.entrySet()) {
-					FieldDef fieldDef = entry.getValue();
-					if (fieldDef.getType() == FieldType.ARRAY && toolResults.containsKey("items")) {
-						VariableDef varDef = VariableDef.fromFieldDef(fieldDef, node.getId());
-						varDef.setName(entry.getKey());
-						varDef.setValue(toolResults.get("items"));
-						resultAsVars.put(entry.getKey(), varDef);
-						// 跳过常规处理逻辑
-						result = new NodeResult(NodeType.FUNCTION, resultAsVars);
-						return result;
-					}
-				}
+			Map<String, Object> toolResults = executeTool(tool, toolInputs, planNode.getTimeoutMs(), token);
+			return toNodeResult(planNode, tool, toolResults);
+		} catch (Exception e) {
+			return NodeResult.error(NodeType.FUNCTION, e.getClass().getSimpleName(), e.getMessage(), stackTraceOf(e));
+		}
+	}
+
+	/**
+	 * 如果节点的工具是异步工具，准备输入并启动工具
+	 * @param planNode 已编译的工具节点
+	 * @param context 执行上下文
+	 * @return 工具完成时给出节点结果的 future，同步工具或工具未注册时返回 null，由调用方按同步方式执行
+	 */
+	private CompletableFuture<NodeResult> startAsyncToolNode(PlanNode planNode, WorkflowContext context) {
+		ToolDescriptor tool;
+		try {
+			tool = resolveTool(planNode);
+		} catch (Exception e) {
+			return null;
+		}
+		if (!tool.isAsync()) {
+			return null;
+		}
+		Map<String, VariableDef> toolInputs;
+		try {
+			toolInputs = prepareToolInputs(planNode, tool, context);
+		} catch (Exception e) {
+			return CompletableFuture.completedFuture(NodeResult.error(
+				NodeType.FUNCTION, e.getClass().getSimpleName(), e.getMessage(), stackTraceOf(e)));
+		}
+		return invokeToolAsync(planNode, tool, toolInputs, context.getCancellationToken());
+	}
+
+	/**
+	 * 启动异步工具，不阻塞调用线程。执行被取消或节点超时时取消工具返回的 future
+	 * @param planNode 已编译的工具节点
+	 * @param tool 异步工具描述
+	 * @param toolInputs 工具输入参数
+	 * @param token 执行的取消令牌
+	 * @return 工具结束时给出节点结果的 future，总是正常完成，失败体现在节点结果中
+	 */
+	private CompletableFuture<NodeResult> invokeToolAsync(PlanNode planNode, ToolDescriptor tool,
+														  Map<String, VariableDef> toolInputs, CancellationToken token) {
+		CompletableFuture<ToolResponse<?>> call;
+		long begin = System.nanoTime();
+		try {
+			call = ((AsyncToolHandler) tool.getHandler()).executeAsync(toValues(toolInputs));
+		} catch (Exception e) {
+			call = new CompletableFuture<>();
+			call.completeExceptionally(e);
+		}
+		CompletableFuture<ToolResponse<?>> running = call;
+		long timeoutMs = planNode.getTimeoutMs();
+		TimerWheel.Timeout nodeTimeout = timeoutMs > 0
+			? timerWheel.schedule(() -> running.cancel(true), timeoutMs)
+			: null;
+		long listener = token.onCancel(() -> running.cancel(true));
+
+		CompletableFuture<NodeResult> result = new CompletableFuture<>();
+		running.whenComplete((response, error) -> {
+			// 异步工具可能以 null 正常完成，这里不能抛出异常，否则 result 不会完成，挂起的执行永远不会被唤醒
+			metrics.recordTool(tool.getName(), System.nanoTime() - begin,
+				error != null || response == null || !response.isSuccess());
+			if (nodeTimeout != null) {
+				nodeTimeout.cancel();
 			}
-			
-			// 将 parent 设置成自己的id
-			toolResults.forEach((key, value) -> {
-				if (value == null) {
-					// 没有这个输出，跳过
-					return;
+			token.removeListener(listener);
+			NodeResult nodeResult;
+			try {
+				if (error != null && nodeTimeout != null && nodeTimeout.isExpired() && !token.isCancelled()) {
+					throw new ToolException("节点执行超时: " + timeoutMs + "ms", "NODE_TIMEOUT");
 				}
-				FieldDef fieldDef = toolOutputSchema.get(key);
-				if (fieldDef == null) {
-					// 没有这个输出定义，跳过
-					return;
+				if (error != null) {
+					throw toToolException(error);
 				}
-				VariableDef varDef = VariableDef.fromFieldDef(fieldDef, node.getId());
-				varDef.setName(key);
-				varDef.setValue(value);
-				resultAsVars.put(key, varDef);
-			});
-			result = new NodeResult(NodeType.FUNCTION, resultAsVars);
-		} catch (Exception e) {
-			result = NodeResult.error(NodeType.FUNCTION, e.getClass().getSimpleName(), e.getMessage(), JSON.toJSONString(e.getStackTrace()));
-		}
+				if (!response.isSuccess()) {
+					throw new ToolException(response.getMessage(), response.getErrorCode());
+				}
+				nodeResult = toNodeResult(planNode, tool, ToolResponse.ensureMapResponse(response.getData()));
+			} catch (Exception e) {
+				nodeResult = NodeResult.error(NodeType.FUNCTION, e.getClass().getSimpleName(), e.getMessage(), stackTraceOf(e));
+			}
+			result.complete(nodeResult);
+		});
 		return result;
 	}
 
+	/**
+	 * 序列化异常堆栈作为节点错误详情。序列化失败时不附带堆栈，避免掩盖原来的错误；
+	 * 在异步回调中尤其重要，回调抛出的异常会被 future 吞掉，挂起的执行将永远不会继续
+	 */
+	private static String stackTraceOf(Exception e) {
+		try {
+			return JSON.toJSONString(e.getStackTrace());
+		} catch (RuntimeException serializationError) {
+			return null;
+		}
+	}
+
+	/**
+	 * 把工具输出转换为以节点ID为 parent 的变量
+	 * @param planNode 已编译的工具节点
+	 * @param tool 工具描述
+	 * @param toolResults 工具返回的结果
+	 * @return 节点执行结果
+	 */
+	private NodeResult toNodeResult(PlanNode planNode, ToolDescriptor tool, Map<String, Object> toolResults) {
+		WorkflowNode node = planNode.getNode();
+		Map<String, VariableDef> resultAsVars = new HashMap<>();
+		Map<String, FieldDef> toolOutputSchema = tool.getDefinition().getOutputs();
+		
+		// 对于包装的结果需要特殊处理
+		// 如果只有一个输出字段，并且是array类型，同时工具结果包含"items"字段，则直接使用items对应的值
+		// 这种情况是当工具返回了Collection，系统将其包装成了带items字段的map
+		if (toolOutputSchema.size() == 1) {
+			for (Map.Entry<String, FieldDef> entry : toolOutputSchema.entrySet()) {
+				FieldDef fieldDef = entry.getValue();
+				if (fieldDef.getType() == FieldType.ARRAY && toolResults.containsKey("items")) {
+					VariableDef varDef = VariableDef.fromFieldDef(fieldDef, node.getId());
+					varDef.setName(entry.getKey());
+					varDef.setValue(toolResults.get("items"));
+					resultAsVars.put(entry.getKey(), varDef);
+					// 跳过常规处理逻辑
+					return new NodeResult(NodeType.FUNCTION, resultAsVars);
+				}
+			}
+		}
+		
+		// 将 parent 设置成自己的id
+		toolResults.forEach((key, value) -> {
+			if (value == null) {
+				// 没有这个输出，跳过
+				return;
+			}
+			FieldDef fieldDef = toolOutputSchema.get(key);
+			if (fieldDef == null) {
+				// 没有这个输出定义，跳过
+				return;
+			}
+			VariableDef varDef = VariableDef.fromFieldDef(fieldDef, node.getId());
+			varDef.setName(key);
+			varDef.setValue(value);
+			resultAsVars.put(key, varDef);
+		});
+		return new NodeResult(NodeType.FUNCTION, resultAsVars);
+	}
+
+	/**
+	 * 获取节点的工具描述。优先使用编译时解析的引用，
+	 * 编译时工具尚未注册的情况下回退到注册表查找
+	 * @param planNode 已编译的工具节点
+	 * @return 工具描述，包含 handler 和注册时缓存的工具定义
+	 * @throws ToolException 如果工具未注册
+	 */
+	private ToolDescriptor resolveTool(PlanNode planNode) throws ToolException {
+		String toolName = planNode.getNode().getToolName();
+		if (toolName == null || toolName.isEmpty()) {
+			throw new RuntimeException("Tool name is empty");
+		}
+		ToolDescriptor tool = planNode.getTool();
+		if (tool == null) {
+			tool = ToolRegistry.getDescriptor(toolName);
+		}
+		if (tool == null) {
+			throw new ToolException("Tool not found: " + toolName, "TOOL_NOT_FOUND");
+		}
+		return tool;
+	}
+
     /**
      * 执行条件节点
-     * @param node 条件节点
+     * @param planNode 已编译的条件节点，条件组已编译为谓词
      * @param context 执行上下文，任何变量只能从这里获取，不能从节点上获取
      * @return 条件评估结果
      */
-    private NodeResult evaluateCondition(WorkflowNode node, WorkflowContext context) {
-        if (node.getType() != NodeType.CONDITION) {
+    private NodeResult evaluateCondition(PlanNode planNode, WorkflowContext context) {
+        ConditionPredicate[] predicates = planNode.getPredicates();
+        if (predicates == null) {
             return new NodeResult(NodeType.CONDITION, null, false);
         }
 
         try {
-            // 更新条件节点变量值
-            List<ConditionCase> cases = node.getConditions();
-            for (int i = 0; i < cases.size(); i++) {
-                ConditionCase conditionCase = cases.get(i);
-                if (conditionCase.getConditions().isEmpty()) {
-                    // 空条件组是ELSE分支
-                    continue;
-                }
-                
-                boolean caseResult = true;
-                for (Condition condition : conditionCase.getConditions()) {
-                    // 更新左操作数值
-                    VariableDef leftOp = condition.getLeftOperand();
-                    if (leftOp != null) {
-						// 填充值
-                        VariableDef var = context.getVariable(leftOp.getName(), leftOp.getParent());
-                        leftOp.setValue(var.getValue());
-                    }
-
-                    // 更新右操作数值
-                    VariableDef rightOp = condition.getRightOperand();
-                    if (rightOp != null && "VARIABLE".equals(condition.getType())) {
-						// 填充值
-                        VariableDef var = context.getVariable(rightOp.getName(), rightOp.getParent());
-                        rightOp.setValue(var.getValue());
-                    } 
-                    
-                    // 评估单个条件
-                    boolean conditionResult = evaluateSingleCondition(condition);
-                    if ("and".equalsIgnoreCase(conditionCase.getType())) {
-                        caseResult = caseResult && conditionResult;
-                        if (!caseResult) {
-                            // Short circuit for AND
-                            break;
-                        }
-                    } else if ("or".equalsIgnoreCase(conditionCase.getType())) {
-                        caseResult = caseResult || conditionResult;
-                        if (caseResult) {
-                            // Short circuit for OR
-                            break;
-                        }
-                    }
-                }
-                
-                // 如果当前case的所有条件都满足，返回对应的case标识
-                if (caseResult) {
-					return new NodeResult(NodeType.CONDITION, "case" + (i + 1), true);
+            for (int i = 0; i < predicates.length; i++) {
+                // 空条件组是ELSE分支
+                if (predicates[i] != null && predicates[i].test(context)) {
+                    // 当前case的条件满足，返回对应的case标识
+                    return new NodeResult(NodeType.CONDITION, planNode.getBranchKey(i), i, true);
                 }
             }
             
             // 所有条件组合都为false，使用else分支
-			return new NodeResult(NodeType.CONDITION, "else", false);
+			return new NodeResult(NodeType.CONDITION, PlanNode.ELSE_BRANCH, predicates.length, false);
         } catch (Exception e) {
-            return NodeResult.error(NodeType.CONDITION, e.getClass().getSimpleName(), e.getMessage(), JSON.toJSONString(e.getStackTrace()));
+            return NodeResult.error(NodeType.CONDITION, e.getClass().getSimpleName(), e.getMessage(), stackTraceOf(e));
         }
     }
-    
+
     /**
-     * 评估单个条件
-     * @param condition 条件对象
-     * @return 条件评估结果
+     * 获取工作流执行状态，已结束的执行从结果存储中查询
+     * @param executionId 执行ID
+     * @return 当前状态或null如果未找到
      */
-    private boolean evaluateSingleCondition(Condition condition) {
-        Object leftValue = condition.getLeftOperand().getValue();
-        Object rightValue = condition.getRightOperand().getValue();
-        
-        // Special case for isEmpty and isNotEmpty operators
-        ConditionOperator operator = ConditionOperator.fromSymbol(condition.getOperator());
-        if (operator == ConditionOperator.IS_EMPTY) {
-            return leftValue == null || 
-                   (leftValue instanceof String && ((String) leftValue).isEmpty()) ||
-                   (leftValue instanceof Collection && ((Collection<?>) leftValue).isEmpty());
-        }
-        
-        if (operator == ConditionOperator.IS_NOT_EMPTY) {
-            return leftValue != null && 
-                   !((leftValue instanceof String && ((String) leftValue).isEmpty()) ||
-                     (leftValue instanceof Collection && ((Collection<?>) leftValue).isEmpty()));
-        }
-        
-        // For other operators, both operands must have values
-        if (leftValue == null || rightValue == null) {
-            return false;
-        }
-        
-        switch (operator) {
-            case EQUALS:
-                return leftValue.equals(rightValue);
-            case NOT_EQUALS:
-                return !leftValue.equals(rightValue);
-            case GREATER_THAN:
-                if (leftValue instanceof Number && rightValue instanceof Number) {
-                    return ((Number) leftValue).doubleValue() > ((Number) rightValue).doubleValue();
-                }
-                return false;
-            case LESS_THAN:
-                if (leftValue instanceof Number && rightValue instanceof Number) {
-                    return ((Number) leftValue).doubleValue() < ((Number) rightValue).doubleValue();
-                }
-                return false;
-            case GREATER_THAN_OR_EQUALS:
-                if (leftValue instanceof Number && rightValue instanceof Number) {
-                    return ((Number) leftValue).doubleValue() >= ((Number) rightValue).doubleValue();
-                }
-                return false;
-            case LESS_THAN_OR_EQUALS:
-                if (leftValue instanceof Number && rightValue instanceof Number) {
-                    return ((Number) leftValue).doubleValue() <= ((Number) rightValue).doubleValue();
-                }
-                return false;
-            case CONTAINS:
-                if (leftValue instanceof String && rightValue instanceof String) {
-                    return ((String) leftValue).contains((String) rightValue);
-                }
-                return false;
-            case NOT_CONTAINS:
-                if (leftValue instanceof String && rightValue instanceof String) {
-                    return !((String) leftValue).contains((String) rightValue);
-                }
-                return false;
-            case STARTS_WITH:
-                if (leftValue instanceof String && rightValue instanceof String) {
-                    return ((String) leftValue).startsWith((String) rightValue);
-                }
-                return false;
-            case ENDS_WITH:
-                if (leftValue instanceof String && rightValue instanceof String) {
-                    return ((String) leftValue).endsWith((String) rightValue);
-                }
-                return false;
-            default:
-                return false;
-        }
+    public WorkflowStatus getWorkflowStatus(String executionId) {
+        WorkflowContext context = activeWorkflows.get(executionId);
+        return context != null ? context.getStatus() : results.getStatus(executionId);
     }
 
     /**
-     * 获取工作流执行状态
+     * 获取执行的结果：正在运行的执行返回当前状态，已结束的执行返回保存的状态、耗时以及输出或错误信息
      * @param executionId 执行ID
-     * @return 当前状态或null如果未找到
+     * @return 结果映射，执行不存在或结果已过期时返回 null
      */
-    public WorkflowStatus getWorkflowStatus(String executionId) {
+    public Map<String, Object> getExecutionResult(String executionId) {
+        WorkflowContext context = activeWorkflows.get(executionId);
+        return context != null ? executionResult(context) : results.get(executionId);
+    }
+
+    /**
+     * 执行是否仍在排队或运行
+     * @param executionId 执行ID
+     * @return 执行尚未结束时返回true
+     */
+    public boolean isActive(String executionId) {
+        return activeWorkflows.containsKey(executionId);
+    }
+
+    /**
+     * 获取正在运行的执行当前的上下文变量快照
+     * @param executionId 执行ID
+     * @return 不可修改的变量快照，执行不存在或已结束时返回 null
+     */
+    public Map<String, VariableDef> getExecutionVariables(String executionId) {
         WorkflowContext context = activeWorkflows.get(executionId);
-        return context != null ? context.getStatus() : null;
+        return context != null ? context.getVariables() : null;
     }
 
     /**
-     * 停止一个正在运行的工作流
+     * 停止一个正在运行的工作流。
+     * 执行会在当前节点结束后终止，正在执行的工具会被中断
      * @param executionId 执行ID
      * @return 如果工作流被停止则返回true
      */
     public boolean stopWorkflow(String executionId) {
         WorkflowContext context = activeWorkflows.get(executionId);
         if (context != null) {
-            context.setStatus(WorkflowStatus.SUSPENDED);
-            return true;
+            return context.getCancellationToken().cancel(WorkflowStatus.CANCELLED, "执行被手动停止");
         }
         return false;
     }
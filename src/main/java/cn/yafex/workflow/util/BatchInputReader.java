@@ -0,0 +1,104 @@
+package cn.yafex.workflow.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 以流的方式逐条读取批量执行的输入，不会一次性把整个请求体加载到内存。
+ * 第一个非空白字符是 '[' 时按 JSON 数组读取，否则按 NDJSON（每行一个 JSON 对象，空行忽略）读取。
+ * 格式错误或不是 JSON 对象的项（包括 null）抛出 {@link JSONException}，不会当作输入结束
+ */
+public class BatchInputReader implements Iterator<Map<String, Object>>, Closeable {
+    private final BufferedReader reader;
+    private JSONReader arrayReader;
+    private Map<String, Object> next;
+    private boolean done;
+    /** 已读取的项数 */
+    private int count;
+
+    public BatchInputReader(InputStream in) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int c;
+        do {
+            reader.mark(1);
+            c = reader.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        if (c == -1) {
+            done = true;
+            return;
+        }
+        reader.reset();
+        if (c == '[') {
+            arrayReader = new JSONReader(reader);
+            arrayReader.startArray();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, Object> item = next;
+        next = null;
+        return item;
+    }
+
+    private void advance() {
+        if (arrayReader != null) {
+            if (arrayReader.hasNext()) {
+                next = asObject(arrayReader.readObject());
+            } else {
+                arrayReader.endArray();
+                done = true;
+            }
+            return;
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    next = asObject(JSON.parse(line));
+                    return;
+                }
+            }
+            done = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> asObject(Object item) {
+        count++;
+        if (!(item instanceof JSONObject)) {
+            throw new JSONException("批量输入第 " + count + " 项不是 JSON 对象: " + item);
+        }
+        return (JSONObject) item;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
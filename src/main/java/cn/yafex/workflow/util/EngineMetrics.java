@@ -0,0 +1,191 @@
+package cn.yafex.workflow.util;
+
+import cn.yafex.workflow.execution.WorkflowStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 执行引擎的指标：每个工作流的执行耗时和结束状态、每种节点类型的耗时、每个工具的调用耗时和失败次数。
+ *
+ * <p>耗时记录在 {@link LatencyHistogram} 中。记录时只查找已有的条目并做原子加法，
+ * 除了某个工作流、节点类型或工具第一次出现时创建条目以外不分配对象。
+ * 指标可以导出为 Prometheus 文本格式，引擎状态等即时值由调用方通过 {@link #writeGauge} 追加。</p>
+ */
+@Component
+public class EngineMetrics {
+    private static final WorkflowStatus[] STATUSES = WorkflowStatus.values();
+    /** Prometheus 直方图的桶上界（秒） */
+    private static final double[] BUCKET_SECONDS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+    };
+
+    private final Map<String, WorkflowMetrics> workflows = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> nodeTypes = new ConcurrentHashMap<>();
+    private final Map<String, ToolMetrics> tools = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一个执行的结束
+     * @param workflowId 工作流ID
+     * @param status 最终状态
+     * @param durationMs 执行耗时（毫秒）
+     */
+    public void recordWorkflow(String workflowId, WorkflowStatus status, long durationMs) {
+        WorkflowMetrics metrics = workflows.get(workflowId);
+        if (metrics == null) {
+            metrics = workflows.computeIfAbsent(workflowId, id -> new WorkflowMetrics());
+        }
+        metrics.latency.record(durationMs * 1000);
+        metrics.statuses.incrementAndGet(status.ordinal());
+    }
+
+    /**
+     * 记录一个节点的执行耗时
+     * @param nodeType 节点类型
+     * @param durationMs 节点耗时（毫秒）
+     */
+    public void recordNode(String nodeType, long durationMs) {
+        LatencyHistogram latency = nodeTypes.get(nodeType);
+        if (latency == null) {
+            latency = nodeTypes.computeIfAbsent(nodeType, type -> new LatencyHistogram());
+        }
+        latency.record(durationMs * 1000);
+    }
+
+    /**
+     * 记录一次工具调用
+     * @param toolName 工具名称
+     * @param nanos 调用耗时（纳秒）
+     * @param failed 调用是否失败
+     */
+    public void recordTool(String toolName, long nanos, boolean failed) {
+        ToolMetrics metrics = tools.get(toolName);
+        if (metrics == null) {
+            metrics = tools.computeIfAbsent(toolName, name -> new ToolMetrics());
+        }
+        metrics.latency.record(nanos / 1000);
+        if (failed) {
+            metrics.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * 指标的摘要
+     * @return 按工作流、节点类型和工具分组的耗时摘要和计数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> workflowStats = new TreeMap<>();
+        workflows.forEach((id, metrics) -> {
+            Map<String, Object> entry = new LinkedHashMap<>(metrics.latency.getSummary());
+            Map<String, Long> statuses = new LinkedHashMap<>();
+            for (WorkflowStatus status : STATUSES) {
+                long count = metrics.statuses.get(status.ordinal());
+                if (count > 0) {
+                    statuses.put(status.name(), count);
+                }
+            }
+            entry.put("statuses", statuses);
+            workflowStats.put(id, entry);
+        });
+        Map<String, Object> nodeStats = new TreeMap<>();
+        nodeTypes.forEach((type, latency) -> nodeStats.put(type, latency.getSummary()));
+        Map<String, Object> toolStats = new TreeMap<>();
+        tools.forEach((name, metrics) -> {
+            Map<String, Object> entry = new LinkedHashMap<>(metrics.latency.getSummary());
+            entry.put("errors", metrics.errors.get());
+            toolStats.put(name, entry);
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workflows", workflowStats);
+        stats.put("nodeTypes", nodeStats);
+        stats.put("tools", toolStats);
+        return stats;
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出直方图和计数
+     * @param out 输出
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP workflow_execution_seconds Workflow execution latency\n");
+        out.append("# TYPE workflow_execution_seconds histogram\n");
+        new TreeMap<>(workflows).forEach((id, metrics) ->
+            writeHistogram(out, "workflow_execution_seconds", "workflow", id, metrics.latency));
+
+        out.append("# HELP workflow_executions_total Finished workflow executions by final status\n");
+        out.append("# TYPE workflow_executions_total counter\n");
+        new TreeMap<>(workflows).forEach((id, metrics) -> {
+            for (WorkflowStatus status : STATUSES) {
+                long count = metrics.statuses.get(status.ordinal());
+                if (count > 0) {
+                    out.append("workflow_executions_total{workflow=\"").append(escape(id))
+                        .append("\",status=\"").append(status.name()).append("\"} ").append(count).append('\n');
+                }
+            }
+        });
+
+        out.append("# HELP workflow_node_seconds Node execution latency by node type\n");
+        out.append("# TYPE workflow_node_seconds histogram\n");
+        new TreeMap<>(nodeTypes).forEach((type, latency) ->
+            writeHistogram(out, "workflow_node_seconds", "type", type, latency));
+
+        out.append("# HELP workflow_tool_call_seconds Tool call latency\n");
+        out.append("# TYPE workflow_tool_call_seconds histogram\n");
+        new TreeMap<>(tools).forEach((name, metrics) ->
+            writeHistogram(out, "workflow_tool_call_seconds", "tool", name, metrics.latency));
+
+        out.append("# HELP workflow_tool_errors_total Failed tool calls\n");
+        out.append("# TYPE workflow_tool_errors_total counter\n");
+        new TreeMap<>(tools).forEach((name, metrics) ->
+            out.append("workflow_tool_errors_total{tool=\"").append(escape(name)).append("\"} ")
+                .append(metrics.errors.get()).append('\n'));
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出一个即时值
+     * @param out 输出
+     * @param name 指标名称
+     * @param type gauge 或 counter
+     * @param help 说明
+     * @param value 当前值
+     */
+    public static void writeGauge(StringBuilder out, String name, String type, String help, Number value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value != null ? value : 0).append('\n');
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String label, String value,
+                                       LatencyHistogram histogram) {
+        String labels = label + "=\"" + escape(value) + "\"";
+        // 先读取总数，各桶的累计计数不会超过 +Inf 桶
+        long count = histogram.getCount();
+        long sum = histogram.getSum();
+        for (double le : BUCKET_SECONDS) {
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                .append(Math.min(count, histogram.countAtOrBelow((long) (le * 1_000_000)))).append('\n');
+        }
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(sum / 1_000_000.0).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    private static String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class WorkflowMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLongArray statuses = new AtomicLongArray(STATUSES.length);
+    }
+
+    private static final class ToolMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+    }
+}
@@ -0,0 +1,322 @@
+package cn.yafex.workflow.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 工作流执行日志的保留策略：过期删除、总大小限制和冷文件压缩。
+ *
+ * <p>后台线程每隔 workflow.log.retention.interval-ms 扫描一次日志目录：
+ * 超过 compress-after-ms 没有写入的 {@code .txt} 文件压缩为 {@code .txt.gz}；
+ * 超过 max-age-ms 的文件删除；总大小仍超过 max-total-bytes 时从最旧的文件开始删除。
+ * 写线程正在写入的文件不会被压缩或删除，日志写入路径不等待这里的任何操作。</p>
+ */
+@Component
+public class LogRetention {
+    private static final Logger logger = LoggerFactory.getLogger(LogRetention.class);
+
+    private static final String TEXT_SUFFIX = ".txt";
+    private static final String GZIP_SUFFIX = ".txt.gz";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+        .withZone(ZoneId.systemDefault());
+
+    /** 日志文件的最长保留时间（毫秒），0 表示不按时间删除 */
+    @Value("${workflow.log.retention.max-age-ms:604800000}")
+    private long maxAgeMs;
+
+    /** 日志目录的总大小上限（字节），0 表示不限制 */
+    @Value("${workflow.log.retention.max-total-bytes:10737418240}")
+    private long maxTotalBytes;
+
+    /** 文件超过该时间（毫秒）没有写入后压缩，0 表示不压缩 */
+    @Value("${workflow.log.retention.compress-after-ms:3600000}")
+    private long compressAfterMs;
+
+    /** 扫描间隔（毫秒），0 表示不启动后台扫描 */
+    @Value("${workflow.log.retention.interval-ms:60000}")
+    private long intervalMs;
+
+    private final WorkflowLogger workflowLogger;
+    private ScheduledExecutorService executor;
+
+    private volatile long usedBytes;
+    private volatile int textFiles;
+    private volatile int compressedFiles;
+    private volatile long lastRunMillis;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong compressedSavedBytes = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong deletedBytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Autowired
+    public LogRetention(WorkflowLogger workflowLogger) {
+        this.workflowLogger = workflowLogger;
+    }
+
+    /**
+     * @param workflowLogger 日志目录所属的日志写入器
+     * @param maxAgeMs 日志文件的最长保留时间（毫秒）
+     * @param maxTotalBytes 日志目录的总大小上限（字节）
+     * @param compressAfterMs 文件超过该时间没有写入后压缩
+     * @param intervalMs 扫描间隔（毫秒），0 表示只通过 {@link #runOnce()} 执行
+     */
+    public LogRetention(WorkflowLogger workflowLogger, long maxAgeMs, long maxTotalBytes,
+                        long compressAfterMs, long intervalMs) {
+        this.workflowLogger = workflowLogger;
+        this.maxAgeMs = maxAgeMs;
+        this.maxTotalBytes = maxTotalBytes;
+        this.compressAfterMs = compressAfterMs;
+        this.intervalMs = intervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalMs <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "workflow-log-retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 扫描一次日志目录，按保留策略压缩和删除文件
+     * @throws IOException 如果无法遍历日志目录
+     */
+    public synchronized void runOnce() throws IOException {
+        Path directory = workflowLogger.getDirectory();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<LogEntry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.endsWith(TEXT_SUFFIX) || name.endsWith(GZIP_SUFFIX);
+            }).forEach(file -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        entries.add(new LogEntry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                } catch (IOException e) {
+                    // 扫描期间被删除的文件
+                }
+            });
+        }
+
+        List<LogEntry> retained = new ArrayList<>();
+        for (LogEntry entry : entries) {
+            if (workflowLogger.isOpen(entry.path)) {
+                retained.add(entry);
+            } else if (maxAgeMs > 0 && now - entry.modified > maxAgeMs) {
+                if (delete(entry)) {
+                    expired.incrementAndGet();
+                }
+            } else {
+                if (compressAfterMs > 0 && now - entry.modified > compressAfterMs
+                    && entry.path.getFileName().toString().endsWith(TEXT_SUFFIX)) {
+                    compress(entry);
+                }
+                retained.add(entry);
+            }
+        }
+
+        long total = 0;
+        for (LogEntry entry : retained) {
+            total += entry.size;
+        }
+        if (maxTotalBytes > 0 && total > maxTotalBytes) {
+            retained.sort(Comparator.comparingLong(entry -> entry.modified));
+            for (LogEntry entry : retained) {
+                if (total <= maxTotalBytes) {
+                    break;
+                }
+                if (!workflowLogger.isOpen(entry.path) && delete(entry)) {
+                    evicted.incrementAndGet();
+                    total -= entry.size;
+                }
+            }
+        }
+        removeEmptyDirectories(directory, now);
+
+        long used = 0;
+        int text = 0;
+        int gzip = 0;
+        for (LogEntry entry : retained) {
+            if (Files.exists(entry.path)) {
+                used += entry.size;
+                if (entry.path.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+                    gzip++;
+                } else {
+                    text++;
+                }
+            }
+        }
+        usedBytes = used;
+        textFiles = text;
+        compressedFiles = gzip;
+        lastRunMillis = now;
+        runs.incrementAndGet();
+    }
+
+    /**
+     * 日志目录的占用和保留策略的执行情况
+     * @return 占用字节数、文件数、压缩和删除的数量等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("usedBytes", usedBytes);
+        stats.put("textFiles", textFiles);
+        stats.put("compressedFiles", compressedFiles);
+        stats.put("lastRun", lastRunMillis);
+        stats.put("runs", runs.get());
+        stats.put("compressed", compressed.get());
+        stats.put("compressedSavedBytes", compressedSavedBytes.get());
+        stats.put("expired", expired.get());
+        stats.put("evicted", evicted.get());
+        stats.put("deletedBytes", deletedBytes.get());
+        stats.put("failures", failures.get());
+        stats.put("maxAgeMs", maxAgeMs);
+        stats.put("maxTotalBytes", maxTotalBytes);
+        stats.put("compressAfterMs", compressAfterMs);
+        return stats;
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            logger.warn("清理工作流日志失败: {}", e.toString());
+        }
+    }
+
+    /**
+     * 压缩为同目录下的 .txt.gz 文件后删除原文件。压缩期间文件被重新打开或写入时放弃压缩结果
+     */
+    private void compress(LogEntry entry) {
+        Path target = entry.path.resolveSibling(entry.path.getFileName() + ".gz");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(target))) {
+                Files.copy(entry.path, out);
+            }
+            if (workflowLogger.isOpen(entry.path)
+                || Files.getLastModifiedTime(entry.path).toMillis() != entry.modified) {
+                Files.deleteIfExists(target);
+                return;
+            }
+            // 保留原文件的修改时间，过期和总大小策略按日志最后写入的时间计算
+            Files.setLastModifiedTime(target, FileTime.fromMillis(entry.modified));
+            Files.delete(entry.path);
+            long size = Files.size(target);
+            compressed.incrementAndGet();
+            compressedSavedBytes.addAndGet(entry.size - size);
+            entry.path = target;
+            entry.size = size;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            logger.warn("压缩工作流日志失败: {}: {}", entry.path, e.getMessage());
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+                // 下次扫描时重新压缩会覆盖该文件
+            }
+        }
+    }
+
+    private boolean delete(LogEntry entry) {
+        try {
+            if (Files.deleteIfExists(entry.path)) {
+                deletedBytes.addAndGet(entry.size);
+                return true;
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            logger.warn("删除工作流日志失败: {}: {}", entry.path, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 删除已经没有文件的日期目录。写线程只在当天（刚过零点时还有前一天）的目录中创建文件，这两个目录不删除
+     */
+    private void removeEmptyDirectories(Path directory, long now) throws IOException {
+        String yesterday = DAY_FORMAT.format(Instant.ofEpochMilli(now).minus(1, ChronoUnit.DAYS));
+        try (DirectoryStream<Path> days = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path day : days) {
+                if (day.getFileName().toString().compareTo(yesterday) >= 0) {
+                    continue;
+                }
+                try (DirectoryStream<Path> content = Files.newDirectoryStream(day)) {
+                    if (content.iterator().hasNext()) {
+                        continue;
+                    }
+                }
+                try {
+                    Files.delete(day);
+                } catch (IOException e) {
+                    // 写线程刚刚在该目录中创建了文件
+                }
+            }
+        }
+    }
+
+    /**
+     * 扫描到的一个日志文件
+     */
+    private static final class LogEntry {
+        Path path;
+        long size;
+        final long modified;
+
+        LogEntry(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package cn.yafex.workflow.util;
+
+import cn.yafex.tools.schema.VariableDef;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二进制格式的执行轨迹存储。
+ *
+ * <p>执行开始、节点进入、节点完成和执行结束各记录一条定长头部加变长字段的二进制记录，
+ * 节点输出编码为紧凑的 JSON（变量只保留值）。记录追加写入段文件 {@code trace-%08d.seg}，
+ * 段超过大小上限后切换到新段。所有执行共用少量段文件，而不是每个执行一个文件。</p>
+ *
+ * <p>内存中的索引按段保存：每个段的时间范围、包含的工作流，以及段内每个执行第一条记录的位置。
+ * 查询一个执行时只读取包含它的段并从第一条记录开始扫描；按时间范围查询时跳过时间范围不重叠的段。
+ * 读取通过内存映射进行，已写满的段映射一次后复用。启动时扫描保留下来的段重建索引。</p>
+ *
+ * <p>启动时和每次切换段时按 workflow.trace.retention.* 删除旧段：最后一条记录超过 max-age-ms 的段删除，
+ * 段文件总大小仍超过 max-total-bytes 时从最旧的段开始删除。段的索引随段一起释放，
+ * 因此索引和目录大小都受保留策略限制。活动段不会被删除。</p>
+ *
+ * <p>写入只在 {@link WorkflowLogger} 的写线程上进行：{@link #append} 编码到内存缓冲区，
+ * {@link #flush()} 写入段文件后记录才对查询可见。</p>
+ */
+@Component
+public class TraceStore {
+    private static final Logger logger = LoggerFactory.getLogger(TraceStore.class);
+
+    /** 执行开始 */
+    public static final byte START = 0;
+    /** 节点进入 */
+    public static final byte ENTER = 1;
+    /** 节点完成 */
+    public static final byte COMPLETE = 2;
+    /** 执行结束 */
+    public static final byte END = 3;
+
+    private static final String[] TYPE_NAMES = {"START", "ENTER", "COMPLETE", "END"};
+    private static final String SEGMENT_PREFIX = "trace-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    /** 记录头部：长度(4) 类型(1) 时间戳(8) 耗时(8) */
+    private static final int HEADER_BYTES = 4 + 1 + 8 + 8;
+
+    /** 是否记录执行轨迹 */
+    @Value("${workflow.trace.enabled:true}")
+    private boolean enabled;
+
+    /** 段文件所在目录 */
+    @Value("${workflow.trace.path:traces}")
+    private String path;
+
+    /** 单个段文件的大小上限（字节），超过后切换到新段 */
+    @Value("${workflow.trace.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    /** 段的最长保留时间（毫秒），按段内最后一条记录的时间计算，0 表示不按时间删除 */
+    @Value("${workflow.trace.retention.max-age-ms:604800000}")
+    private long maxAgeMs;
+
+    /** 段文件的总大小上限（字节），0 表示不限制 */
+    @Value("${workflow.trace.retention.max-total-bytes:10737418240}")
+    private long maxTotalBytes;
+
+    private Path directory;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // 以下字段只在写线程上访问
+    private Segment active;
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(256 * 1024);
+    /** 活动段中已写入文件和缓冲区中的字节数，即下一条记录的位置 */
+    private long position;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public TraceStore() {
+    }
+
+    /**
+     * @param path 段文件所在目录
+     * @param segmentBytes 单个段文件的大小上限（字节）
+     */
+    public TraceStore(String path, long segmentBytes) {
+        this(path, segmentBytes, 0, 0);
+    }
+
+    /**
+     * @param path 段文件所在目录
+     * @param segmentBytes 单个段文件的大小上限（字节）
+     * @param maxAgeMs 段的最长保留时间（毫秒），0 表示不按时间删除
+     * @param maxTotalBytes 段文件的总大小上限（字节），0 表示不限制
+     */
+    public TraceStore(String path, long segmentBytes, long maxAgeMs, long maxTotalBytes) {
+        this.enabled = true;
+        this.path = path;
+        this.segmentBytes = segmentBytes;
+        this.maxAgeMs = maxAgeMs;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * 按保留策略删除旧段，扫描剩下的段重建索引并打开新段
+     * @throws UncheckedIOException 如果目录无法创建或段文件无法读取
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            directory = Paths.get(path);
+            Files.createDirectories(directory);
+            long last = 0;
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            Collections.sort(files);
+            // 从最新的段开始，超过保留策略的段不再读取
+            Collections.reverse(files);
+            long now = System.currentTimeMillis();
+            long retainedBytes = 0;
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                last = Math.max(last, id);
+                if (Files.size(file) == 0) {
+                    // 没有写入记录就关闭的段
+                    Files.delete(file);
+                    continue;
+                }
+                long size = Files.size(file);
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                boolean old = maxAgeMs > 0 && modified < now - maxAgeMs;
+                if (old || (maxTotalBytes > 0 && retainedBytes + size > maxTotalBytes)) {
+                    deleteSegment(file, old ? expired : evicted);
+                    continue;
+                }
+                retainedBytes += size;
+                Segment segment = new Segment(id, file);
+                segment.size = size;
+                rebuildIndex(segment);
+                segments.put(id, segment);
+            }
+            openSegment(last + 1);
+        } catch (IOException | NumberFormatException e) {
+            throw new UncheckedIOException("打开执行轨迹失败: " + path,
+                e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+        logger.info("执行轨迹已打开: path={}, segments={}", directory.toAbsolutePath(), segments.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("关闭执行轨迹段失败: {}", e.getMessage());
+        }
+        channel = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 编码一条记录到写缓冲区，调用 {@link #flush()} 后写入段文件。只在写线程上调用
+     * @param type 记录类型 {@link #START} / {@link #ENTER} / {@link #COMPLETE} / {@link #END}
+     * @param timestamp 时间戳（毫秒）
+     * @param duration 耗时（毫秒），节点完成和执行结束记录有效
+     * @param executionId 执行ID
+     * @param workflowId 工作流ID
+     * @param nodeId 节点ID，执行开始和结束记录为 null
+     * @param nodeName 节点名称
+     * @param detail 节点类型，执行结束记录为最终状态
+     * @param output 节点输出，没有时为 null
+     * @return 编码后的字节数，未记录时为 0
+     */
+    public int append(byte type, long timestamp, long duration, String executionId, String workflowId,
+                       String nodeId, String nodeName, String detail, Object output) {
+        if (channel == null) {
+            return 0;
+        }
+        byte[][] fields = {
+            utf8(executionId), utf8(workflowId), utf8(nodeId), utf8(nodeName), utf8(detail), encodeOutput(output)
+        };
+        int length = HEADER_BYTES - 4;
+        for (byte[] field : fields) {
+            length += 4 + (field != null ? field.length : 0);
+        }
+        if (position > 0 && position + 4 + length > segmentBytes) {
+            roll();
+        }
+        if (pending.remaining() < 4 + length) {
+            flush();
+            if (pending.capacity() < 4 + length) {
+                pending = ByteBuffer.allocate(4 + length);
+            }
+        }
+        long offset = position;
+        pending.putInt(length).put(type).putLong(timestamp).putLong(duration);
+        for (byte[] field : fields) {
+            if (field == null) {
+                pending.putInt(-1);
+            } else {
+                pending.putInt(field.length).put(field);
+            }
+        }
+        position += 4 + length;
+        appended.incrementAndGet();
+        index(active, executionId, workflowId, timestamp, offset);
+        return 4 + length;
+    }
+
+    /**
+     * 把写缓冲区中的记录写入段文件，之后这些记录对查询可见。只在写线程上调用
+     */
+    public void flush() {
+        if (channel == null || pending.position() == 0) {
+            return;
+        }
+        // 通过 Buffer 调用，Java 9 起 ByteBuffer 的协变重载在 Java 8 上不存在
+        ((Buffer) pending).flip();
+        try {
+            int bytes = pending.remaining();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            bytesWritten.addAndGet(bytes);
+            active.size += bytes;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            logger.warn("写入执行轨迹失败: {}", e.getMessage());
+            // 写入失败的位置之后不再有效，切换到新段
+            position = active.size;
+            ((Buffer) pending).clear();
+            roll();
+            return;
+        }
+        ((Buffer) pending).clear();
+    }
+
+    /**
+     * 查询一个执行的全部轨迹记录
+     * @param executionId 执行ID
+     * @return 按写入顺序排列的记录，执行不存在时为空列表
+     */
+    public List<Map<String, Object>> getExecutionTrace(String executionId) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            Integer first = segment.executions.get(executionId);
+            if (first == null) {
+                continue;
+            }
+            ByteBuffer buffer = segment.read();
+            int offset = first;
+            while (offset + HEADER_BYTES <= buffer.limit()) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + 4 + length > buffer.limit()) {
+                    break;
+                }
+                if (executionId.equals(readString(buffer, offset + HEADER_BYTES))) {
+                    Map<String, Object> record = decode(buffer, offset);
+                    records.add(record);
+                    if (buffer.get(offset + 4) == END) {
+                        // 执行已结束，之后的记录不属于该执行
+                        break;
+                    }
+                }
+                offset += 4 + length;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 按时间范围扫描轨迹记录
+     * @param from 开始时间（毫秒，包含）
+     * @param to 结束时间（毫秒，不包含）
+     * @param workflowId 只返回该工作流的记录，为 null 时返回全部
+     * @param limit 最多返回的记录数量
+     * @return 按写入顺序排列的记录
+     */
+    public List<Map<String, Object>> scan(long from, long to, String workflowId, int limit) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (records.size() >= limit) {
+                break;
+            }
+            // 按段的时间范围和包含的工作流跳过不相关的段
+            if (segment.maxTime < from || segment.minTime >= to
+                || (workflowId != null && !segment.workflows.contains(workflowId))) {
+                continue;
+            }
+            ByteBuffer buffer = segment.read();
+            int offset = 0;
+            while (offset + HEADER_BYTES <= buffer.limit() && records.size() < limit) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + 4 + length > buffer.limit()) {
+                    break;
+                }
+                long timestamp = buffer.getLong(offset + 5);
+                if (timestamp >= from && timestamp < to) {
+                    Map<String, Object> record = decode(buffer, offset);
+                    if (workflowId == null || workflowId.equals(record.get("workflowId"))) {
+                        records.add(record);
+                    }
+                }
+                offset += 4 + length;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 轨迹存储的统计信息
+     * @return 段数量、索引的执行数量、记录数、写入字节数、删除的段数量等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("path", directory != null ? directory.toAbsolutePath().toString() : path);
+        stats.put("segments", segments.size());
+        long bytes = 0;
+        Set<String> executions = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            bytes += segment.size;
+            executions.addAll(segment.executions.keySet());
+        }
+        stats.put("bytes", bytes);
+        stats.put("indexedExecutions", executions.size());
+        stats.put("appended", appended.get());
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("failures", failures.get());
+        stats.put("maxAgeMs", maxAgeMs);
+        stats.put("maxTotalBytes", maxTotalBytes);
+        stats.put("expiredSegments", expired.get());
+        stats.put("evictedSegments", evicted.get());
+        return stats;
+    }
+
+    private void openSegment(long id) throws IOException {
+        Path file = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        active = new Segment(id, file);
+        segments.put(id, active);
+        position = 0;
+    }
+
+    private void roll() {
+        flush();
+        try {
+            channel.close();
+            active.sealed = true;
+            openSegment(active.id + 1);
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            channel = null;
+            logger.warn("切换执行轨迹段失败，停止记录: {}", e.getMessage());
+            return;
+        }
+        enforceRetention();
+    }
+
+    /**
+     * 按保留策略删除已写满的旧段及其索引。只在写线程上调用
+     */
+    private void enforceRetention() {
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        for (Segment segment : segments.values()) {
+            if (segment == active) {
+                break;
+            }
+            AtomicLong reason;
+            if (maxAgeMs > 0 && segment.maxTime < now - maxAgeMs) {
+                reason = expired;
+            } else if (maxTotalBytes > 0 && total > maxTotalBytes) {
+                reason = evicted;
+            } else {
+                // 段按时间顺序排列，之后的段更新
+                break;
+            }
+            // 先从索引中移除，之后的查询不再读取该段；已映射的读取在 POSIX 上不受删除影响
+            segments.remove(segment.id);
+            total -= segment.size;
+            deleteSegment(segment.path, reason);
+        }
+    }
+
+    private void deleteSegment(Path file, AtomicLong reason) {
+        try {
+            Files.deleteIfExists(file);
+            reason.incrementAndGet();
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            logger.warn("删除执行轨迹段失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    private void index(Segment segment, String executionId, String workflowId, long timestamp, long offset) {
+        if (timestamp < segment.minTime) {
+            segment.minTime = timestamp;
+        }
+        if (timestamp > segment.maxTime) {
+            segment.maxTime = timestamp;
+        }
+        if (workflowId != null) {
+            segment.workflows.add(workflowId);
+        }
+        if (executionId != null) {
+            // 每个段只记录执行的第一条记录
+            segment.executions.putIfAbsent(executionId, (int) offset);
+        }
+    }
+
+    private void rebuildIndex(Segment segment) {
+        segment.sealed = true;
+        ByteBuffer buffer = segment.read();
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.limit()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > buffer.limit()) {
+                // 写入过程中崩溃留下的不完整记录
+                break;
+            }
+            String executionId = readString(buffer, offset + HEADER_BYTES);
+            String workflowId = readString(buffer, offset + HEADER_BYTES + 4 + fieldLength(buffer, offset + HEADER_BYTES));
+            index(segment, executionId, workflowId, buffer.getLong(offset + 5), offset);
+            offset += 4 + length;
+        }
+        segment.size = offset;
+    }
+
+    private static Map<String, Object> decode(ByteBuffer buffer, int offset) {
+        byte type = buffer.get(offset + 4);
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("type", type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : Byte.toString(type));
+        record.put("timestamp", buffer.getLong(offset + 5));
+        String[] names = {"executionId", "workflowId", "nodeId", "nodeName", type == END ? "status" : "nodeType"};
+        int field = offset + HEADER_BYTES;
+        for (String name : names) {
+            String value = readString(buffer, field);
+            if (value != null) {
+                record.put(name, value);
+            }
+            field += 4 + fieldLength(buffer, field);
+        }
+        if (type == COMPLETE || type == END) {
+            record.put("durationMs", buffer.getLong(offset + 13));
+        }
+        String output = readString(buffer, field);
+        if (output != null) {
+            record.put("outputs", JSON.parse(output));
+        }
+        return record;
+    }
+
+    private static int fieldLength(ByteBuffer buffer, int offset) {
+        return Math.max(0, buffer.getInt(offset));
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * 编码节点输出：变量只保留值，不受全局 PrettyFormat 等设置影响
+     */
+    private byte[] encodeOutput(Object output) {
+        if (output == null) {
+            return null;
+        }
+        Object values = output;
+        if (output instanceof Map) {
+            Map<String, Object> compact = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) output).entrySet()) {
+                Object value = entry.getValue();
+                compact.put(String.valueOf(entry.getKey()), value instanceof VariableDef ? ((VariableDef) value).getValue() : value);
+            }
+            values = compact;
+        }
+        try {
+            int features = (JSON.DEFAULT_GENERATE_FEATURE & ~SerializerFeature.PrettyFormat.getMask())
+                | SerializerFeature.DisableCircularReferenceDetect.getMask();
+            return JSON.toJSONString(values, SerializeConfig.globalInstance, null, null, features)
+                .getBytes(StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 一个段文件及其稀疏索引
+     */
+    private static final class Segment {
+        final long id;
+        final Path path;
+        /** 已写入文件的字节数，查询只读取这个范围 */
+        volatile long size;
+        volatile long minTime = Long.MAX_VALUE;
+        volatile long maxTime = Long.MIN_VALUE;
+        final Set<String> workflows = ConcurrentHashMap.newKeySet();
+        /** 段内每个执行第一条记录的位置，随段一起删除 */
+        final Map<String, Integer> executions = new ConcurrentHashMap<>();
+        /** 已写满的段不再变化 */
+        volatile boolean sealed;
+        private MappedByteBuffer mapped;
+
+        Segment(long id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        /**
+         * 映射段文件中已写入的部分。已写满的段映射一次后复用，活动段每次按当前大小重新映射
+         * @return 只读缓冲区，各调用方独立使用自己的副本
+         */
+        ByteBuffer read() {
+            long limit = size;
+            MappedByteBuffer current;
+            synchronized (this) {
+                current = mapped;
+                if (current == null || current.capacity() < limit) {
+                    if (limit == 0) {
+                        return ByteBuffer.allocate(0);
+                    }
+                    try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                        current = file.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(limit, file.size()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("读取执行轨迹段失败: " + path, e);
+                    }
+                    if (sealed) {
+                        mapped = current;
+                    }
+                }
+            }
+            ByteBuffer view = ((ByteBuffer) current).duplicate();
+            ((Buffer) view).limit((int) Math.min(limit, view.capacity()));
+            return view;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.alibaba.fastjson.parser.JSONToken;
 import com.alibaba.fastjson.parser.deserializer.ObjectDeserializer;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.JSONArray;
+import cn.yafex.workflow.execution.ExecutionPlan;
 import cn.yafex.workflow.model.Workflow;
 import cn.yafex.tools.core.ToolDefinition;
 import cn.yafex.tools.schema.FieldDef;
@@ -21,16 +22,30 @@ import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.ConsoleAppender;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.lang.reflect.Type;
 
 /**
  * 用于处理JSON工作流定义
+ *
+ * <p>解析后的工作流会按 ID 缓存，并以文件的修改时间和大小校验是否过期。
+ * 缓存的 Workflow 及其执行计划在多个执行之间共享，调用方只能读取，不能修改。</p>
  */
 @Component
 public class WorkflowLoader {
@@ -54,9 +69,38 @@ public class WorkflowLoader {
     
     @Value("${workflow.definitions.path:workflow-definitions}")
     private String workflowPath;
+
+    /** 缓存的最大工作流数量，0 表示禁用缓存 */
+    @Value("${workflow.cache.max-size:128}")
+    private int cacheMaxSize;
+
+    /** 是否监听工作流目录的文件变化以主动失效缓存 */
+    @Value("${workflow.cache.watch:true}")
+    private boolean watchEnabled;
     
     private Path workflowDir;
 
+    /** 按访问顺序排列的 LRU 缓存，所有访问都需要持有 cache 的锁 */
+    private final LinkedHashMap<String, CachedWorkflow> cache = new LinkedHashMap<String, CachedWorkflow>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedWorkflow> eldest) {
+            if (size() > cacheMaxSize) {
+                cacheEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+    private final AtomicLong cacheInvalidations = new AtomicLong();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
     public WorkflowLoader() {
         // 配置Fastjson全局设置
         JSON.DEFAULT_GENERATE_FEATURE |= SerializerFeature.PrettyFormat.getMask();
@@ -73,6 +117,18 @@ public class WorkflowLoader {
         globalConfig.putDeserializer(FieldDef.class, new FieldDefDeserializer());
     }
 
+    /**
+     * @param workflowPath 工作流定义目录
+     * @param cacheMaxSize 缓存的最大工作流数量，0 表示禁用缓存
+     * @param watchEnabled 是否监听目录的文件变化
+     */
+    public WorkflowLoader(String workflowPath, int cacheMaxSize, boolean watchEnabled) {
+        this();
+        this.workflowPath = workflowPath;
+        this.cacheMaxSize = cacheMaxSize;
+        this.watchEnabled = watchEnabled;
+    }
+
     @PostConstruct
     public void init() throws IOException {
         // 如果必要，将相对路径转换为绝对路径
@@ -81,6 +137,65 @@ public class WorkflowLoader {
         // 如果目录不存在，则创建目录
         Files.createDirectories(workflowDir);
         logger.info("工作流保存目录: {}", workflowDir);
+
+        if (watchEnabled && cacheMaxSize > 0) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close workflow watcher: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 监听工作流目录，外部修改或删除定义文件时使对应缓存失效
+     */
+    private void startWatcher() {
+        try {
+            watchService = workflowDir.getFileSystem().newWatchService();
+            workflowDir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            // 监听失败时仍然可以依靠修改时间校验缓存
+            logger.warn("Failed to watch workflow directory {}: {}", workflowDir, e.getMessage());
+            return;
+        }
+
+        watchThread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            invalidateAll();
+                            continue;
+                        }
+                        String fileName = event.context().toString();
+                        if (fileName.endsWith(".json")) {
+                            invalidate(fileName.substring(0, fileName.length() - 5));
+                        }
+                    }
+                    if (!key.reset()) {
+                        logger.warn("Workflow directory is no longer watched: {}", workflowDir);
+                        invalidateAll();
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // 应用关闭
+            }
+        }, "workflow-definitions-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
     }
 
     /**
@@ -123,6 +238,8 @@ public class WorkflowLoader {
         } catch (IOException e) {
             logger.error("Failed to save workflow {}: {}", workflow.getId(), e.getMessage());
             throw e;
+        } finally {
+            invalidate(workflow.getId());
         }
     }
 
@@ -151,21 +268,68 @@ public class WorkflowLoader {
     }
 
     /**
-     * 从JSON文件加载工作流定义
+     * 从JSON文件加载工作流定义。文件未变化时直接返回缓存的实例
      * @param workflowId 要加载的工作流ID
-     * @return 加载的工作流
+     * @return 加载的工作流，与其他调用方共享，不能修改
      * @throws IOException 如果文件操作失败
      */
     public Workflow loadWorkflow(String workflowId) throws IOException {
+        return loadCached(workflowId).workflow;
+    }
+
+    /**
+     * 加载工作流并返回其执行计划。执行计划与缓存条目一起保存，文件未变化时不会重新编译
+     * @param workflowId 要加载的工作流ID
+     * @return 编译后的执行计划
+     * @throws IOException 如果文件操作失败
+     */
+    public ExecutionPlan loadPlan(String workflowId) throws IOException {
+        return loadCached(workflowId).plan();
+    }
+
+    /**
+     * 查找缓存，未命中或文件已变化时重新解析
+     */
+    private CachedWorkflow loadCached(String workflowId) throws IOException {
         if (workflowId == null) {
             throw new IllegalArgumentException("Workflow ID cannot be null");
         }
 
         Path filePath = workflowDir.resolve(workflowId + ".json");
-        if (!Files.exists(filePath)) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            invalidate(workflowId);
             throw new IOException("Workflow file does not exist: " + filePath);
         }
 
+        if (cacheMaxSize > 0) {
+            CachedWorkflow cached;
+            synchronized (cache) {
+                cached = cache.get(workflowId);
+            }
+            if (cached != null && cached.matches(attrs)) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+            cacheMisses.incrementAndGet();
+        }
+
+        CachedWorkflow loaded = new CachedWorkflow(parseWorkflow(workflowId, filePath),
+            attrs.lastModifiedTime(), attrs.size());
+        if (cacheMaxSize > 0) {
+            synchronized (cache) {
+                cache.put(workflowId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 读取并解析工作流定义文件
+     */
+    private Workflow parseWorkflow(String workflowId, Path filePath) throws IOException {
         try {
             byte[] bytes = Files.readAllBytes(filePath);
             String jsonString = new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
@@ -227,6 +391,82 @@ public class WorkflowLoader {
         } catch (IOException e) {
             logger.error("Failed to delete workflow {}: {}", workflowId, e.getMessage());
             return false;
+        } finally {
+            invalidate(workflowId);
+        }
+    }
+
+    /**
+     * 使指定工作流的缓存失效
+     * @param workflowId 工作流ID
+     */
+    public void invalidate(String workflowId) {
+        CachedWorkflow removed;
+        synchronized (cache) {
+            removed = cache.remove(workflowId);
+        }
+        if (removed != null) {
+            cacheInvalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            cacheInvalidations.addAndGet(cache.size());
+            cache.clear();
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     * @return 命中、未命中、淘汰、失效次数以及当前大小
+     */
+    public Map<String, Object> getCacheStats() {
+        long hits = cacheHits.get();
+        long misses = cacheMisses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        stats.put("evictions", cacheEvictions.get());
+        stats.put("invalidations", cacheInvalidations.get());
+        synchronized (cache) {
+            stats.put("size", cache.size());
+        }
+        stats.put("maxSize", cacheMaxSize);
+        return stats;
+    }
+
+    /**
+     * 缓存条目，记录解析时文件的修改时间和大小，执行计划在首次需要时编译
+     */
+    private static class CachedWorkflow {
+        private final Workflow workflow;
+        private final FileTime lastModified;
+        private final long size;
+        private volatile ExecutionPlan plan;
+
+        CachedWorkflow(Workflow workflow, FileTime lastModified, long size) {
+            this.workflow = workflow;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified.equals(attrs.lastModifiedTime());
+        }
+
+        ExecutionPlan plan() {
+            ExecutionPlan compiled = plan;
+            if (compiled == null) {
+                // 并发编译的结果等价，保留任意一个即可
+                compiled = ExecutionPlan.compile(workflow);
+                plan = compiled;
+            }
+            return compiled;
         }
     }
 
@@ -1,40 +1,254 @@
 package cn.yafex.workflow.util;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import cn.yafex.workflow.model.NodeExecutionEvent;
+import cn.yafex.workflow.model.Workflow;
 
 /**
- * 工具类，用于记录工作流执行的详细信息
+ * 工具类，用于记录工作流执行的详细信息。
+ *
+ * <p>执行引擎的线程只把记录（时间戳、节点名称、输出的引用等）放入一个有界的无锁环形缓冲区后立即返回，
+ * 格式化和写文件都在单独的写线程上进行。写线程每次取出缓冲区中的全部记录，追加到各执行的日志文件，
+ * 每个执行的文件在执行期间保持打开，待写入的内容累计到一定字节数或经过一定时间后才写入文件，执行结束时关闭。</p>
+ *
+ * <p>日志文件按执行开始的日期放在 {@code yyyy-MM-dd} 子目录中，单个文件超过 workflow.log.max-file-bytes 后
+ * 切换到 {@code 名称_执行ID.1.txt}、{@code .2.txt} 等后续文件。过期清理和压缩由 {@link LogRetention} 在后台进行。</p>
+ *
+ * <p>文本日志可以按执行采样：执行开始时按工作流的采样率决定是否记录，未被选中的执行的记录先在写线程上缓存
+ * （每个执行最多 workflow.log.sampling.tail-records 条），执行结束时如果状态为失败或超时、或者耗时超过
+ * workflow.log.sampling.slow-ms，仍然写入完整的日志，否则丢弃。缓冲区积压超过一半时采样率自动减半，
+ * 积压消退后逐步恢复。执行轨迹不受采样影响。</p>
+ *
+ * <p>缓冲区已满时，引擎线程最多等待 workflow.log.offer-timeout-ms 毫秒，仍然没有空位则丢弃该记录。
+ * 丢弃和等待的次数记录在 {@link #getStats()} 中。</p>
+ *
+ * <p>写线程同时把记录写入二进制的执行轨迹 {@link TraceStore}，节点进入记录只写入执行轨迹，不写入文本日志。</p>
  */
 @Component
 public class WorkflowLogger {
-    private static final String LOG_DIR = "logs_workflow";
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowLogger.class);
 
-    public WorkflowLogger() {
-        // 如果日志目录不存在则先创建
-        File logDir = new File(LOG_DIR);
-        if (!logDir.exists()) {
-            logDir.mkdirs();
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+    private static final String TEXT_SUFFIX = ".txt";
+    /** 同时缓存的未被采样执行的数量上限 */
+    private static final int MAX_DEFERRED = 4096;
+    /** 被暂时关闭的未结束执行的文件数量上限 */
+    private static final int MAX_SUSPENDED_FILES = 4096;
+    /** 积压时采样率最多降低到配置值的 1/64 */
+    private static final double MIN_LOAD_FACTOR = 1.0 / 64;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+        .withZone(ZoneId.systemDefault());
+
+    /** 日志文件所在目录 */
+    @Value("${workflow.log.path:logs_workflow}")
+    private String path;
+
+    /** 环形缓冲区可以容纳的记录数量，向上取整为 2 的幂 */
+    @Value("${workflow.log.buffer-records:8192}")
+    private int bufferRecords;
+
+    /** 缓冲区已满时引擎线程最多等待的时间（毫秒），0 表示立即丢弃 */
+    @Value("${workflow.log.offer-timeout-ms:10}")
+    private long offerTimeoutMs;
+
+    /** 待写入的内容超过该字节数（按字符数估算）时写入文件 */
+    @Value("${workflow.log.flush-bytes:65536}")
+    private int flushBytes;
+
+    /** 待写入的内容最多保留的时间（毫秒） */
+    @Value("${workflow.log.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    /** 同时保持打开的日志文件数量上限，超过后关闭最久未写入的文件，之后再写入时重新打开 */
+    @Value("${workflow.log.max-open-files:256}")
+    private int maxOpenFiles;
+
+    /** 单个日志文件的大小上限（字节），超过后切换到下一个文件，0 表示不限制 */
+    @Value("${workflow.log.max-file-bytes:67108864}")
+    private long maxFileBytes;
+
+    /** 默认的采样率，1 表示记录全部执行 */
+    @Value("${workflow.log.sampling.rate:1.0}")
+    private double sampleRate;
+
+    /** 按工作流ID设置的采样率，格式为 {@code 工作流ID=采样率,...} */
+    @Value("${workflow.log.sampling.rates:}")
+    private String sampleRates;
+
+    /** 未被采样的执行耗时达到该值（毫秒）时仍然记录，0 表示不按耗时判断 */
+    @Value("${workflow.log.sampling.slow-ms:5000}")
+    private long slowMs;
+
+    /** 以这些状态结束的执行总是记录 */
+    @Value("${workflow.log.sampling.always-statuses:FAILED,TIMEOUT}")
+    private String[] alwaysStatuses;
+
+    /** 未被采样的执行最多缓存的节点记录数量，超过后只保留最近的记录 */
+    @Value("${workflow.log.sampling.tail-records:64}")
+    private int tailRecords;
+
+    /** 缓冲区积压时是否自动降低采样率 */
+    @Value("${workflow.log.sampling.adaptive:true}")
+    private boolean adaptive;
+
+    /** 执行轨迹，为 null 时只写文本日志 */
+    private final TraceStore traceStore;
+    private RecordRing ring;
+    private Path directory;
+    private Thread writer;
+    private volatile boolean running;
+    /** 写线程没有记录可处理、正在等待时为 true，引擎线程据此决定是否唤醒它 */
+    private volatile boolean sleeping;
+
+    // 以下字段只在写线程上访问
+    private final LinkedHashMap<String, LogFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 超过打开数量上限而被关闭、但执行还没有结束的文件，保留目录和序号，执行继续写入时重新打开同一个文件。
+     * 数量超过上限时丢弃最早关闭的文件
+     */
+    private final LinkedHashMap<String, LogFile> suspendedFiles = new LinkedHashMap<String, LogFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LogFile> eldest) {
+            if (size() <= MAX_SUSPENDED_FILES) {
+                return false;
+            }
+            eldest.getValue().close();
+            return true;
         }
+    };
+    /** 写线程打开的文件和未结束执行被暂时关闭的文件，后台清理和压缩跳过这些文件 */
+    private final Set<Path> openPaths = ConcurrentHashMap.newKeySet();
+    private int pendingBytes;
+    private long lastFlush;
+    private Map<String, Double> workflowRates = new HashMap<>();
+    private Set<String> keepStatuses = new HashSet<>();
+    /** 未被采样、结束时再决定是否记录的执行，按开始顺序排列，超过上限时放弃最早的执行 */
+    private final LinkedHashMap<String, TailBuffer> deferred = new LinkedHashMap<>();
+    /** 因超过上限被放弃的执行，此后的记录直接丢弃，避免只写入执行后半段的日志。同样有上限，按放弃顺序淘汰 */
+    private final LinkedHashSet<String> evicted = new LinkedHashSet<>();
+    private long lastAdjust;
+    /** 根据缓冲区积压程度对采样率的调整系数 */
+    private volatile double loadFactor = 1.0;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rollovers = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong tailKept = new AtomicLong();
+    private final AtomicLong omitted = new AtomicLong();
+
+    @Autowired
+    public WorkflowLogger(TraceStore traceStore) {
+        this.traceStore = traceStore;
     }
 
     /**
-     * 获取日志文件名
-     * @param workflowId 工作流ID
-     * @param executionId 执行ID
-     * @return 日志文件名
+     * @param path 日志文件所在目录
+     * @param bufferRecords 环形缓冲区可以容纳的记录数量
+     * @param offerTimeoutMs 缓冲区已满时最多等待的时间（毫秒）
+     * @param flushBytes 待写入的内容超过该字节数时写入文件
+     * @param flushIntervalMs 待写入的内容最多保留的时间（毫秒）
+     * @param maxOpenFiles 同时保持打开的日志文件数量上限
+     * @param traceStore 执行轨迹，为 null 时只写文本日志
      */
-    private String getLogFileName(String workflowId, String executionId) {
-        return String.format("%s/%s_%s.txt", LOG_DIR, workflowId, executionId);
+    public WorkflowLogger(String path, int bufferRecords, long offerTimeoutMs,
+                          int flushBytes, long flushIntervalMs, int maxOpenFiles, TraceStore traceStore) {
+        this.traceStore = traceStore;
+        this.path = path;
+        this.bufferRecords = bufferRecords;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.flushBytes = flushBytes;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxOpenFiles = maxOpenFiles;
+        this.maxFileBytes = 0;
+        this.sampleRate = 1.0;
+        this.sampleRates = "";
+        this.alwaysStatuses = new String[]{"FAILED", "TIMEOUT"};
+        this.tailRecords = 64;
+        this.ring = new RecordRing(bufferRecords);
+    }
+
+    /**
+     * 创建日志目录并启动写线程
+     * @throws UncheckedIOException 如果目录无法创建
+     */
+    @PostConstruct
+    public void start() {
+        if (ring == null) {
+            ring = new RecordRing(bufferRecords);
+        }
+        workflowRates = parseRates(sampleRates);
+        keepStatuses = new HashSet<>(Arrays.asList(alwaysStatuses));
+        directory = Paths.get(path);
+        try {
+            // 如果日志目录不存在则先创建
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建工作流日志目录失败: " + path, e);
+        }
+        running = true;
+        lastFlush = System.nanoTime();
+        lastAdjust = lastFlush;
+        writer = new Thread(this::writeLoop, "workflow-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 写完缓冲区中的记录，关闭所有日志文件
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -43,26 +257,15 @@ public class WorkflowLogger {
      * @param workflowId 工作流ID
      * @param nodeName 节点名称
      * @param nodeType 节点类型
-     * @param input 输入参数
      * @param output 输出参数
      * @param duration 执行时长
      */
     public void logNodeExecution(
-        String executionId, String workflowId, String nodeName, String nodeType, 
+        String executionId, String workflowId, String nodeName, String nodeType,
         Object output, long duration
     ) {
-        String logFileName = getLogFileName(workflowId, executionId);
-        String timestamp = LocalDateTime.now().format(DATE_FORMAT);
-        String logEntry = String.format(
-            "[%s] Node: %s, Type: %s, Duration: %dms%n Output: %s%n", 
-            timestamp, nodeName, nodeType, duration, output);
-        try (OutputStreamWriter fileWriter = new OutputStreamWriter(
-                new FileOutputStream(logFileName, true), StandardCharsets.UTF_8);
-             PrintWriter writer = new PrintWriter(fileWriter)) {
-            writer.println(logEntry);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        publish(new LogRecord(LogRecord.NODE, executionId, workflowId, workflowId, null, nodeName, nodeType,
+            output, duration));
     }
 
     /**
@@ -71,23 +274,33 @@ public class WorkflowLogger {
      * @param workflowName 工作流名称
      */
     public void logNodeExecution(NodeExecutionEvent event, String workflowName) {
-        String executionId = event.getExecutionId();
-        String logFileName = getLogFileName(workflowName, executionId);
-        String timestamp = LocalDateTime.now().format(DATE_FORMAT);
-        
-        String logEntry = String.format(
-            "[%s] Node: %s, Type: %s, Duration: %dms%n Output: %s%n", 
-            timestamp, event.getNodeName(), event.getNodeType(), 
-            event.getDuration() != null ? event.getDuration() : 0, 
-            event.getNodeResult());
-            
-        try (OutputStreamWriter fileWriter = new OutputStreamWriter(
-                new FileOutputStream(logFileName, true), StandardCharsets.UTF_8);
-             PrintWriter writer = new PrintWriter(fileWriter)) {
-            writer.println(logEntry);
-        } catch (IOException e) {
-            e.printStackTrace();
+        publish(new LogRecord(LogRecord.NODE, event.getExecutionId(), workflowName, workflowName,
+            event.getNodeId(), event.getNodeName(), event.getNodeType(), event.getNodeResult(),
+            event.getDuration() != null ? event.getDuration() : 0));
+    }
+
+    /**
+     * 记录节点执行事件，文本日志按工作流名称命名，执行轨迹按工作流ID索引
+     * @param event 节点执行事件对象
+     * @param workflow 所属工作流
+     */
+    public void logNodeExecution(NodeExecutionEvent event, Workflow workflow) {
+        publish(new LogRecord(LogRecord.NODE, event.getExecutionId(), workflow.getName(), workflow.getId(),
+            event.getNodeId(), event.getNodeName(), event.getNodeType(), event.getNodeResult(),
+            event.getDuration() != null ? event.getDuration() : 0));
+    }
+
+    /**
+     * 记录节点进入，只写入执行轨迹
+     * @param event 节点进入事件对象
+     * @param workflow 所属工作流
+     */
+    public void logNodeEnter(NodeExecutionEvent event, Workflow workflow) {
+        if (traceStore == null || !traceStore.isEnabled()) {
+            return;
         }
+        publish(new LogRecord(LogRecord.ENTER, event.getExecutionId(), workflow.getName(), workflow.getId(),
+            event.getNodeId(), event.getNodeName(), event.getNodeType(), null, 0));
     }
 
     /**
@@ -96,41 +309,603 @@ public class WorkflowLogger {
      * @param workflowId 工作流ID
      */
     public void logWorkflowStart(String executionId, String workflowId) {
-        String logFileName = getLogFileName(workflowId, executionId);
-        String timestamp = LocalDateTime.now().format(DATE_FORMAT);
-        String logEntry = String.format("[%s] Workflow %s started. Execution ID: %s%n",
-                timestamp, workflowId, executionId);
-
-        try (OutputStreamWriter fileWriter = new OutputStreamWriter(
-                new FileOutputStream(logFileName, true), StandardCharsets.UTF_8);
-             PrintWriter writer = new PrintWriter(fileWriter)) {
-            writer.println(logEntry);
-            System.out.println("工作流开始："+logFileName);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        publish(new LogRecord(LogRecord.START, executionId, workflowId, workflowId, null, null, null, null, 0));
+    }
+
+    /**
+     * 记录工作流开始
+     * @param executionId 工作流执行ID
+     * @param workflow 工作流
+     */
+    public void logWorkflowStart(String executionId, Workflow workflow) {
+        publish(new LogRecord(LogRecord.START, executionId, workflow.getName(), workflow.getId(),
+            null, null, null, null, 0));
     }
 
     /**
-     * 记录工作流完成
+     * 记录工作流完成，写线程处理完该记录后关闭执行的日志文件
      * @param executionId 工作流执行ID
      * @param workflowId 工作流ID
      * @param status 最终状态
      * @param duration 总执行时长
      */
     public void logWorkflowComplete(String executionId, String workflowId, String status, long duration) {
-        String logFileName = getLogFileName(workflowId, executionId);
-        String timestamp = LocalDateTime.now().format(DATE_FORMAT);
-        String logEntry = String.format("[%s] Workflow completed. Status: %s, Total Duration: %dms%n",
-                timestamp, status, duration);
-
-        try (OutputStreamWriter fileWriter = new OutputStreamWriter(
-                new FileOutputStream(logFileName, true), StandardCharsets.UTF_8);
-             PrintWriter writer = new PrintWriter(fileWriter)) {
-            writer.println(logEntry);
-			System.out.println("工作流日志："+logFileName);
-        } catch (IOException e) {
-            e.printStackTrace();
+        publish(new LogRecord(LogRecord.COMPLETE, executionId, workflowId, workflowId, null, null, status,
+            null, duration));
+    }
+
+    /**
+     * 记录工作流完成，写线程处理完该记录后关闭执行的日志文件
+     * @param executionId 工作流执行ID
+     * @param workflow 工作流
+     * @param status 最终状态
+     * @param duration 总执行时长
+     */
+    public void logWorkflowComplete(String executionId, Workflow workflow, String status, long duration) {
+        publish(new LogRecord(LogRecord.COMPLETE, executionId, workflow.getName(), workflow.getId(),
+            null, null, status, null, duration));
+    }
+
+    /**
+     * 设置单个日志文件的大小上限，在 {@link #start()} 之前调用
+     * @param maxFileBytes 大小上限（字节），0 表示不限制
+     */
+    public void setMaxFileBytes(long maxFileBytes) {
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * 设置采样策略，在 {@link #start()} 之前调用
+     * @param sampleRate 默认的采样率
+     * @param sampleRates 按工作流ID设置的采样率，格式为 {@code 工作流ID=采样率,...}
+     * @param slowMs 耗时达到该值（毫秒）的执行总是记录
+     * @param tailRecords 未被采样的执行最多缓存的节点记录数量
+     * @param adaptive 缓冲区积压时是否自动降低采样率
+     */
+    public void setSampling(double sampleRate, String sampleRates, long slowMs, int tailRecords, boolean adaptive) {
+        this.sampleRate = sampleRate;
+        this.sampleRates = sampleRates;
+        this.slowMs = slowMs;
+        this.tailRecords = tailRecords;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * 日志文件所在目录
+     * @return 目录，{@link #start()} 之前为 null
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 文件是否正被写线程打开，未结束的执行因打开数量上限被暂时关闭的文件也视为打开
+     * @param file 日志文件
+     * @return 如果写线程持有该文件或之后还会继续写入则返回true
+     */
+    public boolean isOpen(Path file) {
+        return openPaths.contains(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * 日志写入的统计信息
+     * @return 发布、丢弃、等待、写入、批次、刷新次数等
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("path", directory != null ? directory.toAbsolutePath().toString() : path);
+        stats.put("capacity", ring.capacity());
+        stats.put("pending", ring.size());
+        stats.put("published", published.get());
+        stats.put("dropped", dropped.get());
+        stats.put("backpressureWaits", backpressureWaits.get());
+        stats.put("written", written.get());
+        long batchCount = batches.get();
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0.0 : Math.round(written.get() * 100.0 / batchCount) / 100.0);
+        stats.put("flushes", flushes.get());
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("rollovers", rollovers.get());
+        stats.put("sampleRate", sampleRate);
+        stats.put("loadFactor", loadFactor);
+        stats.put("sampledOut", sampledOut.get());
+        stats.put("tailKept", tailKept.get());
+        stats.put("omittedRecords", omitted.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    /**
+     * 放入环形缓冲区，已满时短暂等待写线程腾出空位，超时后丢弃
+     */
+    private void publish(LogRecord record) {
+        if (!ring.offer(record)) {
+            backpressureWaits.incrementAndGet();
+            wake();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+            boolean accepted = false;
+            while (!accepted && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(50_000);
+                accepted = ring.offer(record);
+            }
+            if (!accepted) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        published.incrementAndGet();
+        if (sleeping) {
+            wake();
+        }
+    }
+
+    private void wake() {
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void writeLoop() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMs));
+        while (true) {
+            int count = ring.drain(this::append);
+            if (count > 0) {
+                batches.incrementAndGet();
+                written.addAndGet(count);
+            }
+            long now = System.nanoTime();
+            if (adaptive) {
+                adjustLoadFactor(now);
+            }
+            if (pendingBytes >= flushBytes || (pendingBytes > 0 && now - lastFlush >= intervalNanos)) {
+                flushAll();
+            }
+            if (count > 0) {
+                continue;
+            }
+            if (!running) {
+                // stop() 之后发布的记录也在这里写完
+                if (ring.drain(this::append) == 0) {
+                    break;
+                }
+                continue;
+            }
+            sleeping = true;
+            if (ring.size() == 0 && running) {
+                long waitNanos = pendingBytes > 0 ? Math.max(0, intervalNanos - (now - lastFlush)) : intervalNanos;
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            sleeping = false;
+        }
+        flushAll();
+        for (LogFile file : openFiles.values()) {
+            file.close();
+        }
+        openFiles.clear();
+        for (LogFile file : suspendedFiles.values()) {
+            file.close();
+        }
+        suspendedFiles.clear();
+    }
+
+    /**
+     * 在写线程上格式化一条记录并追加到执行的日志文件的待写入内容
+     */
+    private void append(LogRecord record) {
+        try {
+            trace(record);
+            if (record.kind != LogRecord.ENTER && sample(record)) {
+                format(record);
+            }
+        } catch (RuntimeException e) {
+            // 输出对象的 toString 等抛出的异常不能终止写线程
+            failures.incrementAndGet();
+            logger.warn("格式化工作流日志失败, executionId={}: {}", record.executionId, e.toString());
+        }
+    }
+
+    /**
+     * 决定是否立即写入文本日志。未被采样的执行的记录放入其缓存，结束时按状态和耗时决定写入还是丢弃
+     * @return 如果应当立即写入则返回true
+     */
+    private boolean sample(LogRecord record) {
+        if (record.kind == LogRecord.START) {
+            double rate = workflowRates.getOrDefault(record.workflowId, sampleRate) * loadFactor;
+            if (rate >= 1.0 || sampleValue(record.executionId) < rate) {
+                return true;
+            }
+            deferred.put(record.executionId, new TailBuffer(record));
+            if (deferred.size() > MAX_DEFERRED) {
+                Iterator<String> eldest = deferred.keySet().iterator();
+                evicted.add(eldest.next());
+                eldest.remove();
+                sampledOut.incrementAndGet();
+                if (evicted.size() > MAX_DEFERRED) {
+                    Iterator<String> oldest = evicted.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            return false;
+        }
+        TailBuffer tail = deferred.get(record.executionId);
+        if (tail == null) {
+            if (evicted.contains(record.executionId)) {
+                if (record.kind == LogRecord.COMPLETE) {
+                    evicted.remove(record.executionId);
+                }
+                return false;
+            }
+            // 被采样的执行，或开始记录之前的记录
+            return true;
+        }
+        if (record.kind != LogRecord.COMPLETE) {
+            tail.add(record, Math.max(0, tailRecords));
+            return false;
+        }
+        deferred.remove(record.executionId);
+        if (!keepStatuses.contains(record.nodeType) && (slowMs <= 0 || record.duration < slowMs)) {
+            sampledOut.incrementAndGet();
+            return false;
+        }
+        tailKept.incrementAndGet();
+        format(tail.start);
+        if (tail.omitted > 0) {
+            omitted.addAndGet(tail.omitted);
+            format(new LogRecord(LogRecord.OMITTED, record.executionId, record.workflowName, record.workflowId,
+                null, null, null, null, tail.omitted));
+        }
+        for (LogRecord node : tail.records) {
+            format(node);
+        }
+        return true;
+    }
+
+    /**
+     * 根据执行ID得到 [0, 1) 之间的值，同一个执行的采样结果是确定的
+     */
+    private static double sampleValue(String executionId) {
+        int hash = executionId.hashCode() * 0x9E3779B9;
+        return (hash >>> 8) / (double) (1 << 24);
+    }
+
+    /**
+     * 缓冲区积压超过一半时采样率减半，低于十分之一时逐步恢复，每 100 毫秒最多调整一次
+     */
+    private void adjustLoadFactor(long now) {
+        if (now - lastAdjust < TimeUnit.MILLISECONDS.toNanos(100)) {
+            return;
+        }
+        lastAdjust = now;
+        int size = ring.size();
+        if (size * 2 >= ring.capacity()) {
+            loadFactor = Math.max(MIN_LOAD_FACTOR, loadFactor / 2);
+        } else if (size * 10 < ring.capacity() && loadFactor < 1.0) {
+            loadFactor = Math.min(1.0, loadFactor * 2);
+        }
+    }
+
+    private static Map<String, Double> parseRates(String rates) {
+        Map<String, Double> parsed = new HashMap<>();
+        if (rates == null || rates.trim().isEmpty()) {
+            return parsed;
+        }
+        for (String entry : rates.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("采样率格式错误，应为 工作流ID=采样率: " + entry);
+            }
+            parsed.put(entry.substring(0, separator).trim(), Double.parseDouble(entry.substring(separator + 1).trim()));
+        }
+        return parsed;
+    }
+
+    private void trace(LogRecord record) {
+        if (traceStore == null) {
+            return;
+        }
+        byte type;
+        switch (record.kind) {
+            case LogRecord.START:
+                type = TraceStore.START;
+                break;
+            case LogRecord.ENTER:
+                type = TraceStore.ENTER;
+                break;
+            case LogRecord.COMPLETE:
+                type = TraceStore.END;
+                break;
+            default:
+                type = TraceStore.COMPLETE;
+                break;
+        }
+        // 执行轨迹的待写入内容同样计入，按相同的字节数和时间间隔写入
+        pendingBytes += traceStore.append(type, record.timestamp, record.duration, record.executionId, record.workflowId,
+            record.nodeId, record.nodeName, record.nodeType, record.output);
+    }
+
+    private void format(LogRecord record) {
+        String fileName = record.workflowName + "_" + record.executionId;
+        LogFile file = openFiles.get(fileName);
+        if (file == null) {
+            // 被暂时关闭的执行继续写入原来的目录和序号的文件，不按当前记录的日期和从序号 0 重新开始
+            file = suspendedFiles.remove(fileName);
+            if (file == null) {
+                file = new LogFile(directory.resolve(DAY_FORMAT.format(Instant.ofEpochMilli(record.timestamp))), fileName);
+            }
+            openFiles.put(fileName, file);
+            if (openFiles.size() > Math.max(1, maxOpenFiles)) {
+                Iterator<LogFile> eldest = openFiles.values().iterator();
+                LogFile closing = eldest.next();
+                eldest.remove();
+                pendingBytes -= closing.pending.length();
+                closing.flush();
+                closing.suspend();
+                suspendedFiles.put(closing.baseName, closing);
+            }
+        }
+        String timestamp = DATE_FORMAT.format(Instant.ofEpochMilli(record.timestamp));
+        int before = file.pending.length();
+        StringBuilder entry = file.pending;
+        switch (record.kind) {
+            case LogRecord.START:
+                entry.append('[').append(timestamp).append("] Workflow ").append(record.workflowName)
+                    .append(" started. Execution ID: ").append(record.executionId).append("\n\n");
+                System.out.println("工作流开始：" + file.path);
+                break;
+            case LogRecord.COMPLETE:
+                entry.append('[').append(timestamp).append("] Workflow completed. Status: ").append(record.nodeType)
+                    .append(", Total Duration: ").append(record.duration).append("ms\n\n");
+                break;
+            case LogRecord.OMITTED:
+                entry.append("... ").append(record.duration).append(" earlier node records omitted\n\n");
+                break;
+            default:
+                entry.append('[').append(timestamp).append("] Node: ").append(record.nodeName)
+                    .append(", Type: ").append(record.nodeType)
+                    .append(", Duration: ").append(record.duration).append("ms\n Output: ")
+                    .append(record.output).append("\n\n");
+                break;
+        }
+        if (maxFileBytes > 0 && file.size + file.pending.length() >= maxFileBytes) {
+            // 达到大小上限，写入当前文件，之后的记录写入下一个文件
+            pendingBytes -= before;
+            file.flush();
+        } else {
+            pendingBytes += file.pending.length() - before;
+        }
+        if (record.kind == LogRecord.COMPLETE) {
+            // 执行结束，写入并关闭文件
+            openFiles.remove(fileName);
+            pendingBytes -= file.pending.length();
+            file.flush();
+            file.close();
+            System.out.println("工作流日志：" + file.path);
+        }
+    }
+
+    private void flushAll() {
+        for (LogFile file : openFiles.values()) {
+            file.flush();
+        }
+        if (traceStore != null) {
+            traceStore.flush();
+        }
+        pendingBytes = 0;
+        lastFlush = System.nanoTime();
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * 一个执行的日志文件，执行期间保持打开，只在写线程上访问。
+     * 文件达到大小上限后，下一次写入前关闭该文件，之后的内容写入带序号的下一个文件
+     */
+    private final class LogFile {
+        final Path dir;
+        final String baseName;
+        final StringBuilder pending = new StringBuilder();
+        Path path;
+        private int part;
+        long size;
+        private FileChannel channel;
+
+        LogFile(Path dir, String baseName) {
+            this.dir = dir;
+            this.baseName = baseName;
+            this.path = dir.resolve(baseName + TEXT_SUFFIX);
+        }
+
+        void flush() {
+            if (pending.length() == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+            pending.setLength(0);
+            try {
+                if (channel == null) {
+                    open();
+                }
+                if (maxFileBytes > 0 && size >= maxFileBytes) {
+                    close();
+                    part++;
+                    path = dir.resolve(baseName + "." + part + TEXT_SUFFIX);
+                    rollovers.incrementAndGet();
+                    open();
+                }
+                bytesWritten.addAndGet(buffer.remaining());
+                size += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                logger.warn("写入工作流日志失败: {}: {}", path, e.getMessage());
+                if (channel == null) {
+                    openPaths.remove(path.toAbsolutePath().normalize());
+                }
+            }
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(dir);
+            openPaths.add(path.toAbsolutePath().normalize());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+            size = channel.size();
+        }
+
+        /**
+         * 关闭文件但仍视为打开，后台清理和压缩不处理它，执行继续写入时在 {@link #flush()} 中重新打开
+         */
+        void suspend() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭工作流日志失败: {}: {}", path, e.getMessage());
+            }
+            channel = null;
+        }
+
+        void close() {
+            suspend();
+            openPaths.remove(path.toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * 发布到环形缓冲区的记录，只保存引用和基本类型，格式化在写线程上进行
+     */
+    private static final class LogRecord {
+        static final int START = 0;
+        static final int NODE = 1;
+        static final int COMPLETE = 2;
+        static final int ENTER = 3;
+        /** 未被采样的执行超过缓存上限而省略的记录数量，保存在 duration 中 */
+        static final int OMITTED = 4;
+
+        final int kind;
+        final long timestamp = System.currentTimeMillis();
+        final String executionId;
+        /** 工作流名称，用于文本日志的文件名 */
+        final String workflowName;
+        /** 工作流ID，用于执行轨迹的索引 */
+        final String workflowId;
+        final String nodeId;
+        final String nodeName;
+        /** 节点类型，COMPLETE 记录为执行的最终状态 */
+        final String nodeType;
+        final Object output;
+        final long duration;
+
+        LogRecord(int kind, String executionId, String workflowName, String workflowId, String nodeId,
+                  String nodeName, String nodeType, Object output, long duration) {
+            this.kind = kind;
+            this.executionId = executionId;
+            this.workflowName = workflowName;
+            this.workflowId = workflowId;
+            this.nodeId = nodeId;
+            this.nodeName = nodeName;
+            this.nodeType = nodeType;
+            this.output = output;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * 未被采样的执行的开始记录和最近的节点记录，只在写线程上访问
+     */
+    private static final class TailBuffer {
+        final LogRecord start;
+        final ArrayDeque<LogRecord> records = new ArrayDeque<>();
+        long omitted;
+
+        TailBuffer(LogRecord start) {
+            this.start = start;
+        }
+
+        void add(LogRecord record, int limit) {
+            records.addLast(record);
+            if (records.size() > limit) {
+                records.pollFirst();
+                omitted++;
+            }
+        }
+    }
+
+    /**
+     * 有界的多生产者单消费者环形缓冲区。
+     * 每个槽位带有序号：生产者通过 CAS 占用尾部位置，写入记录后发布序号；消费者按序号依次取出，
+     * 取出后把序号推进一圈，槽位即可再次使用。生产者之间、生产者与消费者之间都不加锁
+     */
+    private static final class RecordRing {
+        private final LogRecord[] records;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        /** 消费者的读取位置，只由写线程修改 */
+        private volatile long head;
+
+        RecordRing(int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            records = new LogRecord[size];
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+            mask = size - 1;
+        }
+
+        int capacity() {
+            return records.length;
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+
+        boolean offer(LogRecord record) {
+            while (true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long diff = sequences.get(index) - position;
+                if (diff == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        records[index] = record;
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (diff < 0) {
+                    // 槽位还没有被消费者取走，缓冲区已满
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * 取出已发布的记录，一次最多取出一圈，持续有记录写入时写线程也能按时刷新
+         * @return 取出的记录数量
+         */
+        int drain(Consumer<LogRecord> consumer) {
+            long position = head;
+            int count = 0;
+            while (count < records.length) {
+                int index = (int) position & mask;
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                LogRecord record = records[index];
+                records[index] = null;
+                sequences.set(index, position + records.length);
+                position++;
+                count++;
+                consumer.accept(record);
+            }
+            head = position;
+            return count;
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.util.BatchInputReader;
+import com.alibaba.fastjson.JSONException;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Test case for reading batch inputs as a JSON array or as NDJSON
+ */
+public class BatchInputReaderTest {
+
+    private static BatchInputReader reader(String body) throws Exception {
+        return new BatchInputReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testJsonArray() throws Exception {
+        BatchInputReader items = reader("  [{\"a\": 1}, {\"a\": 2}]");
+        assertEquals(1, items.next().get("a"));
+        Map<String, Object> second = items.next();
+        assertEquals(2, second.get("a"));
+        assertFalse(items.hasNext());
+    }
+
+    @Test
+    public void testNdjsonSkipsBlankLines() throws Exception {
+        BatchInputReader items = reader("{\"name\": \"x\"}\n\n{\"name\": \"y\"}\n");
+        assertEquals("x", items.next().get("name"));
+        assertEquals("y", items.next().get("name"));
+        assertFalse(items.hasNext());
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+        assertFalse(reader(" \n").hasNext());
+    }
+
+    @Test
+    public void testNonObjectItemsAreRejected() throws Exception {
+        BatchInputReader array = reader("[{\"a\": 1}, null, {\"a\": 3}]");
+        assertEquals(1, array.next().get("a"));
+        JSONException error = assertThrows(JSONException.class, array::hasNext);
+        assertTrue(error.getMessage().contains("第 2 项"), error.getMessage());
+
+        BatchInputReader lines = reader("{\"a\": 1}\nnull\n{\"a\": 3}\n");
+        assertEquals(1, lines.next().get("a"));
+        assertThrows(JSONException.class, lines::hasNext);
+        assertThrows(JSONException.class, () -> reader("[1]").hasNext());
+    }
+}
@@ -0,0 +1,91 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.execution.ConditionPredicate;
+import cn.yafex.workflow.execution.ExecutionPlan;
+import cn.yafex.workflow.execution.PlanNode;
+import cn.yafex.workflow.execution.WorkflowContext;
+import cn.yafex.workflow.model.Condition;
+import cn.yafex.workflow.model.ConditionCase;
+import cn.yafex.workflow.model.NodeType;
+import cn.yafex.workflow.model.Workflow;
+import cn.yafex.workflow.model.WorkflowNode;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test case for condition cases compiled into predicates bound to context slots
+ */
+public class ConditionPredicateTest {
+    private ExecutionPlan plan;
+
+    private static VariableDef var(String name, String parent) {
+        VariableDef var = new VariableDef(name, null);
+        var.setParent(parent);
+        return var;
+    }
+
+    private static Condition condition(String operator, Object constant) {
+        return new Condition(var("score", "global"), operator, new VariableDef("CONSTANT", constant), "CONSTANT");
+    }
+
+    private ConditionPredicate[] compile(ConditionCase... cases) {
+        WorkflowNode check = new WorkflowNode();
+        check.setId("check");
+        check.setName("check");
+        check.setType(NodeType.CONDITION);
+        for (ConditionCase conditionCase : cases) {
+            check.addConditionCase(conditionCase);
+        }
+        Workflow workflow = new Workflow();
+        workflow.setStartNodeId("check");
+        workflow.addNode(check);
+        plan = ExecutionPlan.compile(workflow);
+        PlanNode planNode = plan.getNode(0);
+        return planNode.getPredicates();
+    }
+
+    private WorkflowContext contextWith(Object score) {
+        WorkflowContext context = new WorkflowContext("predicate_test", plan.getSlots());
+        VariableDef value = var("score", "global");
+        value.setValue(score);
+        context.setVariable("score", value);
+        return context;
+    }
+
+    @Test
+    public void testNumericCoercionAcrossBoxedTypes() {
+        ConditionCase high = new ConditionCase("and");
+        high.getConditions().add(condition(">=", 90));
+        ConditionCase exact = new ConditionCase("and");
+        exact.getConditions().add(condition("==", 75));
+        ConditionPredicate[] predicates = compile(high, exact);
+
+        assertTrue(predicates[0].test(contextWith(90L)));
+        assertTrue(predicates[0].test(contextWith(90.5)));
+        assertFalse(predicates[0].test(contextWith(89)));
+        assertFalse(predicates[0].test(contextWith("95")));
+        assertTrue(predicates[1].test(contextWith(75L)));
+        assertTrue(predicates[1].test(contextWith(75.0)));
+    }
+
+    @Test
+    public void testOrCaseRequiresOneMatch() {
+        ConditionCase either = new ConditionCase("or");
+        either.getConditions().add(condition("<", 10));
+        either.getConditions().add(condition(">", 100));
+        ConditionPredicate predicate = compile(either)[0];
+
+        assertTrue(predicate.test(contextWith(5)));
+        assertTrue(predicate.test(contextWith(200)));
+        assertFalse(predicate.test(contextWith(50)));
+    }
+
+    @Test
+    public void testUnsupportedOperatorFailsAtEvaluation() {
+        ConditionCase broken = new ConditionCase("and");
+        broken.getConditions().add(condition("~=", 1));
+        ConditionPredicate predicate = compile(broken)[0];
+        assertThrows(IllegalArgumentException.class, () -> predicate.test(contextWith(1)));
+    }
+}
@@ -0,0 +1,72 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.execution.WorkflowStatus;
+import cn.yafex.workflow.util.EngineMetrics;
+import cn.yafex.workflow.util.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test case for the latency histogram and the engine metrics export
+ */
+public class EngineMetricsTest {
+
+    @Test
+    public void testHistogramQuantilesStayWithinBucketError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (long v = 1; v <= 100_000; v++) {
+                    histogram.record(v);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(4L * 100_000 * 100_001 / 2, histogram.getSum());
+        assertEquals(50_000, histogram.getQuantile(0.5), 50_000 * 0.125);
+        assertEquals(99_000, histogram.getQuantile(0.99), 99_000 * 0.125);
+        assertEquals(100_000, histogram.getQuantile(1.0));
+        assertEquals(4 * 7, histogram.countAtOrBelow(7));
+        assertEquals(0, new LatencyHistogram().getQuantile(0.5));
+    }
+
+    @Test
+    public void testPrometheusExport() {
+        EngineMetrics metrics = new EngineMetrics();
+        metrics.recordWorkflow("order \"sync\"", WorkflowStatus.COMPLETED, 120);
+        metrics.recordWorkflow("order \"sync\"", WorkflowStatus.FAILED, 3000);
+        metrics.recordNode("FUNCTION", 2);
+        metrics.recordTool("delay", 1_500_000, false);
+        metrics.recordTool("delay", 40_000_000, true);
+
+        StringBuilder out = new StringBuilder();
+        metrics.writePrometheus(out);
+        EngineMetrics.writeGauge(out, "workflow_executions_active", "gauge", "Executions in progress", 3);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE workflow_execution_seconds histogram\n"));
+        assertTrue(text.contains("workflow_execution_seconds_bucket{workflow=\"order \\\"sync\\\"\",le=\"0.1\"} 0\n"));
+        assertTrue(text.contains("workflow_execution_seconds_bucket{workflow=\"order \\\"sync\\\"\",le=\"0.25\"} 1\n"));
+        assertTrue(text.contains("workflow_execution_seconds_bucket{workflow=\"order \\\"sync\\\"\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("workflow_execution_seconds_sum{workflow=\"order \\\"sync\\\"\"} 3.12\n"));
+        assertTrue(text.contains("workflow_executions_total{workflow=\"order \\\"sync\\\"\",status=\"FAILED\"} 1\n"));
+        assertTrue(text.contains("workflow_node_seconds_count{type=\"FUNCTION\"} 1\n"));
+        assertTrue(text.contains("workflow_tool_call_seconds_bucket{tool=\"delay\",le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains("workflow_tool_errors_total{tool=\"delay\"} 1\n"));
+        assertTrue(text.endsWith("workflow_executions_active 3\n"));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> tool = (Map<String, Object>) ((Map<String, Object>) metrics.getStats().get("tools")).get("delay");
+        assertEquals(2L, tool.get("count"));
+        assertEquals(1L, tool.get("errors"));
+    }
+}
@@ -0,0 +1,166 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.execution.ExecutionJournal;
+import cn.yafex.workflow.execution.ExecutionPriority;
+import cn.yafex.workflow.execution.VariableSlots;
+import cn.yafex.workflow.execution.WorkflowContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test case for the execution journal: group commit, replay and segment cleanup
+ */
+public class ExecutionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReplayRecoversUnfinishedExecutions() throws Exception {
+        ExecutionJournal journal = new ExecutionJournal(dir.toString(), true, 1 << 20);
+        journal.start();
+        journal.recordStart("e1", "wf", ExecutionPriority.HIGH, 0, variables("x", "global", 1));
+        journal.recordCheckpoint("e1", "start", "a", null);
+        journal.recordCheckpoint("e1", "a", "b", variables("y", "a", "first"));
+        journal.recordCheckpoint("e1", "b", "c", variables("y", "b", "second"));
+        journal.recordStart("e2", "wf", ExecutionPriority.NORMAL, 0, variables("x", "global", 2));
+        journal.recordEnd("e2", "COMPLETED").get();
+        journal.stop();
+
+        // 写入过程中崩溃留下的不完整记录被忽略
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(dir)) {
+            for (Path segment : segments) {
+                Files.write(segment, "{\"type\":\"CHECKPOINT\",\"executionId\":\"e1\",\"ne".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+            }
+        }
+
+        ExecutionJournal reopened = new ExecutionJournal(dir.toString(), true, 1 << 20);
+        reopened.start();
+        try {
+            List<ExecutionJournal.RecoveredExecution> recovered = reopened.takeRecovered();
+            assertEquals(1, recovered.size());
+            ExecutionJournal.RecoveredExecution execution = recovered.get(0);
+            assertEquals("e1", execution.getExecutionId());
+            assertEquals("wf", execution.getWorkflowId());
+            assertEquals(ExecutionPriority.HIGH, execution.getPriority());
+            assertTrue(execution.isCheckpointed());
+            assertEquals("c", execution.getNextNodeId());
+            assertEquals(1, ((Number) execution.getVariables().get("x").getValue()).intValue());
+            // 不同节点写入的同名变量分别保留
+            assertEquals("first", execution.getOutputs().get(VariableSlots.key("a", "y")).getValue());
+            assertEquals("second", execution.getOutputs().get(VariableSlots.key("b", "y")).getValue());
+            assertTrue(reopened.takeRecovered().isEmpty());
+        } finally {
+            reopened.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentAppendsAreBatchedAndOldSegmentsDeleted() throws Exception {
+        ExecutionJournal journal = new ExecutionJournal(dir.toString(), false, 4096);
+        journal.start();
+        List<CompletableFuture<Void>> commits = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    String id = thread + "-" + i;
+                    commits.add(journal.recordStart(id, "wf", ExecutionPriority.NORMAL, 0, variables("x", "global", i)));
+                    commits.add(journal.recordCheckpoint(id, "a", null, variables("y", "a", i)));
+                    commits.add(journal.recordEnd(id, "COMPLETED"));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(commits.toArray(new CompletableFuture[0])).get();
+
+        Map<String, Object> stats = journal.getStats();
+        assertEquals(1200L, stats.get("appended"));
+        assertTrue((Long) stats.get("batches") <= 1200L);
+        journal.recordStart("live", "wf", ExecutionPriority.NORMAL, 0, variables("x", "global", 0)).get();
+        journal.stop();
+
+        // 只保留包含未结束执行的段以及之后的段
+        ExecutionJournal reopened = new ExecutionJournal(dir.toString(), false, 4096);
+        reopened.start();
+        try {
+            List<ExecutionJournal.RecoveredExecution> recovered = reopened.takeRecovered();
+            assertEquals(1, recovered.size());
+            assertEquals("live", recovered.get(0).getExecutionId());
+            assertFalse(recovered.get(0).isCheckpointed());
+            long segments;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                segments = 0;
+                for (Path ignored : stream) {
+                    segments++;
+                }
+            }
+            assertTrue(segments <= 3, "旧段应被删除，剩余 " + segments);
+        } finally {
+            reopened.stop();
+        }
+    }
+
+    @Test
+    public void testSameNamedOutputsOfDifferentNodesAreReplayed() throws Exception {
+        ExecutionJournal journal = new ExecutionJournal(dir.toString(), false, 1 << 20);
+        journal.start();
+        journal.recordStart("e1", "wf", ExecutionPriority.NORMAL, 0, variables("x", "global", 1));
+        journal.recordCheckpoint("e1", "a", "b", variables("result", "a", "from-a"));
+        journal.recordCheckpoint("e1", "b", "c", variables("result", "b", "from-b"));
+        // 数据流段的检查点在一条记录中包含多个节点的同名变量
+        Map<String, VariableDef> segment = new LinkedHashMap<>();
+        segment.put(VariableSlots.key("c", "result"), variables("result", "c", "from-c").get("result"));
+        segment.put(VariableSlots.key("d", "result"), variables("result", "d", "from-d").get("result"));
+        journal.recordCheckpoint("e1", "c", "e", segment).get();
+        // 再次执行 a（例如循环）时，按名称保存的变量以它为准
+        journal.recordCheckpoint("e1", "a", "f", variables("result", "a", "again")).get();
+        journal.stop();
+
+        ExecutionJournal reopened = new ExecutionJournal(dir.toString(), false, 1 << 20);
+        reopened.start();
+        try {
+            ExecutionJournal.RecoveredExecution execution = reopened.takeRecovered().get(0);
+            assertEquals(4, execution.getOutputs().size());
+
+            WorkflowContext context = new WorkflowContext("e1", "wf", VariableSlots.empty());
+            context.setVariables(execution.getVariables());
+            context.writeRecorded(execution.getOutputs());
+            assertEquals("again", context.getVariable("result", "a").getValue());
+            assertEquals("from-b", context.getVariable("result", "b").getValue());
+            assertEquals("from-c", context.getVariable("result", "c").getValue());
+            assertEquals("from-d", context.getVariable("result", "d").getValue());
+            assertEquals("again", context.getVariables().get("result").getValue());
+            assertEquals(1, ((Number) context.getVariables().get("x").getValue()).intValue());
+        } finally {
+            reopened.stop();
+        }
+    }
+
+    private static Map<String, VariableDef> variables(String name, String parent, Object value) {
+        VariableDef var = new VariableDef(name, value);
+        var.setParent(parent);
+        Map<String, VariableDef> variables = new LinkedHashMap<>();
+        variables.put(name, var);
+        return variables;
+    }
+}
@@ -0,0 +1,217 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.core.ToolDefinition;
+import cn.yafex.tools.schema.FieldDef;
+import cn.yafex.tools.schema.FieldType;
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.execution.DataflowSegment;
+import cn.yafex.workflow.execution.ExecutionPlan;
+import cn.yafex.workflow.execution.PlanNode;
+import cn.yafex.workflow.execution.WorkflowContext;
+import cn.yafex.workflow.model.ConditionCase;
+import cn.yafex.workflow.model.ExecutionMode;
+import cn.yafex.workflow.model.NodeType;
+import cn.yafex.workflow.model.Workflow;
+import cn.yafex.workflow.model.WorkflowNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test case for compiling a Workflow into an indexed ExecutionPlan
+ */
+public class ExecutionPlanTest {
+
+    private static WorkflowNode node(String id, NodeType type) {
+        WorkflowNode node = new WorkflowNode();
+        node.setId(id);
+        node.setName(id);
+        node.setType(type);
+        return node;
+    }
+
+    @Test
+    public void testSuccessorsResolvedToIndices() {
+        WorkflowNode start = node("start", NodeType.START);
+        start.getNextNodes().put("default", "check");
+
+        WorkflowNode check = node("check", NodeType.CONDITION);
+        check.addConditionCase(new ConditionCase("and"));
+        check.addConditionCase(new ConditionCase("or"));
+        check.getNextNodes().put("case1", "end");
+        check.getNextNodes().put("case2", "missing");
+
+        WorkflowNode end = node("end", NodeType.END);
+
+        Workflow workflow = new Workflow();
+        workflow.setId("plan_test");
+        workflow.setStartNodeId("start");
+        workflow.addNode(end);
+        workflow.addNode(check);
+        workflow.addNode(start);
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+        assertEquals(3, plan.size());
+
+        PlanNode startNode = plan.getNode(plan.getStartIndex());
+        assertEquals("start", startNode.getId());
+
+        PlanNode checkNode = plan.getNode(startNode.getDefaultSuccessor());
+        assertEquals("check", checkNode.getId());
+        assertEquals(3, checkNode.getBranchCount());
+        assertEquals("case1", checkNode.getBranchKey(0));
+        assertEquals("else", checkNode.getBranchKey(2));
+        assertEquals(plan.indexOf("end"), checkNode.getSuccessor(0));
+        assertEquals(PlanNode.UNRESOLVED, checkNode.getSuccessor(1));
+        assertEquals("missing", checkNode.getSuccessorId(1));
+        assertEquals(PlanNode.NO_NODE, checkNode.getSuccessor(2));
+
+        PlanNode endNode = plan.getNode(plan.indexOf("end"));
+        assertEquals(PlanNode.NO_NODE, endNode.getDefaultSuccessor());
+    }
+
+    @Test
+    public void testMissingStartNodeRejected() {
+        Workflow workflow = new Workflow();
+        workflow.setStartNodeId("nowhere");
+        workflow.addNode(node("start", NodeType.START));
+        assertThrows(IllegalArgumentException.class, () -> ExecutionPlan.compile(workflow));
+    }
+
+    @Test
+    public void testParallelResolvedToJoin() {
+        WorkflowNode fork = node("fork", NodeType.PARALLEL);
+        fork.getNextNodes().put("b", "right");
+        fork.getNextNodes().put("a", "left");
+
+        WorkflowNode left = node("left", NodeType.FUNCTION);
+        left.getNextNodes().put("default", "join");
+        WorkflowNode right = node("right", NodeType.FUNCTION);
+        right.getNextNodes().put("default", "join");
+
+        WorkflowNode join = node("join", NodeType.JOIN);
+        join.getNextNodes().put("default", "end");
+
+        Workflow workflow = new Workflow();
+        workflow.setStartNodeId("fork");
+        workflow.addNode(fork);
+        workflow.addNode(left);
+        workflow.addNode(right);
+        workflow.addNode(join);
+        workflow.addNode(node("end", NodeType.END));
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+        PlanNode forkNode = plan.getNode(plan.getStartIndex());
+        assertEquals(plan.indexOf("join"), forkNode.getJoinIndex());
+        assertEquals("a", forkNode.getBranchKey(0));
+        assertEquals(plan.indexOf("left"), forkNode.getSuccessor(0));
+        assertEquals(plan.indexOf("right"), forkNode.getSuccessor(1));
+    }
+
+    @Test
+    public void testParallelBranchEndingBeforeJoinRejected() {
+        WorkflowNode fork = node("fork", NodeType.PARALLEL);
+        fork.getNextNodes().put("a", "join");
+        fork.getNextNodes().put("b", "end");
+
+        WorkflowNode join = node("join", NodeType.JOIN);
+        join.getNextNodes().put("default", "end");
+
+        Workflow workflow = new Workflow();
+        workflow.setStartNodeId("fork");
+        workflow.addNode(fork);
+        workflow.addNode(join);
+        workflow.addNode(node("end", NodeType.END));
+
+        assertThrows(IllegalArgumentException.class, () -> ExecutionPlan.compile(workflow));
+    }
+
+    private static ToolDefinition tool(String name, String output) {
+        Map<String, FieldDef> outputs = new HashMap<>();
+        outputs.put(output, new FieldDef(output, output, FieldType.STRING, true, null, null));
+        return new ToolDefinition(name, name, new HashMap<>(), outputs, null);
+    }
+
+    private static WorkflowNode function(String id, String toolName, String... reads) {
+        WorkflowNode node = node(id, NodeType.FUNCTION);
+        node.setToolName(toolName);
+        for (int i = 0; i < reads.length; i += 2) {
+            VariableDef var = new VariableDef(reads[i], null);
+            var.setParent(reads[i + 1]);
+            node.addInputMapping(reads[i], var);
+        }
+        return node;
+    }
+
+    @Test
+    public void testDataflowSegmentDependencies() {
+        WorkflowNode a = function("a", "tool_a", "query", "global");
+        a.getNextNodes().put("default", "b");
+        WorkflowNode b = function("b", "tool_b", "query", "global");
+        b.getNextNodes().put("default", "c");
+        WorkflowNode c = function("c", "tool_c", "x", "a", "y", "b");
+        c.getNextNodes().put("default", "end");
+
+        Workflow workflow = new Workflow();
+        workflow.setStartNodeId("a");
+        workflow.setExecutionMode(ExecutionMode.DATAFLOW);
+        workflow.setTool(tool("tool_a", "x"));
+        workflow.setTool(tool("tool_b", "y"));
+        workflow.setTool(tool("tool_c", "z"));
+        workflow.addNode(a);
+        workflow.addNode(b);
+        workflow.addNode(c);
+        workflow.addNode(node("end", NodeType.END));
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+        DataflowSegment segment = plan.getNode(plan.indexOf("a")).getSegment();
+        assertNotNull(segment);
+        assertEquals(3, segment.size());
+        assertArrayEquals(new int[] {0, 0, 2}, segment.newDependencyCounts());
+        assertArrayEquals(new int[] {2}, segment.getDependents(0));
+        assertArrayEquals(new int[] {2}, segment.getDependents(1));
+        assertEquals(plan.indexOf("end"), segment.getExit());
+        // 段内节点共用一个依赖图，从 b 开始时不再等待 a
+        PlanNode second = plan.getNode(plan.indexOf("b"));
+        assertSame(segment, second.getSegment());
+        assertEquals(0, plan.getNode(plan.indexOf("a")).getSegmentPosition());
+        assertEquals(1, second.getSegmentPosition());
+        assertArrayEquals(new int[] {0, 0, 1}, segment.newDependencyCounts(1));
+        // 段尾的节点单独无法并发
+        assertNull(plan.getNode(plan.indexOf("c")).getSegment());
+    }
+
+    @Test
+    public void testSameNamedOutputsKeptApartBySlot() {
+        WorkflowNode a = function("a", "tool_a");
+        a.getNextNodes().put("default", "b");
+        WorkflowNode b = function("b", "tool_b", "x", "a");
+
+        Workflow workflow = new Workflow();
+        workflow.setStartNodeId("a");
+        workflow.setTool(tool("tool_a", "x"));
+        workflow.setTool(tool("tool_b", "x"));
+        workflow.addNode(a);
+        workflow.addNode(b);
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+        int slot = plan.getNode(plan.indexOf("b")).getInputSlots()[0];
+        assertEquals(plan.getSlots().slotOf("a", "x"), slot);
+        assertNotEquals(slot, plan.getSlots().slotOf("b", "x"));
+
+        WorkflowContext context = new WorkflowContext("slots", plan.getSlots());
+        VariableDef fromA = new VariableDef("x", "1");
+        fromA.setParent("a");
+        VariableDef fromB = new VariableDef("x", "2");
+        fromB.setParent("b");
+        context.setVariable("x", fromA);
+        context.setVariable("x", fromB);
+
+        assertSame(fromA, context.getVariable(slot));
+        assertSame(fromB, context.getVariable("x", "b"));
+        assertSame(fromB, context.getVariables().get("x"));
+    }
+}
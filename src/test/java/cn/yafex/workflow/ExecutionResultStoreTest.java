@@ -0,0 +1,113 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.execution.ExecutionResultStore;
+import cn.yafex.workflow.execution.VariableSlots;
+import cn.yafex.workflow.execution.WorkflowContext;
+import cn.yafex.workflow.execution.WorkflowStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Test case for the execution result store: spill to disk, eviction and expiry
+ */
+public class ExecutionResultStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testOutputsSpillToDiskAndOldestAreEvicted() {
+        ExecutionResultStore store = new ExecutionResultStore(3, 0, 64, dir.toString());
+        store.start();
+        try {
+            for (int i = 0; i < 4; i++) {
+                store.put(finished("e" + i, WorkflowStatus.COMPLETED, "value-" + i + "-0123456789012345678901234567890"));
+            }
+
+            // 超过数量上限时淘汰最早结束的结果
+            assertNull(store.get("e0"));
+            assertNull(store.getStatus("e0"));
+
+            Map<String, Object> stats = store.getStats();
+            assertEquals(3, stats.get("size"));
+            assertEquals(1L, stats.get("evicted"));
+            assertTrue((Long) stats.get("memoryBytes") <= 64L);
+            assertTrue((Integer) stats.get("onDisk") > 0);
+
+            // 写入磁盘的输出在查询时读回
+            Map<String, Object> result = store.get("e1");
+            assertEquals("e1", result.get("executionId"));
+            assertEquals("COMPLETED", result.get("status"));
+            assertEquals(5L, result.get("durationMs"));
+            assertEquals("value-1-0123456789012345678901234567890",
+                ((Map<?, ?>) result.get("outputs")).get("result"));
+            assertEquals(WorkflowStatus.COMPLETED, store.getStatus("e3"));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testResultsExpireAfterTtl() throws Exception {
+        ExecutionResultStore store = new ExecutionResultStore(100, 50, 1 << 20, dir.toString());
+        store.start();
+        try {
+            WorkflowContext failed = finished("e1", WorkflowStatus.FAILED, null);
+            failed.setError("boom");
+            store.put(failed);
+            assertEquals("boom", store.get("e1").get("error"));
+
+            Thread.sleep(100);
+            assertNull(store.get("e1"));
+            assertEquals(1L, store.getStats().get("expired"));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testSpillFilesFollowEvictionAndReplacement() throws Exception {
+        ExecutionResultStore store = new ExecutionResultStore(2, 0, 1, dir.toString());
+        store.start();
+        try {
+            // 预算为 1 字节，每个输出都写入磁盘
+            store.put(finished("e1", WorkflowStatus.COMPLETED, "first"));
+            store.put(finished("e1", WorkflowStatus.COMPLETED, "second"));
+            assertEquals("second", ((Map<?, ?>) store.get("e1").get("outputs")).get("result"));
+            for (int i = 2; i < 6; i++) {
+                store.put(finished("e" + i, WorkflowStatus.COMPLETED, "value-" + i));
+            }
+            assertNull(store.get("e1"));
+            assertEquals("value-5", ((Map<?, ?>) store.get("e5").get("outputs")).get("result"));
+
+            // 被替换和被淘汰的结果的文件都已删除
+            Map<String, Object> stats = store.getStats();
+            assertEquals(2, stats.get("onDisk"));
+            assertEquals(0L, stats.get("memoryBytes"));
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(2, files.count());
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static WorkflowContext finished(String executionId, WorkflowStatus status, String output) {
+        WorkflowContext result = new WorkflowContext(executionId, "wf", VariableSlots.empty());
+        result.setEndTime(result.getStartTime().plusNanos(5_000_000));
+        result.setStatus(status);
+        if (output != null) {
+            Map<String, Object> outputs = new HashMap<>();
+            outputs.put("result", output);
+            result.setOutputs(outputs);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.execution.ExecutionPriority;
+import cn.yafex.workflow.execution.ExecutionRejectedException;
+import cn.yafex.workflow.execution.ExecutionScheduler;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test case for the bounded priority queues of the execution scheduler
+ */
+public class ExecutionSchedulerTest {
+
+    @Test
+    public void testFullQueueRejectsAndTasksRunByPriority() throws Exception {
+        ExecutionScheduler scheduler = new ExecutionScheduler(1, 3, 0);
+        scheduler.start();
+        try {
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(5);
+            List<String> order = new CopyOnWriteArrayList<>();
+            // 占用唯一的工作线程，之后提交的任务都留在队列中
+            scheduler.submit(() -> {
+                running.countDown();
+                awaitQuietly(release);
+            }, ExecutionPriority.NORMAL);
+            assertTrue(running.await(2, TimeUnit.SECONDS));
+
+            scheduler.submit(record(order, "low", done), ExecutionPriority.LOW);
+            scheduler.submit(record(order, "normal", done), ExecutionPriority.NORMAL);
+            scheduler.submit(record(order, "high", done), ExecutionPriority.HIGH);
+            assertThrows(ExecutionRejectedException.class,
+                () -> scheduler.submit(record(order, "rejected", done), ExecutionPriority.HIGH));
+
+            // 续体不受容量限制：resume 排在同优先级队首，requeue 排在队尾
+            scheduler.resume(record(order, "resumed", done), ExecutionPriority.NORMAL);
+            scheduler.requeue(record(order, "requeued", done), ExecutionPriority.HIGH);
+            assertEquals(5, scheduler.getQueueDepth());
+
+            release.countDown();
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("high", "requeued", "resumed", "normal", "low"), order);
+            assertEquals(1L, scheduler.getStats().get("rejected"));
+            assertEquals(4L, scheduler.getStats().get("submitted"));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testSubmitWaitsForAdmissionTimeout() throws Exception {
+        ExecutionScheduler scheduler = new ExecutionScheduler(1, 1, 100);
+        scheduler.start();
+        try {
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            scheduler.submit(() -> {
+                running.countDown();
+                awaitQuietly(release);
+            }, ExecutionPriority.NORMAL);
+            assertTrue(running.await(2, TimeUnit.SECONDS));
+            scheduler.submit(() -> awaitQuietly(release), ExecutionPriority.NORMAL);
+
+            long start = System.nanoTime();
+            assertThrows(ExecutionRejectedException.class, () -> scheduler.submit(() -> { }, ExecutionPriority.HIGH));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+
+            // 等待期间队列出现空位时可以入队
+            new Thread(() -> {
+                sleepQuietly(20);
+                release.countDown();
+            }).start();
+            CountDownLatch admitted = new CountDownLatch(1);
+            scheduler.submit(admitted::countDown, ExecutionPriority.NORMAL);
+            assertTrue(admitted.await(2, TimeUnit.SECONDS));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    private static Runnable record(List<String> order, String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
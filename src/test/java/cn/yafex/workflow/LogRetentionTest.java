@@ -0,0 +1,72 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.util.LogRetention;
+import cn.yafex.workflow.util.WorkflowLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Test case for workflow log retention: compression, expiry and the total size limit
+ */
+public class LogRetentionTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testCompressesColdFilesAndEnforcesLimits() throws Exception {
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 64, 0, 4096, 50, 4, null);
+        logger.start();
+        long now = System.currentTimeMillis();
+        Path old = write("2026-01-01/wf_old.txt", 100, now - TimeUnit.DAYS.toMillis(30));
+        Path cold1 = write("2026-10-01/wf_cold1.txt", 4000, now - TimeUnit.HOURS.toMillis(5));
+        Path cold2 = write("2026-10-01/wf_cold2.txt", 4000, now - TimeUnit.HOURS.toMillis(4));
+        Path hot1 = write("2026-10-02/wf_hot1.txt", 3000, now - TimeUnit.MINUTES.toMillis(3));
+        Path hot2 = write("2026-10-02/wf_hot2.txt", 3000, now);
+
+        // 7 天过期，超过 1 小时没有写入的文件压缩，总大小不超过 6050 字节
+        LogRetention retention = new LogRetention(logger, TimeUnit.DAYS.toMillis(7), 6050,
+            TimeUnit.HOURS.toMillis(1), 0);
+        retention.runOnce();
+        logger.stop();
+
+        assertFalse(Files.exists(old));
+        assertFalse(Files.exists(dir.resolve("2026-01-01")));
+        assertFalse(Files.exists(cold1));
+        assertFalse(Files.exists(cold2));
+        Path compressed = cold2.resolveSibling("wf_cold2.txt.gz");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertEquals("x".repeat(4000), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        // 压缩后仍超过总大小上限，从最旧的文件开始删除
+        assertFalse(Files.exists(cold1.resolveSibling("wf_cold1.txt.gz")));
+        assertTrue(Files.exists(hot1));
+        assertTrue(Files.exists(hot2));
+
+        Map<String, Object> stats = retention.getStats();
+        assertEquals(2L, stats.get("compressed"));
+        assertEquals(1L, stats.get("expired"));
+        assertEquals(1L, stats.get("evicted"));
+        assertEquals(2, stats.get("textFiles"));
+        assertEquals(1, stats.get("compressedFiles"));
+        assertEquals(6000L + Files.size(compressed), stats.get("usedBytes"));
+    }
+
+    private Path write(String name, int size, long modified) throws Exception {
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, "x".repeat(size).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+        return file;
+    }
+}
@@ -0,0 +1,88 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.execution.PersistentMap;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test case for the persistent map used for context variable snapshots
+ */
+public class PersistentMapTest {
+
+    @Test
+    public void testMatchesHashMapAndSnapshotsStayUnchanged() {
+        Random random = new Random(42);
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentMap<String, Integer> map = PersistentMap.empty();
+        PersistentMap<String, Integer> snapshot = null;
+        Map<String, Integer> snapshotExpected = null;
+        for (int i = 0; i < 5000; i++) {
+            String key = "k" + random.nextInt(2000);
+            expected.put(key, i);
+            map = map.plus(key, i);
+            if (i == 1000) {
+                snapshot = map;
+                snapshotExpected = new HashMap<>(expected);
+            }
+        }
+
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, new HashMap<>(map));
+        // 之后的写入不影响之前取得的版本
+        assertEquals(snapshotExpected, snapshot);
+        assertThrows(UnsupportedOperationException.class, () -> PersistentMap.<String, Integer>empty().put("a", 1));
+    }
+
+    @Test
+    public void testKeysWithSameHash() {
+        // "Aa" 与 "BB" 的 hashCode 相同
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty()
+            .plus("Aa", "1")
+            .plus("BB", "2")
+            .plus("C", "3");
+        PersistentMap<String, String> updated = map.plus("BB", "4").plus("AaAa", "5").plus("BBBB", "6");
+
+        assertEquals(3, map.size());
+        assertEquals("2", map.get("BB"));
+        assertEquals(5, updated.size());
+        assertEquals("1", updated.get("Aa"));
+        assertEquals("4", updated.get("BB"));
+        assertEquals("6", updated.get("BBBB"));
+        assertFalse(updated.containsKey("AaBB"));
+        assertEquals(5, new HashMap<>(updated).size());
+        assertSame(updated, updated.plus("C", "3"));
+    }
+
+    @Test
+    public void testDiffReportsOnlyChangedEntries() {
+        PersistentMap<String, Integer> base = PersistentMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            base = base.plus("k" + i, i);
+        }
+        PersistentMap<String, Integer> branch = base.plus("k1", 1001).plus("new", 1);
+        PersistentMap<String, Integer> other = base.plus("k2", 2002);
+
+        Map<String, Integer> changed = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        branch.diff(base, changed::put, removed::add);
+        assertEquals(2, changed.size());
+        assertEquals(1001, changed.get("k1"));
+        assertEquals(1, changed.get("new"));
+        assertTrue(removed.isEmpty());
+
+        // 在两个分支之间切换时，对方写入的条目被恢复或删除
+        changed.clear();
+        other.diff(branch, changed::put, removed::add);
+        assertEquals(2, changed.size());
+        assertEquals(1, changed.get("k1"));
+        assertEquals(2002, changed.get("k2"));
+        assertEquals(List.of("new"), removed);
+    }
+}
@@ -0,0 +1,67 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.execution.CancellationToken;
+import cn.yafex.workflow.execution.ExecutionCancelledException;
+import cn.yafex.workflow.execution.TimerWheel;
+import cn.yafex.workflow.execution.WorkflowStatus;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test case for the shared timer wheel and cooperative cancellation
+ */
+public class TimerWheelTest {
+
+    @Test
+    public void testTimeoutFiresAndCancelledTimeoutDoesNot() throws Exception {
+        TimerWheel wheel = new TimerWheel(5, 8);
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            AtomicBoolean cancelledRan = new AtomicBoolean();
+
+            // 超过一圈的延迟，验证圈数计算
+            TimerWheel.Timeout timeout = wheel.schedule(fired::countDown, 100);
+            TimerWheel.Timeout cancelled = wheel.schedule(() -> cancelledRan.set(true), 20);
+            assertTrue(cancelled.cancel());
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(timeout.isExpired());
+            assertFalse(timeout.cancel());
+
+            Thread.sleep(50);
+            assertFalse(cancelledRan.get());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void testCancelInterruptsBoundThread() throws Exception {
+        CancellationToken token = new CancellationToken();
+        TimerWheel wheel = new TimerWheel(5, 8);
+        try {
+            wheel.schedule(() -> token.cancel(WorkflowStatus.TIMEOUT, "deadline"), 20);
+
+            long epoch = token.bind();
+            try {
+                Thread.sleep(2000);
+                fail("Sleep should have been interrupted");
+            } catch (InterruptedException e) {
+                // 预期被中断
+            } finally {
+                token.unbind(epoch);
+            }
+            assertFalse(Thread.currentThread().isInterrupted());
+
+            ExecutionCancelledException e = assertThrows(ExecutionCancelledException.class, token::throwIfCancelled);
+            assertEquals(WorkflowStatus.TIMEOUT, e.getStatus());
+            assertFalse(token.cancel(WorkflowStatus.CANCELLED, "too late"));
+        } finally {
+            wheel.stop();
+        }
+    }
+}
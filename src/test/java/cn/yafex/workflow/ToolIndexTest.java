@@ -0,0 +1,96 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.core.ToolDefinition;
+import cn.yafex.tools.core.ToolDescriptor;
+import cn.yafex.tools.core.ToolIndex;
+import cn.yafex.tools.core.ToolHandler;
+import cn.yafex.tools.core.ToolRegistry;
+import cn.yafex.tools.core.ToolResponse;
+import cn.yafex.tools.schema.FieldDef;
+import cn.yafex.tools.schema.FieldType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Test case for the compile-time tool index
+ */
+public class ToolIndexTest {
+
+    @AfterEach
+    public void reset() {
+        ToolRegistry.clear();
+    }
+
+    @Test
+    public void testIndexMatchesReflectedDefinitions() {
+        ToolRegistry.clear();
+        assertTrue(ToolIndex.registerIndexed("cn.yafex.tools.handlers"));
+        assertFalse(ToolRegistry.getAllDescriptors().isEmpty());
+
+        for (ToolDescriptor descriptor : ToolRegistry.getAllDescriptors()) {
+            ToolDefinition reflected = descriptor.getHandler().getDefinition();
+            ToolDefinition indexed = descriptor.getDefinition();
+            assertEquals(reflected.getName(), descriptor.getName());
+            assertEquals(reflected.getDescription(), indexed.getDescription());
+            assertSameFields(reflected.getInputs(), indexed.getInputs());
+            assertSameFields(reflected.getOutputs(), indexed.getOutputs());
+        }
+    }
+
+    @Test
+    public void testMissingPackageFallsBackToScanning() {
+        ToolRegistry.clear();
+        assertFalse(ToolIndex.registerIndexed("cn.yafex.missing"));
+        assertTrue(ToolRegistry.getAllDescriptors().isEmpty());
+    }
+
+    @Test
+    public void testDescriptorCopiesFieldDefinitions() {
+        FieldDef text = new FieldDef("text", "输入文本", FieldType.STRING, true, null, null);
+        Map<String, FieldDef> inputs = new LinkedHashMap<>();
+        inputs.put("text", text);
+        ToolDefinition source = new ToolDefinition("cached_tool", "缓存定义的工具", inputs, new LinkedHashMap<>(), null);
+        ToolHandler handler = new ToolHandler() {
+            @Override
+            public String getName() {
+                return "cached_tool";
+            }
+
+            @Override
+            public ToolDefinition getDefinition() {
+                return source;
+            }
+
+            @Override
+            public <T> ToolResponse<T> execute(Map<String, Object> params) {
+                return null;
+            }
+        };
+        ToolDescriptor descriptor = ToolDescriptor.of(handler);
+
+        // handler 之后修改自己的定义不影响注册时的副本
+        text.setRequired(false);
+        text.setType(FieldType.NUMBER);
+        FieldDef copied = descriptor.getDefinition().getInputs().get("text");
+        assertNotSame(text, copied);
+        assertTrue(copied.isRequired());
+        assertEquals(FieldType.STRING, copied.getType());
+        assertThrows(UnsupportedOperationException.class,
+            () -> descriptor.getDefinition().getInputs().put("other", text));
+    }
+
+    private static void assertSameFields(Map<String, FieldDef> expected, Map<String, FieldDef> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((name, field) -> {
+            FieldDef other = actual.get(name);
+            assertEquals(field.getType(), other.getType(), name);
+            assertEquals(field.isRequired(), other.isRequired(), name);
+            assertEquals(field.getDescription(), other.getDescription(), name);
+            assertEquals(field.getDefaultValue(), other.getDefaultValue(), name);
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.core.ToolIndex;
+import cn.yafex.tools.core.ToolRegistry;
+import cn.yafex.tools.core.ToolScanner;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工具注册启动耗时基准：比较读取编译时索引与扫描类路径两种方式。
+ *
+ * <p>冷启动耗时主要来自类加载，因此每次测量都在新的 JVM 中进行，只测量注册表初始化本身。
+ * 不属于单元测试，先执行 {@code mvn test-compile}，再运行：</p>
+ * <pre>
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) cn.yafex.workflow.ToolStartupBenchmark [次数]
+ * </pre>
+ */
+public class ToolStartupBenchmark {
+    private static final String BASE_PACKAGE = "cn.yafex.tools.handlers";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "--single".equals(args[0])) {
+            System.out.println(measure(args[1]));
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        for (String mode : Arrays.asList("index", "scan")) {
+            long[] samples = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                samples[i] = runChild(mode);
+            }
+            Arrays.sort(samples);
+            System.out.printf("%-6s runs=%d min=%.2fms median=%.2fms max=%.2fms%n", mode, runs,
+                samples[0] / 1e6, samples[runs / 2] / 1e6, samples[runs - 1] / 1e6);
+        }
+    }
+
+    /**
+     * 在当前 JVM 中执行一次注册，返回耗时（纳秒）
+     */
+    private static long measure(String mode) {
+        // 应用启动时 fastjson 已经被加载，不计入索引方式的耗时
+        JSON.parseObject("{\"a\":{\"b\":1}}", new TypeReference<Map<String, Object>>() {});
+        long start = System.nanoTime();
+        if ("index".equals(mode)) {
+            if (!ToolIndex.registerIndexed(BASE_PACKAGE)) {
+                throw new IllegalStateException("类路径上没有工具索引，请先执行 mvn compile");
+            }
+        } else {
+            ToolScanner.scanAndRegister(BASE_PACKAGE);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (ToolRegistry.getAllDescriptors().isEmpty()) {
+            throw new IllegalStateException("没有注册任何工具");
+        }
+        return elapsed;
+    }
+
+    /**
+     * 启动新的 JVM 执行一次测量，注册过程的日志输出被忽略，只解析最后一行的耗时
+     */
+    private static long runChild(String mode) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+            ToolStartupBenchmark.class.getName(), "--single", mode));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                last = line;
+            }
+        }
+        if (process.waitFor() != 0 || last == null) {
+            throw new IllegalStateException("基准进程失败: " + last);
+        }
+        return Long.parseLong(last.trim());
+    }
+}
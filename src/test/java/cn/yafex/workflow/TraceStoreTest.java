@@ -0,0 +1,109 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.util.TraceStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Test case for the segmented binary execution trace store
+ */
+public class TraceStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testQueriesAcrossSegmentsAndAfterRestart() throws Exception {
+        // 段很小，每个执行的记录分布在多个段中
+        TraceStore store = new TraceStore(dir.toString(), 512);
+        store.start();
+        for (int e = 0; e < 5; e++) {
+            String executionId = "e" + e;
+            String workflowId = e % 2 == 0 ? "even" : "odd";
+            long base = 1000L * e;
+            store.append(TraceStore.START, base, 0, executionId, workflowId, null, null, null, null);
+            for (int n = 0; n < 3; n++) {
+                store.append(TraceStore.ENTER, base + n * 10, 0, executionId, workflowId, "n" + n, "节点" + n, "FUNCTION", null);
+                store.append(TraceStore.COMPLETE, base + n * 10 + 5, 5, executionId, workflowId, "n" + n, "节点" + n,
+                    "FUNCTION", Map.of("result", n));
+            }
+            store.append(TraceStore.END, base + 100, 100, executionId, workflowId, null, null, "COMPLETED", null);
+        }
+        // 写入缓冲区的记录在 flush 之前不可见
+        assertTrue(store.getExecutionTrace("e4").size() < 8);
+        store.flush();
+
+        List<Map<String, Object>> trace = store.getExecutionTrace("e3");
+        assertEquals(8, trace.size());
+        assertEquals("START", trace.get(0).get("type"));
+        assertEquals("节点1", trace.get(3).get("nodeName"));
+        assertEquals(Map.of("result", 1), trace.get(4).get("outputs"));
+        assertEquals(5L, trace.get(4).get("durationMs"));
+        assertEquals("COMPLETED", trace.get(7).get("status"));
+        assertTrue(store.getExecutionTrace("missing").isEmpty());
+
+        List<Map<String, Object>> range = store.scan(1000, 3000, null, 100);
+        assertEquals(16, range.size());
+        assertEquals(8, store.scan(0, Long.MAX_VALUE, "odd", 8).size());
+        assertEquals(8, store.scan(0, Long.MAX_VALUE, "odd", 100).stream()
+            .filter(r -> "e1".equals(r.get("executionId"))).count());
+        store.stop();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.count() > 2);
+        }
+
+        // 重启后从段文件重建索引
+        TraceStore reopened = new TraceStore(dir.toString(), 512);
+        reopened.start();
+        assertEquals(trace, reopened.getExecutionTrace("e3"));
+        assertEquals(40, reopened.scan(0, Long.MAX_VALUE, null, 100).size());
+        assertEquals(5, reopened.getStats().get("indexedExecutions"));
+        reopened.stop();
+    }
+
+    @Test
+    public void testRetentionDropsOldSegmentsWithTheirIndex() throws Exception {
+        TraceStore store = new TraceStore(dir.toString(), 512, 0, 2048);
+        store.start();
+        for (int e = 0; e < 20; e++) {
+            String executionId = "e" + e;
+            store.append(TraceStore.START, e, 0, executionId, "wf", null, null, null, null);
+            store.append(TraceStore.COMPLETE, e, 1, executionId, "wf", "n", "节点", "FUNCTION", Map.of("result", e));
+            store.append(TraceStore.END, e, 1, executionId, "wf", null, null, "COMPLETED", null);
+        }
+        store.flush();
+
+        Map<String, Object> stats = store.getStats();
+        assertTrue((Long) stats.get("evictedSegments") > 0);
+        // 活动段之外的段总大小不超过上限
+        assertTrue((Long) stats.get("bytes") <= 2048 + 512);
+        assertTrue((Integer) stats.get("indexedExecutions") < 20);
+        assertTrue(store.getExecutionTrace("e0").isEmpty());
+        assertTrue(store.scan(0, 1, null, 100).isEmpty());
+        assertEquals(3, store.getExecutionTrace("e19").size());
+        store.stop();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(stats.get("segments"), (int) files.count());
+        }
+
+        // 重启时删除超过保留时间的段，不再扫描它们
+        Path oldest;
+        try (Stream<Path> files = Files.list(dir).sorted()) {
+            oldest = files.findFirst().get();
+        }
+        Files.setLastModifiedTime(oldest, java.nio.file.attribute.FileTime.fromMillis(0));
+        TraceStore reopened = new TraceStore(dir.toString(), 512, 60_000, 0);
+        reopened.start();
+        assertFalse(Files.exists(oldest));
+        assertEquals(1L, reopened.getStats().get("expiredSegments"));
+        assertEquals(3, reopened.getExecutionTrace("e19").size());
+        reopened.stop();
+    }
+}
@@ -0,0 +1,58 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.core.ToolResponse;
+import cn.yafex.tools.core.TypedToolInvoker;
+import cn.yafex.tools.exceptions.ValidationException;
+import cn.yafex.tools.handlers.text.TextProcessTool;
+import cn.yafex.tools.schema.VariableDef;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test case for MethodHandle-bound typed tool invocation
+ */
+public class TypedToolInvokerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCoercesJsonNumbersAndAppliesDefaults() throws Exception {
+        TypedToolInvoker invoker = TypedToolInvoker.of(new TextProcessTool());
+        assertNotNull(invoker);
+
+        // JSON 解析得到的 Long 传给 int 参数
+        Map<String, VariableDef> inputs = new HashMap<>();
+        inputs.put("text", variable("hello world"));
+        inputs.put("truncate", variable(5L));
+        ToolResponse<?> response = invoker.invoke(inputs);
+        assertTrue(response.isSuccess());
+        assertEquals("HELLO", ((Map<String, Object>) response.getData()).get("uppercase"));
+
+        // 字符串形式的数值，以及缺省时使用默认值 100
+        Map<String, Object> params = new HashMap<>();
+        params.put("text", "abc");
+        params.put("truncate", "2");
+        assertEquals(2, ((Map<String, Object>) invoker.invokeValues(params).getData()).get("length"));
+        params.remove("truncate");
+        assertEquals(3, ((Map<String, Object>) invoker.invokeValues(params).getData()).get("length"));
+    }
+
+    @Test
+    public void testRejectsMissingAndInvalidArguments() {
+        TypedToolInvoker invoker = TypedToolInvoker.of(new TextProcessTool());
+        assertThrows(ValidationException.class, () -> invoker.invokeValues(new HashMap<>()));
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("text", "abc");
+        params.put("truncate", 1.5);
+        assertThrows(ValidationException.class, () -> invoker.invokeValues(params));
+    }
+
+    private static VariableDef variable(Object value) {
+        VariableDef var = new VariableDef();
+        var.setValue(value);
+        return var;
+    }
+}
@@ -0,0 +1,114 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.model.NodeExecutionEvent;
+import cn.yafex.workflow.service.WorkflowDebugService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Test case for replaying and fanning out debug events to SSE subscribers
+ */
+public class WorkflowDebugServiceTest {
+
+    /**
+     * 只负责订阅的控制器，通过 MockMvc 接收 SSE 流
+     */
+    @RestController
+    static class EventsController {
+        private final WorkflowDebugService debugService;
+
+        EventsController(WorkflowDebugService debugService) {
+            this.debugService = debugService;
+        }
+
+        @GetMapping("/events/{executionId}")
+        public SseEmitter events(@PathVariable String executionId,
+                                 @RequestParam(defaultValue = "true") boolean running) throws IOException {
+            SseEmitter emitter = debugService.subscribe(executionId, false, running);
+            if (emitter == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+            return emitter;
+        }
+    }
+
+    private static NodeExecutionEvent event(String executionId, String nodeId) {
+        return new NodeExecutionEvent(executionId, nodeId, nodeId, "FUNCTION", "ENTER");
+    }
+
+    private static MockMvc mvc(WorkflowDebugService debugService) {
+        return MockMvcBuilders.standaloneSetup(new EventsController(debugService)).build();
+    }
+
+    @Test
+    public void testLateSubscriberReplaysBufferedEvents() throws Exception {
+        WorkflowDebugService debugService = new WorkflowDebugService(3, 10);
+        for (int i = 0; i < 5; i++) {
+            debugService.sendDebugEvent(event("e1", "n" + i));
+        }
+        MvcResult result = mvc(debugService).perform(get("/events/e1")).andReturn();
+        debugService.sendDebugEvent(event("e1", "n5"));
+        debugService.completeDebugSession("e1");
+
+        // 缓冲区只保存最近的 3 个事件，之后是实时事件
+        String stream = result.getResponse().getContentAsString();
+        assertFalse(stream.contains("\"nodeId\":\"n1\""));
+        assertTrue(stream.indexOf("\"nodeId\":\"n2\"") < stream.indexOf("\"nodeId\":\"n4\""));
+        assertTrue(stream.indexOf("\"nodeId\":\"n4\"") < stream.indexOf("\"nodeId\":\"n5\""));
+        assertEquals(0, debugService.getStats().get("subscribers"));
+    }
+
+    @Test
+    public void testAllSubscribersReceiveEachEvent() throws Exception {
+        WorkflowDebugService debugService = new WorkflowDebugService(8, 10);
+        MockMvc mvc = mvc(debugService);
+        debugService.sendDebugEvent(event("e1", "n0"));
+        MvcResult first = mvc.perform(get("/events/e1")).andReturn();
+        MvcResult second = mvc.perform(get("/events/e1")).andReturn();
+        assertEquals(2, debugService.getStats().get("subscribers"));
+
+        debugService.sendDebugEvent(event("e1", "n1"));
+        debugService.sendDebugEvent(event("e2", "other"));
+        debugService.completeDebugSession("e1");
+
+        for (MvcResult result : new MvcResult[] {first, second}) {
+            String stream = result.getResponse().getContentAsString();
+            assertTrue(stream.indexOf("\"nodeId\":\"n0\"") < stream.indexOf("\"nodeId\":\"n1\""));
+            assertEquals(2, stream.split("event:node-execution").length - 1);
+            assertFalse(stream.contains("other"));
+        }
+        assertEquals(0, debugService.getStats().get("subscribers"));
+    }
+
+    @Test
+    public void testOldestFinishedExecutionsAreEvicted() throws Exception {
+        WorkflowDebugService debugService = new WorkflowDebugService(8, 2);
+        MockMvc mvc = mvc(debugService);
+        for (int i = 1; i <= 3; i++) {
+            debugService.sendDebugEvent(event("e" + i, "n" + i));
+            debugService.completeDebugSession("e" + i);
+        }
+
+        Map<String, Object> stats = debugService.getStats();
+        assertEquals(2, stats.get("retained"));
+        assertEquals(2, stats.get("channels"));
+        assertEquals(404, mvc.perform(get("/events/e1").param("running", "false")).andReturn().getResponse().getStatus());
+        String replayed = mvc.perform(get("/events/e3").param("running", "false")).andReturn()
+            .getResponse().getContentAsString();
+        assertTrue(replayed.contains("\"nodeId\":\"n3\""));
+    }
+}
@@ -0,0 +1,96 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.execution.ExecutionPlan;
+import cn.yafex.workflow.model.Workflow;
+import cn.yafex.workflow.util.WorkflowLoader;
+import com.alibaba.fastjson.JSON;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+/**
+ * Test case for the cached workflow definitions and plans of the workflow loader
+ */
+public class WorkflowLoaderTest {
+
+    @TempDir
+    Path dir;
+
+    private static String definition(String id, String name) {
+        return "{\"id\": \"" + id + "\", \"name\": \"" + name + "\", \"startNodeId\": \"start\", \"nodes\": ["
+            + "{\"id\": \"start\", \"name\": \"start\", \"type\": \"START\", \"nextNodes\": {\"default\": \"end\"}},"
+            + "{\"id\": \"end\", \"name\": \"end\", \"type\": \"END\"}]}";
+    }
+
+    private void write(String id, String name) throws IOException {
+        Files.write(dir.resolve(id + ".json"), definition(id, name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSaveDeleteAndModifyInvalidateCache() throws Exception {
+        // 不监听目录，磁盘上的修改只能通过修改时间和大小发现
+        WorkflowLoader loader = new WorkflowLoader(dir.toString(), 8, false);
+        loader.init();
+        write("a", "first");
+
+        Workflow workflow = loader.loadWorkflow("a");
+        ExecutionPlan plan = loader.loadPlan("a");
+        assertSame(workflow, loader.loadWorkflow("a"));
+        assertSame(plan, loader.loadPlan("a"));
+        assertSame(workflow, plan.getWorkflow());
+
+        Workflow changed = JSON.parseObject(definition("a", "saved"), Workflow.class);
+        loader.saveWorkflow(changed);
+        Workflow saved = loader.loadWorkflow("a");
+        assertEquals("saved", saved.getName());
+        assertNotSame(plan, loader.loadPlan("a"));
+        plan = loader.loadPlan("a");
+
+        write("a", "modified on disk");
+        Files.setLastModifiedTime(dir.resolve("a.json"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        assertEquals("modified on disk", loader.loadWorkflow("a").getName());
+        assertNotSame(plan, loader.loadPlan("a"));
+
+        assertTrue(loader.deleteWorkflow("a"));
+        assertThrows(IOException.class, () -> loader.loadWorkflow("a"));
+        assertThrows(IOException.class, () -> loader.loadPlan("a"));
+
+        Map<String, Object> stats = loader.getCacheStats();
+        assertEquals(0, stats.get("size"));
+        assertEquals(3L, stats.get("misses"));
+        assertEquals(2L, stats.get("invalidations"));
+        loader.destroy();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedWorkflowIsEvicted() throws Exception {
+        WorkflowLoader loader = new WorkflowLoader(dir.toString(), 2, false);
+        loader.init();
+        write("a", "a");
+        write("b", "b");
+        write("c", "c");
+
+        Workflow a = loader.loadWorkflow("a");
+        Workflow b = loader.loadWorkflow("b");
+        assertSame(a, loader.loadWorkflow("a"));
+        // b 最久未被访问，加载 c 时被淘汰
+        loader.loadWorkflow("c");
+        assertSame(a, loader.loadWorkflow("a"));
+        assertNotSame(b, loader.loadWorkflow("b"));
+
+        Map<String, Object> stats = loader.getCacheStats();
+        assertEquals(2, stats.get("size"));
+        assertEquals(2, stats.get("maxSize"));
+        assertEquals(2L, stats.get("evictions"));
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(4L, stats.get("misses"));
+        loader.destroy();
+    }
+}
@@ -0,0 +1,199 @@
+package cn.yafex.workflow;
+
+import cn.yafex.workflow.util.WorkflowLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Test case for the asynchronous workflow logger: batching, file content and drops
+ */
+public class WorkflowLoggerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testConcurrentRecordsAreWrittenPerExecution() throws Exception {
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 1024, 1000, 4096, 50, 4, null);
+        logger.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String executionId = "e" + t;
+            threads.add(new Thread(() -> {
+                logger.logWorkflowStart(executionId, "wf");
+                for (int i = 0; i < 100; i++) {
+                    logger.logNodeExecution(executionId, "wf", "n" + i, "FUNCTION", "out" + i, i);
+                }
+                logger.logWorkflowComplete(executionId, "wf", "COMPLETED", 42);
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logger.stop();
+
+        Map<String, Object> stats = logger.getStats();
+        assertEquals(816L, stats.get("published"));
+        assertEquals(816L, stats.get("written"));
+        assertEquals(0L, stats.get("dropped"));
+        for (int t = 0; t < 8; t++) {
+            String content = new String(Files.readAllBytes(find("wf_e" + t + ".txt")), StandardCharsets.UTF_8);
+            assertTrue(content.contains("Workflow wf started. Execution ID: e" + t));
+            // 同一执行的记录按发布顺序写入
+            assertTrue(content.indexOf("Node: n10,") < content.indexOf("Node: n99,"));
+            assertTrue(content.contains("Node: n99, Type: FUNCTION, Duration: 99ms\n Output: out99"));
+            assertTrue(content.trim().endsWith("Workflow completed. Status: COMPLETED, Total Duration: 42ms"));
+        }
+    }
+
+    @Test
+    public void testLargeLogsRollOverToNumberedFiles() throws Exception {
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 1024, 1000, 4096, 50, 4, null);
+        // 每条记录都超过上限，各自写入一个文件
+        logger.setMaxFileBytes(1);
+        logger.start();
+        for (int i = 0; i < 10; i++) {
+            logger.logNodeExecution("e", "wf", "n" + i, "FUNCTION", "x".repeat(100), i);
+        }
+        logger.logWorkflowComplete("e", "wf", "COMPLETED", 42);
+        logger.stop();
+
+        assertTrue(Files.readString(find("wf_e.txt")).contains("Node: n0,"));
+        assertFalse(Files.readString(find("wf_e.txt")).contains("Node: n1,"));
+        assertTrue(Files.readString(find("wf_e.9.txt")).contains("Node: n9,"));
+        assertTrue(Files.readString(find("wf_e.10.txt")).contains("Workflow completed."));
+        assertEquals(10L, logger.getStats().get("rollovers"));
+    }
+
+    @Test
+    public void testReopenedExecutionKeepsItsDirectoryAndPart() throws Exception {
+        // 只能打开一个文件，两个执行交替写入时互相关闭对方的文件
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 1024, 1000, 4096, 50, 1, null);
+        logger.setMaxFileBytes(150);
+        logger.start();
+        for (int i = 0; i < 6; i++) {
+            logger.logNodeExecution("a", "wf", "a" + i, "FUNCTION", "x".repeat(100), i);
+            logger.logNodeExecution("b", "wf", "b" + i, "FUNCTION", "y", i);
+            // 等待写线程处理，确保每条记录都在对方关闭文件之后写入
+            Thread.sleep(20);
+        }
+        logger.logWorkflowComplete("a", "wf", "COMPLETED", 42);
+        logger.logWorkflowComplete("b", "wf", "COMPLETED", 42);
+        logger.stop();
+
+        // a 的每条记录各占一个文件，重新打开后继续写入当前序号的文件
+        assertTrue(Files.readString(find("wf_a.txt")).contains("Node: a0,"));
+        assertFalse(Files.readString(find("wf_a.txt")).contains("Node: a1,"));
+        assertTrue(Files.readString(find("wf_a.5.txt")).contains("Node: a5,"));
+        assertFalse(Files.readString(find("wf_a.5.txt")).contains("Node: a4,"));
+        assertTrue(Files.readString(find("wf_a.6.txt")).contains("Workflow completed."));
+        // b 的记录较小，按大小上限依次写入 wf_b.txt、wf_b.1.txt 和 wf_b.2.txt
+        assertTrue(Files.readString(find("wf_b.txt")).contains("Node: b0,"));
+        assertTrue(Files.readString(find("wf_b.1.txt")).contains("Node: b5,"));
+        assertTrue(Files.readString(find("wf_b.2.txt")).contains("Workflow completed."));
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertEquals(1, files.filter(Files::isDirectory).filter(d -> !d.equals(dir)).count());
+        }
+    }
+
+    @Test
+    public void testSampledOutExecutionsAreKeptOnFailureOrSlowness() throws Exception {
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 1024, 1000, 4096, 50, 4, null);
+        // 只记录 keep 工作流，其余执行在失败或耗时达到 1 秒时才记录，最多缓存 2 条节点记录
+        logger.setSampling(0.0, "keep=1.0", 1000, 2, false);
+        logger.start();
+        runExecution(logger, "a", "keep", 1, "COMPLETED", 10);
+        runExecution(logger, "b", "wf", 1, "COMPLETED", 10);
+        runExecution(logger, "c", "wf", 5, "FAILED", 10);
+        runExecution(logger, "d", "wf", 1, "COMPLETED", 2000);
+        logger.stop();
+
+        assertTrue(Files.readString(find("keep_a.txt")).contains("Node: n0,"));
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().equals("wf_b.txt")));
+        }
+        String failed = Files.readString(find("wf_c.txt"));
+        assertTrue(failed.startsWith("["));
+        assertTrue(failed.contains("Workflow wf started. Execution ID: c"));
+        assertTrue(failed.contains("... 3 earlier node records omitted"));
+        assertFalse(failed.contains("Node: n2,"));
+        assertTrue(failed.indexOf("Node: n3,") < failed.indexOf("Node: n4,"));
+        assertTrue(failed.trim().endsWith("Status: FAILED, Total Duration: 10ms"));
+        assertTrue(Files.readString(find("wf_d.txt")).contains("Node: n0,"));
+
+        Map<String, Object> stats = logger.getStats();
+        assertEquals(1L, stats.get("sampledOut"));
+        assertEquals(2L, stats.get("tailKept"));
+        assertEquals(3L, stats.get("omittedRecords"));
+    }
+
+    @Test
+    public void testExecutionsEvictedFromTailBufferAreDropped() throws Exception {
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 8192, 1000, 4096, 50, 4, null);
+        logger.setSampling(0.0, "", 1000, 2, false);
+        logger.start();
+        logger.logWorkflowStart("first", "wf");
+        logger.logWorkflowStart("second", "wf");
+        // 超过 4096 个同时缓存的执行，最早的 first 被放弃
+        for (int i = 0; i < 4095; i++) {
+            logger.logWorkflowStart("other" + i, "wf");
+        }
+        logger.logNodeExecution("first", "wf", "n0", "FUNCTION", "out0", 0);
+        logger.logWorkflowComplete("first", "wf", "FAILED", 10);
+        logger.logNodeExecution("second", "wf", "n0", "FUNCTION", "out0", 0);
+        logger.logWorkflowComplete("second", "wf", "FAILED", 10);
+        logger.stop();
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().equals("wf_first.txt")));
+        }
+        String kept = Files.readString(find("wf_second.txt"));
+        assertTrue(kept.contains("Workflow wf started. Execution ID: second"));
+        assertTrue(kept.contains("Node: n0,"));
+        assertEquals(1L, logger.getStats().get("sampledOut"));
+        assertEquals(1L, logger.getStats().get("tailKept"));
+    }
+
+    private static void runExecution(WorkflowLogger logger, String executionId, String workflowId,
+                                     int nodes, String status, long duration) {
+        logger.logWorkflowStart(executionId, workflowId);
+        for (int i = 0; i < nodes; i++) {
+            logger.logNodeExecution(executionId, workflowId, "n" + i, "FUNCTION", "out" + i, i);
+        }
+        logger.logWorkflowComplete(executionId, workflowId, status, duration);
+    }
+
+    @Test
+    public void testRecordsAreDroppedWhenBufferIsFull() {
+        // 写线程未启动，缓冲区写满后立即丢弃
+        WorkflowLogger logger = new WorkflowLogger(dir.toString(), 4, 0, 4096, 50, 4, null);
+        for (int i = 0; i < 10; i++) {
+            logger.logNodeExecution("e", "wf", "n" + i, "FUNCTION", null, 0);
+        }
+        Map<String, Object> stats = logger.getStats();
+        assertEquals(4L, stats.get("published"));
+        assertEquals(6L, stats.get("dropped"));
+        assertEquals(6L, stats.get("backpressureWaits"));
+        assertEquals(4, stats.get("pending"));
+    }
+
+    /**
+     * 日志文件按日期放在子目录中
+     */
+    private Path find(String name) throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(file -> file.getFileName().toString().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("日志文件不存在: " + name));
+        }
+    }
+}
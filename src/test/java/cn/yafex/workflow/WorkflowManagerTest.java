@@ -0,0 +1,694 @@
+package cn.yafex.workflow;
+
+import cn.yafex.tools.annotations.InputVar;
+import cn.yafex.tools.annotations.ReturnVal;
+import cn.yafex.tools.annotations.Tool;
+import cn.yafex.tools.core.AsyncToolHandler;
+import cn.yafex.tools.core.ToolHandler;
+import cn.yafex.tools.core.ToolRegistry;
+import cn.yafex.tools.core.ToolResponse;
+import cn.yafex.tools.exceptions.ToolException;
+import cn.yafex.tools.schema.FieldDef;
+import cn.yafex.tools.schema.FieldType;
+import cn.yafex.tools.schema.VariableDef;
+import cn.yafex.workflow.controller.WorkflowController;
+import cn.yafex.workflow.execution.ExecutionJournal;
+import cn.yafex.workflow.execution.ExecutionPriority;
+import cn.yafex.workflow.execution.ExecutionResultStore;
+import cn.yafex.workflow.execution.ExecutionScheduler;
+import cn.yafex.workflow.execution.TimerWheel;
+import cn.yafex.workflow.execution.WorkflowContext;
+import cn.yafex.workflow.execution.WorkflowStatus;
+import cn.yafex.workflow.model.ExecutionMode;
+import cn.yafex.workflow.model.NodeType;
+import cn.yafex.workflow.model.Workflow;
+import cn.yafex.workflow.model.WorkflowNode;
+import cn.yafex.workflow.service.WorkflowDebugService;
+import cn.yafex.workflow.service.WorkflowManager;
+import cn.yafex.workflow.util.EngineMetrics;
+import cn.yafex.workflow.util.WorkflowLoader;
+import cn.yafex.workflow.util.WorkflowLogger;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Test case for running workflows end to end through the scheduler: parking, yielding, joins and failures
+ */
+public class WorkflowManagerTest {
+
+    /** 每次调用 test_gate 创建的 future，由测试决定何时以及如何完成 */
+    private static final BlockingQueue<CompletableFuture<ToolResponse<?>>> GATES = new LinkedBlockingQueue<>();
+
+    /** test_echo 开始和结束的记录，按发生顺序 */
+    private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 异步工具，返回的 future 交给测试完成
+     */
+    @Tool(name = "test_gate", description = "等待测试完成返回的 future")
+    public static class GateTool implements AsyncToolHandler {
+        @Override
+        @ReturnVal(name = "text", description = "测试给出的文本", type = FieldType.STRING)
+        public CompletableFuture<ToolResponse<?>> executeAsync(
+            @InputVar(name = "text", description = "输入文本", type = FieldType.STRING, required = false)
+            Map<String, Object> params
+        ) {
+            CompletableFuture<ToolResponse<?>> future = new CompletableFuture<>();
+            GATES.add(future);
+            return future;
+        }
+    }
+
+    /**
+     * 同步工具，返回 text 加上 suffix，可以等待 sleepMs 或以 fail 失败，开始和结束时按 tag 记录
+     */
+    @Tool(name = "test_echo", description = "返回输入文本")
+    public static class EchoTool implements ToolHandler {
+        @Override
+        @ReturnVal(name = "text", description = "输出文本", type = FieldType.STRING)
+        @SuppressWarnings("unchecked")
+        public <T> ToolResponse<T> execute(
+            @InputVar(name = "text", description = "输入文本", type = FieldType.STRING)
+            Map<String, Object> params
+        ) throws ToolException {
+            Object text = params.get("text");
+            Object tag = params.containsKey("tag") ? params.get("tag") : text;
+            EVENTS.add("start:" + tag);
+            Object sleepMs = params.get("sleepMs");
+            if (sleepMs instanceof Number) {
+                sleepQuietly(((Number) sleepMs).longValue());
+            }
+            EVENTS.add("end:" + tag);
+            if (Boolean.TRUE.equals(params.get("fail"))) {
+                return ToolResponse.error("echo failed: " + tag, "ECHO_FAILED");
+            }
+            Map<String, Object> result = new HashMap<>();
+            result.put("text", text + (params.containsKey("suffix") ? String.valueOf(params.get("suffix")) : ""));
+            return (ToolResponse<T>) ToolResponse.success(result);
+        }
+    }
+
+    /**
+     * 同步工具，输出 left 和 right 拼接的文本，与 test_echo 写入不同的变量，可以与之并发
+     */
+    @Tool(name = "test_concat", description = "拼接两段文本")
+    public static class ConcatTool implements ToolHandler {
+        @Override
+        @ReturnVal(name = "joined", description = "拼接后的文本", type = FieldType.STRING)
+        @SuppressWarnings("unchecked")
+        public <T> ToolResponse<T> execute(
+            @InputVar(name = "left", description = "左侧文本", type = FieldType.STRING)
+            Map<String, Object> params
+        ) throws ToolException {
+            EVENTS.add("start:" + params.get("tag"));
+            Object sleepMs = params.get("sleepMs");
+            if (sleepMs instanceof Number) {
+                sleepQuietly(((Number) sleepMs).longValue());
+            }
+            EVENTS.add("end:" + params.get("tag"));
+            Map<String, Object> result = new HashMap<>();
+            result.put("joined", String.valueOf(params.get("left")) + params.get("right"));
+            return (ToolResponse<T>) ToolResponse.success(result);
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    private WorkflowLoader loader;
+    private WorkflowLogger logger;
+    private ExecutionScheduler scheduler;
+    private TimerWheel timerWheel;
+    private ExecutionJournal journal;
+    private ExecutionResultStore results;
+    private WorkflowManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        // 其他测试会清空注册表
+        if (!ToolRegistry.isRegistered("test_gate")) {
+            ToolRegistry.register(new GateTool());
+        }
+        if (!ToolRegistry.isRegistered("test_echo")) {
+            ToolRegistry.register(new EchoTool());
+        }
+        if (!ToolRegistry.isRegistered("test_concat")) {
+            ToolRegistry.register(new ConcatTool());
+        }
+        GATES.clear();
+        EVENTS.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (manager == null) {
+            return;
+        }
+        manager.destroy();
+        scheduler.stop();
+        timerWheel.stop();
+        logger.stop();
+        journal.stop();
+        results.stop();
+        loader.destroy();
+    }
+
+    /**
+     * 使用临时目录创建执行引擎的所有组件
+     * @param workers 调度器工作线程数量
+     * @param stepNodes 一次推进最多执行的节点数量，0 表示不限制
+     */
+    private void startEngine(int workers, int stepNodes) throws Exception {
+        startEngine(workers, stepNodes, 0);
+    }
+
+    /**
+     * @param workers 调度器工作线程数量
+     * @param stepNodes 一次推进最多执行的节点数量，0 表示不限制
+     * @param parallelism 并行线程池大小和数据流段的并发数量，0 表示使用默认值
+     */
+    private void startEngine(int workers, int stepNodes, int parallelism) throws Exception {
+        loader = new WorkflowLoader(dir.resolve("definitions").toString(), 16, false);
+        loader.init();
+        logger = new WorkflowLogger(dir.resolve("logs").toString(), 1024, 1000, 4096, 50, 4, null);
+        logger.start();
+        scheduler = new ExecutionScheduler(workers, 64, 0);
+        scheduler.start();
+        timerWheel = new TimerWheel(5, 64);
+        journal = new ExecutionJournal(dir.resolve("journal").toString(), false, 1 << 20);
+        journal.start();
+        results = new ExecutionResultStore(100, 0, 1 << 20, dir.resolve("results").toString());
+        results.start();
+        manager = new WorkflowManager(loader, logger, new WorkflowDebugService(16, 4), scheduler, timerWheel,
+            journal, results, new EngineMetrics());
+        manager.setStepNodes(stepNodes);
+        manager.setParallelism(parallelism, parallelism);
+        manager.init();
+    }
+
+    static WorkflowNode node(String id, NodeType type) {
+        WorkflowNode node = new WorkflowNode();
+        node.setId(id);
+        node.setName(id);
+        node.setType(type);
+        return node;
+    }
+
+    static WorkflowNode function(String id, String toolName) {
+        WorkflowNode node = node(id, NodeType.FUNCTION);
+        node.setToolName(toolName);
+        return node;
+    }
+
+    static VariableDef constant(Object value) {
+        return new VariableDef("CONSTANT", value);
+    }
+
+    static VariableDef reference(String parent, String name) {
+        VariableDef var = new VariableDef();
+        var.setName(name);
+        var.setParent(parent);
+        return var;
+    }
+
+    /**
+     * 按顺序连接 START、给定节点和 END
+     */
+    private static Workflow chain(String id, WorkflowNode... nodes) {
+        List<WorkflowNode> chain = new ArrayList<>();
+        chain.add(node("start", NodeType.START));
+        chain.addAll(Arrays.asList(nodes));
+        chain.add(node("end", NodeType.END));
+        Workflow workflow = new Workflow();
+        workflow.setId(id);
+        workflow.setName(id);
+        workflow.setStartNodeId("start");
+        for (int i = 0; i < chain.size(); i++) {
+            if (i + 1 < chain.size()) {
+                chain.get(i).getNextNodes().put("default", chain.get(i + 1).getId());
+            }
+            workflow.addNode(chain.get(i));
+        }
+        return workflow;
+    }
+
+    /**
+     * start -> fork -> (a: left, b: right) -> join -> after -> end，分支键 b 先加入 nextNodes
+     */
+    private static Workflow parallel(String id, WorkflowNode left, WorkflowNode right, WorkflowNode after) {
+        WorkflowNode fork = node("fork", NodeType.PARALLEL);
+        fork.getNextNodes().put("b", right.getId());
+        fork.getNextNodes().put("a", left.getId());
+        left.getNextNodes().put("default", "join");
+        right.getNextNodes().put("default", "join");
+        WorkflowNode join = node("join", NodeType.JOIN);
+        join.getNextNodes().put("default", after.getId());
+        WorkflowNode start = node("start", NodeType.START);
+        start.getNextNodes().put("default", "fork");
+        after.getNextNodes().put("default", "end");
+        Workflow workflow = new Workflow();
+        workflow.setId(id);
+        workflow.setName(id);
+        workflow.setStartNodeId("start");
+        for (WorkflowNode node : new WorkflowNode[] {start, fork, left, right, join, after, node("end", NodeType.END)}) {
+            workflow.addNode(node);
+        }
+        return workflow;
+    }
+
+    private static WorkflowNode echo(String id, String text, long sleepMs) {
+        WorkflowNode node = function(id, "test_echo");
+        node.addInputMapping("text", constant(text));
+        node.addInputMapping("tag", constant(id));
+        node.addInputMapping("sleepMs", constant(sleepMs));
+        return node;
+    }
+
+    private WorkflowContext submit(String workflowId) {
+        return manager.submitWorkflow(workflowId, null, ExecutionPriority.NORMAL, null);
+    }
+
+    private static WorkflowContext await(WorkflowContext context) throws Exception {
+        return context.getCompletion().get(5, TimeUnit.SECONDS);
+    }
+
+    private static CompletableFuture<ToolResponse<?>> nextGate() throws InterruptedException {
+        CompletableFuture<ToolResponse<?>> gate = GATES.poll(5, TimeUnit.SECONDS);
+        assertNotNull(gate, "test_gate 未被调用");
+        return gate;
+    }
+
+    private static Map<String, Object> text(String value) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", value);
+        return data;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int parked(String reason) {
+        return ((Map<String, Integer>) manager.getEngineStats().get("parkedBy")).get(reason);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 保存 start -> gate -> end 的工作流，输出 gate 给出的文本
+     */
+    private void saveGateWorkflow(String id, Long timeoutMs) throws Exception {
+        WorkflowNode gate = function("gate", "test_gate");
+        gate.setTimeoutMs(timeoutMs);
+        Workflow workflow = chain(id, gate);
+        workflow.getOutputs().put("result", reference("gate", "text"));
+        loader.saveWorkflow(workflow);
+    }
+
+    @Test
+    public void testAsyncToolParksAndResumes() throws Exception {
+        startEngine(2, 0);
+        saveGateWorkflow("gate_wf", null);
+
+        WorkflowContext context = submit("gate_wf");
+        CompletableFuture<ToolResponse<?>> gate = nextGate();
+        waitFor(() -> parked("TOOL") == 1);
+        assertEquals(1, manager.getEngineStats().get("parked"));
+        assertEquals(WorkflowStatus.RUNNING, context.getStatus());
+
+        gate.complete(ToolResponse.success(text("done")));
+        await(context);
+        assertEquals(WorkflowStatus.COMPLETED, context.getStatus());
+        assertEquals("done", context.getOutputs().get("result"));
+        assertEquals(0, manager.getEngineStats().get("started"));
+        assertFalse(manager.isActive(context.getExecutionId()));
+    }
+
+    @Test
+    public void testStepQuotaYieldsToQueuedExecutions() throws Exception {
+        startEngine(1, 2);
+        WorkflowNode[] echoes = new WorkflowNode[6];
+        for (int i = 0; i < echoes.length; i++) {
+            echoes[i] = function("e" + i, "test_echo");
+            echoes[i].addInputMapping("text", constant("long" + i));
+        }
+        loader.saveWorkflow(chain("long_wf", echoes));
+        loader.saveWorkflow(chain("short_wf"));
+
+        // 先占用唯一的工作线程，保证两个执行都在队列中
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, ExecutionPriority.HIGH);
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        WorkflowContext longRun = submit("long_wf");
+        WorkflowContext shortRun = submit("short_wf");
+        longRun.getCompletion().thenRun(() -> finished.add("long"));
+        shortRun.getCompletion().thenRun(() -> finished.add("short"));
+        release.countDown();
+
+        await(longRun);
+        await(shortRun);
+        assertEquals(WorkflowStatus.COMPLETED, longRun.getStatus());
+        assertEquals(WorkflowStatus.COMPLETED, shortRun.getStatus());
+        // 长执行每推进两个节点就回到队列末尾，短执行先结束
+        assertEquals(Arrays.asList("short", "long"), finished);
+        assertEquals(3L, scheduler.getStats().get("requeued"));
+        assertEquals("long5", longRun.getVariables().get("text").getValue());
+    }
+
+    @Test
+    public void testCancelWhileParkedCancelsTool() throws Exception {
+        startEngine(2, 0);
+        saveGateWorkflow("gate_wf", null);
+
+        WorkflowContext context = submit("gate_wf");
+        CompletableFuture<ToolResponse<?>> gate = nextGate();
+        waitFor(() -> parked("TOOL") == 1);
+        assertTrue(manager.stopWorkflow(context.getExecutionId()));
+
+        await(context);
+        assertEquals(WorkflowStatus.CANCELLED, context.getStatus());
+        assertTrue(gate.isCancelled());
+        assertEquals(0, manager.getEngineStats().get("parked"));
+    }
+
+    @Test
+    public void testFailingToolFailsExecution() throws Exception {
+        startEngine(2, 0);
+        saveGateWorkflow("gate_wf", null);
+        WorkflowNode echo = function("echo", "test_echo");
+        echo.addInputMapping("text", constant("x"));
+        echo.addInputMapping("fail", constant(true));
+        loader.saveWorkflow(chain("echo_wf", echo));
+
+        WorkflowContext async = submit("gate_wf");
+        nextGate().complete(ToolResponse.error("boom", "BOOM"));
+        await(async);
+        assertEquals(WorkflowStatus.FAILED, async.getStatus());
+        assertEquals("ToolException : boom", async.getError());
+
+        WorkflowContext sync = submit("echo_wf");
+        await(sync);
+        assertEquals(WorkflowStatus.FAILED, sync.getStatus());
+        assertEquals("ToolException : echo failed: x", sync.getError());
+    }
+
+    @Test
+    public void testNullToolResponseFailsExecution() throws Exception {
+        startEngine(2, 0);
+        saveGateWorkflow("gate_wf", null);
+
+        WorkflowContext context = submit("gate_wf");
+        nextGate().complete(null);
+        // 回调中不能因为 null 抛出异常，否则执行永远不会被唤醒
+        await(context);
+        assertEquals(WorkflowStatus.FAILED, context.getStatus());
+        assertTrue(context.getError().startsWith("NullPointerException"));
+        assertEquals(0, manager.getEngineStats().get("started"));
+    }
+
+    @Test
+    public void testParkedExecutionReleasesWorker() throws Exception {
+        startEngine(1, 0);
+        saveGateWorkflow("gate_wf", null);
+        WorkflowNode echo = function("echo", "test_echo");
+        echo.addInputMapping("text", constant("x"));
+        loader.saveWorkflow(chain("echo_wf", echo));
+
+        WorkflowContext parked = submit("gate_wf");
+        CompletableFuture<ToolResponse<?>> gate = nextGate();
+        waitFor(() -> parked("TOOL") == 1 && scheduler.getActiveWorkers() == 0);
+
+        // 唯一的工作线程没有在等待工具，其他执行照常完成
+        WorkflowContext other = submit("echo_wf");
+        await(other);
+        assertEquals(WorkflowStatus.COMPLETED, other.getStatus());
+        assertEquals(WorkflowStatus.RUNNING, parked.getStatus());
+
+        gate.complete(ToolResponse.success(text("done")));
+        await(parked);
+        assertEquals(WorkflowStatus.COMPLETED, parked.getStatus());
+    }
+
+    @Test
+    public void testExceptionalToolFutureFailsExecution() throws Exception {
+        startEngine(2, 0);
+        saveGateWorkflow("gate_wf", null);
+
+        WorkflowContext context = submit("gate_wf");
+        nextGate().completeExceptionally(new ToolException("broken", "BROKEN"));
+        await(context);
+        assertEquals(WorkflowStatus.FAILED, context.getStatus());
+        assertEquals("ToolException : broken", context.getError());
+
+        context = submit("gate_wf");
+        nextGate().completeExceptionally(new IllegalStateException("unexpected"));
+        await(context);
+        assertEquals(WorkflowStatus.FAILED, context.getStatus());
+        assertEquals("ToolException : Tool execution failed: unexpected", context.getError());
+    }
+
+    @Test
+    public void testNodeTimeoutCancelsAsyncTool() throws Exception {
+        startEngine(2, 0);
+        saveGateWorkflow("gate_wf", 50L);
+
+        WorkflowContext context = submit("gate_wf");
+        CompletableFuture<ToolResponse<?>> gate = nextGate();
+        await(context);
+        assertEquals(WorkflowStatus.FAILED, context.getStatus());
+        assertEquals("ToolException : 节点执行超时: 50ms", context.getError());
+        assertTrue(gate.isCancelled());
+    }
+
+    @Test
+    public void testParallelBranchesMergeInBranchKeyOrder() throws Exception {
+        startEngine(2, 0);
+        // 无论哪个分支先结束，同名变量都以分支键排在后面的 b 为准
+        loader.saveWorkflow(parallel("slow_a", echo("left", "from-a", 100), echo("right", "from-b", 0),
+            function("after", "test_echo")));
+        loader.saveWorkflow(parallel("slow_b", echo("left", "from-a", 0), echo("right", "from-b", 100),
+            function("after", "test_echo")));
+
+        for (String id : new String[] {"slow_a", "slow_b"}) {
+            WorkflowContext context = await(submit(id));
+            assertEquals(WorkflowStatus.COMPLETED, context.getStatus(), id);
+            assertEquals("from-b", context.getVariables().get("text").getValue(), id);
+            // JOIN 之后的节点按名称读取合并后的变量
+            assertEquals("from-b", context.getVariable("text", "after").getValue(), id);
+            assertEquals("from-a", context.getVariable("text", "left").getValue(), id);
+        }
+    }
+
+    @Test
+    public void testFailingBranchFailsExecution() throws Exception {
+        startEngine(2, 0);
+        WorkflowNode right = echo("right", "from-b", 0);
+        right.addInputMapping("fail", constant(true));
+        loader.saveWorkflow(parallel("fail_b", echo("left", "from-a", 100), right, echo("after", "after", 0)));
+
+        WorkflowContext context = await(submit("fail_b"));
+        assertEquals(WorkflowStatus.FAILED, context.getStatus());
+        assertEquals("ToolException : echo failed: right", context.getError());
+        // 其余分支执行完成后才结束，JOIN 之后的节点不执行
+        assertTrue(EVENTS.contains("end:left"));
+        assertFalse(EVENTS.contains("start:after"));
+        assertNull(context.getVariable("text", "left"));
+    }
+
+    /**
+     * n1、n2 互不依赖；n3 读取 n1 并与 n2 写入同名变量；n4 没有 inputMap；n5 与 n1、n4 写入同名变量
+     */
+    private static Workflow dataflow(String id, ExecutionMode mode) {
+        WorkflowNode n1 = echo("n1", "x", 100);
+        WorkflowNode n2 = function("n2", "test_concat");
+        n2.addInputMapping("left", constant("p"));
+        n2.addInputMapping("right", constant("q"));
+        n2.addInputMapping("tag", constant("n2"));
+        n2.addInputMapping("sleepMs", constant(100L));
+        WorkflowNode n3 = function("n3", "test_concat");
+        n3.addInputMapping("left", reference("n1", "text"));
+        n3.addInputMapping("right", reference("n2", "joined"));
+        n3.addInputMapping("tag", constant("n3"));
+        // 没有 inputMap 时读取按名称保存的全部变量，记录的 tag 为读到的 text
+        WorkflowNode n4 = function("n4", "test_echo");
+        WorkflowNode n5 = echo("n5", "y", 0);
+        Workflow workflow = chain(id, n1, n2, n3, n4, n5);
+        workflow.setExecutionMode(mode);
+        return workflow;
+    }
+
+    @Test
+    public void testDataflowMatchesSequentialExecution() throws Exception {
+        startEngine(2, 0, 4);
+        loader.saveWorkflow(dataflow("sequential_wf", ExecutionMode.SEQUENTIAL));
+        loader.saveWorkflow(dataflow("dataflow_wf", ExecutionMode.DATAFLOW));
+
+        WorkflowContext sequential = await(submit("sequential_wf"));
+        List<String> sequentialEvents = new ArrayList<>(EVENTS);
+        EVENTS.clear();
+        WorkflowContext dataflow = await(submit("dataflow_wf"));
+        List<String> dataflowEvents = new ArrayList<>(EVENTS);
+
+        assertEquals(WorkflowStatus.COMPLETED, sequential.getStatus());
+        assertEquals(WorkflowStatus.COMPLETED, dataflow.getStatus());
+        assertEquals(values(sequential), values(dataflow));
+        assertEquals("y", dataflow.getVariables().get("text").getValue());
+        assertEquals("xpq", dataflow.getVariables().get("joined").getValue());
+        for (String node : new String[] {"n1", "n2", "n3", "n4", "n5"}) {
+            for (String name : new String[] {"text", "joined"}) {
+                VariableDef expected = sequential.getVariable(name, node);
+                VariableDef actual = dataflow.getVariable(name, node);
+                assertEquals(expected == null ? null : expected.getValue(), actual == null ? null : actual.getValue());
+            }
+        }
+
+        // 顺序模式逐个执行，数据流模式中 n1 和 n2 同时执行
+        assertTrue(sequentialEvents.indexOf("end:n1") < sequentialEvents.indexOf("start:n2"));
+        assertTrue(dataflowEvents.indexOf("start:n2") < dataflowEvents.indexOf("end:n1"));
+    }
+
+    @Test
+    public void testDataflowKeepsConflictingNodesInOrder() throws Exception {
+        startEngine(2, 0, 4);
+        loader.saveWorkflow(dataflow("dataflow_wf", ExecutionMode.DATAFLOW));
+
+        WorkflowContext context = await(submit("dataflow_wf"));
+        assertEquals(WorkflowStatus.COMPLETED, context.getStatus());
+        List<String> events = new ArrayList<>(EVENTS);
+        assertEquals(10, events.size());
+        // n3 与 n2 写入同名变量并读取 n1 的输出
+        assertTrue(events.indexOf("end:n2") < events.indexOf("start:n3"));
+        assertTrue(events.indexOf("end:n1") < events.indexOf("start:n3"));
+        // 没有 inputMap 的 n4 等待之前所有节点，之后写入同名变量的 n5 等待 n4
+        assertTrue(events.indexOf("end:n3") < events.indexOf("start:x"));
+        assertTrue(events.indexOf("end:x") < events.indexOf("start:n5"));
+        assertEquals("x", context.getVariable("text", "n4").getValue());
+    }
+
+    private static Map<String, Object> values(WorkflowContext context) {
+        Map<String, Object> values = new HashMap<>();
+        context.getVariables().forEach((name, var) -> values.put(name, var != null ? var.getValue() : null));
+        return values;
+    }
+
+    @Test
+    public void testBatchEndpointWritesOneLinePerResult() throws Exception {
+        startEngine(2, 0);
+        Workflow workflow = chain("echo_wf", function("echo", "test_echo"));
+        workflow.getInputs().put("text", new FieldDef("text", "输入文本", FieldType.STRING, true, null, null));
+        workflow.getOutputs().put("result", reference("echo", "text"));
+        loader.saveWorkflow(workflow);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+            new WorkflowController(manager, loader, new WorkflowDebugService(16, 4))).build();
+
+        MvcResult started = mvc.perform(post("/api/workflows/echo_wf/batch")
+            .content("[{\"text\": \"a\"}, {\"text\": \"b\"}, {\"text\": \"c\"}]")).andReturn();
+        String body = mvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsString();
+
+        // 全局开启了 PrettyFormat，嵌套的输出和汇总也必须各占一行
+        String[] lines = body.split("\n");
+        assertEquals(4, lines.length, body);
+        for (int i = 0; i < 3; i++) {
+            JSONObject line = JSON.parseObject(lines[i]);
+            assertEquals(i, line.getIntValue("index"));
+            assertEquals("COMPLETED", line.getString("status"));
+            assertEquals(String.valueOf((char) ('a' + i)), line.getJSONObject("outputs").getString("result"));
+        }
+        assertEquals(3, JSON.parseObject(lines[3]).getJSONObject("summary").getIntValue("total"));
+    }
+
+    @Test
+    public void testBatchOutputsSubmittedResultsWhenInputIsMalformed() throws Exception {
+        startEngine(2, 0);
+        WorkflowNode echo = function("echo", "test_echo");
+        echo.addInputMapping("sleepMs", constant(50L));
+        Workflow workflow = chain("slow_echo_wf", echo);
+        workflow.getInputs().put("text", new FieldDef("text", "输入文本", FieldType.STRING, true, null, null));
+        workflow.getOutputs().put("result", reference("echo", "text"));
+        loader.saveWorkflow(workflow);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+            new WorkflowController(manager, loader, new WorkflowDebugService(16, 4))).build();
+
+        // 第三项格式错误时前两项仍在执行中
+        MvcResult started = mvc.perform(post("/api/workflows/slow_echo_wf/batch?parallelism=4")
+            .content("{\"text\": \"a\"}\n{\"text\": \"b\"}\n{\"text\": \n{\"text\": \"d\"}\n")).andReturn();
+        String body = mvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] lines = body.split("\n");
+        assertEquals(3, lines.length, body);
+        for (int i = 0; i < 2; i++) {
+            assertEquals("COMPLETED", JSON.parseObject(lines[i]).getString("status"));
+        }
+        JSONObject summary = JSON.parseObject(lines[2]).getJSONObject("summary");
+        assertEquals(2, summary.getIntValue("total"));
+        assertEquals(2, summary.getJSONObject("statusCounts").getIntValue("COMPLETED"));
+        assertTrue(summary.getString("error").startsWith("批量输入格式错误"), summary.toString());
+    }
+
+    @Test
+    public void testUnknownPriorityIsRejectedWithValidValues() throws Exception {
+        startEngine(1, 0);
+        loader.saveWorkflow(chain("echo_wf", echo("echo", "x", 0)));
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+            new WorkflowController(manager, loader, new WorkflowDebugService(16, 4))).build();
+
+        for (String url : new String[] {"/api/workflows/echo_wf/execute?priority=urgent",
+                "/api/workflows/echo_wf/execute?priority=urgent&wait=100"}) {
+            MvcResult started = mvc.perform(post(url)).andReturn();
+            MvcResult finished = started.getRequest().isAsyncStarted()
+                ? mvc.perform(asyncDispatch(started)).andReturn() : started;
+            assertEquals(400, finished.getResponse().getStatus(), url);
+            String error = JSON.parseObject(finished.getResponse().getContentAsString(StandardCharsets.UTF_8)).getString("error");
+            assertTrue(error.contains("urgent") && error.contains("HIGH, NORMAL, LOW"), error);
+        }
+
+        MvcResult batch = mvc.perform(post("/api/workflows/echo_wf/batch?priority=urgent").content("[{}]")).andReturn();
+        MvcResult finished = mvc.perform(asyncDispatch(batch)).andReturn();
+        assertEquals(400, finished.getResponse().getStatus());
+        assertTrue(finished.getResponse().getContentAsString(StandardCharsets.UTF_8).contains("HIGH, NORMAL, LOW"));
+        assertEquals(0, manager.getEngineStats().get("active"));
+        assertTrue(EVENTS.isEmpty(), EVENTS.toString());
+    }
+}